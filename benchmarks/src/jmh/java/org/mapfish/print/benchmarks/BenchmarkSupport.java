@@ -0,0 +1,204 @@
+package org.mapfish.print.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.mapfish.print.MapPrinter;
+import org.mapfish.print.config.Configuration;
+import org.mapfish.print.config.ConfigurationFactory;
+import org.mapfish.print.config.Template;
+import org.mapfish.print.config.WorkingDirectories;
+import org.mapfish.print.output.Values;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+/**
+ * The environment shared by the benchmarks: the normal application context with a {@link
+ * StubHttpRequestFactory}, and access to the fixtures of the core tests.
+ */
+public final class BenchmarkSupport implements AutoCloseable {
+  private static final int MAX_NUMBER_FETCH_RETRY = 0;
+  private static final int FETCH_RETRY_INTERVAL_MILLIS = 1;
+  private static final Pattern IMPORT_PATTERN = Pattern.compile("@@importFile\\((\\S+)\\)@@");
+
+  private final ClassPathXmlApplicationContext context;
+
+  /** Start the application context. */
+  public BenchmarkSupport() {
+    this.context =
+        new ClassPathXmlApplicationContext(
+            "classpath:mapfish-spring-application-context.xml",
+            "classpath:benchmark-application-context.xml");
+  }
+
+  /**
+   * Get a bean of the application context.
+   *
+   * @param type the type of the bean
+   * @param <T> the type of the bean
+   */
+  public <T> T getBean(final Class<T> type) {
+    return this.context.getBean(type);
+  }
+
+  /**
+   * Get a bean of the application context.
+   *
+   * @param name the name of the bean
+   * @param type the type of the bean
+   * @param <T> the type of the bean
+   */
+  public <T> T getBean(final String name, final Class<T> type) {
+    return this.context.getBean(name, type);
+  }
+
+  /** The request factory answering with the fixtures. */
+  public StubHttpRequestFactory getRequestFactory() {
+    return getBean(StubHttpRequestFactory.class);
+  }
+
+  /**
+   * Get a fixture file from the classpath.
+   *
+   * @param path the absolute path of the file in the classpath
+   */
+  public static File getFile(final String path) {
+    final URL resource = BenchmarkSupport.class.getResource(path);
+    if (resource == null) {
+      throw new IllegalArgumentException("Unable to find the fixture: " + path);
+    }
+    try {
+      return new File(resource.toURI());
+    } catch (URISyntaxException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  /**
+   * Read a fixture file from the classpath.
+   *
+   * @param path the absolute path of the file in the classpath
+   */
+  public static String read(final String path) throws IOException {
+    return Files.readString(getFile(path).toPath(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Load a configuration.
+   *
+   * @param path the absolute path of the configuration file in the classpath
+   */
+  public Configuration getConfiguration(final String path) throws IOException {
+    return getBean(ConfigurationFactory.class).getConfig(getFile(path));
+  }
+
+  /**
+   * Read a request, with its imported files (<code>@@importFile(...)@@</code>) like in the core
+   * tests.
+   *
+   * @param path the absolute path of the request file in the classpath
+   * @param layerTypes if not empty, only the map layers of these types are kept
+   * @return the request, to be parsed with {@link MapPrinter#parseSpec(String)}
+   */
+  public static String readRequest(final String path, final String... layerTypes)
+      throws IOException {
+    final File file = getFile(path);
+    String content = Files.readString(file.toPath(), StandardCharsets.UTF_8);
+    Matcher matcher = IMPORT_PATTERN.matcher(content);
+    while (matcher.find()) {
+      final File imported = new File(file.getParentFile(), matcher.group(1));
+      content =
+          content.replace(
+              matcher.group(), Files.readString(imported.toPath(), StandardCharsets.UTF_8));
+      matcher = IMPORT_PATTERN.matcher(content);
+    }
+    if (layerTypes.length == 0) {
+      return content;
+    }
+    final JSONObject request = new JSONObject(content);
+    final Set<String> types = Set.of(layerTypes);
+    final JSONObject map = request.getJSONObject("attributes").getJSONObject("map");
+    final JSONArray layers = new JSONArray();
+    for (Object layer : map.getJSONArray("layers")) {
+      if (types.contains(((JSONObject) layer).getString("type"))) {
+        layers.put(layer);
+      }
+    }
+    map.put("layers", layers);
+    return request.toString();
+  }
+
+  /**
+   * Get a query parameter of a URI.
+   *
+   * @param uri the URI
+   * @param name the name of the parameter, case insensitive
+   */
+  public static String getParameter(final URI uri, final String name) {
+    for (String parameter : uri.getQuery().split("&")) {
+      final String[] keyValue = parameter.split("=", 2);
+      if (keyValue[0].equalsIgnoreCase(name) && keyValue.length == 2) {
+        return keyValue[1];
+      }
+    }
+    throw new IllegalArgumentException("No " + name + " parameter in " + uri);
+  }
+
+  /**
+   * Run the processors of a template in a new task directory, and remove it.
+   *
+   * @param template the template
+   * @param request the request, see {@link #readRequest(String, String...)}
+   * @return the output values of the processors
+   */
+  public Values runProcessors(final Template template, final String request) {
+    final File taskDirectory = createTaskDirectory();
+    try {
+      final Values values =
+          new Values(
+              new HashMap<>(),
+              MapPrinter.parseSpec(request),
+              template,
+              taskDirectory,
+              getRequestFactory(),
+              new File("."),
+              MAX_NUMBER_FETCH_RETRY,
+              FETCH_RETRY_INTERVAL_MILLIS,
+              new AtomicBoolean(false));
+      return getBean("forkJoinPool", ForkJoinPool.class)
+          .invoke(template.getProcessorGraph().createTask(values));
+    } finally {
+      removeDirectory(taskDirectory);
+    }
+  }
+
+  /** Get a new task directory, to be removed with {@link #removeDirectory(File)}. */
+  public File createTaskDirectory() {
+    return getBean(WorkingDirectories.class).getTaskDirectory();
+  }
+
+  /**
+   * Remove a task directory.
+   *
+   * @param directory the directory
+   */
+  public void removeDirectory(final File directory) {
+    getBean(WorkingDirectories.class).removeDirectory(directory);
+  }
+
+  @Override
+  public void close() {
+    this.context.close();
+  }
+}
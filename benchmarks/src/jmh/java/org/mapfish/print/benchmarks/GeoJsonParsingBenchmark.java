@@ -0,0 +1,86 @@
+package org.mapfish.print.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.mapfish.print.map.geotools.FeaturesParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Parses a GeoJSON feature collection of points, lines and polygons with properties. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GeoJsonParsingBenchmark {
+  /** The number of features. */
+  @Param({"1000", "10000"})
+  public int features;
+
+  private FeaturesParser parser;
+  private String geoJson;
+  private byte[] geoJsonBytes;
+
+  /** Create the GeoJSON document. */
+  @Setup
+  public void setUp() {
+    this.parser = new FeaturesParser(new StubHttpRequestFactory(), false);
+    final StringBuilder builder =
+        new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+    for (int i = 0; i < this.features; i++) {
+      if (i > 0) {
+        builder.append(',');
+      }
+      final double x = (i % 100) * 0.01;
+      final double y = (i / 100) * 0.01;
+      final String geometry =
+          switch (i % 3) {
+            case 0 ->
+                String.format(
+                    Locale.ROOT, "{\"type\":\"Point\",\"coordinates\":[%f,%f]}", x, y);
+            case 1 ->
+                String.format(
+                    Locale.ROOT,
+                    "{\"type\":\"LineString\",\"coordinates\":[[%f,%f],[%f,%f],[%f,%f]]}",
+                    x, y, x + 0.005, y + 0.002, x + 0.01, y);
+            default ->
+                String.format(
+                    Locale.ROOT,
+                    "{\"type\":\"Polygon\",\"coordinates\":[[[%f,%f],[%f,%f],[%f,%f],[%f,%f]]]}",
+                    x, y, x + 0.005, y, x + 0.005, y + 0.005, x, y);
+          };
+      builder
+          .append("{\"type\":\"Feature\",\"geometry\":")
+          .append(geometry)
+          .append(",\"properties\":{\"id\":")
+          .append(i)
+          .append(",\"name\":\"feature ")
+          .append(i)
+          .append("\",\"value\":")
+          .append(i * 0.5)
+          .append("}}");
+    }
+    this.geoJson = builder.append("]}").toString();
+    this.geoJsonBytes = this.geoJson.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /** Parse the GeoJSON from a string. */
+  @Benchmark
+  public SimpleFeatureCollection parseString() throws IOException {
+    return this.parser.treatStringAsGeoJson(this.geoJson);
+  }
+
+  /** Parse the GeoJSON from a stream, like when it is downloaded. */
+  @Benchmark
+  public SimpleFeatureCollection parseStream() throws IOException {
+    return this.parser.treatStreamAsGeoJson(new ByteArrayInputStream(this.geoJsonBytes));
+  }
+}
@@ -0,0 +1,72 @@
+package org.mapfish.print.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import org.mapfish.print.MapPrinter;
+import org.mapfish.print.config.Configuration;
+import org.mapfish.print.output.OutputFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Prints a whole report with a map: runs the processors, fills the Jasper report and exports it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReportExportBenchmark {
+  private static final String BASE_DIR = "/org/mapfish/print/output/simple_map/";
+
+  /** The name of the output format bean. */
+  @Param({"pdfOutputFormat", "pngOutputFormat"})
+  public String outputFormat;
+
+  private BenchmarkSupport support;
+  private OutputFormat format;
+  private Configuration configuration;
+  private File configurationDirectory;
+  private String request;
+
+  /** Start the application and load the fixtures. */
+  @Setup
+  public void setUp() throws IOException {
+    this.support = new BenchmarkSupport();
+    this.format = this.support.getBean(this.outputFormat, OutputFormat.class);
+    this.configuration = this.support.getConfiguration(BASE_DIR + "config.yaml");
+    this.configurationDirectory = BenchmarkSupport.getFile(BASE_DIR);
+    this.request = BenchmarkSupport.readRequest(BASE_DIR + "requestData.json");
+  }
+
+  /** Stop the application. */
+  @TearDown
+  public void tearDown() {
+    this.support.close();
+  }
+
+  /** Print the report. */
+  @Benchmark
+  public Object print() throws Exception {
+    final File taskDirectory = this.support.createTaskDirectory();
+    try {
+      return this.format.print(
+          new HashMap<>(),
+          MapPrinter.parseSpec(this.request),
+          this.configuration,
+          this.configurationDirectory,
+          taskDirectory,
+          OutputStream.nullOutputStream());
+    } finally {
+      this.support.removeDirectory(taskDirectory);
+    }
+  }
+}
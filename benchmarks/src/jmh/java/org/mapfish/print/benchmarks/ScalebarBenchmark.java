@@ -0,0 +1,81 @@
+package org.mapfish.print.benchmarks;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.geotools.referencing.CRS;
+import org.mapfish.print.attribute.ScalebarAttribute;
+import org.mapfish.print.attribute.map.CenterScaleMapBounds;
+import org.mapfish.print.attribute.map.MapfishMapContext;
+import org.mapfish.print.config.Configuration;
+import org.mapfish.print.config.Template;
+import org.mapfish.print.processor.map.scalebar.ScalebarGraphic;
+import org.mapfish.print.processor.map.scalebar.VerticalAlign;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** Renders a scale bar, as a PNG or as an SVG graphic. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ScalebarBenchmark {
+  /** Render the scale bar as SVG. */
+  @Param({"false", "true"})
+  public boolean renderAsSvg;
+
+  private MapfishMapContext mapContext;
+  private ScalebarAttribute.ScalebarAttributeValues params;
+  private Template template;
+  private File directory;
+
+  /** Prepare the parameters. */
+  @Setup
+  public void setUp() throws Exception {
+    this.mapContext =
+        new MapfishMapContext(
+            new CenterScaleMapBounds(
+                CRS.decode("EPSG:3857"), -8235878.4938425, 4979784.7605681, 26000),
+            new Dimension(780, 330),
+            0,
+            72,
+            true,
+            false);
+    final ScalebarAttribute attribute = new ScalebarAttribute();
+    attribute.setWidth(300);
+    attribute.setHeight(40);
+    this.params = attribute.createValue(null);
+    this.params.verticalAlign = VerticalAlign.TOP.getLabel();
+    this.params.font = "Liberation Sans";
+    this.params.renderAsSvg = this.renderAsSvg;
+    this.template = new Template();
+    this.template.setConfiguration(new Configuration());
+    this.directory = Files.createTempDirectory("scalebar-benchmark").toFile();
+  }
+
+  /** Remove the temporary directory. */
+  @TearDown
+  public void tearDown() {
+    this.directory.delete();
+  }
+
+  /** Render the scale bar. */
+  @Benchmark
+  public long render() throws Exception {
+    final File file =
+        new File(
+            new ScalebarGraphic()
+                .render(this.mapContext, this.params, this.directory, this.template));
+    final long length = file.length();
+    Files.delete(file.toPath());
+    return length;
+  }
+}
@@ -0,0 +1,145 @@
+package org.mapfish.print.benchmarks;
+
+import jakarta.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.mapfish.print.config.Configuration;
+import org.mapfish.print.http.ConfigurableRequest;
+import org.mapfish.print.http.MfClientHttpRequestFactoryImpl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+/**
+ * A request factory that answers the requests with the resources of the classpath, so the
+ * benchmarks run offline and don't measure the network.
+ */
+public final class StubHttpRequestFactory extends MfClientHttpRequestFactoryImpl {
+  private final Map<Predicate<URI>, Function<URI, String>> handlers = new ConcurrentHashMap<>();
+  private final Map<String, byte[]> resources = new ConcurrentHashMap<>();
+
+  /** Constructor. */
+  public StubHttpRequestFactory() {
+    super(20, 10, 1000, 1000, 1000);
+  }
+
+  /**
+   * Answer the matching requests with a resource of the classpath.
+   *
+   * @param matcher selects the requests
+   * @param resource gives the absolute path of the resource for a request
+   */
+  public void registerHandler(
+      final Predicate<URI> matcher, final Function<URI, String> resource) {
+    this.handlers.put(matcher, resource);
+  }
+
+  /**
+   * Answer the requests to the given host with a resource of the classpath.
+   *
+   * @param host the host
+   * @param resource gives the absolute path of the resource for a request
+   */
+  public void registerHost(final String host, final Function<URI, String> resource) {
+    registerHandler(
+        uri -> String.valueOf(uri.getHost()).contains(host) || uri.getAuthority().contains(host),
+        resource);
+  }
+
+  /** Remove all the handlers. */
+  public void resetHandlers() {
+    this.handlers.clear();
+  }
+
+  @Nonnull
+  @Override
+  public ConfigurableRequest createRequest(
+      @Nonnull final URI uri, @Nonnull final HttpMethod httpMethod) {
+    for (Map.Entry<Predicate<URI>, Function<URI, String>> entry : this.handlers.entrySet()) {
+      if (entry.getKey().test(uri)) {
+        final byte[] body = getResource(entry.getValue().apply(uri));
+        final MockClientHttpRequest request = new MockClientHttpRequest(httpMethod, uri);
+        request.setResponse(
+            body == null
+                ? new MockClientHttpResponse(new byte[0], HttpStatus.NOT_FOUND)
+                : new MockClientHttpResponse(body, HttpStatus.OK));
+        return new StubRequest(request);
+      }
+    }
+    throw new IllegalArgumentException(uri + " not registered with " + getClass().getName());
+  }
+
+  private byte[] getResource(final String path) {
+    return this.resources.computeIfAbsent(
+        path,
+        p -> {
+          try (InputStream input = StubHttpRequestFactory.class.getResourceAsStream(p)) {
+            return input == null ? null : input.readAllBytes();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+  }
+
+  @Override
+  public void register(final RequestConfigurator callback) {
+    throw new UnsupportedOperationException("Not supported");
+  }
+
+  private record StubRequest(MockClientHttpRequest httpRequest) implements ConfigurableRequest {
+    @Override
+    public HttpUriRequestBase getUnderlyingRequest() {
+      throw new UnsupportedOperationException("Not supported");
+    }
+
+    @Override
+    public void setConfiguration(final Configuration configuration) {
+      // ignore
+    }
+
+    @Nonnull
+    @Override
+    public ClientHttpResponse execute() throws IOException {
+      return this.httpRequest.execute();
+    }
+
+    @Nonnull
+    @Override
+    public OutputStream getBody() throws IOException {
+      return this.httpRequest.getBody();
+    }
+
+    @Override
+    public HttpMethod getMethod() {
+      return this.httpRequest.getMethod();
+    }
+
+    @Nonnull
+    @Override
+    public URI getURI() {
+      return this.httpRequest.getURI();
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+      return Map.of();
+    }
+
+    @Nonnull
+    @Override
+    public HttpHeaders getHeaders() {
+      return this.httpRequest.getHeaders();
+    }
+  }
+}
@@ -0,0 +1,43 @@
+package org.mapfish.print.benchmarks;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.geotools.api.style.Style;
+import org.mapfish.print.map.style.json.MapfishStyleParserPlugin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Parses a MapFish JSON style into a GeoTools style. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StyleParsingBenchmark {
+  private static final String BASE_DIR = "/org/mapfish/print/map/style/json/";
+
+  /** The style fixture. */
+  @Param({"v2-style-all-properies-as-expressions.json", "v2-style-default-symbolizers.json"})
+  public String style;
+
+  private final MapfishStyleParserPlugin plugin = new MapfishStyleParserPlugin();
+  private final StubHttpRequestFactory requestFactory = new StubHttpRequestFactory();
+  private String styleString;
+
+  /** Load the style. */
+  @Setup
+  public void setUp() throws IOException {
+    this.styleString = BenchmarkSupport.read(BASE_DIR + this.style);
+  }
+
+  /** Parse the style. */
+  @Benchmark
+  public Optional<Style> parse() {
+    return this.plugin.parseStyle(null, this.requestFactory, this.styleString);
+  }
+}
@@ -0,0 +1,48 @@
+package org.mapfish.print.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.mapfish.print.config.Template;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** Builds the data source of a table with the cell converters (HTML, images, dates, ...). */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TableBenchmark {
+  private static final String BASE_DIR = "/org/mapfish/print/processor/jasper/table_converters/";
+
+  private BenchmarkSupport support;
+  private Template template;
+  private String request;
+
+  /** Start the application and load the fixtures. */
+  @Setup
+  public void setUp() throws IOException {
+    this.support = new BenchmarkSupport();
+    this.support.getRequestFactory().registerHost("icons.com", uri -> "/icons" + uri.getPath());
+    this.template = this.support.getConfiguration(BASE_DIR + "config.yaml").getTemplate("main");
+    this.request = BenchmarkSupport.readRequest(BASE_DIR + "requestData.json");
+  }
+
+  /** Stop the application. */
+  @TearDown
+  public void tearDown() {
+    this.support.close();
+  }
+
+  /** Build the table. */
+  @Benchmark
+  public Object convert() {
+    return this.support
+        .runProcessors(this.template, this.request)
+        .getObject("tableDataSource", Object.class);
+  }
+}
@@ -0,0 +1,61 @@
+package org.mapfish.print.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.mapfish.print.config.Template;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Renders a map with a WMTS layer: loads the tiles, draws them on the map image and writes the
+ * layer graphic.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TiledLayerBenchmark {
+  private static final String BASE_DIR = "/org/mapfish/print/processor/map/center_wmts_fixedscale/";
+
+  private BenchmarkSupport support;
+  private Template template;
+  private String request;
+
+  /** Start the application and load the fixtures. */
+  @Setup
+  public void setUp() throws IOException {
+    this.support = new BenchmarkSupport();
+    this.support
+        .getRequestFactory()
+        .registerHost(
+            "center_wmts_fixedscale.com",
+            uri ->
+                "/map-data/ny-tiles/"
+                    + BenchmarkSupport.getParameter(uri, "TILECOL")
+                    + "x"
+                    + BenchmarkSupport.getParameter(uri, "TILEROW")
+                    + ".png");
+    this.template = this.support.getConfiguration(BASE_DIR + "config.yaml").getTemplate("main");
+    this.request = BenchmarkSupport.readRequest(BASE_DIR + "requestData.json", "WMTS");
+  }
+
+  /** Stop the application. */
+  @TearDown
+  public void tearDown() {
+    this.support.close();
+  }
+
+  /** Render the map. */
+  @Benchmark
+  public List<?> render() {
+    return this.support
+        .runProcessors(this.template, this.request)
+        .getObject("layerGraphics", List.class);
+  }
+}
@@ -0,0 +1,5 @@
+/**
+ * The JMH benchmarks of the rendering and processing hot paths, run offline with the fixtures of
+ * the core tests.
+ */
+package org.mapfish.print.benchmarks;
@@ -0,0 +1,205 @@
+package org.mapfish.print;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import net.sf.jasperreports.engine.fonts.FontFamily;
+import net.sf.jasperreports.extensions.ExtensionsEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * The inventory of the fonts available to the print, as listed by the fonts end point.
+ *
+ * <p>Listing the font config fonts of each java font family forks a <code>fc-list</code> process
+ * per family, so the inventory is built in the background at startup with a single <code>fc-list
+ * </code> call, and served from memory. The registered font families are checked regularly and the
+ * inventory is rebuilt in the background when they change, e.g. when custom fonts are loaded by a
+ * {@link org.mapfish.print.config.CustomFontLoader}.
+ */
+public class FontInventory {
+  private static final Logger LOGGER = LoggerFactory.getLogger(FontInventory.class);
+
+  private final CompletableFuture<Index> initialIndex = new CompletableFuture<>();
+  private volatile Index index = null;
+  private long checkInterval = 60;
+  private ScheduledExecutorService timer;
+
+  @Autowired private MetricRegistry metricRegistry;
+
+  /**
+   * The interval (in seconds) at which the registered font families are checked for changes. 0
+   * disables the checks.
+   *
+   * @param checkInterval the interval in seconds
+   */
+  public final void setCheckInterval(final long checkInterval) {
+    this.checkInterval = checkInterval;
+  }
+
+  /** Called by spring after bean has been created and populated. */
+  @PostConstruct
+  public final void init() {
+    this.timer =
+        Executors.newSingleThreadScheduledExecutor(
+            task -> {
+              final Thread thread = new Thread(task, "Font inventory");
+              thread.setDaemon(true);
+              return thread;
+            });
+    this.timer.execute(this::refresh);
+    if (this.checkInterval > 0) {
+      this.timer.scheduleWithFixedDelay(
+          this::refresh, this.checkInterval, this.checkInterval, TimeUnit.SECONDS);
+    }
+  }
+
+  /** Called by spring when application context is being destroyed. */
+  @PreDestroy
+  public final void shutdown() {
+    this.timer.shutdownNow();
+  }
+
+  /**
+   * Get the current inventory, waits for the first one to be built.
+   *
+   * @return the inventory
+   */
+  @Nonnull
+  public final Index getIndex() {
+    final Index current = this.index;
+    if (current != null) {
+      return current;
+    }
+    try {
+      return this.initialIndex.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PrintException("Interrupted while waiting for the font inventory", e);
+    } catch (ExecutionException e) {
+      throw new PrintException("Failed to build the font inventory", e.getCause());
+    }
+  }
+
+  /** Rebuild the inventory if the registered font families have changed. */
+  final void refresh() {
+    try {
+      final List<String> jasperFamilies = listJasperFamilies();
+      final TreeSet<String> families = new TreeSet<>(FontTools.listFontFamilies());
+      final Index current = this.index;
+      if (current != null
+          && current.jasperFamilies().equals(jasperFamilies)
+          && current.fonts().keySet().equals(families)) {
+        return;
+      }
+      final Index newIndex;
+      try (Timer.Context ignored =
+          this.metricRegistry
+              .timer(MetricRegistry.name(FontInventory.class.getSimpleName(), "build"))
+              .time()) {
+        newIndex = build(jasperFamilies, families, FontTools.listAllFontConfigFonts());
+      }
+      LOGGER.info("Font inventory built with {} font families", families.size());
+      this.index = newIndex;
+      this.initialIndex.complete(newIndex);
+    } catch (RuntimeException e) {
+      LOGGER.error("Unable to build the font inventory", e);
+      this.initialIndex.completeExceptionally(e);
+    }
+  }
+
+  private static List<String> listJasperFamilies() {
+    final List<String> result = new ArrayList<>();
+    for (FontFamily family :
+        ExtensionsEnvironment.getExtensionsRegistry().getExtensions(FontFamily.class)) {
+      result.add(family.getName());
+    }
+    return Collections.unmodifiableList(result);
+  }
+
+  /**
+   * Build an inventory.
+   *
+   * @param jasperFamilies the Jasper Reports font families
+   * @param families the java font families
+   * @param fontConfigFonts all the font config fonts
+   */
+  static Index build(
+      final List<String> jasperFamilies,
+      final Iterable<String> families,
+      final List<FontTools.FontConfigDescription> fontConfigFonts) {
+    // like fc-list, match the families ignoring the case and the blanks
+    final Map<String, List<FontTools.FontConfigDescription>> byFamily = new HashMap<>();
+    for (FontTools.FontConfigDescription description : fontConfigFonts) {
+      if (description.family != null) {
+        for (String family : new TreeSet<>(Arrays.asList(description.family))) {
+          byFamily.computeIfAbsent(normalize(family), k -> new ArrayList<>()).add(description);
+        }
+      }
+    }
+
+    final Map<String, List<FontTools.FontConfigDescription>> fonts = new LinkedHashMap<>();
+    final StringBuilder content = new StringBuilder(String.join("\n", jasperFamilies));
+    for (String family : families) {
+      final List<FontTools.FontConfigDescription> descriptions =
+          byFamily.getOrDefault(normalize(family), List.of());
+      fonts.put(family, Collections.unmodifiableList(descriptions));
+      content.append('\n').append(family);
+      for (FontTools.FontConfigDescription description : descriptions) {
+        content
+            .append('\t')
+            .append(Arrays.toString(description.family))
+            .append(description.name)
+            .append(Arrays.toString(description.style))
+            .append(description.weight);
+      }
+    }
+    return new Index(jasperFamilies, Collections.unmodifiableMap(fonts), hash(content.toString()));
+  }
+
+  private static String normalize(final String family) {
+    return family.replace(" ", "").toLowerCase(Locale.ROOT);
+  }
+
+  private static String hash(final String content) {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * An immutable inventory of the fonts.
+   *
+   * @param jasperFamilies the Jasper Reports font families
+   * @param fonts the font config fonts of each java font family, sorted by family
+   * @param version a hash of the content, to be used as ETag
+   */
+  public record Index(
+      List<String> jasperFamilies,
+      Map<String, List<FontTools.FontConfigDescription>> fonts,
+      String version) {}
+}
@@ -23,16 +23,26 @@ public final class FontTools {
   public static final Set<String> FONT_FAMILIES;
 
   static {
+    FONT_FAMILIES = listFontFamilies();
+  }
+
+  private FontTools() {}
+
+  /**
+   * Get the java font families currently registered, including the fonts registered after the
+   * startup.
+   *
+   * @return The font families.
+   */
+  public static Set<String> listFontFamilies() {
     Set<String> ff = new HashSet<>();
     GraphicsEnvironment graphicsEnvironment = GraphicsEnvironment.getLocalGraphicsEnvironment();
     for (java.awt.Font font : graphicsEnvironment.getAllFonts()) {
       ff.add(font.getFamily());
     }
-    FONT_FAMILIES = Collections.unmodifiableSet(ff);
+    return Collections.unmodifiableSet(ff);
   }
 
-  private FontTools() {}
-
   /** Description of font get from font config. */
   public static class FontConfigDescription {
     /** The font families. */
@@ -55,13 +65,27 @@ public final class FontTools {
    * @return The matched cont config attributes.
    */
   public static List<FontConfigDescription> listFontConfigFonts(final String family) {
+    return runFontConfigList(family);
+  }
+
+  /**
+   * Get all the fonts known by font config, with a single call to <code>fc-list</code>.
+   *
+   * @return The font config attributes of all the fonts.
+   */
+  public static List<FontConfigDescription> listAllFontConfigFonts() {
+    return runFontConfigList();
+  }
+
+  private static List<FontConfigDescription> runFontConfigList(final String... patterns) {
     List<FontConfigDescription> descriptions = new ArrayList<>();
     if (SystemUtils.IS_OS_LINUX) {
       InputStreamReader inputStreamReader = null;
       BufferedReader stdInput = null;
       try {
-        String[] commands = {"fc-list", "-b", family};
-        Process process = Runtime.getRuntime().exec(commands);
+        List<String> commands = new ArrayList<>(List.of("fc-list", "-b"));
+        commands.addAll(List.of(patterns));
+        Process process = Runtime.getRuntime().exec(commands.toArray(new String[0]));
 
         inputStreamReader = new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8);
         stdInput = new BufferedReader(inputStreamReader);
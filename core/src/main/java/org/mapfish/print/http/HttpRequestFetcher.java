@@ -4,6 +4,8 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -13,8 +15,11 @@ import java.net.URI;
 import java.nio.file.Files;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.io.IOUtils;
 import org.mapfish.print.StatsUtils;
 import org.mapfish.print.processor.Processor;
@@ -22,6 +27,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.client.ClientHttpRequest;
 import org.springframework.http.client.ClientHttpResponse;
@@ -31,6 +37,10 @@ import org.springframework.http.client.ClientHttpResponse;
  *
  * <p>The instances of the returned request will use a future to wait for the actual request to be
  * really completed.
+ *
+ * <p>The response bodies smaller than maxInMemoryBodySize are kept in memory as long as the sum of
+ * the bodies held in memory stays below memoryBudget. The other bodies are written to temporary
+ * files.
  */
 public final class HttpRequestFetcher {
 
@@ -39,7 +49,10 @@ public final class HttpRequestFetcher {
   private final File temporaryDirectory;
   private final MetricRegistry registry;
   private final Processor.ExecutionContext context;
-  private final ForkJoinPool requestForkJoinPool;
+  private final RequestExecutor requestExecutor;
+  @Nullable private final TileCache tileCache;
+  private final long maxInMemoryBodySize;
+  private final AtomicLong remainingMemoryBudget;
 
   /**
    * Constructor.
@@ -54,14 +67,75 @@ public final class HttpRequestFetcher {
       final MetricRegistry registry,
       final Processor.ExecutionContext context,
       final ForkJoinPool requestForkJoinPool) {
+    this(temporaryDirectory, registry, context, requestForkJoinPool, null, 0, 0);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param temporaryDirectory temporary directory for cached requests
+   * @param registry the metric registry
+   * @param context the job ID
+   * @param requestForkJoinPool the work pool to use to do the requests
+   * @param tileCache the cache shared between the jobs
+   * @param maxInMemoryBodySize the maximum size of a response body kept in memory, 0 to always use
+   *     temporary files
+   * @param memoryBudget the maximum size of all the response bodies kept in memory at a given time
+   */
+  public HttpRequestFetcher(
+      final File temporaryDirectory,
+      final MetricRegistry registry,
+      final Processor.ExecutionContext context,
+      final ForkJoinPool requestForkJoinPool,
+      @Nullable final TileCache tileCache,
+      final long maxInMemoryBodySize,
+      final long memoryBudget) {
+    this(
+        temporaryDirectory,
+        registry,
+        context,
+        new RequestExecutor(requestForkJoinPool),
+        tileCache,
+        maxInMemoryBodySize,
+        memoryBudget);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param temporaryDirectory temporary directory for cached requests
+   * @param registry the metric registry
+   * @param context the job ID
+   * @param requestExecutor runs the requests
+   * @param tileCache the cache shared between the jobs
+   * @param maxInMemoryBodySize the maximum size of a response body kept in memory, 0 to always use
+   *     temporary files
+   * @param memoryBudget the maximum size of all the response bodies kept in memory at a given time
+   */
+  public HttpRequestFetcher(
+      final File temporaryDirectory,
+      final MetricRegistry registry,
+      final Processor.ExecutionContext context,
+      final RequestExecutor requestExecutor,
+      @Nullable final TileCache tileCache,
+      final long maxInMemoryBodySize,
+      final long memoryBudget) {
     this.temporaryDirectory = temporaryDirectory;
     this.registry = registry;
     this.context = context;
-    this.requestForkJoinPool = requestForkJoinPool;
+    this.requestExecutor = requestExecutor;
+    this.tileCache = tileCache;
+    this.maxInMemoryBodySize = maxInMemoryBodySize;
+    this.remainingMemoryBudget = new AtomicLong(memoryBudget);
+  }
+
+  /** Get the temporary directory for the cached requests, the directory of the print job. */
+  public File getTemporaryDirectory() {
+    return this.temporaryDirectory;
   }
 
   private CachedClientHttpRequest add(final CachedClientHttpRequest request) {
-    final ForkJoinTask<Void> future = this.requestForkJoinPool.submit(request);
+    final Future<Void> future = this.requestExecutor.submit(request.getURI().getHost(), request);
     request.setFuture(future);
     return request;
   }
@@ -73,23 +147,68 @@ public final class HttpRequestFetcher {
    * @return the cached http request
    */
   public ClientHttpRequest register(final ClientHttpRequest originalRequest) {
-    return add(new CachedClientHttpRequest(originalRequest, this.context));
+    return register(originalRequest, false);
+  }
+
+  /**
+   * Register a http request for caching. Returns a handle to the HttpRequest that will be cached.
+   *
+   * @param originalRequest the original request
+   * @param useTileCache if true, the response is looked up in and added to the {@link TileCache}
+   *     shared between the jobs.
+   * @return the cached http request
+   */
+  public ClientHttpRequest register(
+      final ClientHttpRequest originalRequest, final boolean useTileCache) {
+    return add(
+        new CachedClientHttpRequest(
+            originalRequest, this.context, useTileCache && this.tileCache != null));
+  }
+
+  private static String metricName(final String... names) {
+    return MetricRegistry.name(HttpRequestFetcher.class.getSimpleName(), names);
+  }
+
+  private boolean reserveMemory(final long size) {
+    long remaining = this.remainingMemoryBudget.get();
+    while (remaining >= size) {
+      if (this.remainingMemoryBudget.compareAndSet(remaining, remaining - size)) {
+        return true;
+      }
+      remaining = this.remainingMemoryBudget.get();
+    }
+    return false;
   }
 
   private final class CachedClientHttpResponse implements ClientHttpResponse {
 
-    private final File cachedFile;
+    @Nullable private final File cachedFile;
+    @Nullable private final byte[] memoryBody;
     private final HttpHeaders headers;
     private final HttpStatusCode status;
     private final String statusText;
     private InputStream body;
+    private boolean memoryReleased = false;
 
     private CachedClientHttpResponse(final ClientHttpResponse originalResponse) throws IOException {
       try {
         this.headers = originalResponse.getHeaders();
         this.status = originalResponse.getStatusCode();
         this.statusText = originalResponse.getStatusText();
-        this.cachedFile = createCachedFile(originalResponse.getBody());
+        final InputStream originalBody = originalResponse.getBody();
+        final byte[] head = readHead(originalBody);
+        if (head != null
+            && head.length <= HttpRequestFetcher.this.maxInMemoryBodySize
+            && reserveMemory(head.length)) {
+          originalBody.close();
+          this.memoryBody = head;
+          this.cachedFile = null;
+          HttpRequestFetcher.this.registry.counter(metricName("body", "memory")).inc();
+        } else {
+          this.memoryBody = null;
+          this.cachedFile = createCachedFile(head, originalBody);
+          HttpRequestFetcher.this.registry.counter(metricName("body", "file")).inc();
+        }
       } catch (IOException | RuntimeException e) {
         // Release the underlying connection back to the pool. Without this, a failure here
         // (e.g. the temp file cannot be created) leaks the pooled connection forever, since
@@ -99,7 +218,27 @@ public final class HttpRequestFetcher {
       }
     }
 
-    private File createCachedFile(final InputStream originalBody) throws IOException {
+    /**
+     * Read at most maxInMemoryBodySize + 1 bytes of the body, so the caller knows if the whole body
+     * fits in memory.
+     *
+     * @return the read bytes, or null if the body is known to be too big to be kept in memory.
+     */
+    @Nullable
+    private byte[] readHead(final InputStream originalBody) throws IOException {
+      final long maxSize = HttpRequestFetcher.this.maxInMemoryBodySize;
+      final long contentLength = this.headers.getContentLength();
+      if (maxSize <= 0 || contentLength > maxSize) {
+        return null;
+      }
+      final ByteArrayOutputStream buffer =
+          new ByteArrayOutputStream(contentLength > 0 ? (int) contentLength : 8192);
+      IOUtils.copyLarge(originalBody, buffer, 0, maxSize + 1);
+      return buffer.toByteArray();
+    }
+
+    private File createCachedFile(@Nullable final byte[] head, final InputStream originalBody)
+        throws IOException {
       File tempFile =
           File.createTempFile("cacheduri", null, HttpRequestFetcher.this.temporaryDirectory);
       LOGGER.debug("Caching URI resource to {}", tempFile);
@@ -108,18 +247,32 @@ public final class HttpRequestFetcher {
             "Get from input stream {}, body available: {}",
             originalBody.getClass(),
             originalBody.available());
+        if (head != null) {
+          os.write(head);
+        }
         IOUtils.copy(originalBody, os);
         originalBody.close();
       }
       return tempFile;
     }
 
+    private byte[] getBodyBytes() throws IOException {
+      if (this.memoryBody != null) {
+        return this.memoryBody;
+      }
+      return Files.readAllBytes(this.cachedFile.toPath());
+    }
+
     @Override
     @Nonnull
     public InputStream getBody() throws IOException {
       if (this.body == null) {
-        LOGGER.debug("Loading cached URI resource from {}", this.cachedFile);
-        this.body = new FileInputStream(this.cachedFile);
+        if (this.memoryBody != null) {
+          this.body = new ByteArrayInputStream(this.memoryBody);
+        } else {
+          LOGGER.debug("Loading cached URI resource from {}", this.cachedFile);
+          this.body = new FileInputStream(this.cachedFile);
+        }
       }
       return this.body;
     }
@@ -143,6 +296,10 @@ public final class HttpRequestFetcher {
 
     @Override
     public void close() {
+      if (this.memoryBody != null && !this.memoryReleased) {
+        this.memoryReleased = true;
+        HttpRequestFetcher.this.remainingMemoryBudget.addAndGet(this.memoryBody.length);
+      }
       if (this.body != null) {
         try {
           this.body.close();
@@ -158,13 +315,17 @@ public final class HttpRequestFetcher {
   private final class CachedClientHttpRequest implements ClientHttpRequest, Callable<Void> {
     private final ClientHttpRequest originalRequest;
     private final Processor.ExecutionContext context;
+    private final boolean useTileCache;
     @Nullable private ClientHttpResponse response;
-    private ForkJoinTask<Void> future;
+    private Future<Void> future;
 
     private CachedClientHttpRequest(
-        final ClientHttpRequest request, final Processor.ExecutionContext context) {
+        final ClientHttpRequest request,
+        final Processor.ExecutionContext context,
+        final boolean useTileCache) {
       this.originalRequest = request;
       this.context = context;
+      this.useTileCache = useTileCache;
     }
 
     @Override
@@ -205,7 +366,16 @@ public final class HttpRequestFetcher {
               MetricRegistry.name(
                   HttpRequestFetcher.class.getSimpleName(), "TimeWaitingDownloader"));
       try (Timer.Context ignored = timerWait.time()) {
-        this.future.join();
+        this.future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        this.future.cancel(true);
+        throw new CancellationException("Interrupted while waiting for " + getURI());
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException runtimeException) {
+          throw runtimeException;
+        }
+        throw new RuntimeException(e.getCause());
       }
       assert this.response != null;
       LOGGER.debug("Loading cached URI resource {}", this.originalRequest.getURI());
@@ -231,7 +401,7 @@ public final class HttpRequestFetcher {
             try (Timer.Context ignored = timerDownload.time()) {
               try {
                 context.stopIfCanceled();
-                this.response = new CachedClientHttpResponse(this.originalRequest.execute());
+                this.response = fetch();
               } catch (IOException | RuntimeException e) {
                 LOGGER.error("Request failed {}", this.originalRequest.getURI(), e);
                 String errorCounter = MetricRegistry.name(baseMetricName, "error");
@@ -243,7 +413,42 @@ public final class HttpRequestFetcher {
           });
     }
 
-    public void setFuture(final @Nonnull ForkJoinTask<Void> future) {
+    private ClientHttpResponse fetch() throws IOException {
+      final TileCache cache = HttpRequestFetcher.this.tileCache;
+      if (!this.useTileCache || cache == null || !HttpMethod.GET.equals(getMethod())) {
+        return new CachedClientHttpResponse(this.originalRequest.execute());
+      }
+
+      final String key = getURI().toString();
+      final TileCache.CachedTile cachedTile = cache.get(key);
+      if (cachedTile != null) {
+        if (cachedTile.isFresh()) {
+          LOGGER.debug("Using the shared tile cache for {}", key);
+          return cachedTile.toResponse();
+        }
+        cachedTile.addValidators(this.originalRequest.getHeaders());
+      }
+
+      final ClientHttpResponse originalResponse = this.originalRequest.execute();
+      if (cachedTile != null
+          && originalResponse.getStatusCode().value() == HttpStatus.NOT_MODIFIED.value()) {
+        try {
+          cache.refresh(key, cachedTile, originalResponse.getHeaders());
+        } finally {
+          originalResponse.close();
+        }
+        return cachedTile.toResponse();
+      }
+
+      final CachedClientHttpResponse cachedResponse =
+          new CachedClientHttpResponse(originalResponse);
+      if (cachedResponse.getStatusCode().value() == HttpStatus.OK.value()) {
+        cache.put(key, cachedResponse.getHeaders(), cachedResponse.getBodyBytes());
+      }
+      return cachedResponse;
+    }
+
+    public void setFuture(final @Nonnull Future<Void> future) {
       this.future = future;
     }
   }
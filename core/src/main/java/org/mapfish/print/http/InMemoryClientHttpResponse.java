@@ -0,0 +1,78 @@
+package org.mapfish.print.http;
+
+import jakarta.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpResponse;
+
+/** A response whose body is held in memory. */
+final class InMemoryClientHttpResponse implements ClientHttpResponse {
+  private final HttpStatusCode status;
+  private final String statusText;
+  private final HttpHeaders headers;
+  private final byte[] body;
+  private InputStream bodyStream;
+
+  /**
+   * Constructor.
+   *
+   * @param status the status code
+   * @param statusText the status text
+   * @param headers the headers
+   * @param body the body
+   */
+  InMemoryClientHttpResponse(
+      final HttpStatusCode status,
+      final String statusText,
+      final HttpHeaders headers,
+      final byte[] body) {
+    this.status = status;
+    this.statusText = statusText;
+    this.headers = headers;
+    this.body = body;
+  }
+
+  /**
+   * Create a successful response.
+   *
+   * @param headers the headers
+   * @param body the body
+   */
+  static InMemoryClientHttpResponse ok(final HttpHeaders headers, final byte[] body) {
+    return new InMemoryClientHttpResponse(
+        HttpStatus.OK, HttpStatus.OK.getReasonPhrase(), headers, body);
+  }
+
+  @Override
+  @Nonnull
+  public HttpStatusCode getStatusCode() {
+    return this.status;
+  }
+
+  @Override
+  @Nonnull
+  public String getStatusText() {
+    return this.statusText;
+  }
+
+  @Override
+  @Nonnull
+  public HttpHeaders getHeaders() {
+    return this.headers;
+  }
+
+  @Override
+  @Nonnull
+  public InputStream getBody() {
+    if (this.bodyStream == null) {
+      this.bodyStream = new ByteArrayInputStream(this.body);
+    }
+    return this.bodyStream;
+  }
+
+  @Override
+  public void close() {}
+}
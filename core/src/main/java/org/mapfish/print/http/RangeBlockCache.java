@@ -0,0 +1,110 @@
+package org.mapfish.print.http;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import jakarta.annotation.PostConstruct;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * A cache for the blocks of the remote files read with HTTP range requests (like the Cloud
+ * Optimized GeoTIFFs), shared by all the print jobs of this server.
+ *
+ * <p>The blocks are keyed by the URL and the version (<code>ETag</code> or <code>Last-Modified
+ * </code>) of the file, so a changed file is never read from the cache. The version is got by each
+ * job with a request to the server, so the access to the file is still checked. The least recently
+ * used blocks are evicted when the cache is full.
+ */
+public class RangeBlockCache {
+  private static final long MB = 1024L * 1024L;
+
+  private final Map<Key, byte[]> blocks = new LinkedHashMap<>(16, 0.75f, true);
+  private long size = 0;
+  private long maxSize = 64 * MB;
+  private Counter hits;
+  private Counter misses;
+
+  @Autowired private MetricRegistry metricRegistry;
+
+  /**
+   * The maximum size of the cached blocks, in MB. 0 disables the cache.
+   *
+   * @param maxSize the size in MB
+   */
+  public final void setMaxSize(final long maxSize) {
+    this.maxSize = maxSize * MB;
+  }
+
+  /** Called by spring after bean has been created and populated. */
+  @PostConstruct
+  public final void init() {
+    this.hits = this.metricRegistry.counter(metricName("hit"));
+    this.misses = this.metricRegistry.counter(metricName("miss"));
+    this.metricRegistry.register(metricName("size"), (Gauge<Long>) this::getSize);
+  }
+
+  private static String metricName(final String name) {
+    return MetricRegistry.name(RangeBlockCache.class.getSimpleName(), name);
+  }
+
+  private synchronized long getSize() {
+    return this.size;
+  }
+
+  /**
+   * Get a block from the cache.
+   *
+   * @param key the key of the block
+   * @return the shared block, it must not be modified, or null if it is not in the cache
+   */
+  @Nullable
+  public final synchronized byte[] get(@Nonnull final Key key) {
+    final byte[] block = this.blocks.get(key);
+    if (block != null) {
+      this.hits.inc();
+    } else {
+      this.misses.inc();
+    }
+    return block;
+  }
+
+  /**
+   * Add a block to the cache.
+   *
+   * @param key the key of the block
+   * @param block the content of the block, it must not be modified afterward
+   */
+  public final void put(@Nonnull final Key key, @Nonnull final byte[] block) {
+    if (block.length > this.maxSize) {
+      return;
+    }
+    synchronized (this) {
+      final byte[] previous = this.blocks.put(key, block);
+      if (previous != null) {
+        this.size -= previous.length;
+      }
+      this.size += block.length;
+      final Iterator<byte[]> iterator = this.blocks.values().iterator();
+      while (this.size > this.maxSize && iterator.hasNext()) {
+        final byte[] eldest = iterator.next();
+        iterator.remove();
+        this.size -= eldest.length;
+        this.metricRegistry.counter(metricName("eviction")).inc();
+      }
+    }
+  }
+
+  /**
+   * The key of a cached block.
+   *
+   * @param url the URL of the file
+   * @param version the version of the file, unique to a job when the server doesn't give any
+   * @param index the index of the block in the file
+   */
+  public record Key(String url, String version, long index) {}
+}
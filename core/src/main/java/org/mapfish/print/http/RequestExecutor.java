@@ -0,0 +1,177 @@
+package org.mapfish.print.http;
+
+import jakarta.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs the blocking HTTP requests of the fetchers.
+ *
+ * <p>By default the requests are run on the request fork join pool, so the number of requests in
+ * flight is limited by the size of the pool. In the virtual thread mode, every request is run on
+ * its own virtual thread, and semaphores limit the number of concurrent requests in total and per
+ * host, so the requests wait for a connection of the HTTP client without using a platform thread
+ * and without hitting the connection request timeout. The limit of a host is removed once it has no
+ * more requests, so the hosts don't accumulate.
+ */
+public final class RequestExecutor {
+  private final ForkJoinPool forkJoinPool;
+  @Nullable private final ExecutorService virtualThreadExecutor;
+  @Nullable private final Semaphore requests;
+  private final int maxRequestsPerHost;
+  private final Map<String, HostLimit> hostRequests = new ConcurrentHashMap<>();
+
+  /**
+   * Constructor, to run the requests on a fork join pool.
+   *
+   * @param forkJoinPool the pool
+   */
+  public RequestExecutor(final ForkJoinPool forkJoinPool) {
+    this(forkJoinPool, false, 0, 0);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param forkJoinPool the pool used when the virtual threads are not used
+   * @param virtualThreads if true, run every request on a virtual thread
+   * @param maxRequests the maximum number of concurrent requests with the virtual threads, 0 for
+   *     no limit
+   * @param maxRequestsPerHost the maximum number of concurrent requests to the same host with the
+   *     virtual threads, 0 for no limit
+   */
+  public RequestExecutor(
+      final ForkJoinPool forkJoinPool,
+      final boolean virtualThreads,
+      final int maxRequests,
+      final int maxRequestsPerHost) {
+    this.forkJoinPool = forkJoinPool;
+    this.virtualThreadExecutor =
+        virtualThreads
+            ? Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("http-request-", 0).factory())
+            : null;
+    this.requests = virtualThreads && maxRequests > 0 ? new Semaphore(maxRequests, true) : null;
+    this.maxRequestsPerHost = maxRequestsPerHost;
+  }
+
+  /**
+   * Submit a request.
+   *
+   * @param host the host of the request, null if unknown
+   * @param task the task doing the request
+   * @param <T> the type of the result
+   */
+  public <T> Future<T> submit(@Nullable final String host, final Callable<T> task) {
+    if (this.virtualThreadExecutor == null) {
+      return this.forkJoinPool.submit(task);
+    }
+    return this.virtualThreadExecutor.submit(() -> callLimited(host, task));
+  }
+
+  /**
+   * Run tasks doing requests and wait for them.
+   *
+   * @param tasks the tasks
+   * @param <T> the type of the results
+   */
+  public <T> List<Future<T>> invokeAll(final Collection<? extends Callable<T>> tasks)
+      throws InterruptedException {
+    if (this.virtualThreadExecutor == null) {
+      return this.forkJoinPool.invokeAll(tasks);
+    }
+    final List<Callable<T>> limitedTasks = new ArrayList<>(tasks.size());
+    for (Callable<T> task : tasks) {
+      limitedTasks.add(() -> callLimited(null, task));
+    }
+    return this.virtualThreadExecutor.invokeAll(limitedTasks);
+  }
+
+  private <T> T callLimited(@Nullable final String host, final Callable<T> task) throws Exception {
+    if (host == null || this.maxRequestsPerHost <= 0) {
+      return callWithPermits(null, this.requests, task);
+    }
+    final HostLimit hostLimit =
+        this.hostRequests.compute(
+            host,
+            (key, limit) -> {
+              final HostLimit result =
+                  limit == null ? new HostLimit(this.maxRequestsPerHost) : limit;
+              result.users++;
+              return result;
+            });
+    try {
+      return callWithPermits(hostLimit.semaphore, this.requests, task);
+    } finally {
+      this.hostRequests.computeIfPresent(
+          host,
+          (key, limit) -> {
+            limit.users--;
+            return limit.users == 0 ? null : limit;
+          });
+    }
+  }
+
+  private static <T> T callWithPermits(
+      @Nullable final Semaphore hostSemaphore,
+      @Nullable final Semaphore requests,
+      final Callable<T> task)
+      throws Exception {
+    // the host permit is taken first, so a slow host doesn't hold the permits of the other ones
+    acquire(hostSemaphore);
+    try {
+      acquire(requests);
+      try {
+        return task.call();
+      } finally {
+        release(requests);
+      }
+    } finally {
+      release(hostSemaphore);
+    }
+  }
+
+  /** The number of hosts with requests, for the tests. */
+  int getHostCount() {
+    return this.hostRequests.size();
+  }
+
+  private static void acquire(@Nullable final Semaphore semaphore) throws InterruptedException {
+    if (semaphore != null) {
+      semaphore.acquire();
+    }
+  }
+
+  private static void release(@Nullable final Semaphore semaphore) {
+    if (semaphore != null) {
+      semaphore.release();
+    }
+  }
+
+  /** Called by spring when the application context is being destroyed. */
+  public void shutdownNow() {
+    if (this.virtualThreadExecutor != null) {
+      this.virtualThreadExecutor.shutdownNow();
+    }
+  }
+
+  /** The limit of the concurrent requests to a host. */
+  private static final class HostLimit {
+    private final Semaphore semaphore;
+    /** The number of running or waiting requests, only changed in the map compute functions. */
+    private int users = 0;
+
+    private HostLimit(final int maxRequests) {
+      this.semaphore = new Semaphore(maxRequests, true);
+    }
+  }
+}
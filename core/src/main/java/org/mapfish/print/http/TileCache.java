@@ -0,0 +1,429 @@
+package org.mapfish.print.http;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import jakarta.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.apache.commons.io.FileUtils;
+import org.mapfish.print.config.WorkingDirectories;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * A cache for the tiles shared by all the print jobs of this server.
+ *
+ * <p>The most recently used tiles are kept in memory, the other ones are moved to a size-bounded
+ * directory. The entries are keyed by the tile URL and their lifetime follows the <code>
+ * Cache-Control</code> and <code>Expires</code> headers of the response. Responses marked as <code>
+ * no-store</code> or <code>private</code> are never cached. Expired entries with an <code>ETag
+ * </code> or a <code>Last-Modified</code> header are revalidated with a conditional request.
+ */
+public class TileCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TileCache.class);
+  private static final long MB = 1024L * 1024L;
+
+  private final Map<String, CachedTile> memory = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<String, DiskEntry> disk = new LinkedHashMap<>(16, 0.75f, true);
+  private long memorySize = 0;
+  private long diskSize = 0;
+
+  private long maxMemorySize = 64 * MB;
+  private long maxDiskSize = 1024 * MB;
+  private long defaultTimeToLive = 3600;
+  private File directory;
+
+  @Autowired private MetricRegistry metricRegistry;
+  @Autowired private WorkingDirectories workingDirectories;
+
+  /**
+   * The maximum size of the tiles kept in memory, in MB. 0 disables the memory tier.
+   *
+   * @param maxMemorySize the size in MB
+   */
+  public final void setMaxMemorySize(final long maxMemorySize) {
+    this.maxMemorySize = maxMemorySize * MB;
+  }
+
+  /**
+   * The maximum size of the tiles kept on disk, in MB. 0 disables the disk tier.
+   *
+   * @param maxDiskSize the size in MB
+   */
+  public final void setMaxDiskSize(final long maxDiskSize) {
+    this.maxDiskSize = maxDiskSize * MB;
+  }
+
+  /**
+   * The time (in seconds) a tile is kept when the response does not give a lifetime.
+   *
+   * @param defaultTimeToLive the time to live in seconds
+   */
+  public final void setDefaultTimeToLive(final long defaultTimeToLive) {
+    this.defaultTimeToLive = defaultTimeToLive;
+  }
+
+  /**
+   * The directory where the tiles of the disk tier are stored. Defaults to the "tile-cache"
+   * directory in the working directory. Its content is removed on startup.
+   *
+   * @param directory the directory
+   */
+  public final void setDirectory(final File directory) {
+    this.directory = directory;
+  }
+
+  /** Called by spring after bean has been created and populated. */
+  @PostConstruct
+  public final void init() throws IOException {
+    if (this.directory == null) {
+      this.directory = new File(this.workingDirectories.getWorking(), "tile-cache");
+    }
+    if (this.maxDiskSize > 0) {
+      FileUtils.deleteDirectory(this.directory);
+      Files.createDirectories(this.directory.toPath());
+    }
+    this.metricRegistry.register(
+        metricName("size", "memory"), (Gauge<Long>) this::getMemorySize);
+    this.metricRegistry.register(metricName("size", "disk"), (Gauge<Long>) this::getDiskSize);
+  }
+
+  private synchronized long getMemorySize() {
+    return this.memorySize;
+  }
+
+  private synchronized long getDiskSize() {
+    return this.diskSize;
+  }
+
+  private static String metricName(final String... names) {
+    return MetricRegistry.name(TileCache.class.getSimpleName(), names);
+  }
+
+  /**
+   * Get a tile from the cache. The returned tile can be expired, use {@link CachedTile#isFresh()}
+   * to know if it must be revalidated. The expired tiles that can't be revalidated are removed.
+   *
+   * @param key the tile URL
+   * @return the tile or null if it is not in the cache
+   */
+  @Nullable
+  public final CachedTile get(@Nonnull final String key) {
+    final CachedTile memoryTile;
+    final DiskEntry diskEntry;
+    synchronized (this) {
+      memoryTile = this.memory.get(key);
+      diskEntry = memoryTile == null ? this.disk.get(key) : null;
+    }
+    if (memoryTile != null) {
+      if (isUsable(key, memoryTile)) {
+        this.metricRegistry.counter(metricName("hit", "memory")).inc();
+        return memoryTile;
+      }
+    } else if (diskEntry != null) {
+      try {
+        final CachedTile tile =
+            new CachedTile(
+                Files.readAllBytes(diskEntry.file.toPath()), diskEntry.headers, diskEntry.expires);
+        if (isUsable(key, tile)) {
+          this.metricRegistry.counter(metricName("hit", "disk")).inc();
+          if (tile.body.length <= this.maxMemorySize) {
+            store(key, tile);
+          }
+          return tile;
+        }
+      } catch (IOException e) {
+        // the file has been evicted in the meantime
+        LOGGER.debug("Unable to read the cached tile {}", diskEntry.file, e);
+      }
+    }
+    this.metricRegistry.counter(metricName("miss")).inc();
+    return null;
+  }
+
+  /** Remove the tile if it is expired and can't be revalidated. */
+  private boolean isUsable(final String key, final CachedTile tile) {
+    if (tile.isFresh() || tile.canBeRevalidated()) {
+      return true;
+    }
+    final File removed;
+    synchronized (this) {
+      final CachedTile inMemory = this.memory.remove(key);
+      if (inMemory != null) {
+        this.memorySize -= inMemory.body.length;
+      }
+      final DiskEntry onDisk = this.disk.remove(key);
+      if (onDisk != null) {
+        this.diskSize -= onDisk.size;
+      }
+      removed = onDisk == null ? null : onDisk.file;
+    }
+    if (removed != null) {
+      deleteFiles(List.of(removed));
+    }
+    return false;
+  }
+
+  /**
+   * Add a successful response to the cache, if its headers allow it.
+   *
+   * @param key the tile URL
+   * @param headers the response headers
+   * @param body the response body
+   */
+  public final void put(
+      @Nonnull final String key, @Nonnull final HttpHeaders headers, @Nonnull final byte[] body) {
+    final Long expires = getExpires(headers);
+    if (expires != null) {
+      store(key, new CachedTile(body, copyHeaders(headers), expires));
+    }
+  }
+
+  /**
+   * Extend the lifetime of a tile after a <code>304 Not Modified</code> response.
+   *
+   * @param key the tile URL
+   * @param tile the revalidated tile
+   * @param headers the headers of the 304 response
+   */
+  public final void refresh(
+      @Nonnull final String key,
+      @Nonnull final CachedTile tile,
+      @Nonnull final HttpHeaders headers) {
+    this.metricRegistry.counter(metricName("revalidated")).inc();
+    final Long expires = getExpires(headers);
+    if (expires != null) {
+      store(key, new CachedTile(tile.body, tile.headers, expires));
+    }
+  }
+
+  /**
+   * Get the expiration time of a response in milliseconds since the epoch, or null if the response
+   * must not be cached.
+   */
+  @Nullable
+  private Long getExpires(final HttpHeaders headers) {
+    final long now = System.currentTimeMillis();
+    boolean noCache = false;
+    Long maxAge = null;
+    Long sharedMaxAge = null;
+    for (String value : headers.getOrEmpty(HttpHeaders.CACHE_CONTROL)) {
+      for (String directive : value.split(",")) {
+        final String[] parts = directive.trim().toLowerCase(Locale.ROOT).split("=", 2);
+        switch (parts[0]) {
+          case "no-store", "private" -> {
+            return null;
+          }
+          case "no-cache" -> noCache = true;
+          case "max-age" -> maxAge = parseSeconds(parts, maxAge);
+          case "s-maxage" -> sharedMaxAge = parseSeconds(parts, sharedMaxAge);
+          default -> {
+            // not relevant for this cache
+          }
+        }
+      }
+    }
+    if (noCache) {
+      return now;
+    }
+    if (sharedMaxAge != null) {
+      return now + sharedMaxAge * 1000;
+    }
+    if (maxAge != null) {
+      return now + maxAge * 1000;
+    }
+    final long expires = headers.getExpires();
+    if (expires >= 0) {
+      return expires;
+    }
+    return now + this.defaultTimeToLive * 1000;
+  }
+
+  private static Long parseSeconds(final String[] directive, final Long defaultValue) {
+    if (directive.length == 2) {
+      try {
+        return Long.parseLong(directive[1].replace("\"", "").trim());
+      } catch (NumberFormatException e) {
+        LOGGER.debug("Invalid Cache-Control directive {}", String.join("=", directive));
+      }
+    }
+    return defaultValue;
+  }
+
+  private static HttpHeaders copyHeaders(final HttpHeaders headers) {
+    final HttpHeaders result = new HttpHeaders();
+    for (String name :
+        List.of(HttpHeaders.CONTENT_TYPE, HttpHeaders.ETAG, HttpHeaders.LAST_MODIFIED)) {
+      result.addAll(name, headers.getOrEmpty(name));
+    }
+    return HttpHeaders.readOnlyHttpHeaders(result);
+  }
+
+  private void store(final String key, final CachedTile tile) {
+    final List<Map.Entry<String, CachedTile>> demoted = new ArrayList<>();
+    final List<File> removed = new ArrayList<>();
+    synchronized (this) {
+      final CachedTile previous = this.memory.remove(key);
+      if (previous != null) {
+        this.memorySize -= previous.body.length;
+      }
+      final DiskEntry previousOnDisk = this.disk.remove(key);
+      final boolean toMemory = tile.body.length <= this.maxMemorySize;
+      if (previousOnDisk != null) {
+        this.diskSize -= previousOnDisk.size;
+        if (toMemory || tile.body.length > this.maxDiskSize) {
+          // otherwise the file is replaced atomically by the new one
+          removed.add(previousOnDisk.file);
+        }
+      }
+      if (toMemory) {
+        this.memory.put(key, tile);
+        this.memorySize += tile.body.length;
+        final Iterator<Map.Entry<String, CachedTile>> iterator =
+            this.memory.entrySet().iterator();
+        while (this.memorySize > this.maxMemorySize && iterator.hasNext()) {
+          final Map.Entry<String, CachedTile> eldest = iterator.next();
+          iterator.remove();
+          this.memorySize -= eldest.getValue().body.length;
+          this.metricRegistry.counter(metricName("eviction", "memory")).inc();
+          demoted.add(eldest);
+        }
+      } else {
+        demoted.add(Map.entry(key, tile));
+      }
+    }
+    deleteFiles(removed);
+    for (Map.Entry<String, CachedTile> entry : demoted) {
+      storeOnDisk(entry.getKey(), entry.getValue());
+    }
+  }
+
+  private void storeOnDisk(final String key, final CachedTile tile) {
+    if (this.maxDiskSize <= 0 || tile.body.length > this.maxDiskSize) {
+      return;
+    }
+    final File file = new File(this.directory, hash(key));
+    try {
+      write(file, tile.body);
+    } catch (IOException e) {
+      LOGGER.warn("Unable to write the cached tile {}", file, e);
+      return;
+    }
+    final List<File> removed = new ArrayList<>();
+    synchronized (this) {
+      final DiskEntry previous =
+          this.disk.put(key, new DiskEntry(file, tile.body.length, tile.headers, tile.expires));
+      if (previous != null) {
+        this.diskSize -= previous.size;
+      }
+      this.diskSize += tile.body.length;
+      final Iterator<Map.Entry<String, DiskEntry>> iterator = this.disk.entrySet().iterator();
+      while (this.diskSize > this.maxDiskSize && iterator.hasNext()) {
+        final DiskEntry eldest = iterator.next().getValue();
+        iterator.remove();
+        this.diskSize -= eldest.size;
+        this.metricRegistry.counter(metricName("eviction", "disk")).inc();
+        if (!eldest.file.equals(file)) {
+          removed.add(eldest.file);
+        }
+      }
+    }
+    deleteFiles(removed);
+  }
+
+  /** Write a file atomically, so it is never read partially written. */
+  private void write(final File file, final byte[] body) throws IOException {
+    final Path temporary = Files.createTempFile(this.directory.toPath(), file.getName(), ".tmp");
+    try {
+      Files.write(temporary, body);
+      try {
+        Files.move(
+            temporary,
+            file.toPath(),
+            StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  private static void deleteFiles(final List<File> files) {
+    for (File file : files) {
+      if (!FileUtils.deleteQuietly(file)) {
+        LOGGER.debug("Unable to delete the cached tile {}", file);
+      }
+    }
+  }
+
+  private static String hash(final String key) {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(key.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private record DiskEntry(File file, long size, HttpHeaders headers, long expires) {}
+
+  /**
+   * A cached tile.
+   *
+   * @param body the body of the response
+   * @param headers the relevant headers of the response
+   * @param expires the expiration time in milliseconds since the epoch
+   */
+  public record CachedTile(byte[] body, HttpHeaders headers, long expires) {
+
+    /** Return true if the tile can be used without revalidation. */
+    public boolean isFresh() {
+      return System.currentTimeMillis() < this.expires;
+    }
+
+    /** Return true if the tile has a validator that can be used in a conditional request. */
+    public boolean canBeRevalidated() {
+      return this.headers.getETag() != null || this.headers.getLastModified() >= 0;
+    }
+
+    /**
+     * Add the conditional headers to a request.
+     *
+     * @param requestHeaders the headers of the request
+     */
+    public void addValidators(final HttpHeaders requestHeaders) {
+      if (this.headers.getETag() != null) {
+        requestHeaders.setIfNoneMatch(this.headers.getETag());
+      }
+      if (this.headers.getLastModified() >= 0) {
+        requestHeaders.setIfModifiedSince(this.headers.getLastModified());
+      }
+    }
+
+    /** Create a response with the content of the tile. */
+    public ClientHttpResponse toResponse() {
+      return InMemoryClientHttpResponse.ok(this.headers, this.body);
+    }
+  }
+}
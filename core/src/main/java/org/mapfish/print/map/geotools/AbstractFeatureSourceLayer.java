@@ -3,6 +3,9 @@ package org.mapfish.print.map.geotools;
 import static org.mapfish.print.Constants.PDF_DPI;
 
 import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
@@ -14,17 +17,26 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.map.FeatureLayer;
 import org.geotools.map.Layer;
 import org.geotools.styling.visitor.RescaleStyleVisitor;
+import org.mapfish.print.PrintException;
 import org.mapfish.print.attribute.map.MapfishMapContext;
+import org.mapfish.print.http.HttpRequestFetcher;
 import org.mapfish.print.http.MfClientHttpRequestFactory;
 import org.mapfish.print.map.AbstractLayerParams;
 import org.mapfish.print.processor.Processor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /** A layer that wraps a Geotools Feature Source and a style object. */
 public abstract class AbstractFeatureSourceLayer extends AbstractGeotoolsLayer {
 
+  private static final Logger LOGGER = LoggerFactory.getLogger(AbstractFeatureSourceLayer.class);
+
   private final Boolean renderAsSvg;
+  private final boolean generalize;
   private FeatureSourceSupplier featureSourceSupplier;
   private FeatureSource<?, ?> featureSource = null;
+  @Nullable private File taskDirectory = null;
+  private ViewportFeatureFilter viewportFilter = null;
   private StyleSupplier<FeatureSource<?, ?>> styleSupplier;
 
   /**
@@ -49,6 +61,8 @@ public abstract class AbstractFeatureSourceLayer extends AbstractGeotoolsLayer {
     this.styleSupplier = styleSupplier;
 
     this.renderAsSvg = renderAsSvg;
+    this.generalize =
+        params instanceof AbstractVectorLayerParam vectorParams && vectorParams.generalize;
   }
 
   public final void setStyle(final StyleSupplier<FeatureSource<?, ?>> style) {
@@ -60,24 +74,87 @@ public abstract class AbstractFeatureSourceLayer extends AbstractGeotoolsLayer {
    *
    * @param httpRequestFactory The factory for making http requests.
    * @param mapContext The map context.
+   * @param taskDirectory The directory of the print job for the temporary files, null to use the
+   *     default temporary directory.
    */
   public final FeatureSource<?, ?> getFeatureSource(
       @Nonnull final MfClientHttpRequestFactory httpRequestFactory,
-      @Nonnull final MapfishMapContext mapContext) {
+      @Nonnull final MapfishMapContext mapContext,
+      @Nullable final File taskDirectory) {
     if (this.featureSource == null) {
-      this.featureSource = this.featureSourceSupplier.load(httpRequestFactory, mapContext);
+      this.featureSource =
+          this.featureSourceSupplier.load(httpRequestFactory, mapContext, taskDirectory);
     }
     return this.featureSource;
   }
 
+  @Override
+  public LayerContext prefetchResources(
+      final HttpRequestFetcher httpRequestFetcher,
+      final MfClientHttpRequestFactory clientHttpRequestFactory,
+      final MapfishMapContext transformer,
+      final Processor.ExecutionContext context,
+      final LayerContext layerContext) {
+    // the features are loaded while rendering, keep the directory for their temporary files
+    this.taskDirectory = httpRequestFetcher.getTemporaryDirectory();
+    return layerContext;
+  }
+
+  /**
+   * Get the features visible on the map, with the geometries generalized to the size of a pixel.
+   *
+   * @param source the feature source of the layer
+   * @param mapContext The map context.
+   * @param context The execution context.
+   * @return the filtered feature source, or the source if it is not an in memory collection
+   */
+  private FeatureSource<?, ?> getVisibleFeatures(
+      final FeatureSource<?, ?> source,
+      final MapfishMapContext mapContext,
+      final Processor.ExecutionContext context) {
+    if (!(source instanceof CollectionFeatureSource collectionSource)) {
+      return source;
+    }
+    final ViewportFeatureFilter filter;
+    synchronized (this) {
+      if (this.viewportFilter == null) {
+        try {
+          this.viewportFilter = new ViewportFeatureFilter(collectionSource.getFeatures());
+        } catch (IOException e) {
+          throw new PrintException("Failed to index the features of " + getName(), e);
+        }
+      }
+      filter = this.viewportFilter;
+    }
+    final ViewportFeatureFilter.Result result =
+        filter.filter(mapContext.toReferencedEnvelope(), mapContext.getMapSize());
+    if (result == null) {
+      return source;
+    }
+    context
+        .getStats()
+        .addVectorLayerStats(getName(), result.total(), result.culled(), result.simplified());
+    LOGGER.debug(
+        "Layer {}: {} features, {} culled, {} simplified",
+        getName(),
+        result.total(),
+        result.culled(),
+        result.simplified());
+    return new CollectionFeatureSource(result.features());
+  }
+
   @Override
   public final List<? extends Layer> getLayers(
       @Nonnull final MfClientHttpRequestFactory httpRequestFactory,
       @Nonnull final MapfishMapContext mapContext,
       @Nonnull final Processor.ExecutionContext context,
       final LayerContext layerContext) {
-    FeatureSource<?, ?> source = getFeatureSource(httpRequestFactory, mapContext);
+    FeatureSource<?, ?> source =
+        getFeatureSource(httpRequestFactory, mapContext, this.taskDirectory);
     Style style = this.styleSupplier.load(httpRequestFactory, source);
+    if (this.generalize) {
+      source = getVisibleFeatures(source, mapContext, context);
+    }
 
     if (mapContext.isDpiSensitiveStyle()) {
       // rescale styles for a higher dpi print
@@ -92,7 +169,7 @@ public abstract class AbstractFeatureSourceLayer extends AbstractGeotoolsLayer {
 
   public final void setFeatureCollection(final SimpleFeatureCollection featureCollection) {
     this.featureSourceSupplier =
-        (requestFactory, mapContext) -> {
+        (requestFactory, mapContext, taskDirectory) -> {
           // GeoTools is not always thread safe. In particular the
           // DefaultFeatureCollection.getBounds
           // method. If multiple maps are sharing the same features, this would cause
@@ -151,6 +151,11 @@ public abstract class AbstractGeotoolsLayer implements MapLayer {
     renderer.setThreadPool(executorService);
   }
 
+  /** Get the thread pool for doing the rendering. */
+  protected final ExecutorService getExecutorService() {
+    return this.executorService;
+  }
+
   public double getOpacity() {
     return this.params.opacity;
   }
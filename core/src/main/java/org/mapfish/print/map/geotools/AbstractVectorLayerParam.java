@@ -19,4 +19,14 @@ public abstract class AbstractVectorLayerParam extends AbstractLayerParams {
    * <p>(will default to {@link org.mapfish.print.config.Configuration#defaultToSvg}).
    */
   @HasDefaultValue public Boolean renderAsSvg;
+
+  /**
+   * Only render the features visible on the map, with the geometries simplified to the size of an
+   * output pixel.
+   *
+   * <p>The features are indexed in a spatial index, this speeds up the rendering of the big
+   * layers of which only a small part is visible, or that have more vertices than the output can
+   * show. The symbols bigger than 64 pixels of the features outside the map may be cut.
+   */
+  @HasDefaultValue public boolean generalize = false;
 }
@@ -82,7 +82,8 @@ public final class FeatureLayer extends AbstractFeatureSourceLayer {
 
     private FeatureSourceSupplier createFeatureSourceSupplier(
         final SimpleFeatureCollection features) {
-      return (requestFactory, mapContext) -> new CollectionFeatureSource(features);
+      return (requestFactory, mapContext, taskDirectory) ->
+          new CollectionFeatureSource(features);
     }
 
     /**
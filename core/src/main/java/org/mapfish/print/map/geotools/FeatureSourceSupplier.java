@@ -1,6 +1,8 @@
 package org.mapfish.print.map.geotools;
 
 import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import java.io.File;
 import org.geotools.api.data.FeatureSource;
 import org.mapfish.print.attribute.map.MapfishMapContext;
 import org.mapfish.print.http.MfClientHttpRequestFactory;
@@ -13,8 +15,12 @@ public interface FeatureSourceSupplier {
    * @param requestFactory the factory to use for making http requests
    * @param mapContext object containing the map information like bounds, map size, dpi, rotation,
    *     etc...
+   * @param taskDirectory the directory of the print job for the temporary files, null to use the
+   *     default temporary directory
    */
   @Nonnull
   FeatureSource load(
-      @Nonnull MfClientHttpRequestFactory requestFactory, @Nonnull MapfishMapContext mapContext);
+      @Nonnull MfClientHttpRequestFactory requestFactory,
+      @Nonnull MapfishMapContext mapContext,
+      @Nullable File taskDirectory);
 }
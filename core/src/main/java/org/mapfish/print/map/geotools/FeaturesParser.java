@@ -1,34 +1,33 @@
 package org.mapfish.print.map.geotools;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.annotations.VisibleForTesting;
 import jakarta.annotation.Nonnull;
-import java.io.ByteArrayInputStream;
+import jakarta.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.FilterReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.io.IOUtils;
-import org.geotools.api.feature.simple.SimpleFeatureType;
 import org.geotools.api.referencing.FactoryException;
 import org.geotools.api.referencing.NoSuchAuthorityCodeException;
 import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
-import org.geotools.geojson.feature.FeatureJSON;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.crs.DefaultEngineeringCRS;
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.locationtech.jts.geom.Geometry;
 import org.mapfish.print.Constants;
 import org.mapfish.print.FileUtils;
 import org.mapfish.print.PrintException;
-import org.mapfish.print.URIUtils;
 import org.mapfish.print.config.Template;
 import org.mapfish.print.http.MfClientHttpRequestFactory;
 import org.slf4j.Logger;
@@ -47,6 +46,7 @@ public class FeaturesParser {
   private static final Logger LOGGER = LoggerFactory.getLogger(FeaturesParser.class);
   private final MfClientHttpRequestFactory httpRequestFactory;
   private final boolean forceLongitudeFirst;
+  @Nullable private final MetricRegistry metricRegistry;
 
   /**
    * Construct.
@@ -56,8 +56,23 @@ public class FeaturesParser {
    */
   public FeaturesParser(
       final MfClientHttpRequestFactory httpRequestFactory, final boolean forceLongitudeFirst) {
+    this(httpRequestFactory, forceLongitudeFirst, null);
+  }
+
+  /**
+   * Construct.
+   *
+   * @param httpRequestFactory the HTTP request factory
+   * @param forceLongitudeFirst if true then force longitude coordinate as first coordinate
+   * @param metricRegistry the registry for the parse time and throughput metrics
+   */
+  public FeaturesParser(
+      final MfClientHttpRequestFactory httpRequestFactory,
+      final boolean forceLongitudeFirst,
+      @Nullable final MetricRegistry metricRegistry) {
     this.httpRequestFactory = httpRequestFactory;
     this.forceLongitudeFirst = forceLongitudeFirst;
+    this.metricRegistry = metricRegistry;
   }
 
   @VisibleForTesting
@@ -225,14 +240,17 @@ public class FeaturesParser {
       return null;
     }
 
-    final String geojsonString;
     if (url.getProtocol().equalsIgnoreCase("file")) {
-      geojsonString = IOUtils.toString(url, Constants.DEFAULT_CHARSET);
-    } else {
-      geojsonString = URIUtils.toString(this.httpRequestFactory, url);
+      try (InputStream input = url.openStream()) {
+        return treatStreamAsGeoJson(input);
+      }
+    }
+    try (ClientHttpResponse response =
+        this.httpRequestFactory.createRequest(url.toURI(), HttpMethod.GET).execute()) {
+      return treatStreamAsGeoJson(response.getBody());
+    } catch (URISyntaxException e) {
+      throw new PrintException("Incorrect syntax for " + url, e);
     }
-
-    return treatStringAsGeoJson(geojsonString);
   }
 
   /**
@@ -243,100 +261,75 @@ public class FeaturesParser {
    */
   public final SimpleFeatureCollection treatStringAsGeoJson(final String geoJsonString)
       throws IOException {
-    return readFeatureCollection(geoJsonString);
+    return readFeatureCollection(new StringReader(geoJsonString));
   }
 
-  private SimpleFeatureCollection readFeatureCollection(final String geojsonData)
+  /**
+   * Get the features collection from a GeoJson stream, the data is read while the features are
+   * created, without loading the whole document in memory.
+   *
+   * @param geoJsonStream what to parse, not closed
+   * @return the feature collection
+   */
+  public final SimpleFeatureCollection treatStreamAsGeoJson(final InputStream geoJsonStream)
       throws IOException {
-    String convertedGeojsonObject = convertToGeoJsonCollection(geojsonData);
-
-    FeatureJSON geoJsonReader = new FeatureJSON();
-    final SimpleFeatureType featureType = createFeatureType(convertedGeojsonObject);
-    if (featureType != null) {
-      geoJsonReader.setFeatureType(featureType);
-    }
-    ByteArrayInputStream input =
-        new ByteArrayInputStream(convertedGeojsonObject.getBytes(Constants.DEFAULT_CHARSET));
-
-    return (SimpleFeatureCollection) geoJsonReader.readFeatureCollection(input);
+    return readFeatureCollection(
+        new BufferedReader(new InputStreamReader(geoJsonStream, Constants.DEFAULT_CHARSET)));
   }
 
-  private String convertToGeoJsonCollection(final String geojsonData) {
-    String convertedGeojsonObject = geojsonData.trim();
-    if (convertedGeojsonObject.startsWith("[")) {
-      convertedGeojsonObject =
-          "{\"type\": \"FeatureCollection\", \"features\": " + convertedGeojsonObject + "}";
+  private SimpleFeatureCollection readFeatureCollection(final Reader reader) throws IOException {
+    final CountingReader countingReader = new CountingReader(reader);
+    final long start = System.nanoTime();
+    final SimpleFeatureCollection features =
+        new GeoJsonStreamReader()
+            .read(
+                countingReader,
+                geojson ->
+                    parseCoordinateReferenceSystem(
+                        this.httpRequestFactory, geojson, this.forceLongitudeFirst));
+    if (this.metricRegistry != null) {
+      final long duration = System.nanoTime() - start;
+      this.metricRegistry.timer(metricName("parse")).update(duration, TimeUnit.NANOSECONDS);
+      this.metricRegistry.meter(metricName("chars")).mark(countingReader.count);
+      this.metricRegistry.meter(metricName("features")).mark(features.size());
     }
-    return convertedGeojsonObject;
+    LOGGER.debug(
+        "Parsed {} GeoJSON features ({} characters) in {}ms",
+        features.size(),
+        countingReader.count,
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    return features;
   }
 
-  private SimpleFeatureType createFeatureType(@Nonnull final String geojsonData) {
-    try {
-      JSONObject geojson = new JSONObject(geojsonData);
-      if (geojson.has("type") && geojson.getString("type").equalsIgnoreCase("FeatureCollection")) {
-        CoordinateReferenceSystem crs =
-            parseCoordinateReferenceSystem(
-                this.httpRequestFactory, geojson, this.forceLongitudeFirst);
-        SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
-        builder.setName("GeosjonFeatureType");
-        final JSONArray features = geojson.getJSONArray("features");
+  private static String metricName(final String name) {
+    return MetricRegistry.name(FeaturesParser.class.getSimpleName(), name);
+  }
 
-        if (features.isEmpty()) {
-          // do not try to build the feature type if there are no features
-          return null;
-        }
+  /** Counts the read characters, for the throughput metrics. */
+  private static final class CountingReader extends FilterReader {
+    private long count = 0;
 
-        Set<String> allAttributes = new HashSet<>();
-        Class<Geometry> geomType = null;
-        for (int i = 0; i < features.length(); i++) {
-          final JSONObject feature = features.getJSONObject(i);
-          final JSONObject properties = feature.getJSONObject("properties");
-          final Iterator<String> keys = properties.keys();
-          while (keys.hasNext()) {
-            String nextKey = (String) keys.next();
-            if (!allAttributes.contains(nextKey)) {
-              allAttributes.add(nextKey);
-              builder.add(nextKey, Object.class);
-            }
-          }
-          if (geomType != Geometry.class) {
-            Class<Geometry> thisGeomType = parseGeometryType(feature);
-            if (thisGeomType != null) {
-              if (geomType == null) {
-                geomType = thisGeomType;
-              } else if (!geomType.equals(thisGeomType)) {
-                geomType = Geometry.class;
-              }
-            }
-          }
-        }
+    private CountingReader(final Reader in) {
+      super(in);
+    }
 
-        builder.add("geometry", geomType, crs);
-        builder.setDefaultGeometry("geometry");
-        return builder.buildFeatureType();
-      } else {
-        return null;
+    @Override
+    public int read() throws IOException {
+      final int result = super.read();
+      if (result >= 0) {
+        this.count++;
       }
-    } catch (JSONException e) {
-      throw new PrintException("Invalid GeoJSON data", e);
+      return result;
     }
-  }
 
-  @SuppressWarnings("unchecked")
-  private Class<Geometry> parseGeometryType(@Nonnull final JSONObject featureJson) {
-    JSONObject geomJson = featureJson.optJSONObject("geometry");
-    if (geomJson == null) {
-      return null;
-    }
-    String geomTypeString = geomJson.optString("type", "Geometry");
-    if (geomTypeString.equalsIgnoreCase("Positions")) {
-      return Geometry.class;
-    } else {
-      try {
-        return (Class<Geometry>) Class.forName("org.locationtech.jts.geom." + geomTypeString);
-      } catch (ClassNotFoundException e) {
-        throw new RuntimeException("Unrecognized geometry type in geojson: " + geomTypeString);
+    @Override
+    public int read(@Nonnull final char[] buffer, final int offset, final int length)
+        throws IOException {
+      final int result = super.read(buffer, offset, length);
+      if (result > 0) {
+        this.count += result;
       }
+      return result;
     }
   }
 }
@@ -1,5 +1,6 @@
 package org.mapfish.print.map.geotools;
 
+import com.codahale.metrics.MetricRegistry;
 import jakarta.annotation.Nonnull;
 import java.io.IOException;
 import java.util.concurrent.ExecutorService;
@@ -12,6 +13,7 @@ import org.mapfish.print.config.Template;
 import org.mapfish.print.http.MfClientHttpRequestFactory;
 import org.mapfish.print.map.AbstractLayerParams;
 import org.mapfish.print.parser.HasDefaultValue;
+import org.springframework.beans.factory.annotation.Autowired;
 
 /**
  * Parses GeoJSON from the request data.
@@ -58,6 +60,8 @@ public final class GeoJsonLayer extends AbstractFeatureSourceLayer {
     private static final String TYPE = "geojson";
     private static final String COMPATIBILITY_TYPE = "vector";
 
+    @Autowired private MetricRegistry metricRegistry;
+
     /** Constructor. */
     public Plugin() {
       super(TYPE, COMPATIBILITY_TYPE);
@@ -81,9 +85,10 @@ public final class GeoJsonLayer extends AbstractFeatureSourceLayer {
 
     private FeatureSourceSupplier createFeatureSourceSupplier(
         final Template template, final String geoJsonString) {
-      return (requestFactory, mapContext) -> {
+      return (requestFactory, mapContext, taskDirectory) -> {
         final FeaturesParser parser =
-            new FeaturesParser(requestFactory, mapContext.isForceLongitudeFirst());
+            new FeaturesParser(
+                requestFactory, mapContext.isForceLongitudeFirst(), this.metricRegistry);
         SimpleFeatureCollection featureCollection;
         try {
           featureCollection = parser.autoTreat(template, geoJsonString);
@@ -0,0 +1,312 @@
+package org.mapfish.print.map.geotools;
+
+import jakarta.annotation.Nullable;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.mapfish.print.PrintException;
+
+/**
+ * Reads a GeoJSON feature collection (or an array of features, a single feature or a single
+ * geometry) in one pass.
+ *
+ * <p>The document is read from a {@link Reader} with a {@link JSONTokener}, only one feature is
+ * held as a JSON object at a time. Its properties and geometry are converted right away, and the
+ * schema (the union of the properties and the common geometry type) is collected at the same time,
+ * so the features are built at the end without reading the data again.
+ *
+ * <p>The values are converted like the GeoTools GeoJSON parser does. A property named <code>
+ * geometry</code> is ignored, the geometry of the feature is used instead.
+ */
+final class GeoJsonStreamReader {
+  private static final String GEOMETRY = "geometry";
+  private static final String COORDINATES = "coordinates";
+  private static final Set<String> GEOMETRY_TYPES =
+      Set.of(
+          "Point",
+          "MultiPoint",
+          "LineString",
+          "MultiLineString",
+          "Polygon",
+          "MultiPolygon",
+          "GeometryCollection");
+
+  private final GeometryFactory geometryFactory = new GeometryFactory();
+  private final Set<String> attributes = new LinkedHashSet<>();
+  private final List<ParsedFeature> features = new ArrayList<>();
+  private Class<? extends Geometry> geometryType = null;
+  private JSONObject crs = null;
+
+  /**
+   * Read the features.
+   *
+   * @param reader the GeoJSON data
+   * @param crsParser gets the CRS from an object containing the "crs" member of the document
+   * @return the features
+   */
+  SimpleFeatureCollection read(
+      final Reader reader, final Function<JSONObject, CoordinateReferenceSystem> crsParser) {
+    try {
+      final JSONTokener tokener = new JSONTokener(reader);
+      final char first = tokener.nextClean();
+      if (first == '[') {
+        readFeatures(tokener);
+      } else if (first == '{') {
+        readDocument(tokener);
+      } else {
+        throw tokener.syntaxError("A GeoJSON object or array of features is expected");
+      }
+    } catch (JSONException e) {
+      throw new PrintException("Invalid GeoJSON data", e);
+    }
+    final JSONObject crsContainer = new JSONObject();
+    if (this.crs != null) {
+      crsContainer.put("crs", this.crs);
+    }
+    return buildFeatures(crsParser.apply(crsContainer));
+  }
+
+  private void readDocument(final JSONTokener tokener) {
+    final JSONObject otherMembers = new JSONObject();
+    char c = tokener.nextClean();
+    while (c != '}') {
+      if (c != '"' && c != '\'') {
+        throw tokener.syntaxError("A member name is expected");
+      }
+      final String key = tokener.nextString(c);
+      if (tokener.nextClean() != ':') {
+        throw tokener.syntaxError("Expected a ':' after a key");
+      }
+      if (key.equals("features")) {
+        if (tokener.nextClean() != '[') {
+          throw tokener.syntaxError("The features must be an array");
+        }
+        readFeatures(tokener);
+      } else {
+        final Object value = tokener.nextValue();
+        if (key.equals("crs") && value instanceof JSONObject crsObject) {
+          this.crs = crsObject;
+        }
+        otherMembers.put(key, value);
+      }
+      c = tokener.nextClean();
+      if (c == ',') {
+        c = tokener.nextClean();
+      } else if (c != '}') {
+        throw tokener.syntaxError("Expected a ',' or '}'");
+      }
+    }
+    final String type = otherMembers.optString("type");
+    if ("Feature".equalsIgnoreCase(type)) {
+      addFeature(otherMembers);
+    } else if (GEOMETRY_TYPES.contains(type)) {
+      // a bare geometry is a feature without properties
+      addFeature(new JSONObject().put(GEOMETRY, otherMembers));
+    }
+  }
+
+  private void readFeatures(final JSONTokener tokener) {
+    char c = tokener.nextClean();
+    if (c == ']') {
+      return;
+    }
+    tokener.back();
+    while (true) {
+      final Object feature = tokener.nextValue();
+      if (!(feature instanceof JSONObject featureObject)) {
+        throw tokener.syntaxError("A feature must be an object");
+      }
+      addFeature(featureObject);
+      c = tokener.nextClean();
+      if (c == ']') {
+        return;
+      } else if (c != ',') {
+        throw tokener.syntaxError("Expected a ',' or ']'");
+      }
+    }
+  }
+
+  private void addFeature(final JSONObject feature) {
+    final Map<String, Object> properties = new LinkedHashMap<>();
+    final JSONObject jsonProperties = feature.optJSONObject("properties");
+    if (jsonProperties != null) {
+      for (String key : jsonProperties.keySet()) {
+        if (!key.equals(GEOMETRY)) {
+          this.attributes.add(key);
+          properties.put(key, convertValue(jsonProperties.get(key)));
+        }
+      }
+    }
+    final JSONObject jsonGeometry = feature.optJSONObject(GEOMETRY);
+    final Geometry geometry = jsonGeometry == null ? null : parseGeometry(jsonGeometry);
+    if (geometry != null && this.geometryType != Geometry.class) {
+      if (this.geometryType == null) {
+        this.geometryType = geometry.getClass();
+      } else if (!this.geometryType.equals(geometry.getClass())) {
+        this.geometryType = Geometry.class;
+      }
+    }
+    final Object id = feature.opt("id");
+    this.features.add(
+        new ParsedFeature(id == null ? null : id.toString(), properties, geometry));
+  }
+
+  /**
+   * Use the same types as the GeoTools GeoJSON parser: Long, Double, Boolean, String, Map and List,
+   * also in the nested objects and arrays.
+   */
+  @Nullable
+  static Object convertValue(final Object value) {
+    if (value == null || value == JSONObject.NULL) {
+      return null;
+    } else if (value instanceof Integer || value instanceof Long) {
+      return ((Number) value).longValue();
+    } else if (value instanceof BigInteger bigInteger) {
+      // too big for a Long
+      return bigInteger.bitLength() < Long.SIZE ? bigInteger.longValue() : bigInteger.doubleValue();
+    } else if (value instanceof Number number) {
+      return number.doubleValue();
+    } else if (value instanceof JSONObject object) {
+      final Map<String, Object> result = new LinkedHashMap<>();
+      for (String key : object.keySet()) {
+        result.put(key, convertValue(object.get(key)));
+      }
+      return result;
+    } else if (value instanceof JSONArray array) {
+      final List<Object> result = new ArrayList<>(array.length());
+      for (Object item : array) {
+        result.add(convertValue(item));
+      }
+      return result;
+    }
+    return value;
+  }
+
+  private Geometry parseGeometry(final JSONObject geometry) {
+    final String type = geometry.optString("type", "");
+    switch (type) {
+      case "Point":
+        return this.geometryFactory.createPoint(
+            parseCoordinate(geometry.getJSONArray(COORDINATES)));
+      case "MultiPoint":
+        return this.geometryFactory.createMultiPoint(
+            parsePoints(geometry.getJSONArray(COORDINATES)));
+      case "LineString":
+        return this.geometryFactory.createLineString(
+            parseCoordinates(geometry.getJSONArray(COORDINATES)));
+      case "MultiLineString":
+        final JSONArray lines = geometry.getJSONArray(COORDINATES);
+        final LineString[] lineStrings = new LineString[lines.length()];
+        for (int i = 0; i < lines.length(); i++) {
+          lineStrings[i] =
+              this.geometryFactory.createLineString(parseCoordinates(lines.getJSONArray(i)));
+        }
+        return this.geometryFactory.createMultiLineString(lineStrings);
+      case "Polygon":
+        return parsePolygon(geometry.getJSONArray(COORDINATES));
+      case "MultiPolygon":
+        final JSONArray polygons = geometry.getJSONArray(COORDINATES);
+        final Polygon[] jtsPolygons = new Polygon[polygons.length()];
+        for (int i = 0; i < polygons.length(); i++) {
+          jtsPolygons[i] = parsePolygon(polygons.getJSONArray(i));
+        }
+        return this.geometryFactory.createMultiPolygon(jtsPolygons);
+      case "GeometryCollection":
+        final JSONArray geometries = geometry.getJSONArray("geometries");
+        final Geometry[] jtsGeometries = new Geometry[geometries.length()];
+        for (int i = 0; i < geometries.length(); i++) {
+          jtsGeometries[i] = parseGeometry(geometries.getJSONObject(i));
+        }
+        return this.geometryFactory.createGeometryCollection(jtsGeometries);
+      default:
+        throw new PrintException("Unrecognized geometry type in geojson: " + type);
+    }
+  }
+
+  private Polygon parsePolygon(final JSONArray rings) {
+    if (rings.isEmpty()) {
+      return this.geometryFactory.createPolygon();
+    }
+    final LinearRing shell =
+        this.geometryFactory.createLinearRing(parseCoordinates(rings.getJSONArray(0)));
+    final LinearRing[] holes = new LinearRing[rings.length() - 1];
+    for (int i = 1; i < rings.length(); i++) {
+      holes[i - 1] = this.geometryFactory.createLinearRing(parseCoordinates(rings.getJSONArray(i)));
+    }
+    return this.geometryFactory.createPolygon(shell, holes);
+  }
+
+  private Point[] parsePoints(final JSONArray coordinates) {
+    final Point[] points = new Point[coordinates.length()];
+    for (int i = 0; i < coordinates.length(); i++) {
+      points[i] = this.geometryFactory.createPoint(parseCoordinate(coordinates.getJSONArray(i)));
+    }
+    return points;
+  }
+
+  private static Coordinate[] parseCoordinates(final JSONArray coordinates) {
+    final Coordinate[] result = new Coordinate[coordinates.length()];
+    for (int i = 0; i < coordinates.length(); i++) {
+      result[i] = parseCoordinate(coordinates.getJSONArray(i));
+    }
+    return result;
+  }
+
+  private static Coordinate parseCoordinate(final JSONArray coordinate) {
+    if (coordinate.length() > 2) {
+      return new Coordinate(
+          coordinate.getDouble(0), coordinate.getDouble(1), coordinate.getDouble(2));
+    }
+    return new Coordinate(coordinate.getDouble(0), coordinate.getDouble(1));
+  }
+
+  private SimpleFeatureCollection buildFeatures(final CoordinateReferenceSystem crsValue) {
+    final SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+    typeBuilder.setName("GeosjonFeatureType");
+    for (String attribute : this.attributes) {
+      typeBuilder.add(attribute, Object.class);
+    }
+    typeBuilder.add(
+        GEOMETRY, this.geometryType == null ? Geometry.class : this.geometryType, crsValue);
+    typeBuilder.setDefaultGeometry(GEOMETRY);
+    final SimpleFeatureType featureType = typeBuilder.buildFeatureType();
+
+    final ListFeatureCollection collection = new ListFeatureCollection(featureType);
+    final SimpleFeatureBuilder builder = new SimpleFeatureBuilder(featureType);
+    for (ParsedFeature feature : this.features) {
+      for (Map.Entry<String, Object> property : feature.properties().entrySet()) {
+        builder.set(property.getKey(), property.getValue());
+      }
+      builder.set(GEOMETRY, feature.geometry());
+      collection.add(builder.buildFeature(feature.id()));
+    }
+    this.features.clear();
+    return collection;
+  }
+
+  private record ParsedFeature(
+      @Nullable String id, Map<String, Object> properties, @Nullable Geometry geometry) {}
+}
@@ -13,7 +13,6 @@ import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
 import org.apache.commons.io.IOUtils;
-import org.checkerframework.checker.nullness.qual.Nullable;
 import org.geotools.api.style.Style;
 import org.geotools.coverage.grid.io.AbstractGridCoverage2DReader;
 import org.geotools.gce.geotiff.GeoTiffFormat;
@@ -25,10 +24,13 @@ import org.mapfish.print.PrintException;
 import org.mapfish.print.attribute.map.MapfishMapContext;
 import org.mapfish.print.config.Template;
 import org.mapfish.print.http.MfClientHttpRequestFactory;
+import org.mapfish.print.http.RangeBlockCache;
 import org.mapfish.print.map.AbstractLayerParams;
 import org.mapfish.print.map.MapLayerFactoryPlugin;
 import org.mapfish.print.parser.HasDefaultValue;
 import org.mapfish.print.processor.Processor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.client.ClientHttpRequest;
@@ -36,20 +38,22 @@ import org.springframework.http.client.ClientHttpResponse;
 
 /** Reads a GeoTIFF file from a URL. */
 public final class GeotiffLayer extends AbstractGeotoolsLayer {
-  private final Function<MfClientHttpRequestFactory, @Nullable AbstractGridCoverage2DReader>
+  private static final Logger LOGGER = LoggerFactory.getLogger(GeotiffLayer.class);
+  private final Function<MfClientHttpRequestFactory, GridCoverageReaderCache.Lease>
       coverage2DReaderSupplier;
   private final StyleSupplier<AbstractGridCoverage2DReader> styleSupplier;
 
   /**
    * Constructor.
    *
-   * @param reader the reader to use for reading the geotiff.
+   * @param reader the supplier of the reader to use for reading the geotiff, the lease is closed
+   *     when the layer has been rendered.
    * @param style style to use for rendering the data.
    * @param executorService the thread pool for doing the rendering.
    * @param params the parameters for this layer
    */
   public GeotiffLayer(
-      final Function<MfClientHttpRequestFactory, AbstractGridCoverage2DReader> reader,
+      final Function<MfClientHttpRequestFactory, GridCoverageReaderCache.Lease> reader,
       final StyleSupplier<AbstractGridCoverage2DReader> style,
       final ExecutorService executorService,
       final AbstractLayerParams params) {
@@ -71,15 +75,36 @@ public final class GeotiffLayer extends AbstractGeotoolsLayer {
   }
 
   @Override
-  public synchronized List<? extends Layer> getLayers(
+  public List<? extends Layer> getLayers(
       final MfClientHttpRequestFactory httpRequestFactory,
       final MapfishMapContext mapContext,
       final Processor.ExecutionContext context,
       final LayerContext layerContext) {
-    AbstractGridCoverage2DReader coverage2DReader =
+    final GridCoverageReaderCache.Lease lease =
         this.coverage2DReaderSupplier.apply(httpRequestFactory);
-    Style style = this.styleSupplier.load(httpRequestFactory, coverage2DReader);
-    return Collections.singletonList(new GridReaderLayer(coverage2DReader, style));
+    try {
+      Style style = this.styleSupplier.load(httpRequestFactory, lease.getReader());
+      return Collections.singletonList(new LeasedGridReaderLayer(lease, style));
+    } catch (RuntimeException e) {
+      lease.close();
+      throw e;
+    }
+  }
+
+  /** A grid reader layer releasing its reader when it is disposed. */
+  private static final class LeasedGridReaderLayer extends GridReaderLayer {
+    private final GridCoverageReaderCache.Lease lease;
+
+    private LeasedGridReaderLayer(final GridCoverageReaderCache.Lease lease, final Style style) {
+      super(lease.getReader(), style);
+      this.lease = lease;
+    }
+
+    @Override
+    public void dispose() {
+      super.dispose();
+      this.lease.close();
+    }
   }
 
   /**
@@ -91,6 +116,8 @@ public final class GeotiffLayer extends AbstractGeotoolsLayer {
       implements MapLayerFactoryPlugin<GeotiffParam> {
     private static final Set<String> TYPENAMES = Collections.singleton("geotiff");
     @Autowired private ExecutorService forkJoinPool;
+    @Autowired private RangeBlockCache rangeBlockCache;
+    @Autowired private GridCoverageReaderCache gridCoverageReaderCache;
 
     @Override
     public Set<String> getTypeNames() {
@@ -106,7 +133,7 @@ public final class GeotiffLayer extends AbstractGeotoolsLayer {
     @Override
     public GeotiffLayer parse(@Nonnull final Template template, @Nonnull final GeotiffParam param)
         throws IOException {
-      Function<MfClientHttpRequestFactory, AbstractGridCoverage2DReader> geotiffReader =
+      Function<MfClientHttpRequestFactory, GridCoverageReaderCache.Lease> geotiffReader =
           getGeotiffReader(template, param.url);
 
       String styleRef = param.style;
@@ -115,7 +142,7 @@ public final class GeotiffLayer extends AbstractGeotoolsLayer {
           geotiffReader, super.createStyleSupplier(template, styleRef), this.forkJoinPool, param);
     }
 
-    private Function<MfClientHttpRequestFactory, AbstractGridCoverage2DReader> getGeotiffReader(
+    private Function<MfClientHttpRequestFactory, GridCoverageReaderCache.Lease> getGeotiffReader(
         final Template template, final String geotiffUrl) throws IOException {
       URI geotiffResourceUrl;
       try {
@@ -127,26 +154,66 @@ public final class GeotiffLayer extends AbstractGeotoolsLayer {
           FileUtils.testForLegalFileUrl(template.getConfiguration(), geotiffResourceUrl.toURL());
       return (final MfClientHttpRequestFactory requestFactory) -> {
         try {
-          final File geotiffFile;
           if (url.getProtocol().equalsIgnoreCase("file")) {
-            geotiffFile = new File(url.toURI());
-          } else {
-            geotiffFile = File.createTempFile("downloadedGeotiff", ".tiff");
-
-            final ClientHttpRequest request =
-                requestFactory.createRequest(url.toURI(), HttpMethod.GET);
-            try (ClientHttpResponse httpResponse = request.execute();
-                FileOutputStream output = new FileOutputStream(geotiffFile)) {
-              IOUtils.copy(httpResponse.getBody(), output);
-            }
+            return this.gridCoverageReaderCache.acquire(new File(url.toURI()));
+          }
+          final AbstractGridCoverage2DReader rangeRequestReader =
+              getRangeRequestReader(url.toURI(), requestFactory);
+          if (rangeRequestReader != null) {
+            return new GridCoverageReaderCache.Lease(
+                rangeRequestReader, rangeRequestReader::dispose);
+          }
+          final File geotiffFile = File.createTempFile("downloadedGeotiff", ".tiff");
+
+          final ClientHttpRequest request =
+              requestFactory.createRequest(url.toURI(), HttpMethod.GET);
+          try (ClientHttpResponse httpResponse = request.execute();
+              FileOutputStream output = new FileOutputStream(geotiffFile)) {
+            IOUtils.copy(httpResponse.getBody(), output);
           }
 
-          return new GeoTiffFormat().getReader(geotiffFile);
+          final AbstractGridCoverage2DReader reader = new GeoTiffFormat().getReader(geotiffFile);
+          if (reader == null) {
+            throw new IOException("Unable to read the GeoTIFF file downloaded from " + url);
+          }
+          return new GridCoverageReaderCache.Lease(
+              reader,
+              () -> {
+                reader.dispose();
+                if (!geotiffFile.delete()) {
+                  LOGGER.debug("Unable to delete {}", geotiffFile);
+                }
+              });
         } catch (IOException | URISyntaxException e) {
           throw new PrintException("Failed to get GeotiffReader", e);
         }
       };
     }
+
+    /**
+     * Get a reader fetching only the needed parts of the file with range requests, efficient with
+     * the Cloud Optimized GeoTIFFs.
+     *
+     * @return the reader, or null if the server doesn't support the range requests
+     */
+    private AbstractGridCoverage2DReader getRangeRequestReader(
+        final URI uri, final MfClientHttpRequestFactory requestFactory) throws IOException {
+      final RangeRequestImageSource source =
+          RangeRequestImageSource.open(uri, requestFactory, this.rangeBlockCache);
+      if (source == null) {
+        return null;
+      }
+      try {
+        final AbstractGridCoverage2DReader reader = new GeoTiffFormat().getReader(source);
+        if (reader == null) {
+          LOGGER.warn("Unable to read {} with range requests, downloading it", uri);
+        }
+        return reader;
+      } catch (RuntimeException e) {
+        LOGGER.warn("Unable to read {} with range requests, downloading it", uri, e);
+        return null;
+      }
+    }
   }
 
   /** The parameters for reading a Geotiff file, either from the server or from a URL. */
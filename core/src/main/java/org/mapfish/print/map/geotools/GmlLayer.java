@@ -1,24 +1,38 @@
 package org.mapfish.print.map.geotools;
 
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
 import jakarta.annotation.Nonnull;
-import java.io.ByteArrayInputStream;
+import jakarta.annotation.Nullable;
+import java.awt.Dimension;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
-import javax.xml.XMLConstants;
 import javax.xml.namespace.QName;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
 import org.eclipse.emf.ecore.resource.URIHandler;
 import org.geotools.api.data.FeatureSource;
 import org.geotools.data.collection.CollectionFeatureSource;
 import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.gml2.GMLConfiguration;
+import org.geotools.referencing.CRS;
 import org.geotools.xsd.Configuration;
 import org.geotools.xsd.Parser;
 import org.mapfish.print.FileUtils;
@@ -28,9 +42,15 @@ import org.mapfish.print.attribute.map.MapfishMapContext;
 import org.mapfish.print.config.Template;
 import org.mapfish.print.http.MfClientHttpRequestFactory;
 import org.mapfish.print.map.AbstractLayerParams;
+import org.mapfish.print.parser.HasDefaultValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpResponse;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 import org.xml.sax.ext.EntityResolver2;
 
 /** Parses GML from the request data. */
@@ -69,6 +89,8 @@ public final class GmlLayer extends AbstractFeatureSourceLayer {
    */
   public static final class Plugin extends AbstractFeatureSourceLayerPlugin<GmlParam> {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(GmlLayer.class);
+
     private static final String TYPE = "gml";
 
     private static final GMLConfiguration GML_2_PARSER = new GMLConfiguration();
@@ -77,6 +99,13 @@ public final class GmlLayer extends AbstractFeatureSourceLayer {
     private static final org.geotools.gml3.v3_2.GMLConfiguration GML_32_PARSER =
         new org.geotools.gml3.v3_2.GMLConfiguration(true);
 
+    /** The WFS parameters that can't be combined with a BBOX parameter. */
+    private static final Set<String> WFS_FILTER_PARAMS =
+        Set.of("BBOX", "FILTER", "CQL_FILTER", "FEATUREID", "RESOURCEID");
+
+    /** The margin in pixels added around the map bounds by the BBOX filter. */
+    private static final int BBOX_MARGIN_PIXELS = 64;
+
     @Autowired private URIHandler cachingUrihandler;
 
     /** Constructor. */
@@ -94,18 +123,20 @@ public final class GmlLayer extends AbstractFeatureSourceLayer {
     public GmlLayer parse(@Nonnull final Template template, @Nonnull final GmlParam param) {
       return new GmlLayer(
           this.forkJoinPool,
-          createFeatureSourceSupplier(template, param.url),
+          createFeatureSourceSupplier(template, param.url, param.bboxFilter),
           createStyleFunction(template, param.style),
           template.getConfiguration().renderAsSvg(param.renderAsSvg),
           param);
     }
 
     private FeatureSourceSupplier createFeatureSourceSupplier(
-        final Template template, final String url) {
-      return (requestFactory, mapContext) -> {
+        final Template template, final String url, final boolean bboxFilter) {
+      return (requestFactory, mapContext, taskDirectory) -> {
         SimpleFeatureCollection featureCollection;
         try {
-          featureCollection = createFeatureSource(template, requestFactory, url);
+          featureCollection =
+              createFeatureSource(
+                  template, requestFactory, url, bboxFilter ? mapContext : null, taskDirectory);
         } catch (IOException e) {
           throw new PrintException("Failed to create feature source for " + url, e);
         }
@@ -119,104 +150,121 @@ public final class GmlLayer extends AbstractFeatureSourceLayer {
     private SimpleFeatureCollection createFeatureSource(
         final Template template,
         final MfClientHttpRequestFactory httpRequestFactory,
-        final String gmlString)
+        final String gmlString,
+        @Nullable final MapfishMapContext bboxContext,
+        @Nullable final File taskDirectory)
         throws IOException {
       try {
         URL url = new URI(gmlString).toURL();
         FileUtils.testForLegalFileUrl(template.getConfiguration(), url);
+        URI uri = url.toURI();
+        if (bboxContext != null) {
+          uri = addBbox(uri, bboxContext);
+        }
+        // the response is kept on the disk, so it can be parsed again with another GML version,
+        // the parsed feature collection is still entirely in memory
+        final File file = File.createTempFile("gml-", ".xml", taskDirectory);
         try {
-          final String gmlData = URIUtils.toString(httpRequestFactory, url.toURI());
-          validateXmlInput(gmlData);
-          final int endIndex = 200;
-          String startOfData = gmlData.substring(0, endIndex);
-          if (startOfData.contains("\"http://www.opengis.net/gml/3.2\"")) {
-            return parseGml32(gmlData);
-          } else {
-            return parseGml3(gmlData);
+          try (ClientHttpResponse response =
+              httpRequestFactory.createRequest(uri, HttpMethod.GET).execute()) {
+            Files.copy(response.getBody(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+          }
+          final GmlVersion detected;
+          try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+            detected = GmlVersion.detect(input);
           }
-        } catch (URISyntaxException e) {
-          throw new PrintException("Failed to create URI for " + url, e);
+          return parse(file, detected);
+        } finally {
+          Files.deleteIfExists(file.toPath());
         }
       } catch (MalformedURLException | URISyntaxException e) {
         return null;
       }
     }
 
-    private SimpleFeatureCollection parseGml3(final String gmlData) throws IOException {
-      final SimpleFeatureCollection featureCollection =
-          getSimpleFeatureCollection(gmlData, createParser(GML_3_PARSER));
-      if (featureCollection != null) {
-        return featureCollection;
+    /** Parse with the detected version, then with the other ones if it fails. */
+    private SimpleFeatureCollection parse(final File file, final GmlVersion detected)
+        throws IOException {
+      final List<GmlVersion> versions = detected.parseOrder();
+      for (GmlVersion version : versions) {
+        try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+          final SimpleFeatureCollection featureCollection = parse(input, version);
+          if (featureCollection != null) {
+            return featureCollection;
+          }
+        } catch (PrintException e) {
+          if (version == versions.getLast()) {
+            throw e;
+          }
+          LOGGER.debug("Failed to parse the GML data as {}, trying another version", version, e);
+        }
       }
-      return parseGml2(gmlData);
+      throw new PrintException("Failed to parse GML data, no feature collection found");
     }
 
-    private SimpleFeatureCollection getSimpleFeatureCollection(
-        final String gmlData, final Parser parser) throws IOException {
-      parser.setStrict(false);
-      parser.setRootElementType(new QName("http://www.opengis.net/wfs", "FeatureCollection"));
-      try {
-        final Object featureCollection = parser.parse(new StringReader(gmlData));
-        if (featureCollection instanceof SimpleFeatureCollection) {
-          return (SimpleFeatureCollection) featureCollection;
+    /**
+     * Add a <code>BBOX</code> filter with the bounds of the map to a WFS GetFeature request, so
+     * only the visible features are returned.
+     */
+    static URI addBbox(final URI uri, final MapfishMapContext mapContext) {
+      boolean getFeature = false;
+      for (Map.Entry<String, String> param : URIUtils.getParameters(uri).entries()) {
+        final String key = param.getKey().toUpperCase(Locale.ROOT);
+        if (WFS_FILTER_PARAMS.contains(key)) {
+          return uri;
         }
-      } catch (SAXException | ParserConfigurationException e) {
-        // do nothing try to load as gml2
+        getFeature |= key.equals("REQUEST") && param.getValue().equalsIgnoreCase("GetFeature");
       }
-      return null;
-    }
-
-    private SimpleFeatureCollection parseGml2(final String gmlData) throws IOException {
-      final SimpleFeatureCollection featureCollection =
-          getSimpleFeatureCollection(gmlData, createParser(GML_2_PARSER));
-      if (featureCollection != null) {
-        return featureCollection;
+      if (!getFeature) {
+        return uri;
       }
-      return parseGml32(gmlData);
+      final ReferencedEnvelope bounds = mapContext.toReferencedEnvelope();
+      final String srs = CRS.toSRS(bounds.getCoordinateReferenceSystem());
+      final Dimension mapSize = mapContext.getMapSize();
+      if (srs == null || mapSize.width <= 0) {
+        return uri;
+      }
+      final ReferencedEnvelope area = new ReferencedEnvelope(bounds);
+      area.expandBy(area.getWidth() / mapSize.width * BBOX_MARGIN_PIXELS);
+      final Multimap<String, String> bbox = HashMultimap.create();
+      bbox.put(
+          "BBOX",
+          String.format(
+              Locale.ROOT,
+              "%s,%s,%s,%s,%s",
+              area.getMinX(),
+              area.getMinY(),
+              area.getMaxX(),
+              area.getMaxY(),
+              srs));
+      return URIUtils.addParams(uri, bbox, Collections.emptySet());
     }
 
-    private SimpleFeatureCollection parseGml32(final String gmlData) throws IOException {
-      Parser gmlV32Parser = createParser(GML_32_PARSER);
-      gmlV32Parser.setStrict(false);
-      gmlV32Parser.setRootElementType(
-          new QName("http://www.opengis.net/wfs/2.0", "FeatureCollection"));
+    private SimpleFeatureCollection parse(final InputStream input, final GmlVersion version)
+        throws IOException {
+      final Parser parser;
+      if (version == GmlVersion.GML32) {
+        parser = createParser(GML_32_PARSER);
+        parser.setRootElementType(
+            new QName("http://www.opengis.net/wfs/2.0", "FeatureCollection"));
+      } else {
+        parser = createParser(version == GmlVersion.GML2 ? GML_2_PARSER : GML_3_PARSER);
+        parser.setRootElementType(new QName("http://www.opengis.net/wfs", "FeatureCollection"));
+      }
+      parser.setStrict(false);
       try {
-        final Object featureCollection = gmlV32Parser.parse(new StringReader(gmlData));
+        final Object featureCollection = parser.parse(input);
         if (featureCollection instanceof SimpleFeatureCollection) {
           return (SimpleFeatureCollection) featureCollection;
-        } else {
-          throw new RuntimeException("unable to parse GML data");
         }
-
+        return null;
       } catch (SAXException | ParserConfigurationException e) {
         throw new PrintException("Failed to parse GML data", e);
       }
     }
 
-    private void validateXmlInput(final String gmlData) {
-      try {
-        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        factory.setNamespaceAware(true);
-        factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-        factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
-        factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
-        factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
-        factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-        factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-        factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
-        factory.setXIncludeAware(false);
-        factory.setExpandEntityReferences(false);
-
-        factory
-            .newDocumentBuilder()
-            .parse(new ByteArrayInputStream(gmlData.getBytes(StandardCharsets.UTF_8)));
-      } catch (ParserConfigurationException | SAXException | IOException e) {
-        throw new PrintException("Failed to parse GML data", e);
-      }
-    }
-
     private Parser createParser(final Configuration configuration) {
-      final Parser parser = new Parser(configuration);
+      final Parser parser = createSecureParser(configuration);
       parser.getURIHandlers().addFirst(this.cachingUrihandler);
       parser.setEntityResolver(
           new EntityResolver2() {
@@ -241,6 +289,26 @@ public final class GmlLayer extends AbstractFeatureSourceLayer {
           });
       return parser;
     }
+
+    /**
+     * Create a parser that rejects the DTDs and the external entities in the whole document, not
+     * only in the beginning read to detect the version.
+     */
+    static Parser createSecureParser(final Configuration configuration) {
+      return new Parser(configuration) {
+        @Override
+        protected SAXParser parser() throws ParserConfigurationException, SAXException {
+          final SAXParser parser = super.parser();
+          final XMLReader reader = parser.getXMLReader();
+          reader.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+          reader.setFeature("http://xml.org/sax/features/external-general-entities", false);
+          reader.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+          reader.setFeature(
+              "http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+          return parser;
+        }
+      };
+    }
   }
 
   /** The parameters for creating a layer that renders Gml formatted data. */
@@ -252,5 +320,14 @@ public final class GmlLayer extends AbstractFeatureSourceLayer {
      * directory.
      */
     public String url;
+
+    /**
+     * Add a <code>BBOX</code> parameter with the bounds of the map to the WFS GetFeature requests,
+     * so the server only returns the features visible on the map.
+     *
+     * <p>It is ignored if the request already contains a filter. Don't use it on a layer also
+     * shown in an overview map, the features outside the main map would be missing.
+     */
+    @HasDefaultValue public boolean bboxFilter = false;
   }
 }
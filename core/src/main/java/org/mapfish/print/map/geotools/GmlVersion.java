@@ -0,0 +1,137 @@
+package org.mapfish.print.map.geotools;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.mapfish.print.PrintException;
+
+/**
+ * The version of a GML document, detected from its beginning.
+ *
+ * <p>The beginning of the document is read with a StAX reader, the version is given by the GML
+ * namespace and by the first elements specific to GML 2 or GML 3 (like <code>gml:coordinates
+ * </code> or <code>gml:posList</code>). The documents with a DTD in their beginning are rejected
+ * early, the GML parser also disallows them.
+ */
+enum GmlVersion {
+  /** GML 2, from WFS 1.0. */
+  GML2,
+  /** GML 3.1, from WFS 1.1. */
+  GML3,
+  /** GML 3.2, from WFS 2.0. */
+  GML32;
+
+  /** The order in which the versions are tried when the detected one fails. */
+  private static final List<GmlVersion> FALLBACK_ORDER = List.of(GML3, GML2, GML32);
+
+  /** The size of the beginning of the document read to detect the version. */
+  static final int SNIFF_SIZE = 64 * 1024;
+
+  private static final String GML_NAMESPACE = "http://www.opengis.net/gml";
+  private static final String GML32_NAMESPACE = "http://www.opengis.net/gml/3.2";
+  private static final String WFS20_NAMESPACE = "http://www.opengis.net/wfs/2.0";
+  private static final Set<String> GML2_ELEMENTS =
+      Set.of("coordinates", "coord", "outerBoundaryIs", "innerBoundaryIs", "Box");
+  private static final Set<String> GML3_ELEMENTS =
+      Set.of(
+          "pos",
+          "posList",
+          "featureMembers",
+          "Envelope",
+          "exterior",
+          "interior",
+          "Curve",
+          "Surface",
+          "MultiCurve",
+          "MultiSurface");
+
+  /**
+   * Get the versions to try to parse a document of this detected version: this one first, then the
+   * others.
+   */
+  List<GmlVersion> parseOrder() {
+    final List<GmlVersion> result = new ArrayList<>(FALLBACK_ORDER.size());
+    result.add(this);
+    for (GmlVersion version : FALLBACK_ORDER) {
+      if (version != this) {
+        result.add(version);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Detect the version of a document, the stream is reset to its beginning.
+   *
+   * @param input the document, the mark must be supported
+   * @return the version, GML 3 if it can't be detected
+   */
+  static GmlVersion detect(final InputStream input) throws IOException {
+    input.mark(SNIFF_SIZE);
+    final byte[] prefix = input.readNBytes(SNIFF_SIZE);
+    input.reset();
+    return detect(prefix);
+  }
+
+  /**
+   * Detect the version of a document.
+   *
+   * @param prefix the beginning of the document
+   * @return the version, GML 3 if it can't be detected
+   */
+  static GmlVersion detect(final byte[] prefix) {
+    final XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, false);
+    XMLStreamReader reader = null;
+    try {
+      reader = factory.createXMLStreamReader(new ByteArrayInputStream(prefix));
+      boolean root = true;
+      while (reader.hasNext()) {
+        final int event = reader.next();
+        if (event == XMLStreamConstants.DTD) {
+          throw new PrintException("Failed to parse GML data, DTDs are not allowed");
+        }
+        if (event != XMLStreamConstants.START_ELEMENT) {
+          continue;
+        }
+        if (root) {
+          root = false;
+          for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            if (GML32_NAMESPACE.equals(reader.getNamespaceURI(i))) {
+              return GML32;
+            }
+          }
+        }
+        final String namespace = reader.getNamespaceURI();
+        if (GML32_NAMESPACE.equals(namespace) || WFS20_NAMESPACE.equals(namespace)) {
+          return GML32;
+        } else if (GML_NAMESPACE.equals(namespace)) {
+          if (GML2_ELEMENTS.contains(reader.getLocalName())) {
+            return GML2;
+          } else if (GML3_ELEMENTS.contains(reader.getLocalName())) {
+            return GML3;
+          }
+        }
+      }
+    } catch (XMLStreamException e) {
+      // end of the prefix, or invalid document that will be reported by the parser
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (XMLStreamException e) {
+          // nothing to do
+        }
+      }
+    }
+    return GML3;
+  }
+}
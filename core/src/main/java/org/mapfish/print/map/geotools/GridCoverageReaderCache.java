@@ -0,0 +1,262 @@
+package org.mapfish.print.map.geotools;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.geotools.coverage.grid.io.AbstractGridCoverage2DReader;
+import org.geotools.gce.geotiff.GeoTiffFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * A cache of the opened readers of the local GeoTIFF files, shared by all the print jobs of this
+ * server.
+ *
+ * <p>Opening a reader parses the TIFF header and the GeoKeys of the file, so the readers are kept
+ * open and shared: the GeoTools readers support concurrent reads. They are keyed by the path, the
+ * modification time and the size of the file, so a modified file gets a new reader. The readers are
+ * reference counted: a reader is only disposed when it is not used by any job, either because it
+ * has been idle for the time to idle or because its file has been modified.
+ */
+public class GridCoverageReaderCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(GridCoverageReaderCache.class);
+
+  private final Map<Key, Entry> entries = new HashMap<>();
+  private long timeToIdle = 300;
+  private ScheduledExecutorService timer;
+  private Counter hits;
+  private Counter misses;
+
+  @Autowired private MetricRegistry metricRegistry;
+
+  /**
+   * The time (in seconds) an unused reader is kept open. 0 disposes the readers as soon as they are
+   * not used anymore.
+   *
+   * @param timeToIdle the time to idle in seconds
+   */
+  public final void setTimeToIdle(final long timeToIdle) {
+    this.timeToIdle = timeToIdle;
+  }
+
+  /** Called by spring after bean has been created and populated. */
+  @PostConstruct
+  public final void init() {
+    this.hits = this.metricRegistry.counter(metricName("hit"));
+    this.misses = this.metricRegistry.counter(metricName("miss"));
+    this.metricRegistry.register(metricName("size"), (Gauge<Integer>) this::size);
+    if (this.timeToIdle > 0) {
+      this.timer =
+          Executors.newSingleThreadScheduledExecutor(
+              task -> {
+                final Thread thread = new Thread(task, "Grid coverage reader cache");
+                thread.setDaemon(true);
+                return thread;
+              });
+      this.timer.scheduleWithFixedDelay(
+          this::evictIdle, this.timeToIdle, this.timeToIdle, TimeUnit.SECONDS);
+    }
+  }
+
+  /** Called by spring when application context is being destroyed. */
+  @PreDestroy
+  public final void shutdown() {
+    if (this.timer != null) {
+      this.timer.shutdownNow();
+    }
+    final List<Entry> unused = new ArrayList<>();
+    synchronized (this) {
+      final Iterator<Entry> iterator = this.entries.values().iterator();
+      while (iterator.hasNext()) {
+        final Entry entry = iterator.next();
+        if (entry.references == 0) {
+          iterator.remove();
+          unused.add(entry);
+        } else {
+          entry.stale = true;
+        }
+      }
+    }
+    unused.forEach(Entry::dispose);
+  }
+
+  private static String metricName(final String name) {
+    return MetricRegistry.name(GridCoverageReaderCache.class.getSimpleName(), name);
+  }
+
+  /** The number of readers in the cache. */
+  final synchronized int size() {
+    return this.entries.size();
+  }
+
+  /**
+   * Get the reader of a GeoTIFF file, opened if needed.
+   *
+   * @param file the GeoTIFF file
+   * @return the lease of the reader, to be closed when the reader is not used anymore
+   */
+  @Nonnull
+  public final Lease acquire(@Nonnull final File file) throws IOException {
+    final Key key = new Key(file.getCanonicalPath(), file.lastModified(), file.length());
+    final List<Entry> stale = new ArrayList<>();
+    final Entry entry;
+    synchronized (this) {
+      final Iterator<Map.Entry<Key, Entry>> iterator = this.entries.entrySet().iterator();
+      while (iterator.hasNext()) {
+        final Map.Entry<Key, Entry> other = iterator.next();
+        if (other.getKey().path().equals(key.path()) && !other.getKey().equals(key)) {
+          // the file has been modified
+          other.getValue().stale = true;
+          if (other.getValue().references == 0) {
+            iterator.remove();
+            stale.add(other.getValue());
+          }
+        }
+      }
+      entry = this.entries.computeIfAbsent(key, Entry::new);
+      entry.references++;
+    }
+    stale.forEach(Entry::dispose);
+
+    try {
+      return new Lease(entry.getReader(file), () -> release(entry));
+    } catch (IOException | RuntimeException e) {
+      release(entry);
+      throw e;
+    }
+  }
+
+  private void release(final Entry entry) {
+    final boolean dispose;
+    synchronized (this) {
+      entry.references--;
+      entry.lastUsed = System.currentTimeMillis();
+      dispose =
+          entry.references == 0
+              && (entry.stale || !entry.isOpen() || this.timeToIdle <= 0)
+              && this.entries.remove(entry.key, entry);
+    }
+    if (dispose) {
+      entry.dispose();
+    }
+  }
+
+  /** Dispose the readers that haven't been used for the time to idle. */
+  final void evictIdle() {
+    final long limit = System.currentTimeMillis() - this.timeToIdle * 1000L;
+    final List<Entry> idle = new ArrayList<>();
+    synchronized (this) {
+      final Iterator<Entry> iterator = this.entries.values().iterator();
+      while (iterator.hasNext()) {
+        final Entry entry = iterator.next();
+        if (entry.references == 0 && entry.lastUsed <= limit) {
+          iterator.remove();
+          idle.add(entry);
+        }
+      }
+    }
+    idle.forEach(Entry::dispose);
+  }
+
+  /**
+   * A reader used by a job.
+   *
+   * <p>Closing it releases a shared reader, or disposes a reader that is not shared.
+   */
+  public static final class Lease implements AutoCloseable {
+    private final AbstractGridCoverage2DReader reader;
+    private final Runnable onClose;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    /**
+     * Constructor.
+     *
+     * @param reader the reader
+     * @param onClose called once, when the lease is closed
+     */
+    public Lease(
+        @Nonnull final AbstractGridCoverage2DReader reader, @Nonnull final Runnable onClose) {
+      this.reader = reader;
+      this.onClose = onClose;
+    }
+
+    /** The reader, it must not be disposed. */
+    @Nonnull
+    public AbstractGridCoverage2DReader getReader() {
+      return this.reader;
+    }
+
+    @Override
+    public void close() {
+      if (this.closed.compareAndSet(false, true)) {
+        this.onClose.run();
+      }
+    }
+  }
+
+  /**
+   * The key of a cached reader.
+   *
+   * @param path the canonical path of the file
+   * @param lastModified the modification time of the file
+   * @param length the size of the file
+   */
+  private record Key(String path, long lastModified, long length) {}
+
+  private final class Entry {
+    private final Key key;
+    private volatile AbstractGridCoverage2DReader reader;
+    private int references = 0;
+    private long lastUsed = System.currentTimeMillis();
+    private boolean stale = false;
+
+    private Entry(final Key key) {
+      this.key = key;
+    }
+
+    private boolean isOpen() {
+      return this.reader != null;
+    }
+
+    private synchronized AbstractGridCoverage2DReader getReader(final File file)
+        throws IOException {
+      if (this.reader != null) {
+        GridCoverageReaderCache.this.hits.inc();
+        return this.reader;
+      }
+      GridCoverageReaderCache.this.misses.inc();
+      final AbstractGridCoverage2DReader newReader = new GeoTiffFormat().getReader(file);
+      if (newReader == null) {
+        throw new IOException("Unable to read the GeoTIFF file " + file);
+      }
+      this.reader = newReader;
+      return newReader;
+    }
+
+    private void dispose() {
+      final AbstractGridCoverage2DReader current = this.reader;
+      if (current != null) {
+        try {
+          current.dispose();
+        } catch (Exception e) {
+          LOGGER.warn("Unable to dispose the reader of {}", this.key.path(), e);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,296 @@
+package org.mapfish.print.map.geotools;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import javax.imageio.spi.IIORegistry;
+import javax.imageio.spi.ImageInputStreamSpi;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageInputStreamImpl;
+import org.mapfish.print.http.MfClientHttpRequestFactory;
+import org.mapfish.print.http.RangeBlockCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * A remote image (like a Cloud Optimized GeoTIFF) read with HTTP range requests.
+ *
+ * <p>It is used as source of the GeoTools readers: an {@link ImageInputStreamSpi} is registered to
+ * create the image input streams on it, so only the blocks of the file actually read by the image
+ * reader (the header, and the tiles of the overview level and window needed by the map) are
+ * fetched. The blocks are kept in the {@link RangeBlockCache}, shared between the jobs, when the
+ * file has an <code>ETag</code> or a <code>Last-Modified</code> header; the blocks of the other
+ * files are only kept by the streams reading them.
+ */
+public final class RangeRequestImageSource {
+  /** The size of the blocks fetched and cached. */
+  static final int BLOCK_SIZE = 64 * 1024;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RangeRequestImageSource.class);
+  private static final int MAX_BLOCKS_PER_REQUEST = 64;
+
+  static {
+    IIORegistry.getDefaultInstance().registerServiceProvider(new Spi());
+  }
+
+  private final URI uri;
+  private final MfClientHttpRequestFactory requestFactory;
+  private final RangeBlockCache cache;
+  private final long length;
+  private final byte[] firstBlock;
+  @Nullable private final String version;
+  @Nullable private final String etag;
+
+  private RangeRequestImageSource(
+      final URI uri,
+      final MfClientHttpRequestFactory requestFactory,
+      final RangeBlockCache cache,
+      final long length,
+      final byte[] firstBlock,
+      @Nullable final String etag,
+      @Nullable final String lastModified) {
+    this.uri = uri;
+    this.requestFactory = requestFactory;
+    this.cache = cache;
+    this.length = length;
+    this.firstBlock = firstBlock;
+    this.etag = etag;
+    // without them, we can't know if the file has changed, so the blocks are not shared
+    this.version = etag != null ? etag : lastModified;
+  }
+
+  /**
+   * Open a remote image with a range request on its first block.
+   *
+   * @param uri the URI of the image
+   * @param requestFactory the request factory of the job
+   * @param cache the shared cache of the blocks
+   * @return the source, or null if the server doesn't support the range requests
+   */
+  @Nullable
+  public static RangeRequestImageSource open(
+      @Nonnull final URI uri,
+      @Nonnull final MfClientHttpRequestFactory requestFactory,
+      @Nonnull final RangeBlockCache cache)
+      throws IOException {
+    final ClientHttpRequest request = requestFactory.createRequest(uri, HttpMethod.GET);
+    request.getHeaders().set(HttpHeaders.RANGE, "bytes=0-" + (BLOCK_SIZE - 1));
+    try (ClientHttpResponse response = request.execute()) {
+      final HttpHeaders headers = response.getHeaders();
+      final long length = parseLength(headers.getFirst(HttpHeaders.CONTENT_RANGE));
+      if (response.getStatusCode() != HttpStatus.PARTIAL_CONTENT || length < 0) {
+        LOGGER.debug("No range request support for {}: {}", uri, response.getStatusCode());
+        return null;
+      }
+      return new RangeRequestImageSource(
+          uri,
+          requestFactory,
+          cache,
+          length,
+          readBlocks(response, 0, 0, length)[0],
+          headers.getETag(),
+          headers.getFirst(HttpHeaders.LAST_MODIFIED));
+    }
+  }
+
+  /** Get the length of a file from a <code>Content-Range</code> header, -1 if unknown. */
+  static long parseLength(@Nullable final String contentRange) {
+    if (contentRange == null) {
+      return -1;
+    }
+    final int slash = contentRange.lastIndexOf('/');
+    try {
+      return slash < 0 ? -1 : Long.parseLong(contentRange.substring(slash + 1).trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /** The length of the file. */
+  public long getLength() {
+    return this.length;
+  }
+
+  @Override
+  public String toString() {
+    return this.uri.toString();
+  }
+
+  private RangeBlockCache.Key key(final long index) {
+    return new RangeBlockCache.Key(this.uri.toString(), this.version, index);
+  }
+
+  /**
+   * Get the blocks of the file from the cache, the missing ones are fetched with one request per
+   * run of consecutive blocks.
+   *
+   * @param first the index of the first block
+   * @param last the index of the last block
+   */
+  List<byte[]> getBlocks(final long first, final long last) throws IOException {
+    final byte[][] blocks = new byte[(int) (last - first + 1)][];
+    for (int i = 0; i < blocks.length; i++) {
+      if (first + i == 0) {
+        // the header is read by all the streams
+        blocks[i] = this.firstBlock;
+      } else if (this.version != null) {
+        blocks[i] = this.cache.get(key(first + i));
+      }
+    }
+    int i = 0;
+    while (i < blocks.length) {
+      if (blocks[i] != null) {
+        i++;
+        continue;
+      }
+      int end = i;
+      while (end < blocks.length && blocks[end] == null && end - i < MAX_BLOCKS_PER_REQUEST) {
+        end++;
+      }
+      final byte[][] fetched = fetch(first + i, first + end - 1);
+      for (int j = 0; j < fetched.length; j++) {
+        blocks[i + j] = fetched[j];
+        if (this.version != null) {
+          this.cache.put(key(first + i + j), fetched[j]);
+        }
+      }
+      i = end;
+    }
+    return Arrays.asList(blocks);
+  }
+
+  private byte[][] fetch(final long first, final long last) throws IOException {
+    final long start = first * BLOCK_SIZE;
+    final long end = Math.min((last + 1) * BLOCK_SIZE, this.length) - 1;
+    final ClientHttpRequest request = this.requestFactory.createRequest(this.uri, HttpMethod.GET);
+    request.getHeaders().set(HttpHeaders.RANGE, "bytes=" + start + "-" + end);
+    try (ClientHttpResponse response = request.execute()) {
+      if (response.getStatusCode() != HttpStatus.PARTIAL_CONTENT) {
+        throw new IOException(
+            String.format(
+                "Unexpected status %s for the range %d-%d of %s",
+                response.getStatusCode(), start, end, this.uri));
+      }
+      final String responseEtag = response.getHeaders().getETag();
+      if (this.etag != null && responseEtag != null && !this.etag.equals(responseEtag)) {
+        throw new IOException(this.uri + " has changed while being read");
+      }
+      return readBlocks(response, first, last, this.length);
+    }
+  }
+
+  private static byte[][] readBlocks(
+      final ClientHttpResponse response, final long first, final long last, final long length)
+      throws IOException {
+    final byte[][] blocks = new byte[(int) (last - first + 1)][];
+    for (int i = 0; i < blocks.length; i++) {
+      final long start = (first + i) * BLOCK_SIZE;
+      final int size = (int) Math.min(BLOCK_SIZE, length - start);
+      blocks[i] = response.getBody().readNBytes(size);
+      if (blocks[i].length != size) {
+        throw new IOException("Unexpected end of the range starting at " + start);
+      }
+    }
+    return blocks;
+  }
+
+  /**
+   * An image input stream on a {@link RangeRequestImageSource}.
+   *
+   * <p>It keeps the last block read, so the small reads don't depend on the shared cache.
+   */
+  private static final class Stream extends ImageInputStreamImpl {
+    private final RangeRequestImageSource source;
+    private long blockIndex = -1;
+    private byte[] block;
+
+    private Stream(final RangeRequestImageSource source) {
+      this.source = source;
+    }
+
+    private byte[] getBlock(final long index) throws IOException {
+      if (index != this.blockIndex) {
+        this.block = this.source.getBlocks(index, index).getFirst();
+        this.blockIndex = index;
+      }
+      return this.block;
+    }
+
+    @Override
+    public int read() throws IOException {
+      checkClosed();
+      if (this.streamPos >= this.source.length) {
+        return -1;
+      }
+      this.bitOffset = 0;
+      final byte[] current = getBlock(this.streamPos / BLOCK_SIZE);
+      return current[(int) (this.streamPos++ % BLOCK_SIZE)] & 0xff;
+    }
+
+    @Override
+    public int read(@Nonnull final byte[] buffer, final int offset, final int len)
+        throws IOException {
+      checkClosed();
+      if (offset < 0 || len < 0 || offset + len > buffer.length) {
+        throw new IndexOutOfBoundsException();
+      }
+      if (len == 0) {
+        return 0;
+      }
+      if (this.streamPos >= this.source.length) {
+        return -1;
+      }
+      this.bitOffset = 0;
+      final int toRead = (int) Math.min(len, this.source.length - this.streamPos);
+      final long first = this.streamPos / BLOCK_SIZE;
+      final long last = (this.streamPos + toRead - 1) / BLOCK_SIZE;
+      final List<byte[]> blocks =
+          first == last ? List.of(getBlock(first)) : this.source.getBlocks(first, last);
+      int done = 0;
+      for (byte[] current : blocks) {
+        final int blockOffset = (int) (this.streamPos % BLOCK_SIZE);
+        final int count = Math.min(current.length - blockOffset, toRead - done);
+        System.arraycopy(current, blockOffset, buffer, offset + done, count);
+        done += count;
+        this.streamPos += count;
+      }
+      this.block = blocks.getLast();
+      this.blockIndex = last;
+      return done;
+    }
+
+    @Override
+    public long length() {
+      return this.source.length;
+    }
+  }
+
+  /** Creates the image input streams on the {@link RangeRequestImageSource}. */
+  public static final class Spi extends ImageInputStreamSpi {
+    /** Constructor. */
+    public Spi() {
+      super("MapFish", "1.0", RangeRequestImageSource.class);
+    }
+
+    @Override
+    public ImageInputStream createInputStreamInstance(
+        final Object input, final boolean useCache, final File cacheDir) {
+      return new Stream((RangeRequestImageSource) input);
+    }
+
+    @Override
+    public String getDescription(final Locale locale) {
+      return "Image input stream reading a remote file with HTTP range requests";
+    }
+  }
+}
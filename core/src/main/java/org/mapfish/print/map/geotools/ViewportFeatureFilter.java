@@ -0,0 +1,149 @@
+package org.mapfish.print.map.geotools;
+
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Puntal;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.locationtech.jts.simplify.DouglasPeuckerSimplifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Selects the features of an in memory collection that are visible on a map, and generalizes their
+ * geometries to the size of an output pixel.
+ *
+ * <p>The features are indexed once in an STR-tree, so every map (also the overview maps sharing
+ * the layer) only iterates the features intersecting its bounds instead of the whole collection.
+ */
+final class ViewportFeatureFilter {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ViewportFeatureFilter.class);
+  /**
+   * The margin in pixels added around the map bounds, so the symbols and strokes of the features
+   * just outside the map are still drawn.
+   */
+  private static final int MARGIN_PIXELS = 64;
+  /** The geometries with fewer points are not simplified. */
+  private static final int MIN_POINTS_TO_SIMPLIFY = 5;
+
+  private final SimpleFeatureType schema;
+  private final STRtree index = new STRtree();
+  private final List<SimpleFeature> features = new ArrayList<>();
+
+  /**
+   * Constructor, indexes the features.
+   *
+   * @param features the features
+   */
+  ViewportFeatureFilter(final SimpleFeatureCollection features) {
+    this.schema = features.getSchema();
+    try (SimpleFeatureIterator iterator = features.features()) {
+      while (iterator.hasNext()) {
+        final SimpleFeature feature = iterator.next();
+        final Geometry geometry = (Geometry) feature.getDefaultGeometry();
+        if (geometry != null && !geometry.isEmpty()) {
+          // the position is indexed, to keep the drawing order of the features
+          this.index.insert(geometry.getEnvelopeInternal(), this.features.size());
+        }
+        this.features.add(feature);
+      }
+    }
+    this.index.build();
+  }
+
+  /**
+   * Get the features visible on the map, with the geometries simplified.
+   *
+   * @param mapArea the bounds of the map
+   * @param mapSize the size of the map in pixels
+   * @return the features and the counters, null if the map bounds can't be expressed in the
+   *     coordinate system of the features
+   */
+  Result filter(final ReferencedEnvelope mapArea, final Dimension mapSize) {
+    final ReferencedEnvelope area = toFeaturesCrs(mapArea);
+    if (area == null || mapSize.width <= 0 || mapSize.height <= 0) {
+      return null;
+    }
+    final double pixelSize =
+        Math.min(area.getWidth() / mapSize.width, area.getHeight() / mapSize.height);
+    final Envelope queryEnvelope = new Envelope(area);
+    queryEnvelope.expandBy(pixelSize * MARGIN_PIXELS);
+
+    final List<Integer> positions = new ArrayList<>();
+    this.index.query(queryEnvelope, item -> positions.add((Integer) item));
+    Collections.sort(positions);
+
+    final SimpleFeatureBuilder builder = new SimpleFeatureBuilder(this.schema);
+    final List<SimpleFeature> visible = new ArrayList<>(positions.size());
+    int simplified = 0;
+    for (int position : positions) {
+      final SimpleFeature feature = this.features.get(position);
+      final Geometry geometry = (Geometry) feature.getDefaultGeometry();
+      final Geometry simplifiedGeometry = simplify(geometry, pixelSize);
+      if (simplifiedGeometry == geometry) {
+        visible.add(feature);
+      } else {
+        builder.init(feature);
+        final SimpleFeature copy = builder.buildFeature(feature.getID());
+        copy.setDefaultGeometry(simplifiedGeometry);
+        visible.add(copy);
+        simplified++;
+      }
+    }
+    return new Result(
+        new ListFeatureCollection(this.schema, visible),
+        this.features.size(),
+        this.features.size() - visible.size(),
+        simplified);
+  }
+
+  private ReferencedEnvelope toFeaturesCrs(final ReferencedEnvelope mapArea) {
+    final CoordinateReferenceSystem featuresCrs = this.schema.getCoordinateReferenceSystem();
+    if (featuresCrs == null
+        || mapArea.getCoordinateReferenceSystem() == null
+        || CRS.equalsIgnoreMetadata(featuresCrs, mapArea.getCoordinateReferenceSystem())) {
+      return mapArea;
+    }
+    try {
+      return mapArea.transform(featuresCrs, true);
+    } catch (Exception e) {
+      LOGGER.debug("Unable to transform the map bounds to the CRS of the features", e);
+      return null;
+    }
+  }
+
+  private static Geometry simplify(final Geometry geometry, final double tolerance) {
+    if (geometry instanceof Puntal || geometry.getNumPoints() < MIN_POINTS_TO_SIMPLIFY) {
+      return geometry;
+    }
+    final DouglasPeuckerSimplifier simplifier = new DouglasPeuckerSimplifier(geometry);
+    simplifier.setDistanceTolerance(tolerance);
+    // the invalid parts are smaller than a pixel, fixing them is not worth a buffer operation
+    simplifier.setEnsureValid(false);
+    final Geometry result = simplifier.getResultGeometry();
+    // a geometry smaller than a pixel collapses, the original one is kept to still draw a dot
+    return !result.isEmpty() && result.getNumPoints() < geometry.getNumPoints() ? result : geometry;
+  }
+
+  /**
+   * The result of the filter.
+   *
+   * @param features the visible features
+   * @param total the number of features in the collection
+   * @param culled the number of features outside the map
+   * @param simplified the number of features with a simplified geometry
+   */
+  record Result(SimpleFeatureCollection features, int total, int culled, int simplified) {}
+}
@@ -31,7 +31,7 @@ final class LineGridStrategy implements GridType.GridTypeStrategy {
   @Override
   public FeatureSourceSupplier createFeatureSource(
       final Template template, final GridParam layerData, final LabelPositionCollector labels) {
-    return (requestFactory, mapContext) -> {
+    return (requestFactory, mapContext, taskDirectory) -> {
       SimpleFeatureType featureType = GridUtils.createGridFeatureType(mapContext, LineString.class);
       SimpleFeatureBuilder featureBuilder = new SimpleFeatureBuilder(featureType);
       final DefaultFeatureCollection features;
@@ -30,7 +30,7 @@ class PointGridStrategy implements GridType.GridTypeStrategy {
   @Override
   public FeatureSourceSupplier createFeatureSource(
       final Template template, final GridParam layerData, final LabelPositionCollector labels) {
-    return (requestFactory, mapContext) -> {
+    return (requestFactory, mapContext, taskDirectory) -> {
       SimpleFeatureType featureType = GridUtils.createGridFeatureType(mapContext, Point.class);
       SimpleFeatureBuilder featureBuilder = new SimpleFeatureBuilder(featureType);
       final DefaultFeatureCollection features;
@@ -1,5 +1,6 @@
 package org.mapfish.print.map.image.wms;
 
+import java.awt.Dimension;
 import java.net.URISyntaxException;
 import java.util.Arrays;
 import org.locationtech.jts.util.Assert;
@@ -56,6 +57,27 @@ public class WmsLayerParam extends AbstractWMXLayerParams {
    */
   @HasDefaultValue public HttpMethod method = HttpMethod.GET;
 
+  /**
+   * The maximum size of the requested images, a two element array of integers: width, height in
+   * pixels. When the map needs a bigger image, for example at a high DPI, the layer is requested
+   * as a grid of tiles of at most this size that are fetched in parallel and stitched together, as
+   * with a tiled WMS layer. Useful for the servers with a MaxWidth or MaxHeight limit.
+   *
+   * <p>Default: no limit
+   */
+  @HasDefaultValue public int[] maxRequestSize;
+
+  /**
+   * The buffer around the tiles used when the layer is requested as a grid of tiles because of the
+   * maxRequestSize, a two element array of integers: width, height in pixels. Like the
+   * tileBufferWidth and tileBufferHeight of the setTiledWms processor, it avoids the labels and the
+   * symbols cut at the border of the tiles. The requested images, with their buffer, are still at
+   * most of the maxRequestSize.
+   *
+   * <p>Default: [0, 0]
+   */
+  @HasDefaultValue public int[] maxRequestTileBuffer;
+
   /** Constructor. */
   public WmsLayerParam() {
     super();
@@ -76,6 +98,8 @@ public class WmsLayerParam extends AbstractWMXLayerParams {
     this.serverType = other.serverType;
     this.imageFormat = other.imageFormat;
     this.method = other.method;
+    this.maxRequestSize = other.maxRequestSize;
+    this.maxRequestTileBuffer = other.maxRequestTileBuffer;
   }
 
   @Override
@@ -117,6 +141,48 @@ public class WmsLayerParam extends AbstractWMXLayerParams {
     Assert.isTrue(
         this.method == HttpMethod.GET || this.method == HttpMethod.POST,
         String.format("Unsupported method %s for WMS layer", this.method.toString()));
+
+    Assert.isTrue(
+        this.maxRequestSize == null
+            || (this.maxRequestSize.length == 2
+                && this.maxRequestSize[0] > 0
+                && this.maxRequestSize[1] > 0),
+        "The maxRequestSize parameter must have exactly two positive elements: width, height");
+
+    Assert.isTrue(
+        this.maxRequestTileBuffer == null
+            || (this.maxRequestTileBuffer.length == 2
+                && this.maxRequestTileBuffer[0] >= 0
+                && this.maxRequestTileBuffer[1] >= 0),
+        "The maxRequestTileBuffer parameter must have exactly two elements: width, height");
+    final Dimension maxSize = getMaxRequestSize();
+    final Dimension tileBuffer = getMaxRequestTileBuffer();
+    Assert.isTrue(
+        maxSize == null
+            || (2 * tileBuffer.width < maxSize.width && 2 * tileBuffer.height < maxSize.height),
+        "The maxRequestTileBuffer must be less than the half of the maxRequestSize");
+  }
+
+  /**
+   * Get the maximum size of the requested images.
+   *
+   * @return the size or null if there is no limit
+   */
+  public Dimension getMaxRequestSize() {
+    return this.maxRequestSize == null
+        ? null
+        : new Dimension(this.maxRequestSize[0], this.maxRequestSize[1]);
+  }
+
+  /**
+   * Get the buffer around the tiles when the layer is requested as a grid of tiles.
+   *
+   * @return the buffer, (0, 0) by default
+   */
+  public Dimension getMaxRequestTileBuffer() {
+    return this.maxRequestTileBuffer == null
+        ? new Dimension(0, 0)
+        : new Dimension(this.maxRequestTileBuffer[0], this.maxRequestTileBuffer[1]);
   }
 
   /** The WMS server type. */
@@ -106,7 +106,9 @@ public abstract class AbstractTiledLayer<T extends AbstractTiledLayerParams>
             this.registry,
             context,
             layerContext.tileInformation(),
-            this.configuration);
+            this.configuration,
+            getExecutorService(),
+            getName());
     final GridCoverage2D gridCoverage2D = task.call();
 
     GridCoverageLayer layer =
@@ -13,6 +13,20 @@ public abstract class AbstractTiledLayerParams extends AbstractLayerParams {
    */
   @HasDefaultValue public String rasterStyle = "raster";
 
+  /**
+   * The maximum number of tiles decoded in parallel. The tiles are drawn on the layer image as soon
+   * as they are decoded. With the default value (1) the tiles are decoded one after the other on
+   * the rendering thread.
+   */
+  @HasDefaultValue public int tileDecodingParallelism = 1;
+
+  /**
+   * Keep the tiles of this layer in the tile cache shared by all the print jobs of the server. The
+   * cache is keyed by the tile URL only, so it should only be enabled for layers whose tiles are
+   * the same for every user.
+   */
+  @HasDefaultValue public boolean sharedCache = false;
+
   /** Constructor. */
   protected AbstractTiledLayerParams() {
     super();
@@ -26,6 +40,8 @@ public abstract class AbstractTiledLayerParams extends AbstractLayerParams {
   protected AbstractTiledLayerParams(final AbstractTiledLayerParams other) {
     super(other);
     this.rasterStyle = other.rasterStyle;
+    this.tileDecodingParallelism = other.tileDecodingParallelism;
+    this.sharedCache = other.sharedCache;
   }
 
   /**
@@ -3,13 +3,21 @@ package org.mapfish.print.map.tiled;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.RecursiveTask;
 import javax.imageio.ImageIO;
 import org.apache.commons.io.IOUtils;
@@ -41,6 +49,8 @@ public final class CoverageTask implements Callable<GridCoverage2D> {
   private final MetricRegistry registry;
   private final Processor.ExecutionContext context;
   private final BufferedImage errorImage;
+  @Nullable private final ExecutorService executorService;
+  private final String baseMetricName;
 
   /**
    * Constructor.
@@ -51,6 +61,9 @@ public final class CoverageTask implements Callable<GridCoverage2D> {
    * @param context the job ID.
    * @param tileInformation the object used to create the tile requests.
    * @param configuration the configuration.
+   * @param executorService the fork join pool used to decode the tiles in parallel, with another
+   *     executor the tiles are decoded sequentially.
+   * @param layerName the name of the layer, used in the metrics.
    */
   CoverageTask(
       @Nonnull final TilePreparationInfo tilePreparationInfo,
@@ -58,12 +71,20 @@ public final class CoverageTask implements Callable<GridCoverage2D> {
       @Nonnull final MetricRegistry registry,
       @Nonnull final Processor.ExecutionContext context,
       @Nonnull final TileInformation<? extends AbstractTiledLayerParams> tileInformation,
-      @Nonnull final Configuration configuration) {
+      @Nonnull final Configuration configuration,
+      @Nullable final ExecutorService executorService,
+      @Nullable final String layerName) {
     this.tilePreparationInfo = tilePreparationInfo;
     this.context = context;
     this.tiledLayer = tileInformation;
     this.failOnError = failOnError;
     this.registry = registry;
+    this.executorService = executorService;
+    this.baseMetricName =
+        MetricRegistry.name(
+            CoverageTask.class.getName(),
+            StatsUtils.quotePart(
+                layerName == null || layerName.isEmpty() ? "unnamed" : layerName));
 
     final Dimension tileSize = this.tiledLayer.getTileSize();
     this.errorImage =
@@ -77,44 +98,23 @@ public final class CoverageTask implements Callable<GridCoverage2D> {
     }
   }
 
-  /** Call the Coverage Task. */
+  /**
+   * Call the Coverage Task. The total time, to wait for the tiles to be fetched and to draw them,
+   * is measured by the "total" timer of the layer.
+   */
   public GridCoverage2D call() {
-    try {
+    try (Timer.Context ignored =
+        this.registry.timer(MetricRegistry.name(this.baseMetricName, "total")).time()) {
       BufferedImage coverageImage =
           this.tiledLayer.createBufferedImage(
               this.tilePreparationInfo.imageWidth(), this.tilePreparationInfo.imageHeight());
       Graphics2D graphics = coverageImage.createGraphics();
       try {
-        for (SingleTilePreparationInfo tileInfo : this.tilePreparationInfo.singleTiles()) {
-          final Tile tile = getTile(tileInfo);
-          if (tile.image() != null) {
-            // crop the image here
-            BufferedImage noBufferTileImage;
-            if (this.tiledLayer.getTileBufferWidth() > 0
-                || this.tiledLayer.getTileBufferHeight() > 0) {
-              int noBufferWidth =
-                  Math.min(
-                      this.tiledLayer.getTileSize().width,
-                      tile.image().getWidth() - this.tiledLayer.getTileBufferWidth());
-              int noBufferHeight =
-                  Math.min(
-                      this.tiledLayer.getTileSize().height,
-                      tile.image().getHeight() - this.tiledLayer.getTileBufferHeight());
-              noBufferTileImage =
-                  tile.image()
-                      .getSubimage(
-                          this.tiledLayer.getTileBufferWidth(),
-                          this.tiledLayer.getTileBufferHeight(),
-                          noBufferWidth,
-                          noBufferHeight);
-            } else {
-              noBufferTileImage = tile.image();
-            }
-            graphics.drawImage(
-                noBufferTileImage,
-                tile.xIndex() * this.tiledLayer.getTileSize().width,
-                tile.yIndex() * this.tiledLayer.getTileSize().height,
-                null);
+        if (useParallelDecoding()) {
+          drawTilesInParallel(graphics);
+        } else {
+          for (SingleTilePreparationInfo tileInfo : this.tilePreparationInfo.singleTiles()) {
+            drawTile(graphics, decodeTile(createTileTask(tileInfo)));
           }
         }
       } finally {
@@ -135,24 +135,114 @@ public final class CoverageTask implements Callable<GridCoverage2D> {
     }
   }
 
-  private Tile getTile(final SingleTilePreparationInfo tileInfo) {
-    final TileTask task;
+  private boolean useParallelDecoding() {
+    return this.executorService instanceof ForkJoinPool
+        && this.tiledLayer.getParams().tileDecodingParallelism > 1
+        && this.tilePreparationInfo.singleTiles().size() > 1;
+  }
+
+  /**
+   * Decode the tiles on the fork join pool, at most tileDecodingParallelism at a time, and draw
+   * them in their order. The drawing is always done on the calling thread since the graphics are
+   * not thread safe.
+   *
+   * <p>When called from a worker of the pool, the tile tasks are forked and joined, so the worker
+   * decodes the queued tiles while it waits instead of blocking a thread of the pool.
+   */
+  private void drawTilesInParallel(final Graphics2D graphics) {
+    final ForkJoinPool pool = (ForkJoinPool) this.executorService;
+    final boolean inPool = ForkJoinTask.getPool() == pool;
+    final List<SingleTilePreparationInfo> tileInfos = this.tilePreparationInfo.singleTiles();
+    final int parallelism = this.tiledLayer.getParams().tileDecodingParallelism;
+    final List<ForkJoinTask<Tile>> tasks = new ArrayList<>(tileInfos.size());
+    final Deque<ForkJoinTask<Tile>> running = new ArrayDeque<>();
+    final Timer waitTimer = this.registry.timer(MetricRegistry.name(this.baseMetricName, "wait"));
+    try {
+      for (SingleTilePreparationInfo tileInfo : tileInfos) {
+        if (running.size() >= parallelism) {
+          drawTile(graphics, joinTile(running.poll(), waitTimer));
+        }
+        this.context.stopIfCanceled();
+        final TileTask tileTask = createTileTask(tileInfo);
+        final ForkJoinTask<Tile> task = ForkJoinTask.adapt(() -> decodeTile(tileTask));
+        if (inPool) {
+          task.fork();
+        } else {
+          pool.execute(task);
+        }
+        tasks.add(task);
+        running.add(task);
+      }
+      while (!running.isEmpty()) {
+        drawTile(graphics, joinTile(running.poll(), waitTimer));
+      }
+    } finally {
+      for (ForkJoinTask<Tile> task : tasks) {
+        task.cancel(true);
+      }
+    }
+  }
+
+  private Tile joinTile(final ForkJoinTask<Tile> task, final Timer waitTimer) {
+    this.context.stopIfCanceled();
+    try (Timer.Context ignored = waitTimer.time()) {
+      return task.join();
+    }
+  }
+
+  private Tile decodeTile(final TileTask task) {
+    try (Timer.Context ignored =
+        this.registry.timer(MetricRegistry.name(this.baseMetricName, "decode")).time()) {
+      return task.call();
+    }
+  }
+
+  private void drawTile(final Graphics2D graphics, final Tile tile) {
+    if (tile.image() == null) {
+      return;
+    }
+    // crop the image here
+    BufferedImage noBufferTileImage;
+    if (this.tiledLayer.getTileBufferWidth() > 0 || this.tiledLayer.getTileBufferHeight() > 0) {
+      int noBufferWidth =
+          Math.min(
+              this.tiledLayer.getTileSize().width,
+              tile.image().getWidth() - this.tiledLayer.getTileBufferWidth());
+      int noBufferHeight =
+          Math.min(
+              this.tiledLayer.getTileSize().height,
+              tile.image().getHeight() - this.tiledLayer.getTileBufferHeight());
+      noBufferTileImage =
+          tile.image()
+              .getSubimage(
+                  this.tiledLayer.getTileBufferWidth(),
+                  this.tiledLayer.getTileBufferHeight(),
+                  noBufferWidth,
+                  noBufferHeight);
+    } else {
+      noBufferTileImage = tile.image();
+    }
+    graphics.drawImage(
+        noBufferTileImage,
+        tile.xIndex() * this.tiledLayer.getTileSize().width,
+        tile.yIndex() * this.tiledLayer.getTileSize().height,
+        null);
+  }
+
+  private TileTask createTileTask(final SingleTilePreparationInfo tileInfo) {
     if (tileInfo.tileRequest() != null) {
-      task =
-          new SingleTileLoaderTask(
-              tileInfo.tileRequest(),
-              this.errorImage,
-              tileInfo.tileIndexX(),
-              tileInfo.tileIndexY(),
-              this.failOnError,
-              this.registry,
-              this.context);
+      return new SingleTileLoaderTask(
+          tileInfo.tileRequest(),
+          this.errorImage,
+          tileInfo.tileIndexX(),
+          tileInfo.tileIndexY(),
+          this.failOnError,
+          this.registry,
+          this.context);
     } else {
-      task =
-          new PlaceHolderImageTask(
-              this.tiledLayer.getMissingTileImage(), tileInfo.tileIndexX(), tileInfo.tileIndexY());
+      return new PlaceHolderImageTask(
+          this.tiledLayer.getMissingTileImage(), tileInfo.tileIndexX(), tileInfo.tileIndexY());
     }
-    return task.call();
   }
 
   /** Tile Task. */
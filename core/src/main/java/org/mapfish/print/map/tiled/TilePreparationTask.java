@@ -161,7 +161,8 @@ public final class TilePreparationTask implements Callable<TilePreparationInfo>
                         row);
                 if (isInTileCacheBounds(tileCacheBounds, tileBounds)) {
                   if (isTileVisible(tileBounds)) {
-                    tileRequest = this.request.register(tileRequest);
+                    tileRequest =
+                        this.request.register(tileRequest, this.tiledLayer.getParams().sharedCache);
                     tiles.add(new SingleTilePreparationInfo(xIndex, yIndex, tileRequest));
                   }
                 } else {
@@ -2,7 +2,6 @@ package org.mapfish.print.output;
 
 import com.google.common.annotations.VisibleForTesting;
 import jakarta.annotation.Nonnull;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -22,10 +21,6 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.atomic.AtomicBoolean;
-import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import net.sf.jasperreports.engine.DefaultJasperReportsContext;
 import net.sf.jasperreports.engine.JRDataSource;
 import net.sf.jasperreports.engine.JREmptyDataSource;
@@ -38,6 +33,7 @@ import net.sf.jasperreports.engine.SimpleJasperReportsContext;
 import net.sf.jasperreports.engine.data.JRMapCollectionDataSource;
 import net.sf.jasperreports.engine.design.JRDesignField;
 import net.sf.jasperreports.renderers.Renderable;
+import net.sf.jasperreports.repo.FileRepositoryService;
 import net.sf.jasperreports.repo.RepositoryService;
 import org.locationtech.jts.util.AssertionFailedException;
 import org.mapfish.print.Constants;
@@ -47,19 +43,17 @@ import org.mapfish.print.config.Configuration;
 import org.mapfish.print.config.Template;
 import org.mapfish.print.config.WorkingDirectories;
 import org.mapfish.print.http.MfClientHttpRequestFactoryImpl;
+import org.mapfish.print.processor.ExecutionStats;
 import org.mapfish.print.processor.Processor;
 import org.mapfish.print.processor.ProcessorDependencyGraph;
 import org.mapfish.print.processor.http.MfClientHttpRequestFactoryProvider;
 import org.mapfish.print.processor.jasper.JasperReportBuilder;
+import org.mapfish.print.processor.jasper.StreamingDataSource;
 import org.mapfish.print.wrapper.json.PJsonObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
 /** The AbstractJasperReportOutputFormat class. */
 public abstract class AbstractJasperReportOutputFormat implements OutputFormat {
@@ -72,6 +66,8 @@ public abstract class AbstractJasperReportOutputFormat implements OutputFormat {
 
   @Autowired private MfClientHttpRequestFactoryImpl httpRequestFactory;
 
+  @Autowired private JasperReportCache jasperReportCache;
+
   @Value("${httpRequest.fetchRetry.maxNumber}")
   private int httpRequestMaxNumberFetchRetry;
 
@@ -102,14 +98,26 @@ public abstract class AbstractJasperReportOutputFormat implements OutputFormat {
       throw new CancellationException();
     }
 
-    doExport(outputStream, print);
+    try (ExecutionStats.Timing ignored =
+        print.executionContext.getStats().startTiming("output", "export")) {
+      doExport(outputStream, print);
+    }
 
     return print.executionContext;
   }
 
   private JasperFillManager getJasperFillManager(
-      final MfClientHttpRequestFactoryProvider httpRequestFactoryProvider) {
-    JasperReportsContext ctx = getJasperReportsContext(httpRequestFactoryProvider);
+      final MfClientHttpRequestFactoryProvider httpRequestFactoryProvider,
+      final File jasperTemplateBuild) {
+    // Like when filling from a file, resolve the subreports relatively to the compiled report.
+    SimpleJasperReportsContext ctx =
+        new SimpleJasperReportsContext(DefaultJasperReportsContext.getInstance());
+    ctx.setExtensions(
+        RepositoryService.class,
+        List.of(
+            new FileRepositoryService(
+                ctx, jasperTemplateBuild.getParentFile().getAbsolutePath(), false),
+            new MapfishPrintRepositoryService(httpRequestFactoryProvider.get())));
     return JasperFillManager.getInstance(ctx);
   }
 
@@ -187,12 +195,14 @@ public abstract class AbstractJasperReportOutputFormat implements OutputFormat {
     JasperFillManager fillManager =
         getJasperFillManager(
             values.getObject(
-                Values.CLIENT_HTTP_REQUEST_FACTORY_KEY, MfClientHttpRequestFactoryProvider.class));
+                Values.CLIENT_HTTP_REQUEST_FACTORY_KEY, MfClientHttpRequestFactoryProvider.class),
+            jasperTemplateBuild);
 
-    checkRequiredValues(config, values, template.getReportTemplate());
+    final JasperReportCache.CachedReport report =
+        this.jasperReportCache.get(config, template.getReportTemplate(), jasperTemplateBuild);
+    checkRequiredValues(report, values, template.getReportTemplate());
 
     final JasperPrint print;
-
     for (String jdbcDriver : template.getJdbcDrivers()) {
       try {
         Class.forName(jdbcDriver);
@@ -204,47 +214,55 @@ public abstract class AbstractJasperReportOutputFormat implements OutputFormat {
                     + " ensure that the web application has the jar on its classpath"));
       }
     }
-    if (template.getJdbcUrl() != null) {
-      Connection connection = null;
-      try {
-        if (template.getJdbcUser() != null) {
-          connection =
-              DriverManager.getConnection(
-                  template.getJdbcUrl(), template.getJdbcUser(), template.getJdbcPassword());
-        } else {
-          connection = DriverManager.getConnection(template.getJdbcUrl());
-        }
+    final ExecutionStats.Timing fillTiming =
+        task.getExecutionContext().getStats().startTiming("output", "fill");
+    try {
+      if (template.getJdbcUrl() != null) {
+        Connection connection = null;
+        try {
+          if (template.getJdbcUser() != null) {
+            connection =
+                DriverManager.getConnection(
+                    template.getJdbcUrl(), template.getJdbcUser(), template.getJdbcPassword());
+          } else {
+            connection = DriverManager.getConnection(template.getJdbcUrl());
+          }
 
-        print = fillManager.fill(jasperTemplateBuild.getAbsolutePath(), values.asMap(), connection);
-      } finally {
-        if (connection != null && !connection.isClosed()) {
-          connection.close();
+          print = fillManager.fill(report.report(), values.asMap(), connection);
+        } finally {
+          if (connection != null && !connection.isClosed()) {
+            connection.close();
+          }
         }
-      }
-    } else {
-      JRDataSource dataSource;
-      if (template.getTableDataKey() != null) {
-        final Object dataSourceObj = values.getObject(template.getTableDataKey(), Object.class);
-        if (dataSourceObj instanceof JRDataSource) {
-          dataSource = (JRDataSource) dataSourceObj;
-        } else if (dataSourceObj instanceof Iterable sourceObj) {
-          dataSource = toJRDataSource(sourceObj.iterator());
-        } else if (dataSourceObj instanceof Iterator sourceObj) {
-          dataSource = toJRDataSource(sourceObj);
-        } else if (dataSourceObj.getClass().isArray()) {
-          Object[] sourceObj = (Object[]) dataSourceObj;
-          dataSource = toJRDataSource(Arrays.asList(sourceObj).iterator());
+      } else {
+        JRDataSource dataSource;
+        if (template.getTableDataKey() != null) {
+          final Object dataSourceObj = values.getObject(template.getTableDataKey(), Object.class);
+          if (dataSourceObj instanceof JRDataSource) {
+            dataSource = (JRDataSource) dataSourceObj;
+          } else if (dataSourceObj instanceof Iterable sourceObj) {
+            dataSource = toJRDataSource(sourceObj.iterator());
+          } else if (dataSourceObj instanceof Iterator sourceObj) {
+            dataSource = toJRDataSource(sourceObj);
+          } else if (dataSourceObj.getClass().isArray()) {
+            Object[] sourceObj = (Object[]) dataSourceObj;
+            dataSource = toJRDataSource(Arrays.asList(sourceObj).iterator());
+          } else {
+            throw new AssertionError(
+                String.format(
+                    "Objects of type: %s cannot be converted to a row in a " + "JRDataSource",
+                    dataSourceObj.getClass()));
+          }
         } else {
-          throw new AssertionError(
-              String.format(
-                  "Objects of type: %s cannot be converted to a row in a " + "JRDataSource",
-                  dataSourceObj.getClass()));
+          dataSource = new JREmptyDataSource();
         }
-      } else {
-        dataSource = new JREmptyDataSource();
+        checkRequiredFields(report, dataSource, template.getReportTemplate());
+        print = fillManager.fill(report.report(), values.asMap(), dataSource);
       }
-      checkRequiredFields(config, dataSource, template.getReportTemplate());
-      print = fillManager.fill(jasperTemplateBuild.getAbsolutePath(), values.asMap(), dataSource);
+    } finally {
+      fillTiming.stop();
+      // stop the rows of the streaming DataSources that have not been read
+      StreamingDataSource.cancelAll(values.asMap());
     }
     print.setProperty(Renderable.PROPERTY_IMAGE_DPI, String.valueOf(Math.round(maxDpi)));
     return new Print(
@@ -258,23 +276,20 @@ public abstract class AbstractJasperReportOutputFormat implements OutputFormat {
   }
 
   private void checkRequiredFields(
-      final Configuration configuration,
+      final JasperReportCache.CachedReport report,
       final JRDataSource dataSource,
       final String reportTemplate) {
     if (dataSource instanceof JRRewindableDataSource source) {
       StringBuilder wrongType = new StringBuilder();
       try {
+        JRDesignField field = new JRDesignField();
         while (source.next()) {
-          final Document document = parseXML(configuration, reportTemplate);
-          final NodeList parameters = document.getElementsByTagName("field");
-          JRDesignField field = new JRDesignField();
-          for (int i = 0; i < parameters.getLength(); i++) {
-            final Element param = (Element) parameters.item(i);
-            final String name = param.getAttribute("name");
+          for (JasperReportCache.Declaration declaration : report.fields()) {
+            final String name = declaration.name();
             field.setName(name);
             Object fieldValue = dataSource.getFieldValue(field);
             if (fieldValue != null) {
-              final String type = param.getAttribute("class");
+              final String type = declaration.className();
               Class<?> clazz = Class.forName(type);
               if (!clazz.isInstance(fieldValue)) {
                 wrongType
@@ -294,11 +309,7 @@ public abstract class AbstractJasperReportOutputFormat implements OutputFormat {
           }
         }
         source.moveFirst();
-      } catch (JRException
-          | ParserConfigurationException
-          | IOException
-          | ClassNotFoundException
-          | SAXException e) {
+      } catch (JRException | ClassNotFoundException e) {
         throw new PrintException("Checking required fields failed", e);
       }
 
@@ -308,26 +319,20 @@ public abstract class AbstractJasperReportOutputFormat implements OutputFormat {
   }
 
   private void checkRequiredValues(
-      final Configuration configuration, final Values values, final String reportTemplate) {
+      final JasperReportCache.CachedReport report,
+      final Values values,
+      final String reportTemplate) {
     StringBuilder missing = new StringBuilder();
     StringBuilder wrongType = new StringBuilder();
     try {
-
-      final Document document = parseXML(configuration, reportTemplate);
-      final NodeList parameters = document.getElementsByTagName("parameter");
-      for (int i = 0; i < parameters.getLength(); i++) {
-        final Element param = (Element) parameters.item(i);
-        final String name = param.getAttribute("name");
-        if (param.getParentNode() != null
-            && !"jasperReport".equals(param.getParentNode().getNodeName())) {
-          continue;
-        }
+      for (JasperReportCache.Declaration declaration : report.parameters()) {
+        final String name = declaration.name();
         if (!values.containsKey(name)) {
-          if (param.getElementsByTagName("defaultValueExpression").getLength() == 0) {
+          if (!declaration.hasDefaultValue()) {
             missing.append("\t* ").append(name).append("\n");
           }
         } else {
-          final String type = param.getAttribute("class");
+          final String type = declaration.className();
           Class<?> clazz = Class.forName(type);
           Object value = values.getObject(name, Object.class);
           if (!clazz.isInstance(value)) {
@@ -336,7 +341,7 @@ public abstract class AbstractJasperReportOutputFormat implements OutputFormat {
           }
         }
       }
-    } catch (ParserConfigurationException | IOException | SAXException | ClassNotFoundException e) {
+    } catch (ClassNotFoundException e) {
       throw new PrintException("Checking required values failed", e);
     }
 
@@ -377,24 +382,6 @@ public abstract class AbstractJasperReportOutputFormat implements OutputFormat {
     }
   }
 
-  private Document parseXML(final Configuration configuration, final String reportTemplate)
-      throws ParserConfigurationException, IOException, SAXException {
-    final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-    factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-    factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
-    factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
-    factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
-    factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-    factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-    factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
-    factory.setXIncludeAware(false);
-    factory.setExpandEntityReferences(false);
-    factory.setValidating(false);
-    final DocumentBuilder documentBuilder = factory.newDocumentBuilder();
-    final byte[] bytes = configuration.loadFile(reportTemplate);
-    return documentBuilder.parse(new ByteArrayInputStream(bytes));
-  }
-
   private JasperReportsContext getJasperReportsContext(
       final MfClientHttpRequestFactoryProvider httpRequestFactoryProvider) {
     SimpleJasperReportsContext ctx =
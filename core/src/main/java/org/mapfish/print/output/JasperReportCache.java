@@ -0,0 +1,179 @@
+package org.mapfish.print.output;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import jakarta.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperReport;
+import net.sf.jasperreports.engine.util.JRLoader;
+import org.mapfish.print.PrintException;
+import org.mapfish.print.config.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Keeps the compiled Jasper reports and the parameters and fields declared in their templates in
+ * memory, to avoid deserializing the compiled report and parsing the template for each print.
+ *
+ * <p>The entries are per configuration and are dropped when the configuration is reloaded. An
+ * entry is also reloaded when its compiled report file changes.
+ */
+public class JasperReportCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(JasperReportCache.class);
+
+  private final Map<Configuration, Map<File, CachedReport>> templates =
+      Collections.synchronizedMap(new WeakHashMap<>());
+
+  @Autowired private MetricRegistry metricRegistry;
+
+  private static String metricName(final String name) {
+    return MetricRegistry.name(JasperReportCache.class.getSimpleName(), name);
+  }
+
+  /**
+   * Get the compiled report and the declarations of a template, loading them if needed.
+   *
+   * @param configuration the configuration the template belongs to
+   * @param reportTemplate the path of the template (jrxml) relative to the configuration
+   * @param compiledReport the compiled report file
+   * @return the compiled report and the declarations of the template
+   */
+  @Nonnull
+  public final CachedReport get(
+      final Configuration configuration, final String reportTemplate, final File compiledReport) {
+    final Map<File, CachedReport> configurationTemplates =
+        this.templates.computeIfAbsent(configuration, key -> new ConcurrentHashMap<>());
+    final long lastModified = compiledReport.lastModified();
+    final CachedReport cached = configurationTemplates.get(compiledReport);
+    if (cached != null && cached.lastModified() == lastModified) {
+      this.metricRegistry.counter(metricName("hit")).inc();
+      this.metricRegistry
+          .counter(metricName("savedTime"))
+          .inc(TimeUnit.NANOSECONDS.toMillis(cached.loadTime()));
+      return cached;
+    }
+    return configurationTemplates.compute(
+        compiledReport,
+        (key, current) -> {
+          if (current != null && current.lastModified() == lastModified) {
+            return current;
+          }
+          this.metricRegistry.counter(metricName("miss")).inc();
+          return load(configuration, reportTemplate, compiledReport, lastModified);
+        });
+  }
+
+  /**
+   * Drop all the entries of a configuration.
+   *
+   * @param configuration the configuration
+   */
+  public final void invalidate(final Configuration configuration) {
+    this.templates.remove(configuration);
+  }
+
+  private CachedReport load(
+      final Configuration configuration,
+      final String reportTemplate,
+      final File compiledReport,
+      final long lastModified) {
+    LOGGER.debug("Loading the Jasper report {}", compiledReport);
+    final long start = System.nanoTime();
+    try (Timer.Context ignored = this.metricRegistry.timer(metricName("load")).time()) {
+      final JasperReport report = (JasperReport) JRLoader.loadObject(compiledReport);
+      final Document document = parseXML(configuration.loadFile(reportTemplate));
+
+      final List<Declaration> parameters = new ArrayList<>();
+      final NodeList parameterNodes = document.getElementsByTagName("parameter");
+      for (int i = 0; i < parameterNodes.getLength(); i++) {
+        final Element param = (Element) parameterNodes.item(i);
+        if (param.getParentNode() != null
+            && !"jasperReport".equals(param.getParentNode().getNodeName())) {
+          continue;
+        }
+        parameters.add(
+            new Declaration(
+                param.getAttribute("name"),
+                param.getAttribute("class"),
+                param.getElementsByTagName("defaultValueExpression").getLength() > 0));
+      }
+
+      final List<Declaration> fields = new ArrayList<>();
+      final NodeList fieldNodes = document.getElementsByTagName("field");
+      for (int i = 0; i < fieldNodes.getLength(); i++) {
+        final Element field = (Element) fieldNodes.item(i);
+        fields.add(new Declaration(field.getAttribute("name"), field.getAttribute("class"), false));
+      }
+
+      return new CachedReport(
+          report,
+          Collections.unmodifiableList(parameters),
+          Collections.unmodifiableList(fields),
+          lastModified,
+          System.nanoTime() - start);
+    } catch (JRException | IOException | ParserConfigurationException | SAXException e) {
+      throw new PrintException("Failed to load the Jasper report " + reportTemplate, e);
+    }
+  }
+
+  private static Document parseXML(final byte[] bytes)
+      throws ParserConfigurationException, IOException, SAXException {
+    final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+    factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+    factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+    factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+    factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+    factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+    factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+    factory.setXIncludeAware(false);
+    factory.setExpandEntityReferences(false);
+    factory.setValidating(false);
+    final DocumentBuilder documentBuilder = factory.newDocumentBuilder();
+    return documentBuilder.parse(new ByteArrayInputStream(bytes));
+  }
+
+  /**
+   * A parameter or a field declared in a template.
+   *
+   * @param name the name
+   * @param className the class of the expected value
+   * @param hasDefaultValue true if a default value expression is declared
+   */
+  public record Declaration(String name, String className, boolean hasDefaultValue) {}
+
+  /**
+   * A loaded report.
+   *
+   * @param report the compiled report
+   * @param parameters the parameters declared at the top level of the template
+   * @param fields the fields declared in the template
+   * @param lastModified the modification time of the compiled report file
+   * @param loadTime the time it took to load the template, in nanoseconds
+   */
+  public record CachedReport(
+      JasperReport report,
+      List<Declaration> parameters,
+      List<Declaration> fields,
+      long lastModified,
+      long loadTime) {}
+}
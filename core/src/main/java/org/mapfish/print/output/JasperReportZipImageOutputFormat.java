@@ -0,0 +1,91 @@
+package org.mapfish.print.output;
+
+import static org.mapfish.print.Constants.PDF_DPI;
+import static org.mapfish.print.output.JasperReportImageOutputFormat.IMAGE_TYPES;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CancellationException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperPrint;
+import net.sf.jasperreports.engine.JasperPrintManager;
+import org.mapfish.print.ImageUtils;
+
+/**
+ * An image output format that uses Jasper reports to generate the result, with one image per page
+ * in a ZIP file.
+ *
+ * <p>Unlike {@link JasperReportImageOutputFormat}, that draws all the pages in a single image, the
+ * pages are rendered and encoded one after the other, so only one page is kept in memory.
+ */
+public final class JasperReportZipImageOutputFormat extends AbstractJasperReportOutputFormat
+    implements OutputFormat {
+
+  private String imageFormat;
+
+  @Override
+  public String getContentType() {
+    return "application/zip";
+  }
+
+  @Override
+  public String getFileSuffix() {
+    return "zip";
+  }
+
+  /**
+   * The format of the page images, one of the keys of {@link
+   * JasperReportImageOutputFormat#IMAGE_TYPES}.
+   *
+   * @param imageFormat the image format
+   */
+  public void setImageFormat(final String imageFormat) {
+    this.imageFormat = imageFormat;
+  }
+
+  @Override
+  protected void doExport(final OutputStream outputStream, final Print print)
+      throws JRException, IOException {
+    JasperPrint jasperPrint = print.print();
+    final int numPages = jasperPrint.getPages().size();
+
+    final float dpiRatio = (float) (print.dpi() / PDF_DPI);
+    final int pageHeightOnImage = (int) (jasperPrint.getPageHeight() * dpiRatio);
+    final int pageWidthOnImage = (int) (jasperPrint.getPageWidth() * dpiRatio);
+    final int imageType = IMAGE_TYPES.get(this.imageFormat.toLowerCase());
+    final JasperPrintManager printManager = JasperPrintManager.getInstance(print.context());
+
+    // the output stream is closed by the caller
+    final ZipOutputStream zip = new ZipOutputStream(outputStream);
+    for (int pageIndex = 0; pageIndex < numPages; pageIndex++) {
+      if (Thread.currentThread().isInterrupted()) {
+        throw new CancellationException();
+      }
+      final BufferedImage pageImage =
+          new BufferedImage(pageWidthOnImage, pageHeightOnImage, imageType);
+      final Graphics2D graphics2D = pageImage.createGraphics();
+      try {
+        if (imageType != BufferedImage.TYPE_4BYTE_ABGR) {
+          graphics2D.setColor(Color.WHITE);
+          graphics2D.fillRect(0, 0, pageWidthOnImage, pageHeightOnImage);
+        }
+        final Image page = printManager.printToImage(jasperPrint, pageIndex, dpiRatio);
+        graphics2D.drawImage(page, 0, 0, pageWidthOnImage, pageHeightOnImage, null);
+      } finally {
+        graphics2D.dispose();
+      }
+
+      zip.putNextEntry(
+          new ZipEntry(String.format("page-%d.%s", pageIndex + 1, this.imageFormat)));
+      ImageUtils.writeImage(pageImage, this.imageFormat, zip);
+      zip.closeEntry();
+    }
+    zip.finish();
+  }
+}
@@ -17,6 +17,7 @@ import org.mapfish.print.Constants;
 import org.mapfish.print.config.Configuration;
 import org.mapfish.print.config.Template;
 import org.mapfish.print.http.MfClientHttpRequestFactoryImpl;
+import org.mapfish.print.processor.ExecutionStats;
 import org.mapfish.print.processor.Processor;
 import org.mapfish.print.processor.ProcessorDependencyGraph;
 import org.mapfish.print.processor.map.CreateMapProcessor;
@@ -127,7 +128,9 @@ public class MapExportOutputFormat implements OutputFormat {
       throw new IllegalStateException(e); // can't really happen
     }
 
-    try (FileInputStream is = new FileInputStream(mapSubReport)) {
+    try (ExecutionStats.Timing ignored =
+            task.getExecutionContext().getStats().startTiming("output", "export");
+        FileInputStream is = new FileInputStream(mapSubReport)) {
       IOUtils.copy(is, outputStream);
     }
     return task.getExecutionContext();
@@ -1,10 +1,16 @@
 package org.mapfish.print.processor;
 
+import jakarta.annotation.Nullable;
 import java.awt.Dimension;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import javax.mail.internet.InternetAddress;
 import net.sf.jasperreports.engine.PrintPageFormat;
+import org.mapfish.print.Constants;
 import org.mapfish.print.attribute.map.MapAttribute;
 import org.mapfish.print.attribute.map.MapfishMapContext;
 import tools.jackson.databind.node.ArrayNode;
@@ -13,10 +19,16 @@ import tools.jackson.databind.node.ObjectNode;
 
 /** Statisctics about the execution of a print job. */
 public class ExecutionStats {
+  private static final int BYTES_PER_PIXEL = 4;
+  private static final String PROCESSORS_STEP = "processors";
   private final List<MapStats> mapStats = new ArrayList<>();
   private final List<PageStats> pageStats = new ArrayList<>();
+  private final List<VectorLayerStats> vectorLayerStats = new ArrayList<>();
   private final List<String> emailDests = new ArrayList<>();
+  private final Map<List<String>, TimingStats> timings = new LinkedHashMap<>();
   private boolean storageUsed = false;
+  private long rasterMemory = 0;
+  private long peakRasterMemory = 0;
 
   /**
    * Add statistics about a created map.
@@ -29,12 +41,25 @@ public class ExecutionStats {
     this.mapStats.add(new MapStats(mapContext, mapValues));
   }
 
+  /**
+   * Add statistics about a vector layer rendered with only its visible features.
+   *
+   * @param name the name of the layer
+   * @param features the number of features of the layer
+   * @param culled the number of features not rendered because they are outside the map
+   * @param simplified the number of features rendered with a simplified geometry
+   */
+  public synchronized void addVectorLayerStats(
+      final String name, final int features, final int culled, final int simplified) {
+    this.vectorLayerStats.add(new VectorLayerStats(name, features, culled, simplified));
+  }
+
   /**
    * Add statistics about a generated page.
    *
    * @param pageFormat Page format info from Jasper
    */
-  public void addPageStats(final PrintPageFormat pageFormat) {
+  public synchronized void addPageStats(final PrintPageFormat pageFormat) {
     this.pageStats.add(new PageStats(pageFormat));
   }
 
@@ -44,23 +69,220 @@ public class ExecutionStats {
    * @param recipients The list of recipients.
    * @param storageUsed If a remote storage was used.
    */
-  public void addEmailStats(final InternetAddress[] recipients, final boolean storageUsed) {
+  public synchronized void addEmailStats(
+      final InternetAddress[] recipients, final boolean storageUsed) {
     this.storageUsed = storageUsed;
     for (InternetAddress recipient : recipients) {
       emailDests.add(recipient.getAddress());
     }
   }
 
+  /**
+   * Start timing a step of the job, stopped with {@link Timing#stop()}.
+   *
+   * <p>The steps are hierarchical, e.g. <code>startTiming("processors", "CreateMapProcessor")
+   * </code> is a child of the <code>processors</code> step. A step run several times is
+   * accumulated.
+   *
+   * @param path the path of the step in the profile
+   * @return the running timing
+   */
+  public Timing startTiming(final String... path) {
+    return new Timing(List.of(path));
+  }
+
+  /**
+   * Add the timing of a step of the job.
+   *
+   * @param start the start of the step, from {@link System#nanoTime()}
+   * @param duration the duration of the step in nanoseconds
+   * @param path the path of the step in the profile, see {@link #startTiming(String...)}
+   */
+  public void addTiming(final long start, final long duration, final String... path) {
+    addTiming(List.of(path), start, duration);
+  }
+
+  private synchronized void addTiming(
+      final List<String> path, final long start, final long duration) {
+    // make sure the parents exist, for the steps that aren't timed themselves
+    for (int i = 1; i < path.size(); i++) {
+      this.timings.computeIfAbsent(path.subList(0, i), p -> new TimingStats()).start(start);
+    }
+    this.timings.computeIfAbsent(path, p -> new TimingStats()).add(start, duration);
+  }
+
+  /**
+   * Get the total duration of each timed step.
+   *
+   * @return the durations in nanoseconds by path
+   */
+  public synchronized Map<List<String>, Long> getTimings() {
+    final Map<List<String>, Long> result = new LinkedHashMap<>();
+    for (Map.Entry<List<String>, TimingStats> timing : this.timings.entrySet()) {
+      if (timing.getValue().count > 0) {
+        result.put(timing.getKey(), timing.getValue().duration);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Get the total duration of the timed steps by metric name. The names only use a bounded set of
+   * tags, so the number of metrics doesn't grow with the requests: the steps are limited to two
+   * levels, the processors are named by their class, and their sub steps (like the prefetch and
+   * the render of the layers) are aggregated by kind.
+   *
+   * @return the durations in nanoseconds by metric name
+   */
+  public synchronized Map<List<String>, Long> getMetricTimings() {
+    final Map<List<String>, Long> result = new LinkedHashMap<>();
+    for (Map.Entry<List<String>, TimingStats> timing : this.timings.entrySet()) {
+      if (timing.getValue().count > 0) {
+        result.merge(getMetricPath(timing.getKey()), timing.getValue().duration, Long::sum);
+      }
+    }
+    return result;
+  }
+
+  private static List<String> getMetricPath(final List<String> path) {
+    if (path.size() < 2 || !path.getFirst().equals(PROCESSORS_STEP)) {
+      return path.subList(0, Math.min(path.size(), 2));
+    }
+    // the processor name can contain its input and output prefixes
+    final String processor = path.get(1).split(" ", 2)[0];
+    if (path.size() == 2) {
+      return List.of(PROCESSORS_STEP, processor);
+    }
+    return List.of(PROCESSORS_STEP, processor, path.getLast());
+  }
+
+  /**
+   * Get the timing profile of the job: a tree of the steps, ordered by start time, with the
+   * offset from the start of the first step and the accumulated duration of each step in ms.
+   *
+   * @return the profile, null if nothing was timed
+   */
+  @Nullable
+  public synchronized ObjectNode toProfileJson() {
+    if (this.timings.isEmpty()) {
+      return null;
+    }
+    final long origin =
+        this.timings.values().stream().mapToLong(timing -> timing.start).min().orElse(0);
+    final ObjectNode profile = new ObjectNode(JsonNodeFactory.instance);
+    addProfileChildren(profile, List.of(), origin);
+    return profile;
+  }
+
+  private void addProfileChildren(
+      final ObjectNode target, final List<String> parent, final long origin) {
+    final List<Map.Entry<List<String>, TimingStats>> children = new ArrayList<>();
+    for (Map.Entry<List<String>, TimingStats> timing : this.timings.entrySet()) {
+      final List<String> path = timing.getKey();
+      if (path.size() == parent.size() + 1 && path.subList(0, parent.size()).equals(parent)) {
+        children.add(timing);
+      }
+    }
+    if (children.isEmpty()) {
+      return;
+    }
+    children.sort(Comparator.comparingLong(child -> child.getValue().start));
+    final ArrayNode steps = target.putArray("steps");
+    for (Map.Entry<List<String>, TimingStats> child : children) {
+      final TimingStats timing = child.getValue();
+      final ObjectNode step = steps.addObject();
+      step.put("name", child.getKey().getLast());
+      step.put("offsetMs", TimeUnit.NANOSECONDS.toMillis(timing.start - origin));
+      if (timing.count > 0) {
+        step.put("durationMs", TimeUnit.NANOSECONDS.toMillis(timing.duration));
+        step.put("count", timing.count);
+      }
+      addProfileChildren(step, child.getKey(), origin);
+    }
+  }
+
+  /**
+   * The model of the peak raster memory used to render a map.
+   *
+   * <p>Each layer group rendered as a raster uses an image of the map size, plus the image of the
+   * layer drawn on it (e.g. the coverage of the tiles), and up to <code>parallelism</code> groups
+   * are rendered at the same time. When the map is exported, the images of the groups are kept
+   * until they are merged, up to <code>keptBudget</code>. The merged image is added for the raster
+   * outputs.
+   *
+   * @param width the width of the map in points
+   * @param height the height of the map in points
+   * @param dpi the DPI of the map
+   * @param rasterGroups the number of layer groups rendered as raster images
+   * @param parallelism the maximum number of layer groups rendered at the same time
+   * @param keptBudget the maximum memory of the group images kept until they are merged, 0 if they
+   *     are not kept
+   * @param rasterOutput if the map is merged in a raster output (map export or image format)
+   * @return the memory in bytes
+   */
+  public static long getRasterMemory(
+      final int width,
+      final int height,
+      final double dpi,
+      final int rasterGroups,
+      final int parallelism,
+      final long keptBudget,
+      final boolean rasterOutput) {
+    final double dpiRatio = dpi / Constants.PDF_DPI;
+    final long image = Math.round(width * dpiRatio * height * dpiRatio * BYTES_PER_PIXEL);
+    final int renderedGroups = Math.min(rasterGroups, Math.max(parallelism, 1));
+    // while the last groups are rendered, the images of the previous ones are kept
+    final long rendering =
+        Math.min(image * (rasterGroups - renderedGroups), keptBudget) + 2 * image * renderedGroups;
+    final long merging = Math.min(image * rasterGroups, keptBudget) + (rasterOutput ? image : 0);
+    return Math.max(rendering, merging);
+  }
+
+  /**
+   * Record the allocation of a map image, to measure the peak raster memory of the job.
+   *
+   * @param bytes the size of the image in bytes
+   */
+  public synchronized void allocateRaster(final long bytes) {
+    this.rasterMemory += bytes;
+    this.peakRasterMemory = Math.max(this.peakRasterMemory, this.rasterMemory);
+  }
+
+  /**
+   * Record that a map image allocated with {@link #allocateRaster(long)} is not used anymore.
+   *
+   * @param bytes the size of the image in bytes
+   */
+  public synchronized void releaseRaster(final long bytes) {
+    this.rasterMemory -= bytes;
+  }
+
+  /**
+   * Get the peak size of the map images used at the same time by the job, measured while the maps
+   * were rendered, used to check the estimation done before the job is started.
+   *
+   * @return the memory in bytes
+   */
+  public synchronized long getPeakRasterMemory() {
+    return this.peakRasterMemory;
+  }
+
   /**
    * @return a JSON report about the collected statistics.
    */
-  public ObjectNode toJson() {
+  public synchronized ObjectNode toJson() {
     final JsonNodeFactory nc = JsonNodeFactory.instance;
     ObjectNode stats = new ObjectNode(nc);
     final ArrayNode maps = stats.putArray("maps");
     for (ExecutionStats.MapStats map : this.mapStats) {
       map.toJson(maps.addObject());
     }
+    if (!this.vectorLayerStats.isEmpty()) {
+      final ArrayNode vectorLayers = stats.putArray("vectorLayers");
+      for (VectorLayerStats vectorLayer : this.vectorLayerStats) {
+        vectorLayer.toJson(vectorLayers.addObject());
+      }
+    }
     final ArrayNode pages = stats.putArray("pages");
     for (PageStats pageStat : this.pageStats) {
       pageStat.toJson(pages.addObject());
@@ -76,9 +298,61 @@ public class ExecutionStats {
       }
     }
 
+    final ObjectNode profile = toProfileJson();
+    if (profile != null) {
+      stats.set("profile", profile);
+    }
+
     return stats;
   }
 
+  /** A running timing of a step of the job, see {@link #startTiming(String...)}. */
+  public final class Timing implements AutoCloseable {
+    private final List<String> path;
+    private final long start = System.nanoTime();
+
+    private Timing(final List<String> path) {
+      this.path = path;
+    }
+
+    /**
+     * Stop the timing and add it to the profile.
+     *
+     * @return the duration in nanoseconds
+     */
+    public long stop() {
+      final long duration = System.nanoTime() - this.start;
+      addTiming(this.path, this.start, duration);
+      return duration;
+    }
+
+    @Override
+    public void close() {
+      stop();
+    }
+
+    @Override
+    public String toString() {
+      return String.join("/", this.path);
+    }
+  }
+
+  private static final class TimingStats {
+    private long start = Long.MAX_VALUE;
+    private long duration = 0;
+    private int count = 0;
+
+    private void start(final long startTime) {
+      this.start = Math.min(this.start, startTime);
+    }
+
+    private void add(final long startTime, final long stepDuration) {
+      start(startTime);
+      this.duration += stepDuration;
+      this.count++;
+    }
+  }
+
   private static final class MapStats {
     private final double dpi;
     private final Dimension size;
@@ -101,6 +375,16 @@ public class ExecutionStats {
     }
   }
 
+  private record VectorLayerStats(String name, int features, int culled, int simplified) {
+
+    public void toJson(final ObjectNode target) {
+      target.put("name", this.name);
+      target.put("features", this.features);
+      target.put("culled", this.culled);
+      target.put("simplified", this.simplified);
+    }
+  }
+
   private record PageStats(PrintPageFormat format) {
 
     public void toJson(final ObjectNode target) {
@@ -187,6 +187,8 @@ public final class ProcessorGraphNode<IN, OUT> {
               "compute",
               process.getClass().getSimpleName());
       final Timer.Context timerContext = this.node.metricRegistry.timer(timerName).time();
+      final ExecutionStats.Timing timing =
+          this.execContext.getContext().getStats().startTiming("processors", process.toString());
       try {
         final In inputParameter = ProcessorUtils.populateInputParameter(process, values);
 
@@ -206,6 +208,7 @@ public final class ProcessorGraphNode<IN, OUT> {
         }
       } finally {
         this.execContext.finished(this.node);
+        timing.stop();
         final long processorTime =
             TimeUnit.MILLISECONDS.convert(timerContext.stop(), TimeUnit.NANOSECONDS);
         LOGGER.info(
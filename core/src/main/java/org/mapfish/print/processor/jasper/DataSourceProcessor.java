@@ -13,7 +13,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
 import net.sf.jasperreports.engine.JRDataSource;
 import net.sf.jasperreports.engine.JREmptyDataSource;
 import net.sf.jasperreports.engine.JRException;
@@ -65,6 +67,10 @@ import org.springframework.beans.factory.annotation.Autowired;
  *
  * <p>If reportKey is defined the reportTemplate must also be defined (and vice-versa).
  *
+ * <p>By default all the rows are processed before the report is filled. With a streamingWindow,
+ * the rows are processed while JasperReports fills the report, for example for the pages of a big
+ * atlas.
+ *
  * <p>See also: <a href="attributes.html#!datasource">!datasource</a> attribute
  * [[examples=verboseExample,datasource_dynamic_tables,datasource_many_dynamictables_legend,
  * datasource_multiple_maps,customDynamicReport,report]]
@@ -81,9 +87,11 @@ public final class DataSourceProcessor
   private List<Processor> processors;
   private List<String> copyAttributes = new ArrayList<>();
   @Autowired private JasperReportBuilder jasperReportBuilder;
+  @Autowired private ForkJoinPool forkJoinPool;
 
   private String reportTemplate;
   private String reportKey;
+  private int streamingWindow = 0;
 
   /** Constructor. */
   public DataSourceProcessor() {
@@ -122,6 +130,25 @@ public final class DataSourceProcessor
     this.reportKey = reportKey;
   }
 
+  /**
+   * The maximum number of rows processed at the same time while the report is filled. If 0 (the
+   * default), all the rows are processed before the report is filled.
+   *
+   * <p>With a window, a row is given to JasperReports as soon as it and the previous rows are
+   * processed, so the memory doesn't grow with the number of rows and the first pages are filled
+   * while the next rows are processed. The resulting DataSource can only be iterated once.
+   *
+   * @param streamingWindow the maximum number of rows processed at the same time
+   */
+  public void setStreamingWindow(final int streamingWindow) {
+    this.streamingWindow = streamingWindow;
+  }
+
+  /** The maximum number of rows processed at the same time, 0 if the rows are not streamed. */
+  public int getStreamingWindow() {
+    return this.streamingWindow;
+  }
+
   /**
    * All the processors that will executed for each value retrieved from the {@link
    * org.mapfish.print.output.Values} object with the datasource name. All output values from the
@@ -195,7 +222,7 @@ public final class DataSourceProcessor
   @Override
   public Output execute(final Input input, final ExecutionContext context) throws Exception {
 
-    JRDataSource jrDataSource = processInput(input);
+    JRDataSource jrDataSource = processInput(input, context);
 
     if (jrDataSource == null) {
       jrDataSource = new JREmptyDataSource();
@@ -203,7 +230,9 @@ public final class DataSourceProcessor
     return new Output(jrDataSource);
   }
 
-  private JRDataSource processInput(@Nonnull final Input input) throws JSONException, JRException {
+  private JRDataSource processInput(
+      @Nonnull final Input input, @Nonnull final ExecutionContext context)
+      throws JSONException, JRException {
     List<Values> dataSourceValues = new ArrayList<>();
     for (Map<String, Object> o : input.datasource.attributesValues) {
       // copy only the required values
@@ -222,9 +251,11 @@ public final class DataSourceProcessor
     if (!dataSourceValues.isEmpty()) {
       for (Values dataSourceValue : dataSourceValues) {
         addAttributes(input.template, dataSourceValue);
-        final ForkJoinTask<Values> taskFuture =
-            this.processorGraph.createTask(dataSourceValue).fork();
-        futures.add(taskFuture);
+        if (this.streamingWindow <= 0) {
+          final ForkJoinTask<Values> taskFuture =
+              this.processorGraph.createTask(dataSourceValue).fork();
+          futures.add(taskFuture);
+        }
       }
       final File reportFile;
       if (this.reportTemplate != null) {
@@ -234,13 +265,27 @@ public final class DataSourceProcessor
       } else {
         reportFile = null;
       }
-      List<Map<String, ?>> rows = new ArrayList<>();
+      final Consumer<Values> rowCompleter =
+          rowData -> {
+            if (reportFile != null) {
+              rowData.put(this.reportKey, reportFile.getAbsolutePath());
+            }
+          };
+
+      if (this.streamingWindow > 0) {
+        return new StreamingDataSource(
+            this.processorGraph::createTask,
+            this.forkJoinPool,
+            this.streamingWindow,
+            dataSourceValues,
+            rowCompleter,
+            context);
+      }
 
+      List<Map<String, ?>> rows = new ArrayList<>();
       for (ForkJoinTask<Values> future : futures) {
         final Values rowData = future.join();
-        if (reportFile != null) {
-          rowData.put(this.reportKey, reportFile.getAbsolutePath());
-        }
+        rowCompleter.accept(rowData);
         rows.add(rowData.asMap());
       }
 
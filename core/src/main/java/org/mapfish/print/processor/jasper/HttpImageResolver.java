@@ -1,7 +1,10 @@
 package org.mapfish.print.processor.jasper;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.annotations.VisibleForTesting;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -9,11 +12,13 @@ import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.imageio.ImageIO;
+import org.apache.commons.io.IOUtils;
 import org.mapfish.print.config.Configuration;
 import org.mapfish.print.config.ConfigurationException;
 import org.mapfish.print.http.MfClientHttpRequestFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.client.ClientHttpRequest;
@@ -31,6 +36,7 @@ public final class HttpImageResolver implements TableColumnConverter<BufferedIma
   private Pattern urlExtractor = Pattern.compile("(.*)");
   private int urlGroup = 1;
   @VisibleForTesting final BufferedImage defaultImage;
+  @Autowired private MetricRegistry metricRegistry;
 
   /** Constructor. */
   public HttpImageResolver() {
@@ -67,8 +73,16 @@ public final class HttpImageResolver implements TableColumnConverter<BufferedIma
       try {
         URI url = new URI(uriText);
         final ClientHttpRequest request = requestFactory.createRequest(url, HttpMethod.GET);
+        final byte[] data;
+        // the body is loaded before being decoded, to measure the download and the decoding
+        final Timer.Context fetchTimer = startTimer("fetch");
         try (ClientHttpResponse response = request.execute()) {
-          return getImageFromResponse(response, url);
+          data = getDataFromResponse(response, url);
+        } finally {
+          stopTimer(fetchTimer);
+        }
+        if (data != null) {
+          return decodeImage(data, url);
         }
       } catch (RuntimeException | URISyntaxException | IOException e) {
         LOGGER.warn(
@@ -81,29 +95,51 @@ public final class HttpImageResolver implements TableColumnConverter<BufferedIma
     return this.defaultImage;
   }
 
-  private BufferedImage getImageFromResponse(final ClientHttpResponse response, final URI url)
+  private byte[] getDataFromResponse(final ClientHttpResponse response, final URI url)
       throws IOException {
     if (HttpStatus.OK.equals(response.getStatusCode())) {
-      try {
-        final BufferedImage image = ImageIO.read(response.getBody());
-        if (image == null) {
-          LOGGER.warn("The URL: {} is NOT an image format that can be decoded", url);
-          return this.defaultImage;
-        }
-        return image;
-      } catch (IOException e) {
-        LOGGER.warn("Image loaded from '{}'is not valid", url, e);
+      return IOUtils.toByteArray(response.getBody());
+    }
+    LOGGER.warn(
+        "Error loading the table row image: {}.\nStatus Code: {}\nStatus Text: {}",
+        url,
+        response.getStatusCode().value(),
+        response.getStatusText());
+    return null;
+  }
+
+  private BufferedImage decodeImage(final byte[] data, final URI url) {
+    final Timer.Context decodeTimer = startTimer("decode");
+    try {
+      final BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+      if (image == null) {
+        LOGGER.warn("The URL: {} is NOT an image format that can be decoded", url);
+        return this.defaultImage;
       }
-    } else {
-      LOGGER.warn(
-          "Error loading the table row image: {}.\nStatus Code: {}\nStatus Text: {}",
-          url,
-          response.getStatusCode().value(),
-          response.getStatusText());
+      return image;
+    } catch (IOException e) {
+      LOGGER.warn("Image loaded from '{}'is not valid", url, e);
+    } finally {
+      stopTimer(decodeTimer);
     }
     return this.defaultImage;
   }
 
+  private Timer.Context startTimer(final String name) {
+    if (this.metricRegistry == null) {
+      return null;
+    }
+    return this.metricRegistry
+        .timer(MetricRegistry.name(HttpImageResolver.class.getSimpleName(), name))
+        .time();
+  }
+
+  private static void stopTimer(final Timer.Context timer) {
+    if (timer != null) {
+      timer.close();
+    }
+  }
+
   @Override
   public void validate(final List<Throwable> validationErrors, final Configuration configuration) {
     if (this.urlExtractor == null) {
@@ -116,4 +152,20 @@ public final class HttpImageResolver implements TableColumnConverter<BufferedIma
     Matcher urlMatcher = this.urlExtractor.matcher(text);
     return (urlMatcher.matches() && urlMatcher.group(this.urlGroup) != null);
   }
+
+  @Override
+  public String getHost(final String text) {
+    if (text == null) {
+      return null;
+    }
+    Matcher urlMatcher = this.urlExtractor.matcher(text);
+    if (urlMatcher.matches() && urlMatcher.group(this.urlGroup) != null) {
+      try {
+        return new URI(urlMatcher.group(this.urlGroup)).getHost();
+      } catch (URISyntaxException e) {
+        return null;
+      }
+    }
+    return null;
+  }
 }
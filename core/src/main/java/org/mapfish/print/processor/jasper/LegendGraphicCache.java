@@ -0,0 +1,243 @@
+package org.mapfish.print.processor.jasper;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import jakarta.annotation.PostConstruct;
+import java.awt.image.BufferedImage;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+
+/**
+ * A cache for the legend graphics shared by all the print jobs of this server.
+ *
+ * <p>The entries are keyed by the configuration, the URL of the graphic and the parameters used to
+ * prepare it (DPI, maximum width and scaling), and contain the decoded graphic and the PNG of the
+ * prepared graphic, so a cached legend needs neither the HTTP request, nor the decoding, nor the
+ * encoding. The least recently used entries are evicted when the cache is full, and the entries
+ * expire after a time to live, or earlier if the freshness of the response (<code>max-age</code>
+ * or <code>Expires</code>) is shorter. Responses marked as <code>no-store</code>,
+ * <code>no-cache</code> or <code>private</code> are never cached.
+ *
+ * <p>The access to a graphic is checked by creating its request before looking it up in the cache,
+ * and the requests sending credentials are not cached.
+ */
+public class LegendGraphicCache {
+  private static final long MB = 1024L * 1024L;
+  private static final int BYTES_PER_PIXEL = 4;
+
+  private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long size = 0;
+  private long maxSize = 16 * MB;
+  private long timeToLive = 3600;
+  private Counter hits;
+  private Counter misses;
+
+  @Autowired private MetricRegistry metricRegistry;
+
+  /**
+   * The maximum size of the cached graphics, in MB. 0 disables the cache.
+   *
+   * @param maxSize the size in MB
+   */
+  public final void setMaxSize(final long maxSize) {
+    this.maxSize = maxSize * MB;
+  }
+
+  /**
+   * The time (in seconds) a graphic is kept in the cache.
+   *
+   * @param timeToLive the time to live in seconds
+   */
+  public final void setTimeToLive(final long timeToLive) {
+    this.timeToLive = timeToLive;
+  }
+
+  /** Called by spring after bean has been created and populated. */
+  @PostConstruct
+  public final void init() {
+    final Counter hitCounter = this.metricRegistry.counter(metricName("hit"));
+    final Counter missCounter = this.metricRegistry.counter(metricName("miss"));
+    this.hits = hitCounter;
+    this.misses = missCounter;
+    this.metricRegistry.register(metricName("size"), (Gauge<Long>) this::getSize);
+    this.metricRegistry.register(
+        metricName("hitRatio"),
+        new RatioGauge() {
+          @Override
+          protected Ratio getRatio() {
+            return Ratio.of(
+                hitCounter.getCount(), hitCounter.getCount() + missCounter.getCount());
+          }
+        });
+  }
+
+  private static String metricName(final String name) {
+    return MetricRegistry.name(LegendGraphicCache.class.getSimpleName(), name);
+  }
+
+  private synchronized long getSize() {
+    return this.size;
+  }
+
+  /** Return true if the cache can contain graphics. */
+  public final boolean isEnabled() {
+    return this.maxSize > 0;
+  }
+
+  /**
+   * Get a graphic from the cache.
+   *
+   * @param key the key of the graphic
+   * @return the graphic or null if it is not in the cache or expired
+   */
+  @Nullable
+  public final synchronized Entry get(@Nonnull final Key key) {
+    final Entry entry = this.entries.get(key);
+    if (entry != null && System.currentTimeMillis() < entry.expires()) {
+      this.hits.inc();
+      return entry;
+    }
+    if (entry != null) {
+      this.entries.remove(key);
+      this.size -= entry.getSize();
+    }
+    this.misses.inc();
+    return null;
+  }
+
+  /**
+   * Return true if a response can be cached according to its <code>Cache-Control</code> header.
+   *
+   * @param headers the headers of the response
+   */
+  public static boolean isCacheable(@Nonnull final HttpHeaders headers) {
+    for (String value : headers.getOrEmpty(HttpHeaders.CACHE_CONTROL)) {
+      for (String directive : value.split(",")) {
+        final String name = directive.trim().toLowerCase(Locale.ROOT);
+        if (name.equals("no-store") || name.equals("no-cache") || name.equals("private")) {
+          return false;
+        }
+      }
+    }
+    return getTimeToLive(headers) != 0;
+  }
+
+  /**
+   * Get the freshness of a response, from the <code>s-maxage</code> or <code>max-age</code>
+   * directives, else from the <code>Expires</code> and <code>Date</code> headers.
+   *
+   * @param headers the headers of the response
+   * @return the time to live in seconds, or -1 if the response doesn't specify it
+   */
+  public static long getTimeToLive(@Nonnull final HttpHeaders headers) {
+    long maxAge = -1;
+    for (String value : headers.getOrEmpty(HttpHeaders.CACHE_CONTROL)) {
+      for (String directive : value.split(",")) {
+        final String[] nameValue = directive.trim().toLowerCase(Locale.ROOT).split("=", 2);
+        if (nameValue.length == 2
+            && (nameValue[0].equals("s-maxage") || nameValue[0].equals("max-age"))) {
+          try {
+            final long age = Math.max(0, Long.parseLong(nameValue[1].replace("\"", "").trim()));
+            if (nameValue[0].equals("s-maxage")) {
+              return age;
+            }
+            maxAge = age;
+          } catch (NumberFormatException e) {
+            // an invalid value means that the response is stale
+            maxAge = 0;
+          }
+        }
+      }
+    }
+    if (maxAge >= 0 || !headers.containsKey(HttpHeaders.EXPIRES)) {
+      return maxAge;
+    }
+    final long expires = headers.getExpires();
+    if (expires < 0) {
+      // an invalid date means that the response is already expired
+      return 0;
+    }
+    final long date = headers.getDate() >= 0 ? headers.getDate() : System.currentTimeMillis();
+    return Math.max(0, Duration.ofMillis(expires - date).toSeconds());
+  }
+
+  /**
+   * Add a graphic to the cache.
+   *
+   * @param key the key of the graphic
+   * @param image the decoded graphic
+   * @param png the PNG of the prepared graphic
+   * @param width the width of the prepared graphic
+   * @param height the height of the prepared graphic
+   * @param responseTimeToLive the freshness of the response in seconds, or -1 if unknown
+   * @return the new entry
+   */
+  @Nonnull
+  public final Entry put(
+      @Nonnull final Key key,
+      @Nonnull final BufferedImage image,
+      @Nonnull final byte[] png,
+      final int width,
+      final int height,
+      final long responseTimeToLive) {
+    final long entryTimeToLive =
+        responseTimeToLive >= 0 ? Math.min(this.timeToLive, responseTimeToLive) : this.timeToLive;
+    final Entry entry =
+        new Entry(image, png, width, height, System.currentTimeMillis() + entryTimeToLive * 1000);
+    if (entry.getSize() > this.maxSize) {
+      return entry;
+    }
+    synchronized (this) {
+      final Entry previous = this.entries.put(key, entry);
+      if (previous != null) {
+        this.size -= previous.getSize();
+      }
+      this.size += entry.getSize();
+      final Iterator<Entry> iterator = this.entries.values().iterator();
+      while (this.size > this.maxSize && iterator.hasNext()) {
+        final Entry eldest = iterator.next();
+        iterator.remove();
+        this.size -= eldest.getSize();
+        this.metricRegistry.counter(metricName("eviction")).inc();
+      }
+    }
+    return entry;
+  }
+
+  /**
+   * The key of a cached graphic.
+   *
+   * @param configuration the configuration used to get the graphic
+   * @param url the URL of the graphic
+   * @param dpi the DPI of the graphic
+   * @param maxWidth the maximum width of the prepared graphic
+   * @param scaled if the graphic is scaled (or cropped) to the maximum width
+   */
+  public record Key(
+      String configuration, String url, double dpi, Integer maxWidth, boolean scaled) {}
+
+  /**
+   * A cached graphic.
+   *
+   * @param image the decoded graphic
+   * @param png the PNG of the graphic prepared for the sub-report (cropped or scaled)
+   * @param width the width of the prepared graphic
+   * @param height the height of the prepared graphic
+   * @param expires the expiration time in milliseconds since the epoch
+   */
+  public record Entry(BufferedImage image, byte[] png, int width, int height, long expires) {
+    private long getSize() {
+      return this.png.length
+          + (long) this.image.getWidth() * this.image.getHeight() * BYTES_PER_PIXEL;
+    }
+  }
+}
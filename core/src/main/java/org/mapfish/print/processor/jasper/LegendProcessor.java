@@ -3,23 +3,24 @@ package org.mapfish.print.processor.jasper;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.google.common.annotations.VisibleForTesting;
-import jakarta.annotation.Resource;
+import jakarta.annotation.Nullable;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.geom.AffineTransform;
 import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URL;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 import javax.imageio.ImageIO;
 import net.sf.jasperreports.engine.JRException;
@@ -31,12 +32,14 @@ import org.mapfish.print.attribute.LegendAttribute.LegendAttributeValue;
 import org.mapfish.print.config.Configuration;
 import org.mapfish.print.config.Template;
 import org.mapfish.print.http.MfClientHttpRequestFactory;
+import org.mapfish.print.http.RequestExecutor;
 import org.mapfish.print.http.Utils;
 import org.mapfish.print.processor.AbstractProcessor;
 import org.mapfish.print.processor.http.MfClientHttpRequestFactoryProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.client.ClientHttpRequest;
@@ -59,8 +62,9 @@ public final class LegendProcessor
 
   @Autowired private MetricRegistry metricRegistry;
 
-  @Resource(name = "requestForkJoinPool")
-  private ForkJoinPool requestForkJoinPool;
+  @Autowired private RequestExecutor requestExecutor;
+
+  @Autowired private LegendGraphicCache legendGraphicCache;
 
   private final Dimension missingImageSize = new Dimension(24, 24);
   private BufferedImage missingImage;
@@ -130,7 +134,8 @@ public final class LegendProcessor
         legendAttributes,
         legendList,
         context,
-        values.tempTaskDirectory);
+        values.tempTaskDirectory,
+        String.valueOf(values.template.getConfiguration().getDirectory()));
     final Object[][] legend = new Object[legendList.size()][];
 
     final JRTableModelDataSource dataSource =
@@ -154,6 +159,7 @@ public final class LegendProcessor
       final LegendAttributeValue legendAttributes,
       final ExecutionContext context,
       final File tempTaskDirectory,
+      final String configurationKey,
       final int level,
       final List<Callable<Object[]>> tasks) {
     int insertNameIndex = tasks.size();
@@ -168,13 +174,21 @@ public final class LegendProcessor
                 context,
                 level,
                 tempTaskDirectory,
+                configurationKey,
                 clientHttpRequestFactory,
                 metricRegistry));
       }
     }
     if (legendAttributes.classes != null) {
       for (LegendAttributeValue value : legendAttributes.classes) {
-        createTasks(clientHttpRequestFactory, value, context, tempTaskDirectory, level + 1, tasks);
+        createTasks(
+            clientHttpRequestFactory,
+            value,
+            context,
+            tempTaskDirectory,
+            configurationKey,
+            level + 1,
+            tasks);
       }
     }
     if (!tasks.isEmpty()) {
@@ -187,21 +201,27 @@ public final class LegendProcessor
       final LegendAttributeValue legendAttributes,
       final List<Object[]> legendList,
       final ExecutionContext context,
-      final File tempTaskDirectory)
+      final File tempTaskDirectory,
+      final String configurationKey)
       throws ExecutionException, InterruptedException {
     List<Callable<Object[]>> tasks = new ArrayList<>();
-    createTasks(clientHttpRequestFactory, legendAttributes, context, tempTaskDirectory, 0, tasks);
-    List<Future<Object[]>> futures = this.requestForkJoinPool.invokeAll(tasks);
+    createTasks(
+        clientHttpRequestFactory,
+        legendAttributes,
+        context,
+        tempTaskDirectory,
+        configurationKey,
+        0,
+        tasks);
+    List<Future<Object[]>> futures = this.requestExecutor.invokeAll(tasks);
     for (Future<Object[]> future : futures) {
       legendList.add(future.get());
     }
   }
 
-  private URI createSubReport(
-      final BufferedImage originalImage,
-      final double originalImageDPI,
-      final File tempTaskDirectory)
-      throws IOException, JRException {
+  /** Crop or scale the graphic to the maximum width and encode it. */
+  private LegendGraphicCache.Entry prepareImage(
+      final BufferedImage originalImage, final double originalImageDPI) throws IOException {
     BufferedImage image = originalImage;
     double scaleFactor = Constants.PDF_DPI / originalImageDPI;
     if (this.maxWidth != null && image.getWidth() * scaleFactor > this.maxWidth) {
@@ -211,15 +231,27 @@ public final class LegendProcessor
         image = cropToMaxWidth(image, scaleFactor);
       }
     }
+    final ByteArrayOutputStream png = new ByteArrayOutputStream();
+    ImageUtils.writeImage(image, "png", png);
+    return new LegendGraphicCache.Entry(
+        originalImage, png.toByteArray(), image.getWidth(), image.getHeight(), 0);
+  }
 
-    URI imageFile = writeToFile(image, tempTaskDirectory);
+  private URI createSubReport(
+      final LegendGraphicCache.Entry image,
+      final double originalImageDPI,
+      final File tempTaskDirectory)
+      throws IOException, JRException {
+    double scaleFactor = Constants.PDF_DPI / originalImageDPI;
+
+    URI imageFile = writeToFile(image.png(), tempTaskDirectory);
 
     final ImagesSubReport subReport =
         new ImagesSubReport(
             Collections.singletonList(imageFile),
             new Dimension(
-                (int) Math.round(image.getWidth() * scaleFactor),
-                (int) Math.round(image.getHeight() * scaleFactor)),
+                (int) Math.round(image.width() * scaleFactor),
+                (int) Math.round(image.height() * scaleFactor)),
             this.dpi);
 
     final File compiledReport =
@@ -264,10 +296,9 @@ public final class LegendProcessor
     return scaleOp.filter(inter, result);
   }
 
-  private URI writeToFile(final BufferedImage image, final File tempTaskDirectory)
-      throws IOException {
+  private URI writeToFile(final byte[] png, final File tempTaskDirectory) throws IOException {
     File path = File.createTempFile("legend-", ".png", tempTaskDirectory);
-    ImageUtils.writeImage(image, "png", path);
+    Files.write(path.toPath(), png);
     return path.toURI();
   }
 
@@ -342,7 +373,10 @@ public final class LegendProcessor
     private final MfClientHttpRequestFactory clientHttpRequestFactory;
     private final int level;
     private final File tempTaskDirectory;
+    private final String configurationKey;
     private final MetricRegistry metricRegistry;
+    private boolean cacheable = false;
+    private long timeToLive = -1;
 
     @VisibleForTesting
     IconTask(
@@ -351,9 +385,11 @@ public final class LegendProcessor
         final ExecutionContext context,
         final int level,
         final File tempTaskDirectory,
+        final String configurationKey,
         final MfClientHttpRequestFactory clientHttpRequestFactory,
         final MetricRegistry metricRegistry) {
       this.icon = icon;
+      this.configurationKey = configurationKey;
       this.iconDPI = iconDPI;
       this.context = context;
       this.level = level;
@@ -367,29 +403,71 @@ public final class LegendProcessor
       return context.mdcContextEx(
           () -> {
             final URI uri = this.icon.toURI();
-            final BufferedImage image = loadImage(uri);
+            // the request is created first, to check that the URI is allowed by the configuration
+            final ClientHttpRequest request =
+                this.icon.getProtocol().equals("data") ? null : createRequest(uri);
+            final LegendGraphicCache cache = LegendProcessor.this.legendGraphicCache;
+            // the graphics depending on the credentials of the user are not shared
+            final LegendGraphicCache.Key key =
+                request != null
+                        && cache != null
+                        && cache.isEnabled()
+                        && !request.getHeaders().containsKey(HttpHeaders.AUTHORIZATION)
+                        && !request.getHeaders().containsKey(HttpHeaders.COOKIE)
+                    ? new LegendGraphicCache.Key(
+                        this.configurationKey,
+                        this.icon.toString(),
+                        this.iconDPI,
+                        LegendProcessor.this.maxWidth,
+                        LegendProcessor.this.scaled)
+                    : null;
+            LegendGraphicCache.Entry image = key != null ? cache.get(key) : null;
+            if (image == null) {
+              image = prepareImage(loadImage(uri, request), this.iconDPI);
+              if (key != null && this.cacheable) {
+                image =
+                    cache.put(
+                        key,
+                        image.image(),
+                        image.png(),
+                        image.width(),
+                        image.height(),
+                        this.timeToLive);
+              }
+            }
             final URI report = createSubReport(image, this.iconDPI, this.tempTaskDirectory);
-            return new Object[] {null, image, report.toString(), this.level};
+            return new Object[] {null, image.image(), report.toString(), this.level};
           });
     }
 
-    private BufferedImage loadImage(final URI uri) {
+    @Nullable
+    private ClientHttpRequest createRequest(final URI uri) {
+      try {
+        this.context.stopIfCanceled();
+        return this.clientHttpRequestFactory.createRequest(uri, HttpMethod.GET);
+      } catch (IOException | RuntimeException e) {
+        LOGGER.warn("Failed to load image from: {}", this.icon, e);
+        return null;
+      }
+    }
+
+    private BufferedImage loadImage(final URI uri, @Nullable final ClientHttpRequest request) {
       final String metricName =
           LegendProcessor.class.getName() + ".read." + StatsUtils.quotePart(uri.getHost());
       BufferedImage image = null;
       try {
         if (this.icon.getProtocol().equals("data")) {
           image = ImageIO.read(this.icon);
-        } else {
-          this.context.stopIfCanceled();
-          final ClientHttpRequest request =
-              this.clientHttpRequestFactory.createRequest(uri, HttpMethod.GET);
+        } else if (request != null) {
           try (Timer.Context ignored = metricRegistry.timer(metricName).time()) {
             try (ClientHttpResponse httpResponse = request.execute()) {
               if (httpResponse.getStatusCode().value() == HttpStatus.OK.value()) {
                 image = ImageIO.read(httpResponse.getBody());
                 if (image == null) {
                   LOGGER.warn("There is no image in this response body {}", httpResponse.getBody());
+                } else {
+                  this.cacheable = LegendGraphicCache.isCacheable(httpResponse.getHeaders());
+                  this.timeToLive = LegendGraphicCache.getTimeToLive(httpResponse.getHeaders());
                 }
               } else {
                 logNotOkResponseStatus(httpResponse);
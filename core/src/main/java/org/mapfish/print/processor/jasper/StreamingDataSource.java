@@ -0,0 +1,135 @@
+package org.mapfish.print.processor.jasper;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import net.sf.jasperreports.engine.JRDataSource;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JRField;
+import org.mapfish.print.output.Values;
+import org.mapfish.print.processor.Processor;
+import org.mapfish.print.processor.ProcessorDependencyGraph;
+
+/**
+ * A Jasper DataSource that runs the processors of its rows while the report is filled.
+ *
+ * <p>At most <code>window</code> rows are processed at the same time. A row is given to
+ * JasperReports as soon as it and the previous rows are done, and it is not referenced anymore when
+ * JasperReports moves to the next row. So the memory used doesn't grow with the number of rows and
+ * the first pages are filled while the next rows are processed.
+ *
+ * <p>This DataSource can only be iterated once. The rows are canceled when the print job is
+ * canceled, and they must be canceled with {@link #cancel()} when the report fill fails.
+ */
+public final class StreamingDataSource implements JRDataSource {
+  private final Function<Values, ForkJoinTask<Values>> taskFactory;
+  private final ForkJoinPool forkJoinPool;
+  private final int window;
+  private final Deque<Values> pendingRows;
+  private final Consumer<Values> rowCompleter;
+  private final Processor.ExecutionContext context;
+  private final Deque<ForkJoinTask<Values>> runningRows = new ArrayDeque<>();
+  private Map<String, ?> currentRow = null;
+
+  /**
+   * Constructor.
+   *
+   * @param taskFactory creates the task running the processors of a row, see {@link
+   *     ProcessorDependencyGraph#createTask(Values)}
+   * @param forkJoinPool the pool running the processors
+   * @param window the maximum number of rows processed at the same time
+   * @param rows the input values of the rows
+   * @param rowCompleter called with the output values of each row, before it is used
+   * @param context the execution context of the print job, to stop when it is canceled
+   */
+  public StreamingDataSource(
+      final Function<Values, ForkJoinTask<Values>> taskFactory,
+      final ForkJoinPool forkJoinPool,
+      final int window,
+      final Collection<Values> rows,
+      final Consumer<Values> rowCompleter,
+      final Processor.ExecutionContext context) {
+    this.taskFactory = taskFactory;
+    this.forkJoinPool = forkJoinPool;
+    this.window = Math.max(1, window);
+    this.pendingRows = new ArrayDeque<>(rows);
+    this.rowCompleter = rowCompleter;
+    this.context = context;
+    fillWindow();
+  }
+
+  private synchronized void fillWindow() {
+    while (this.runningRows.size() < this.window && !this.pendingRows.isEmpty()) {
+      final Values row = this.pendingRows.poll();
+      this.runningRows.add(this.forkJoinPool.submit(this.taskFactory.apply(row)));
+    }
+  }
+
+  @Override
+  public synchronized boolean next() throws JRException {
+    this.currentRow = null;
+    final ForkJoinTask<Values> task = this.runningRows.poll();
+    if (task == null) {
+      return false;
+    }
+    final Values rowData;
+    try {
+      this.context.stopIfCanceled();
+      fillWindow();
+      rowData = task.join();
+      this.context.stopIfCanceled();
+    } catch (CancellationException e) {
+      task.cancel(true);
+      cancel();
+      throw e;
+    } catch (RuntimeException e) {
+      task.cancel(true);
+      cancel();
+      throw new JRException("Failed to process a row of the datasource", e);
+    }
+    this.rowCompleter.accept(rowData);
+    this.currentRow = rowData.asMap();
+    return true;
+  }
+
+  @Override
+  public synchronized Object getFieldValue(final JRField jrField) {
+    return this.currentRow == null ? null : this.currentRow.get(jrField.getName());
+  }
+
+  /**
+   * Cancel the rows being processed and drop the pending ones, with the streaming DataSources of
+   * the processed rows. Does nothing once all the rows have been read.
+   */
+  public synchronized void cancel() {
+    for (ForkJoinTask<Values> task : this.runningRows) {
+      if (!task.cancel(true) && task.isCompletedNormally()) {
+        cancelAll(task.getRawResult().asMap());
+      }
+    }
+    this.runningRows.clear();
+    this.pendingRows.clear();
+    if (this.currentRow != null) {
+      cancelAll(this.currentRow);
+    }
+  }
+
+  /**
+   * Cancel the streaming DataSources of some values.
+   *
+   * @param values the values, like the parameters of a report
+   */
+  public static void cancelAll(final Map<String, ?> values) {
+    for (Object value : values.values()) {
+      if (value instanceof StreamingDataSource dataSource) {
+        dataSource.cancel();
+      }
+    }
+  }
+}
@@ -23,4 +23,16 @@ public interface TableColumnConverter<R> extends ConfigurationObject {
    * @param text the input to convert.
    */
   boolean canConvert(String text);
+
+  /**
+   * Get the host the conversion of the value makes requests to. Only the conversions making
+   * requests are run on the request executor, which limits the number of concurrent requests per
+   * host.
+   *
+   * @param text the input to convert.
+   * @return the host, or null if unknown or if the conversion doesn't make requests
+   */
+  default String getHost(final String text) {
+    return null;
+  }
 }
@@ -3,6 +3,8 @@ package org.mapfish.print.processor.jasper;
 import static org.mapfish.print.processor.jasper.JasperReportBuilder.JASPER_REPORT_COMPILED_FILE_EXT;
 import static org.mapfish.print.processor.jasper.JasperReportBuilder.JASPER_REPORT_XML_FILE_EXT;
 
+import com.codahale.metrics.MetricRegistry;
+import jakarta.annotation.Nullable;
 import java.awt.image.RenderedImage;
 import java.io.ByteArrayInputStream;
 import java.io.File;
@@ -15,10 +17,15 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import net.sf.jasperreports.engine.JRBand;
 import net.sf.jasperreports.engine.JRElement;
 import net.sf.jasperreports.engine.JRException;
@@ -50,10 +57,14 @@ import org.mapfish.print.config.Configuration;
 import org.mapfish.print.config.ConfigurationException;
 import org.mapfish.print.config.Template;
 import org.mapfish.print.http.MfClientHttpRequestFactory;
+import org.mapfish.print.http.RequestExecutor;
 import org.mapfish.print.processor.AbstractProcessor;
 import org.mapfish.print.processor.http.MfClientHttpRequestFactoryProvider;
 import org.mapfish.print.wrapper.PArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 
 /**
  * A processor for generating a table.
@@ -64,6 +75,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 public final class TableProcessor
     extends AbstractProcessor<TableProcessor.Input, TableProcessor.Output> {
 
+  private static final Logger LOGGER = LoggerFactory.getLogger(TableProcessor.class);
   private static final int SPACE_BETWEEN_COLS = 0;
   private static final int DEFAULT_MAX_COLUMNS = 9;
   private Map<String, TableColumnConverter<?>> columnConverterMap = new HashMap<>();
@@ -81,6 +93,12 @@ public final class TableProcessor
   private Set<String> excludeColumns = new HashSet<>();
 
   @Autowired private JasperReportBuilder jasperReportBuilder;
+  @Autowired private RequestExecutor requestExecutor;
+  @Autowired private MetricRegistry metricRegistry;
+
+  @Value("${maxConnectionsPerRoute}")
+  private int maxConversionsInFlight;
+
   private boolean defaultTemplate;
 
   /** Constructor. */
@@ -261,37 +279,56 @@ public final class TableProcessor
     Map<String, Class<?>> columns = new LinkedHashMap<>();
     Map<String, String> columnLabels = new LinkedHashMap<>();
     final PArray[] jsonData = jsonTable.data;
-    for (final PArray jsonRow : jsonData) {
-      context.stopIfCanceled();
-      final Map<String, Object> row = new HashMap<>();
-      for (int j = 0; j < jsonRow.size(); j++) {
-        final String columnName = columnNames[j];
-        final String fieldName = fieldNames[j];
-        Object rowValue = jsonRow.get(j);
-        if (rowValue == JSONObject.NULL) {
-          rowValue = null;
-        }
-        TableColumnConverter<?> converter = this.columnConverterMap.get(columnName);
-        if (converter != null) {
-          rowValue =
-              converter.resolve(values.clientHttpRequestFactoryProvider.get(), (String) rowValue);
-        } else {
-          rowValue = tryConvert(values.clientHttpRequestFactoryProvider.get(), rowValue);
-        }
-        if (columns.size() < this.maxColumns && !this.excludeColumns.contains(columnName)) {
-          Class<?> columnDef = columns.get(fieldName);
-          if (columnDef == null) {
-            Class<?> rowValueClass = null;
-            if (rowValue != null) {
-              rowValueClass = rowValue.getClass();
+    final MfClientHttpRequestFactory requestFactory = values.clientHttpRequestFactoryProvider.get();
+    final long conversionStart = System.nanoTime();
+    final Conversions conversions = startConversions(requestFactory, columnNames, jsonData);
+    int convertedCells = 0;
+    try {
+      for (final PArray jsonRow : jsonData) {
+        context.stopIfCanceled();
+        final Map<String, Object> row = new HashMap<>();
+        for (int j = 0; j < jsonRow.size(); j++) {
+          final String columnName = columnNames[j];
+          final String fieldName = fieldNames[j];
+          Object rowValue = jsonRow.get(j);
+          if (rowValue == JSONObject.NULL) {
+            rowValue = null;
+          }
+          final Conversion conversion = getConversion(columnName, rowValue);
+          if (conversion != null) {
+            rowValue = getConvertedValue(conversions, conversion, requestFactory);
+            convertedCells++;
+          }
+          if (columns.size() < this.maxColumns && !this.excludeColumns.contains(columnName)) {
+            Class<?> columnDef = columns.get(fieldName);
+            if (columnDef == null) {
+              Class<?> rowValueClass = null;
+              if (rowValue != null) {
+                rowValueClass = rowValue.getClass();
+              }
+              columns.put(fieldName, rowValueClass);
+              columnLabels.put(fieldName, columnName);
             }
-            columns.put(fieldName, rowValueClass);
-            columnLabels.put(fieldName, columnName);
           }
+          row.put(fieldName, rowValue);
         }
-        row.put(fieldName, rowValue);
+        table.add(row);
       }
-      table.add(row);
+    } finally {
+      // the pending conversions are not needed anymore on error or cancel
+      conversions.cancel();
+    }
+    if (convertedCells > 0) {
+      final long duration = System.nanoTime() - conversionStart;
+      this.metricRegistry
+          .timer(MetricRegistry.name(TableProcessor.class.getSimpleName(), "convert"))
+          .update(duration, TimeUnit.NANOSECONDS);
+      context.getStats().addTiming(conversionStart, duration, "processors", toString(), "convert");
+      LOGGER.debug(
+          "Converted {} table cells with {} requests in {}ms",
+          convertedCells,
+          conversions.size(),
+          TimeUnit.NANOSECONDS.toMillis(duration));
     }
 
     // check if there are columns with mixed int and BigDecimal values
@@ -325,23 +362,82 @@ public final class TableProcessor
   }
 
   /**
-   * If converters are set on a table, this function tests if these can convert a cell value. The
-   * first converter, which claims that it can convert, will be used to do the conversion.
+   * Get the converter to use for a cell value. If converters are set on a table, this function
+   * tests if these can convert a cell value. The first converter, which claims that it can convert,
+   * will be used to do the conversion.
+   *
+   * @return the conversion to do, or null if the value is used as is
    */
-  private Object tryConvert(
-      final MfClientHttpRequestFactory clientHttpRequestFactory, final Object rowValue) {
+  private Conversion getConversion(final String columnName, final Object rowValue) {
+    final TableColumnConverter<?> columnConverter = this.columnConverterMap.get(columnName);
+    if (columnConverter != null) {
+      return new Conversion(columnConverter, (String) rowValue);
+    }
     if (this.converters.isEmpty()) {
-      return rowValue;
+      return null;
     }
 
     String value = String.valueOf(rowValue);
     for (TableColumnConverter<?> converter : this.converters) {
       if (converter.canConvert(value)) {
-        return converter.resolve(clientHttpRequestFactory, value);
+        return new Conversion(converter, value);
       }
     }
+    return null;
+  }
 
-    return rowValue;
+  /**
+   * Start the conversions doing requests (e.g. the image URLs) of all the cells on the request
+   * executor, the identical ones are only done once. The other conversions are done while building
+   * the rows.
+   */
+  private Conversions startConversions(
+      final MfClientHttpRequestFactory requestFactory,
+      final String[] columnNames,
+      final PArray[] jsonData) {
+    // the conversions in the order of the rows, with their host
+    final Map<Conversion, String> conversions = new LinkedHashMap<>();
+    if (this.columnConverterMap.isEmpty() && this.converters.isEmpty()) {
+      return new Conversions(requestFactory, conversions);
+    }
+    for (final PArray jsonRow : jsonData) {
+      for (int j = 0; j < jsonRow.size(); j++) {
+        Object rowValue = jsonRow.get(j);
+        if (rowValue == JSONObject.NULL) {
+          rowValue = null;
+        }
+        final Conversion conversion = getConversion(columnNames[j], rowValue);
+        if (conversion == null || conversion.text() == null) {
+          continue;
+        }
+        final String host = conversion.converter().getHost(conversion.text());
+        if (host != null) {
+          conversions.putIfAbsent(conversion, host);
+        }
+      }
+    }
+    return new Conversions(requestFactory, conversions);
+  }
+
+  private Object getConvertedValue(
+      final Conversions conversions,
+      final Conversion conversion,
+      final MfClientHttpRequestFactory requestFactory) {
+    final Future<Object> future = conversions.get(conversion);
+    if (future == null) {
+      return conversion.converter().resolve(requestFactory, conversion.text());
+    }
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      throw new PrintException("Failed to convert the table cell " + conversion.text(), e);
+    }
   }
 
   private String generateSubReport(final Input input, final Map<String, Class<?>> columns)
@@ -760,6 +856,69 @@ public final class TableProcessor
     }
   }
 
+  /**
+   * A conversion of a cell value.
+   *
+   * @param converter the converter
+   * @param text the value to convert
+   */
+  private record Conversion(TableColumnConverter<?> converter, String text) {}
+
+  /**
+   * The conversions doing requests of a table. They are started in the order of the rows, with at
+   * most <code>maxConnectionsPerRoute</code> of them in flight, so a big table doesn't flood the
+   * request pool and the host. The next ones are started while the rows are built.
+   */
+  private final class Conversions {
+    private final MfClientHttpRequestFactory requestFactory;
+    private final Iterator<Map.Entry<Conversion, String>> pending;
+    private final Map<Conversion, Future<Object>> started = new HashMap<>();
+    private final List<Future<Object>> running = new ArrayList<>();
+    private final int size;
+
+    private Conversions(
+        final MfClientHttpRequestFactory requestFactory, final Map<Conversion, String> hosts) {
+      this.requestFactory = requestFactory;
+      this.pending = hosts.entrySet().iterator();
+      this.size = hosts.size();
+      startNext();
+    }
+
+    private void startNext() {
+      this.running.removeIf(Future::isDone);
+      while (this.pending.hasNext()
+          && (TableProcessor.this.maxConversionsInFlight <= 0
+              || this.running.size() < TableProcessor.this.maxConversionsInFlight)) {
+        final Map.Entry<Conversion, String> next = this.pending.next();
+        final Conversion conversion = next.getKey();
+        final Future<Object> future =
+            TableProcessor.this.requestExecutor.submit(
+                next.getValue(),
+                () -> conversion.converter().resolve(this.requestFactory, conversion.text()));
+        this.started.put(conversion, future);
+        this.running.add(future);
+      }
+    }
+
+    /** Get the started conversion, null if it doesn't do a request. */
+    @Nullable
+    private Future<Object> get(final Conversion conversion) {
+      // the previous rows are done, so the conversions of this row are started
+      startNext();
+      return this.started.get(conversion);
+    }
+
+    private int size() {
+      return this.size;
+    }
+
+    private void cancel() {
+      for (Future<Object> future : this.started.values()) {
+        future.cancel(true);
+      }
+    }
+  }
+
   /** Input object for execute. */
   public static final class Input {
     /**
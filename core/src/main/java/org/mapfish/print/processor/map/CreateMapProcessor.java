@@ -7,12 +7,12 @@ import static org.mapfish.print.output.JasperReportImageOutputFormat.IMAGE_TYPES
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.math.IntMath;
 import com.lowagie.text.DocumentException;
 import com.lowagie.text.pdf.PdfContentByte;
 import com.lowagie.text.pdf.PdfWriter;
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
-import jakarta.annotation.Resource;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
@@ -27,14 +27,21 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.math.RoundingMode;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.LongSupplier;
 import javax.imageio.ImageIO;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -71,14 +78,20 @@ import org.mapfish.print.attribute.map.MapfishMapContext;
 import org.mapfish.print.attribute.map.ZoomLevelSnapStrategy;
 import org.mapfish.print.attribute.map.ZoomToFeatures.ZoomType;
 import org.mapfish.print.config.Configuration;
+import org.mapfish.print.config.ConfigurationException;
 import org.mapfish.print.config.Template;
 import org.mapfish.print.http.HttpRequestFetcher;
 import org.mapfish.print.http.MfClientHttpRequestFactory;
+import org.mapfish.print.http.RequestExecutor;
+import org.mapfish.print.http.TileCache;
 import org.mapfish.print.map.Scale;
 import org.mapfish.print.map.geotools.AbstractFeatureSourceLayer;
 import org.mapfish.print.map.geotools.FeatureLayer;
+import org.mapfish.print.map.image.wms.WmsLayer;
+import org.mapfish.print.map.tiled.wms.TiledWmsLayer;
 import org.mapfish.print.parser.HasDefaultValue;
 import org.mapfish.print.processor.AbstractProcessor;
+import org.mapfish.print.processor.ExecutionStats;
 import org.mapfish.print.processor.InputOutputValue;
 import org.mapfish.print.processor.InternalValue;
 import org.mapfish.print.processor.http.MfClientHttpRequestFactoryProvider;
@@ -87,6 +100,7 @@ import org.mapfish.print.processor.jasper.JasperReportBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -103,10 +117,32 @@ public final class CreateMapProcessor
 
   @Autowired private MetricRegistry metricRegistry;
 
-  @Resource(name = "requestForkJoinPool")
-  private ForkJoinPool requestForkJoinPool;
+  @Autowired private RequestExecutor requestExecutor;
 
-  private record ContextualizedMapLayer(MapLayer layer, MapLayer.LayerContext layerContext) {}
+  @Autowired private TileCache tileCache;
+
+  @Autowired private ForkJoinPool forkJoinPool;
+
+  @Value("${httpRequest.inMemoryBody.maxSize}")
+  private long maxInMemoryBodySize;
+
+  @Value("${httpRequest.inMemoryBody.budget}")
+  private long inMemoryBodyBudget;
+
+  @Value("${createMap.inMemoryCompositing.budget}")
+  private long inMemoryCompositingBudget;
+
+  private int layerGroupParallelism = 1;
+
+  /**
+   * A layer prepared for the rendering.
+   *
+   * @param layer the layer
+   * @param layerContext the rendering context of the layer
+   * @param name the name of the layer in the timing profile of the job
+   */
+  private record ContextualizedMapLayer(
+      MapLayer layer, MapLayer.LayerContext layerContext, String name) {}
 
   /** Constructor. */
   private CreateMapProcessor() {
@@ -155,6 +191,50 @@ public final class CreateMapProcessor
         mapValues.isDpiSensitiveStyle());
   }
 
+  /**
+   * Replace the WMS layers that would request an image bigger than their maxRequestSize by tiled
+   * WMS layers, so the image is fetched as a grid of smaller requests made in parallel. The tiles
+   * are reduced by their buffer, so the requests, buffer included, still fit in the maxRequestSize.
+   */
+  private void splitOversizedWmsLayers(
+      final MapAttributeValues mapValues, final MapfishMapContext mapContext) {
+    final List<MapLayer> layers = mapValues.getLayers();
+    for (int i = 0; i < layers.size(); i++) {
+      if (layers.get(i) instanceof WmsLayer wmsLayer) {
+        final Dimension maxSize = wmsLayer.getParams().getMaxRequestSize();
+        final Dimension pixels =
+            wmsLayer.supportsNativeRotation()
+                ? mapContext.getMapSize()
+                : mapContext.getRotatedMapSize();
+        if (maxSize != null && (pixels.width > maxSize.width || pixels.height > maxSize.height)) {
+          final Dimension tileBuffer = wmsLayer.getParams().getMaxRequestTileBuffer();
+          final Dimension tileSize =
+              new Dimension(
+                  SetTiledWmsProcessor.adaptTileDimension(
+                      pixels.width, maxSize.width - 2 * tileBuffer.width),
+                  SetTiledWmsProcessor.adaptTileDimension(
+                      pixels.height, maxSize.height - 2 * tileBuffer.height));
+          final int nbRequests =
+              IntMath.divide(pixels.width, tileSize.width, RoundingMode.CEILING)
+                  * IntMath.divide(pixels.height, tileSize.height, RoundingMode.CEILING);
+          LOGGER.info(
+              "Splitting the WMS layer {} of {}x{} pixels in {} requests of {}x{} pixels",
+              wmsLayer.getParams().baseURL,
+              pixels.width,
+              pixels.height,
+              nbRequests,
+              tileSize.width,
+              tileSize.height);
+          this.metricRegistry
+              .histogram(MetricRegistry.name(WmsLayer.class.getSimpleName(), "subRequests"))
+              .update(nbRequests);
+          mapValues.replaceLayer(
+              i, new TiledWmsLayer(wmsLayer, tileSize, tileBuffer.width, tileBuffer.height));
+        }
+      }
+    }
+  }
+
   /**
    * If requested, adjust the bounds to the nearest scale and the map size.
    *
@@ -237,13 +317,24 @@ public final class CreateMapProcessor
     context.stopIfCanceled();
     MapAttributeValues mapValues = (MapAttributeValues) param.map;
     if (mapValues.zoomToFeatures != null) {
-      zoomToFeatures(param.clientHttpRequestFactoryProvider.get(), mapValues, context);
+      zoomToFeatures(
+          param.tempTaskDirectory,
+          param.clientHttpRequestFactoryProvider.get(),
+          mapValues,
+          context);
     }
     final MapfishMapContext mapContext = createMapContext(mapValues);
+    splitOversizedWmsLayers(mapValues, mapContext);
     boolean pdfA = param.template.isPdfA();
     if (mapValues.pdfA != null) {
       pdfA = mapValues.pdfA;
     }
+    // When the layers are merged in a single graphic, keep their rasters in memory to avoid
+    // reading back the files.
+    final InMemoryLayerImages inMemoryLayerImages =
+        param.map.getTemplate().isMapExport()
+            ? new InMemoryLayerImages(this.inMemoryCompositingBudget)
+            : null;
     final List<URI> graphics =
         createLayerGraphics(
             param.tempTaskDirectory,
@@ -251,13 +342,20 @@ public final class CreateMapProcessor
             pdfA,
             mapValues,
             context,
-            mapContext);
+            mapContext,
+            inMemoryLayerImages);
     context.stopIfCanceled();
 
     final URI mapSubReport;
     if (param.map.getTemplate().isMapExport()) {
       mapSubReport =
-          createMergedGraphic(param.tempTaskDirectory, graphics, mapContext, param.outputFormat);
+          createMergedGraphic(
+              param.tempTaskDirectory,
+              graphics,
+              mapContext,
+              param.outputFormat,
+              inMemoryLayerImages,
+              context.getStats());
     } else {
       mapSubReport =
           createMapSubReport(
@@ -270,13 +368,39 @@ public final class CreateMapProcessor
 
   @Override
   protected void extraValidation(
-      final List<Throwable> validationErrors, final Configuration configuration) {}
+      final List<Throwable> validationErrors, final Configuration configuration) {
+    if (this.layerGroupParallelism < 1) {
+      validationErrors.add(
+          new ConfigurationException(
+              "The layerGroupParallelism must be >= 1 in " + getClass().getName()));
+    }
+  }
+
+  /**
+   * The maximum number of layer groups of a map rendered in parallel. Consecutive layers that can
+   * be drawn on the same graphic form a group. Default is 1, the groups are rendered one after the
+   * other.
+   *
+   * <p>A group is only started in parallel of the others if its image fits in the free memory.
+   *
+   * @param layerGroupParallelism the maximum number of groups rendered at the same time
+   */
+  public void setLayerGroupParallelism(final int layerGroupParallelism) {
+    this.layerGroupParallelism = layerGroupParallelism;
+  }
+
+  /** The maximum number of layer groups of a map rendered in parallel. */
+  public int getLayerGroupParallelism() {
+    return this.layerGroupParallelism;
+  }
 
   private URI createMergedGraphic(
       final File printDirectory,
       final List<URI> graphics,
       final MapfishMapContext mapContext,
-      final String outputFormat)
+      final String outputFormat,
+      @Nullable final InMemoryLayerImages inMemoryLayerImages,
+      final ExecutionStats stats)
       throws IOException {
 
     final File mergedGraphic = File.createTempFile("map-", "." + outputFormat, printDirectory);
@@ -291,7 +415,7 @@ public final class CreateMapProcessor
         PdfContentByte pdfCB = writer.getDirectContent();
         Graphics g = pdfCB.createGraphics(width, height);
         try {
-          drawGraphics(width, height, graphics, g);
+          drawGraphics(width, height, graphics, g, inMemoryLayerImages);
         } finally {
           g.dispose();
         }
@@ -302,28 +426,42 @@ public final class CreateMapProcessor
 
       final int imageType = IMAGE_TYPES.get(outputFormat.toLowerCase());
       final BufferedImage bufferedImage = new BufferedImage(width, height, imageType);
-      Graphics g = bufferedImage.getGraphics();
-      if (imageType != BufferedImage.TYPE_4BYTE_ABGR) {
-        g.setColor(Color.WHITE);
-        g.fillRect(0, 0, width, height);
-      }
+      final long imageSize = getImageSize(bufferedImage);
+      stats.allocateRaster(imageSize);
       try {
-        drawGraphics(width, height, graphics, g);
+        Graphics g = bufferedImage.getGraphics();
+        if (imageType != BufferedImage.TYPE_4BYTE_ABGR) {
+          g.setColor(Color.WHITE);
+          g.fillRect(0, 0, width, height);
+        }
+        try {
+          drawGraphics(width, height, graphics, g, inMemoryLayerImages);
+        } finally {
+          g.dispose();
+        }
+        ImageUtils.writeImage(bufferedImage, outputFormat, mergedGraphic);
       } finally {
-        g.dispose();
+        stats.releaseRaster(imageSize);
       }
-      ImageUtils.writeImage(bufferedImage, outputFormat, mergedGraphic);
     }
 
     return mergedGraphic.toURI();
   }
 
   private void drawGraphics(
-      final int width, final int height, final List<URI> graphics, final Graphics g)
+      final int width,
+      final int height,
+      final List<URI> graphics,
+      final Graphics g,
+      @Nullable final InMemoryLayerImages inMemoryLayerImages)
       throws IOException {
     for (URI graphic : graphics) {
       final File graphicFile = new File(graphic);
-      if (FilenameUtils.getExtension(graphicFile.getName()).equals("svg")) {
+      final BufferedImage inMemoryImage =
+          inMemoryLayerImages != null ? inMemoryLayerImages.get(graphic) : null;
+      if (inMemoryImage != null) {
+        g.drawImage(inMemoryImage, 0, 0, width, height, null);
+      } else if (FilenameUtils.getExtension(graphicFile.getName()).equals("svg")) {
         try {
           g.drawImage(SvgUtil.convertFromSvg(graphic, width, height), 0, 0, width, height, null);
         } catch (TranscoderException e) {
@@ -384,56 +522,52 @@ public final class CreateMapProcessor
       final boolean pdfA,
       final MapAttributeValues mapValues,
       final ExecutionContext context,
-      final MapfishMapContext mapContext)
+      final MapfishMapContext mapContext,
+      @Nullable final InMemoryLayerImages inMemoryLayerImages)
       throws IOException, ParserConfigurationException {
     final List<ContextualizedMapLayer> layers =
         prepareLayers(printDirectory, clientHttpRequestFactory, mapValues, context, mapContext);
 
     final AreaOfInterest areaOfInterest = addAreaOfInterestLayer(mapValues, layers);
     final String mapKey = UUID.randomUUID().toString();
+    final List<LayerGroup> layerGroups = LayerGroup.buildGroups(layers, pdfA);
+    final List<Callable<List<URI>>> groupRenderers = new ArrayList<>(layerGroups.size());
+    int fileNumber = 0;
+    for (LayerGroup layerGroup : layerGroups) {
+      final int groupFileNumber = fileNumber;
+      groupRenderers.add(
+          () ->
+              renderLayerGroup(
+                  printDirectory,
+                  clientHttpRequestFactory,
+                  pdfA,
+                  context,
+                  mapContext,
+                  areaOfInterest,
+                  mapKey,
+                  groupFileNumber,
+                  layerGroup,
+                  inMemoryLayerImages));
+      fileNumber += layerGroup.renderType == RenderType.SVG ? layerGroup.layers.size() : 1;
+    }
+
     final List<URI> graphics = new ArrayList<>(layers.size());
     final String timerName = MetricRegistry.name(getClass().getSimpleName(), "buildLayers");
     try (Timer.Context ignored = this.metricRegistry.timer(timerName).time()) {
-      int fileNumber = 0;
-      for (LayerGroup layerGroup : LayerGroup.buildGroups(layers, pdfA)) {
-        if (layerGroup.renderType == RenderType.SVG) {
-          SvgFileGenerator svgFileGenerator =
-              new SvgFileGenerator(printDirectory, mapKey, fileNumber);
-          renderLayersAsSvg(
-              svgFileGenerator,
-              clientHttpRequestFactory,
-              context,
-              mapContext,
-              layerGroup,
-              areaOfInterest,
-              graphics);
-          fileNumber = svgFileGenerator.getCurrentFileNumber();
-        } else {
-          final BufferedImage bufferedImage = createBufferedImage(layerGroup, pdfA, mapContext);
-          ImageWriter imageWriter =
-              new ImageWriter(
-                  printDirectory,
-                  mapKey,
-                  layerGroup.opaque,
-                  layerGroup.renderType,
-                  fileNumber,
-                  bufferedImage,
-                  graphics);
-          Graphics2D graphics2D =
-              createGraphics2D(layerGroup, pdfA, mapContext, areaOfInterest, bufferedImage);
-          try {
-            renderLayerAsRasterGraphic(
-                imageWriter,
-                clientHttpRequestFactory,
-                pdfA,
+      if (this.layerGroupParallelism > 1 && layerGroups.size() > 1) {
+        graphics.addAll(
+            renderLayerGroupsInParallel(
+                groupRenderers,
+                layerGroups.stream()
+                    .mapToLong(layerGroup -> estimateMemory(layerGroup, mapContext))
+                    .toArray(),
+                this.layerGroupParallelism,
+                this.forkJoinPool,
                 context,
-                mapContext,
-                layerGroup,
-                graphics2D);
-          } finally {
-            graphics2D.dispose();
-          }
-          fileNumber = imageWriter.getCurrentFileNumber();
+                CreateMapProcessor::getFreeMemory));
+      } else {
+        for (Callable<List<URI>> groupRenderer : groupRenderers) {
+          graphics.addAll(callRenderer(groupRenderer));
         }
       }
     }
@@ -441,6 +575,155 @@ public final class CreateMapProcessor
     return graphics;
   }
 
+  private static List<URI> callRenderer(final Callable<List<URI>> groupRenderer)
+      throws IOException, ParserConfigurationException {
+    try {
+      return groupRenderer.call();
+    } catch (IOException | ParserConfigurationException | RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new PrintException("Failed to render the layers", e);
+    }
+  }
+
+  /**
+   * Render the layer groups on the fork join pool. A group is started only when less than
+   * parallelism groups are running and its image fits in the free heap, otherwise the oldest
+   * running group is awaited first. The graphics are returned in the order of the groups.
+   *
+   * @param groupRenderers the renderers of the groups
+   * @param estimatedMemories the memory needed by each group
+   * @param parallelism the maximum number of groups rendered at the same time
+   * @param pool the pool running the renderers
+   * @param context the context of the job
+   * @param freeMemory the free heap
+   */
+  @VisibleForTesting
+  static List<URI> renderLayerGroupsInParallel(
+      final List<Callable<List<URI>>> groupRenderers,
+      final long[] estimatedMemories,
+      final int parallelism,
+      final ForkJoinPool pool,
+      final ExecutionContext context,
+      final LongSupplier freeMemory)
+      throws IOException, ParserConfigurationException {
+    final List<URI> graphics = new ArrayList<>();
+    final List<Future<List<URI>>> futures = new ArrayList<>(groupRenderers.size());
+    final Deque<Future<List<URI>>> running = new ArrayDeque<>();
+    try {
+      for (int i = 0; i < groupRenderers.size(); i++) {
+        while (!running.isEmpty()
+            && (running.size() >= parallelism
+                || estimatedMemories[i] > freeMemory.getAsLong() / 2)) {
+          context.stopIfCanceled();
+          running.poll().get();
+        }
+        final Callable<List<URI>> groupRenderer = groupRenderers.get(i);
+        final Future<List<URI>> future = pool.submit(() -> context.mdcContextEx(groupRenderer));
+        futures.add(future);
+        running.add(future);
+      }
+      for (Future<List<URI>> future : futures) {
+        context.stopIfCanceled();
+        graphics.addAll(future.get());
+      }
+      return graphics;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PrintException("Interrupted while rendering the layers", e);
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException ioException) {
+        throw ioException;
+      } else if (cause instanceof ParserConfigurationException parserConfigurationException) {
+        throw parserConfigurationException;
+      } else if (cause instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      throw new PrintException("Failed to render the layers", cause);
+    } finally {
+      for (Future<List<URI>> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  private static long getFreeMemory() {
+    final Runtime runtime = Runtime.getRuntime();
+    return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+  }
+
+  /** Estimate the memory needed to render a layer group, the size of the raster image. */
+  private static long estimateMemory(
+      final LayerGroup layerGroup, final MapfishMapContext mapContext) {
+    if (layerGroup.renderType == RenderType.SVG) {
+      return 0;
+    }
+    final long width = Math.round(mapContext.getMapSize().width * layerGroup.imageBufferScaling);
+    final long height = Math.round(mapContext.getMapSize().height * layerGroup.imageBufferScaling);
+    return width * height * 4;
+  }
+
+  private List<URI> renderLayerGroup(
+      final File printDirectory,
+      final MfClientHttpRequestFactory clientHttpRequestFactory,
+      final boolean pdfA,
+      final ExecutionContext context,
+      final MapfishMapContext mapContext,
+      final AreaOfInterest areaOfInterest,
+      final String mapKey,
+      final int fileNumber,
+      final LayerGroup layerGroup,
+      @Nullable final InMemoryLayerImages inMemoryLayerImages)
+      throws IOException, ParserConfigurationException {
+    final List<URI> graphics = new ArrayList<>();
+    if (layerGroup.renderType == RenderType.SVG) {
+      SvgFileGenerator svgFileGenerator = new SvgFileGenerator(printDirectory, mapKey, fileNumber);
+      renderLayersAsSvg(
+          svgFileGenerator,
+          clientHttpRequestFactory,
+          context,
+          mapContext,
+          layerGroup,
+          areaOfInterest,
+          graphics);
+    } else {
+      final BufferedImage bufferedImage = createBufferedImage(layerGroup, pdfA, mapContext);
+      ImageWriter imageWriter =
+          new ImageWriter(
+              printDirectory,
+              mapKey,
+              layerGroup.opaque,
+              layerGroup.renderType,
+              fileNumber,
+              bufferedImage,
+              graphics,
+              inMemoryLayerImages);
+      Graphics2D graphics2D =
+          createGraphics2D(layerGroup, pdfA, mapContext, areaOfInterest, bufferedImage);
+      final long imageSize = getImageSize(bufferedImage);
+      context.getStats().allocateRaster(imageSize);
+      try {
+        renderLayerAsRasterGraphic(
+            imageWriter,
+            clientHttpRequestFactory,
+            pdfA,
+            context,
+            mapContext,
+            layerGroup,
+            graphics2D);
+      } finally {
+        graphics2D.dispose();
+        context.getStats().releaseRaster(imageSize);
+      }
+    }
+    return graphics;
+  }
+
+  private static long getImageSize(final BufferedImage image) {
+    return (long) image.getWidth() * image.getHeight() * image.getColorModel().getPixelSize() / 8;
+  }
+
   private Graphics2D createGraphics2D(
       final LayerGroup layerGroup,
       final boolean pdfA,
@@ -490,18 +773,30 @@ public final class CreateMapProcessor
 
     HttpRequestFetcher cache =
         new HttpRequestFetcher(
-            printDirectory, this.metricRegistry, context, this.requestForkJoinPool);
+            printDirectory,
+            this.metricRegistry,
+            context,
+            this.requestExecutor,
+            this.tileCache,
+            this.maxInMemoryBodySize,
+            this.inMemoryBodyBudget);
 
     // prepare layers for rendering
     List<ContextualizedMapLayer> layersScaled = new ArrayList<>(layers.size());
-    for (final MapLayer layer : layers) {
-      MapLayer.LayerContext layerContext =
-          layer.prepareRender(mapContext, clientHttpRequestFactory);
-      final MapfishMapContext transformer = getTransformer(mapContext, layerContext.scale());
-      layerContext =
-          layer.prefetchResources(
-              cache, clientHttpRequestFactory, transformer, context, layerContext);
-      layersScaled.add(new ContextualizedMapLayer(layer, layerContext));
+    for (int i = 0; i < layers.size(); i++) {
+      final MapLayer layer = layers.get(i);
+      // in the drawing order, to be able to match the layers of the request
+      final String name = "layer " + i + " " + layer.getClass().getSimpleName();
+      MapLayer.LayerContext layerContext;
+      try (ExecutionStats.Timing ignored =
+          context.getStats().startTiming("processors", toString(), name, "prefetch")) {
+        layerContext = layer.prepareRender(mapContext, clientHttpRequestFactory);
+        final MapfishMapContext transformer = getTransformer(mapContext, layerContext.scale());
+        layerContext =
+            layer.prefetchResources(
+                cache, clientHttpRequestFactory, transformer, context, layerContext);
+      }
+      layersScaled.add(new ContextualizedMapLayer(layer, layerContext, name));
     }
     return layersScaled;
   }
@@ -519,7 +814,10 @@ public final class CreateMapProcessor
       context.stopIfCanceled();
       final SVGGraphics2D graphics2D = createSvgGraphics(mapContext.getMapSize());
 
-      try {
+      try (ExecutionStats.Timing ignored =
+          context
+              .getStats()
+              .startTiming("processors", toString(), contextualizedMapLayer.name, "render")) {
         final Graphics2D clippedGraphics2D =
             createClippedGraphics(mapContext, areaOfInterest, graphics2D);
         contextualizedMapLayer.layer.render(
@@ -551,12 +849,17 @@ public final class CreateMapProcessor
     for (ContextualizedMapLayer contextualizedMapLayer : layerGroup.layers) {
       context.stopIfCanceled();
       warnIfDifferentRenderType(layerGroup.renderType, contextualizedMapLayer.layer, !pdfA);
-      contextualizedMapLayer.layer.render(
-          graphics2D,
-          clientHttpRequestFactory,
-          transformer,
-          context,
-          contextualizedMapLayer.layerContext);
+      try (ExecutionStats.Timing ignored =
+          context
+              .getStats()
+              .startTiming("processors", toString(), contextualizedMapLayer.name, "render")) {
+        contextualizedMapLayer.layer.render(
+            graphics2D,
+            clientHttpRequestFactory,
+            transformer,
+            context,
+            contextualizedMapLayer.layerContext);
+      }
     }
     imageWriter.writeImage();
   }
@@ -578,7 +881,9 @@ public final class CreateMapProcessor
       final FeatureLayer featureLayer =
           this.featureLayerPlugin.parse(mapValues.getTemplate(), param);
 
-      layers.add(new ContextualizedMapLayer(featureLayer, featureLayer.prepareRender(null, null)));
+      layers.add(
+          new ContextualizedMapLayer(
+              featureLayer, featureLayer.prepareRender(null, null), "areaOfInterest"));
     }
     return areaOfInterest;
   }
@@ -617,10 +922,12 @@ public final class CreateMapProcessor
   }
 
   private void zoomToFeatures(
+      final File printDirectory,
       final MfClientHttpRequestFactory clientHttpRequestFactory,
       final MapAttributeValues mapValues,
       final ExecutionContext context) {
-    ReferencedEnvelope bounds = getFeatureBounds(clientHttpRequestFactory, mapValues, context);
+    ReferencedEnvelope bounds =
+        getFeatureBounds(printDirectory, clientHttpRequestFactory, mapValues, context);
 
     if (!bounds.isNull()) {
       if (mapValues.zoomToFeatures.zoomType == ZoomType.CENTER) {
@@ -695,6 +1002,7 @@ public final class CreateMapProcessor
   /** Get the bounding-box containing all features of all layers. */
   @Nonnull
   private ReferencedEnvelope getFeatureBounds(
+      final File printDirectory,
       final MfClientHttpRequestFactory clientHttpRequestFactory,
       final MapAttributeValues mapValues,
       final ExecutionContext context) {
@@ -709,7 +1017,7 @@ public final class CreateMapProcessor
           || (StringUtils.isEmpty(layerName) && layer instanceof AbstractFeatureSourceLayer)) {
         AbstractFeatureSourceLayer featureLayer = (AbstractFeatureSourceLayer) layer;
         FeatureSource<?, ?> featureSource =
-            featureLayer.getFeatureSource(clientHttpRequestFactory, mapContext);
+            featureLayer.getFeatureSource(clientHttpRequestFactory, mapContext, printDirectory);
         FeatureCollection<?, ?> features;
         try {
           features = featureSource.getFeatures();
@@ -1,5 +1,6 @@
 package org.mapfish.print.processor.map;
 
+import jakarta.annotation.Nullable;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
@@ -14,6 +15,7 @@ class ImageWriter {
   private final String formatName;
   private final BufferedImage bufferedImage;
   private final List<URI> graphics;
+  @Nullable private final InMemoryLayerImages inMemoryLayerImages;
   private int currentFileNumber;
 
   ImageWriter(
@@ -23,13 +25,15 @@ class ImageWriter {
       final MapLayer.RenderType renderType,
       final int fileNumber,
       final BufferedImage bufferedImage,
-      final List<URI> graphics) {
+      final List<URI> graphics,
+      @Nullable final InMemoryLayerImages inMemoryLayerImages) {
     this.printDirectory = printDirectory;
     this.mapKey = mapKey;
     this.formatName = isLayerGroupOpaque && renderType == MapLayer.RenderType.JPEG ? "JPEG" : "PNG";
     this.currentFileNumber = fileNumber;
     this.bufferedImage = bufferedImage;
     this.graphics = graphics;
+    this.inMemoryLayerImages = inMemoryLayerImages;
   }
 
   public void writeImage() throws IOException {
@@ -41,6 +45,9 @@ class ImageWriter {
             String.format("%s_layer_%d.%s", mapKey, currentFileNumber++, formatName.toLowerCase()));
     ImageUtils.writeImage(bufferedImage, formatName, path);
     graphics.add(path.toURI());
+    if (inMemoryLayerImages != null) {
+      inMemoryLayerImages.offer(path.toURI(), bufferedImage);
+    }
   }
 
   public int getCurrentFileNumber() {
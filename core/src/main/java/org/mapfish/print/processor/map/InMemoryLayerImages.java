@@ -0,0 +1,63 @@
+package org.mapfish.print.processor.map;
+
+import jakarta.annotation.Nullable;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the raster images of the layers in memory, to be able to merge them without reading back
+ * the files that were just written. The images exceeding the memory budget are not kept, they
+ * will be read from their files.
+ */
+final class InMemoryLayerImages {
+  private final Map<URI, BufferedImage> images = new HashMap<>();
+  private long remainingBudget;
+
+  /**
+   * Constructor.
+   *
+   * @param budget the maximum number of bytes of the images kept in memory
+   */
+  InMemoryLayerImages(final long budget) {
+    this.remainingBudget = budget;
+  }
+
+  private static long getSize(final BufferedImage image) {
+    final DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+    return (long) dataBuffer.getSize()
+        * dataBuffer.getNumBanks()
+        * DataBuffer.getDataTypeSize(dataBuffer.getDataType())
+        / Byte.SIZE;
+  }
+
+  /**
+   * Keep the image of a layer graphic if it fits in the remaining budget.
+   *
+   * @param graphic the URI of the file the image was written to
+   * @param image the image
+   * @return true if the image is kept in memory
+   */
+  synchronized boolean offer(final URI graphic, final BufferedImage image) {
+    final long size = getSize(image);
+    if (size > this.remainingBudget) {
+      return false;
+    }
+    this.remainingBudget -= size;
+    this.images.put(graphic, image);
+    return true;
+  }
+
+  /**
+   * Get the image of a layer graphic.
+   *
+   * @param graphic the URI of the file the image was written to
+   * @return the image or null if it wasn't kept in memory
+   */
+  @Nullable
+  synchronized BufferedImage get(final URI graphic) {
+    return this.images.get(graphic);
+  }
+}
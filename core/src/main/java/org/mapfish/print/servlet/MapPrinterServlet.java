@@ -8,6 +8,7 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import io.sentry.Sentry;
 import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -29,20 +30,24 @@ import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-import net.sf.jasperreports.engine.fonts.FontFamily;
-import net.sf.jasperreports.extensions.ExtensionsEnvironment;
+import java.util.concurrent.TimeoutException;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.jfree.util.Log;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONWriter;
 import org.mapfish.print.Constants;
+import org.mapfish.print.FontInventory;
 import org.mapfish.print.FontTools;
 import org.mapfish.print.MapPrinter;
 import org.mapfish.print.MapPrinterFactory;
@@ -55,6 +60,7 @@ import org.mapfish.print.servlet.job.JobManager;
 import org.mapfish.print.servlet.job.NoSuchReferenceException;
 import org.mapfish.print.servlet.job.PrintJobEntry;
 import org.mapfish.print.servlet.job.PrintJobStatus;
+import org.mapfish.print.servlet.job.PrintResultCache;
 import org.mapfish.print.servlet.job.impl.ThreadPoolJobManager;
 import org.mapfish.print.servlet.job.loader.ReportLoader;
 import org.mapfish.print.url.data.Handler;
@@ -64,14 +70,20 @@ import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.View;
 
 /** The default servlet. */
 @Controller
@@ -158,6 +170,25 @@ public class MapPrinterServlet extends BaseMapServlet {
    */
   public static final String JSON_WAITING_TIME = "waitingTime";
 
+  /**
+   * The timing profile of a finished job: the time spent in the queue, in each processor (and in
+   * each layer of the maps), to fill and export the report and to store it. Only returned when the
+   * <code>profile=true</code> parameter is given.
+   *
+   * <p>Part of the {@link #getStatus(String, String,jakarta.servlet.http.HttpServletRequest,
+   * jakarta.servlet.http.HttpServletResponse)} response.
+   */
+  public static final String JSON_PROFILE = "profile";
+
+  /**
+   * The maximum time in seconds to wait for the job to be done before returning its status (long
+   * polling), by default the status is returned right away.
+   *
+   * <p>Parameter of the {@link #getStatus(String, String,jakarta.servlet.http.HttpServletRequest,
+   * jakarta.servlet.http.HttpServletResponse)} request.
+   */
+  public static final String WAIT_PARAMETER = "wait";
+
   /** The key containing the print job reference ID in the create report response. */
   public static final String JSON_PRINT_JOB_REF = "ref";
 
@@ -231,6 +262,8 @@ public class MapPrinterServlet extends BaseMapServlet {
   private final ApplicationContext context;
   private final ServletInfo servletInfo;
   private final MapPrinterFactory mapPrinterFactory;
+  private final FontInventory fontInventory;
+  private final PrintResultCache printResultCache;
 
   private final Timer buildReportTimer;
   private final Timer reportTimer;
@@ -249,13 +282,17 @@ public class MapPrinterServlet extends BaseMapServlet {
       final ApplicationContext context,
       final ServletInfo servletInfo,
       final MapPrinterFactory mapPrinterFactory,
-      final MetricRegistry metricRegistry) {
+      final MetricRegistry metricRegistry,
+      final FontInventory fontInventory,
+      final PrintResultCache printResultCache) {
     this.jobManager = jobManager;
     this.reportLoaders = reportLoaders;
     this.printerFactory = printerFactory;
     this.context = context;
     this.servletInfo = servletInfo;
     this.mapPrinterFactory = mapPrinterFactory;
+    this.fontInventory = fontInventory;
+    this.printResultCache = printResultCache;
 
     buildReportTimer =
         metricRegistry.timer(name(MapPrinterServlet.class.getSimpleName(), BUILDREPORT));
@@ -380,18 +417,25 @@ public class MapPrinterServlet extends BaseMapServlet {
    * @param referenceId the job reference
    * @param statusRequest the request object
    * @param statusResponse the response object
+   * @return the deferred status when waiting asynchronously for the job, else null
    */
+  @Nullable
   @RequestMapping(
       value = "/{appId}" + STATUS_URL + "/{referenceId:\\S+}.json",
       method = RequestMethod.GET)
-  public final void getStatusSpecificAppId(
+  public final DeferredResult<View> getStatusSpecificAppId(
       @Nonnull @PathVariable final String appId,
       @Nonnull @PathVariable final String referenceId,
       final HttpServletRequest statusRequest,
       final HttpServletResponse statusResponse) {
     withAppIdCounter.inc();
-    try (Timer.Context ignored = statusTimer.time()) {
-      getStatus(appId, referenceId, statusRequest, statusResponse);
+    final Timer.Context timer = statusTimer.time();
+    DeferredResult<View> result = null;
+    try {
+      result = getStatus(appId, referenceId, statusRequest, statusResponse);
+      return result;
+    } finally {
+      stopWhenDone(timer, result);
     }
   }
 
@@ -405,15 +449,22 @@ public class MapPrinterServlet extends BaseMapServlet {
    * @param referenceId the job reference
    * @param statusRequest the request object
    * @param statusResponse the response object
+   * @return the deferred status when waiting asynchronously for the job, else null
    */
+  @Nullable
   @RequestMapping(value = STATUS_URL + "/{referenceId:\\S+}.json", method = RequestMethod.GET)
-  public final void getStatusPath(
+  public final DeferredResult<View> getStatusPath(
       @Nonnull @PathVariable final String referenceId,
       final HttpServletRequest statusRequest,
       final HttpServletResponse statusResponse) {
     noAppIdCounter.inc();
-    try (Timer.Context ignored = statusTimer.time()) {
-      getStatus("default", referenceId, statusRequest, statusResponse);
+    final Timer.Context timer = statusTimer.time();
+    DeferredResult<View> result = null;
+    try {
+      result = getStatus("default", referenceId, statusRequest, statusResponse);
+      return result;
+    } finally {
+      stopWhenDone(timer, result);
     }
   }
 
@@ -428,8 +479,10 @@ public class MapPrinterServlet extends BaseMapServlet {
    * @param referenceId the job reference
    * @param statusRequest the request object
    * @param statusResponse the response object
+   * @return the deferred status when waiting asynchronously for the job, else null
    */
-  private void getStatus(
+  @Nullable
+  private DeferredResult<View> getStatus(
       @Nonnull final String applicationId,
       @Nonnull final String referenceId,
       final HttpServletRequest statusRequest,
@@ -437,6 +490,35 @@ public class MapPrinterServlet extends BaseMapServlet {
     MDC.put(Processor.MDC_APPLICATION_ID_KEY, applicationId);
     MDC.put(Processor.MDC_JOB_ID_KEY, referenceId);
     setNoCache(statusResponse);
+    final long wait = NumberUtils.toLong(statusRequest.getParameter(WAIT_PARAMETER), 0);
+    if (wait > 0) {
+      try {
+        if (!this.jobManager.getStatus(referenceId).isDone()) {
+          return whenDone(
+              referenceId,
+              TimeUnit.SECONDS.toMillis(Math.min(wait, this.maxCreateAndGetWaitTimeInSeconds)),
+              statusRequest,
+              statusResponse,
+              response -> writeStatus(referenceId, statusRequest, response));
+        }
+      } catch (NoSuchReferenceException e) {
+        error(statusResponse, e.getMessage(), HttpStatus.NOT_FOUND);
+        return null;
+      } catch (IOException e) {
+        throw new PrintException("Failed to write the status of " + referenceId, e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new PrintException("Interrupted while waiting for " + referenceId, e);
+      }
+    }
+    writeStatus(referenceId, statusRequest, statusResponse);
+    return null;
+  }
+
+  private void writeStatus(
+      final String referenceId,
+      final HttpServletRequest statusRequest,
+      final HttpServletResponse statusResponse) {
     try {
       PrintJobStatus status = this.jobManager.getStatus(referenceId);
 
@@ -452,6 +534,11 @@ public class MapPrinterServlet extends BaseMapServlet {
           if (!StringUtils.isEmpty(status.getError())) {
             json.key(JSON_ERROR).value(status.getError());
           }
+          if (Boolean.parseBoolean(statusRequest.getParameter(JSON_PROFILE))
+              && status.getResult() != null
+              && status.getResult().getProfile() != null) {
+            json.key(JSON_PROFILE).value(new JSONObject(status.getResult().getProfile()));
+          }
 
           addDownloadLinkToJson(statusRequest, referenceId, json);
         }
@@ -509,7 +596,7 @@ public class MapPrinterServlet extends BaseMapServlet {
    * Cancel a job.
    *
    * <p>Even if a job was already finished, subsequent status requests will return that the job was
-   * canceled.
+   * canceled. A job shared by identical requests is only canceled by its last requester.
    *
    * @param applicationId the application ID
    * @param referenceId the job reference
@@ -523,7 +610,11 @@ public class MapPrinterServlet extends BaseMapServlet {
     MDC.put(Processor.MDC_JOB_ID_KEY, referenceId);
     setNoCache(statusResponse);
     try {
-      this.jobManager.cancel(referenceId);
+      // the job of identical requests is only canceled by its last requester
+      this.jobManager.getStatus(referenceId);
+      if (this.printResultCache.release(referenceId)) {
+        this.jobManager.cancel(referenceId);
+      }
     } catch (NoSuchReferenceException e) {
       error(statusResponse, e.getMessage(), HttpStatus.NOT_FOUND);
     }
@@ -698,11 +789,13 @@ public class MapPrinterServlet extends BaseMapServlet {
    * @param inline whether to inline the content
    * @param createReportRequest the request object
    * @param createReportResponse the response object
+   * @return the deferred report when waiting asynchronously for the job, else null
    */
+  @Nullable
   @RequestMapping(
       value = "/{appId}" + CREATE_AND_GET_URL + ".{format:\\w+}",
       method = RequestMethod.POST)
-  public final void createReportAndGet(
+  public final DeferredResult<View> createReportAndGet(
       @Nonnull @PathVariable final String appId,
       @PathVariable final String format,
       @RequestBody final String requestData,
@@ -711,14 +804,21 @@ public class MapPrinterServlet extends BaseMapServlet {
       final HttpServletResponse createReportResponse)
       throws IOException, ServletException, InterruptedException, NoSuchAppException {
     withAppIdCounter.inc();
-    try (Timer.Context ignored = buildReportTimer.time()) {
+    final Timer.Context timer = buildReportTimer.time();
+    DeferredResult<View> result = null;
+    try {
       setNoCache(createReportResponse);
-      doCreateReportAndGet(
-          appId, format, requestData, inline, createReportRequest, createReportResponse);
+      result =
+          doCreateReportAndGet(
+              appId, format, requestData, inline, createReportRequest, createReportResponse);
+      return result;
+    } finally {
+      stopWhenDone(timer, result);
     }
   }
 
-  private void doCreateReportAndGet(
+  @Nullable
+  private DeferredResult<View> doCreateReportAndGet(
       final String appId,
       final String format,
       final String requestData,
@@ -731,18 +831,99 @@ public class MapPrinterServlet extends BaseMapServlet {
             appId, format, requestData, createReportRequest, createReportResponse);
     if (ref == null) {
       error(createReportResponse, "Failed to create a print job", HttpStatus.INTERNAL_SERVER_ERROR);
-      return;
+      return null;
     }
 
     final BooleanHandleReportLoadResult handler = new BooleanHandleReportLoadResult(inline);
-    boolean isDone = false;
-    final long maxWaitTimeInMillis =
-        TimeUnit.SECONDS.toMillis(this.maxCreateAndGetWaitTimeInSeconds);
-    long startWaitTime = System.currentTimeMillis();
-    while (!isDone && System.currentTimeMillis() - startWaitTime < maxWaitTimeInMillis) {
-      TimeUnit.SECONDS.sleep(1);
-      isDone = loadReport(ref, createReportResponse, handler);
+    return whenDone(
+        ref,
+        TimeUnit.SECONDS.toMillis(this.maxCreateAndGetWaitTimeInSeconds),
+        createReportRequest,
+        createReportResponse,
+        response -> loadReport(ref, response, handler));
+  }
+
+  /**
+   * Write the response when a job is done, or when the maximum wait time is elapsed.
+   *
+   * <p>When the container supports it, the request is processed asynchronously by Spring MVC: the
+   * request thread is released while waiting, and the response is written by the returned deferred
+   * view when the job manager notifies the end of the job. Otherwise the request thread waits.
+   *
+   * @param referenceId the job reference
+   * @param maxWaitTimeInMillis the maximum time to wait
+   * @param request the request object
+   * @param response the response object
+   * @param writer writes the response
+   * @return the deferred response when processed asynchronously, null if it is already written
+   */
+  @Nullable
+  private DeferredResult<View> whenDone(
+      final String referenceId,
+      final long maxWaitTimeInMillis,
+      final HttpServletRequest request,
+      final HttpServletResponse response,
+      final ResponseWriter writer)
+      throws IOException, InterruptedException {
+    final CompletableFuture<Void> done = this.jobManager.watch(referenceId);
+    if (!request.isAsyncSupported()) {
+      try {
+        done.get(maxWaitTimeInMillis, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException | ExecutionException e) {
+        LOGGER.debug("Job {} not done after {} ms", referenceId, maxWaitTimeInMillis);
+      } finally {
+        done.cancel(false);
+      }
+      writer.write(response);
+      return null;
     }
+
+    // the wait time is handled by the future, this timeout is a safety net
+    final DeferredResult<View> result =
+        new DeferredResult<>(maxWaitTimeInMillis + TimeUnit.MINUTES.toMillis(1));
+    result.onTimeout(() -> done.cancel(false));
+    result.onError(error -> done.cancel(false));
+    // the async dispatch doesn't go through the security filter
+    final SecurityContext securityContext = SecurityContextHolder.getContext();
+    final Map<String, String> mdc = MDC.getCopyOfContextMap();
+    done.completeOnTimeout(null, maxWaitTimeInMillis, TimeUnit.MILLISECONDS)
+        .whenComplete(
+            (ignored, error) ->
+                result.setResult(
+                    (model, asyncRequest, asyncResponse) -> {
+                      if (mdc != null) {
+                        MDC.setContextMap(mdc);
+                      }
+                      SecurityContextHolder.setContext(securityContext);
+                      try {
+                        writer.write(asyncResponse);
+                      } finally {
+                        SecurityContextHolder.clearContext();
+                        MDC.clear();
+                      }
+                    }));
+    return result;
+  }
+
+  /**
+   * Stop the timer of a request when it is completed.
+   *
+   * @param timer the timer
+   * @param result the deferred result of the request, null if it is already completed
+   */
+  private static void stopWhenDone(
+      final Timer.Context timer, @Nullable final DeferredResult<?> result) {
+    if (result == null) {
+      timer.stop();
+    } else {
+      result.onCompletion(timer::stop);
+    }
+  }
+
+  /** Writes a response. */
+  @FunctionalInterface
+  private interface ResponseWriter {
+    void write(HttpServletResponse response) throws IOException;
   }
 
   /**
@@ -754,9 +935,11 @@ public class MapPrinterServlet extends BaseMapServlet {
    * @param inline whether to inline the content
    * @param createReportRequest the request object
    * @param createReportResponse the response object
+   * @return the deferred report when waiting asynchronously for the job, else null
    */
+  @Nullable
   @RequestMapping(value = CREATE_AND_GET_URL + ".{format:\\w+}", method = RequestMethod.POST)
-  public final void createReportAndGetNoAppId(
+  public final DeferredResult<View> createReportAndGetNoAppId(
       @PathVariable final String format,
       @RequestBody final String requestData,
       @RequestParam(value = "inline", defaultValue = "false") final boolean inline,
@@ -764,14 +947,20 @@ public class MapPrinterServlet extends BaseMapServlet {
       final HttpServletResponse createReportResponse)
       throws IOException, ServletException, InterruptedException, NoSuchAppException {
     noAppIdCounter.inc();
-    try (Timer.Context ignored = buildReportTimer.time()) {
+    final Timer.Context timer = buildReportTimer.time();
+    DeferredResult<View> result = null;
+    try {
       setNoCache(createReportResponse);
       final String appId = getAppId(requestData, createReportResponse);
       if (appId == null) {
-        return;
+        return null;
       }
-      doCreateReportAndGet(
-          appId, format, requestData, inline, createReportRequest, createReportResponse);
+      result =
+          doCreateReportAndGet(
+              appId, format, requestData, inline, createReportRequest, createReportResponse);
+      return result;
+    } finally {
+      stopWhenDone(timer, result);
     }
   }
 
@@ -997,35 +1186,45 @@ public class MapPrinterServlet extends BaseMapServlet {
   /**
    * List the available fonts on the system.
    *
+   * <p>The fonts are served from the {@link FontInventory}, with its version as ETag.
+   *
+   * @param request the request object
    * @param response the response object
    */
   @RequestMapping(value = FONTS_URL)
-  public final void listAvailableFonts(final HttpServletResponse response) {
+  public final void listAvailableFonts(
+      final HttpServletRequest request, final HttpServletResponse response) {
     MDC.remove(Processor.MDC_APPLICATION_ID_KEY);
     MDC.remove(Processor.MDC_JOB_ID_KEY);
 
+    final FontInventory.Index index = this.fontInventory.getIndex();
+    final String etag = "\"" + index.version() + "\"";
+    response.setHeader(HttpHeaders.ETAG, etag);
+    if (etag.equals(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+      response.setStatus(HttpStatus.NOT_MODIFIED.value());
+      return;
+    }
+
     setContentType(response);
     try (PrintWriter writer = response.getWriter()) {
       JSONWriter json = new JSONWriter(writer);
       json.object();
       json.key(JSON_OUTPUT_JASPERREPORT_FONTS);
       json.array();
-
-      final List<FontFamily> families =
-          ExtensionsEnvironment.getExtensionsRegistry().getExtensions(FontFamily.class);
-      for (FontFamily family : families) {
-        json.value(family.getName());
+      for (String family : index.jasperFamilies()) {
+        json.value(family);
       }
       json.endArray();
 
       json.key(JSON_OUTPUT_FONTS);
       json.array();
-      for (String family : FontTools.FONT_FAMILIES) {
+      for (Map.Entry<String, List<FontTools.FontConfigDescription>> family :
+          index.fonts().entrySet()) {
         json.object();
-        json.key(JSON_OUTPUT_FONT_FAMILY).value(family);
+        json.key(JSON_OUTPUT_FONT_FAMILY).value(family.getKey());
         json.key(JSON_OUTPUT_FONTCONFIG);
         json.array();
-        for (FontTools.FontConfigDescription description : FontTools.listFontConfigFonts(family)) {
+        for (FontTools.FontConfigDescription description : family.getValue()) {
           json.object();
           if (description.family != null) {
             json.key(JSON_OUTPUT_FONTCONFIG_FAMILIES);
@@ -1154,13 +1353,35 @@ public class MapPrinterServlet extends BaseMapServlet {
     PrintJobEntry jobEntry = new PrintJobEntry(ref, specJson, System.currentTimeMillis());
     jobEntry.configureAccess(template, this.context);
 
+    if (this.printResultCache.isCacheable(specJson)) {
+      // identical requests share the same job
+      final String key =
+          PrintResultCache.key(appId, templateName, format, getUserName(), specJson);
+      final String jobRef =
+          this.printResultCache.getOrSubmit(appId, key, () -> submit(appId, specJson, jobEntry));
+      if (jobRef != null) {
+        MDC.put(Processor.MDC_JOB_ID_KEY, jobRef);
+      }
+      return jobRef;
+    }
+    return submit(appId, specJson, jobEntry);
+  }
+
+  private String submit(
+      final String appId, final PJsonObject specJson, final PrintJobEntry jobEntry) {
     try {
       this.jobManager.submit(jobEntry);
     } catch (RuntimeException exc) {
       LOGGER.error("Error when creating job on {}: {}", appId, specJson, exc);
       return null;
     }
-    return ref;
+    return jobEntry.getReferenceId();
+  }
+
+  @Nullable
+  private static String getUserName() {
+    final Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+    return authentication == null ? null : authentication.getName();
   }
 
   private boolean checkReferer(final HttpServletRequest request, final MapPrinter mapPrinter) {
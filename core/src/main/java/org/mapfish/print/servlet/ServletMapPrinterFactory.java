@@ -23,6 +23,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.locationtech.jts.util.Assert;
 import org.mapfish.print.MapPrinter;
 import org.mapfish.print.MapPrinterFactory;
+import org.mapfish.print.output.JasperReportCache;
 import org.mapfish.print.servlet.fileloader.ConfigFileLoaderManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,6 +49,7 @@ public class ServletMapPrinterFactory implements MapPrinterFactory {
   private final Map<String, URI> configurationFiles = new HashMap<>();
   @Autowired private ApplicationContext applicationContext;
   @Autowired private ConfigFileLoaderManager configFileLoader;
+  @Autowired private JasperReportCache jasperReportCache;
   private String appsRootDirectory = null;
 
   @PostConstruct
@@ -101,7 +103,7 @@ public class ServletMapPrinterFactory implements MapPrinterFactory {
       // The app has been removed
       this.configurationFiles.remove(finalApp);
       this.configurationFileLastModifiedTimes.remove(finalApp);
-      this.printers.remove(finalApp);
+      removePrinter(finalApp);
       if (finalApp.equals(DEFAULT_CONFIGURATION_FILE_KEY)) {
         pickDefaultApp();
       }
@@ -116,7 +118,7 @@ public class ServletMapPrinterFactory implements MapPrinterFactory {
       // file modified, reload it
       LOGGER.info("Configuration file modified. Reloading...");
 
-      this.printers.remove(finalApp);
+      removePrinter(finalApp);
       printer = null;
     }
 
@@ -145,6 +147,13 @@ public class ServletMapPrinterFactory implements MapPrinterFactory {
     return printer;
   }
 
+  private void removePrinter(final String app) {
+    final MapPrinter printer = this.printers.remove(app);
+    if (printer != null) {
+      this.jasperReportCache.invalidate(printer.getConfiguration());
+    }
+  }
+
   @Override
   public final Set<String> getAppIds() {
     return this.configurationFiles.keySet();
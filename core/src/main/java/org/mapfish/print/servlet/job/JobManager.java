@@ -1,6 +1,7 @@
 package org.mapfish.print.servlet.job;
 
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
 
 /** Manages and Executes Print Jobs. */
 public interface JobManager {
@@ -27,6 +28,17 @@ public interface JobManager {
    */
   PrintJobStatus getStatus(String referenceId) throws NoSuchReferenceException;
 
+  /**
+   * Watch a job, to be notified when it is done (finished, failed or canceled).
+   *
+   * <p>While the returned future is neither completed nor canceled, the job is not considered as
+   * abandoned. Cancel the future to stop watching the job.
+   *
+   * @param referenceId The referenceId of the job to watch.
+   * @return a future completed when the job is done or doesn't exist anymore.
+   */
+  CompletableFuture<Void> watch(String referenceId);
+
   /**
    * Instant at which a job was executed by this manager.
    *
@@ -11,6 +11,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -31,6 +32,7 @@ import org.mapfish.print.Constants;
 import org.mapfish.print.ExceptionUtils;
 import org.mapfish.print.MapPrinter;
 import org.mapfish.print.MapPrinterFactory;
+import org.mapfish.print.StatsUtils;
 import org.mapfish.print.config.Configuration;
 import org.mapfish.print.config.ReportStorage;
 import org.mapfish.print.config.SmtpConfig;
@@ -39,6 +41,7 @@ import org.mapfish.print.config.WorkingDirectories;
 import org.mapfish.print.output.OutputFormat;
 import org.mapfish.print.processor.ExecutionStats;
 import org.mapfish.print.processor.Processor;
+import org.mapfish.print.servlet.job.impl.PrintJobMemoryEstimator;
 import org.mapfish.print.wrapper.json.PJsonObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,6 +50,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
+import tools.jackson.databind.node.ObjectNode;
 
 /** The information for printing a report. */
 public abstract class PrintJob implements Callable<PrintJobResult> {
@@ -57,6 +61,7 @@ public abstract class PrintJob implements Callable<PrintJobResult> {
   @Autowired private MetricRegistry metricRegistry;
   @Autowired private Accounting accounting;
   @Autowired private WorkingDirectories workingDirectories;
+  @Autowired private PrintJobMemoryEstimator memoryEstimator;
 
   private SecurityContext securityContext;
 
@@ -127,6 +132,10 @@ public abstract class PrintJob implements Callable<PrintJobResult> {
   @Override
   public PrintJobResult call() throws Exception {
     SecurityContextHolder.setContext(this.securityContext);
+    final long callStart = System.nanoTime();
+    final long queueDuration =
+        TimeUnit.MILLISECONDS.toNanos(
+            Math.max(0, System.currentTimeMillis() - this.entry.getStartTime()));
     final Timer.Context timer =
         this.metricRegistry
             .timer(MetricRegistry.name(getClass().getSimpleName(), "RealReportGenerationDuration"))
@@ -162,17 +171,26 @@ public abstract class PrintJob implements Callable<PrintJobResult> {
       final String fileName = getFileName(mapPrinter, spec);
 
       final OutputFormat outputFormat = mapPrinter.getOutputFormat(spec);
+      final ExecutionStats stats = report.executionContext.getStats();
+      stats.addTiming(callStart - queueDuration, queueDuration, "queue");
+      updateMemoryEstimateMetrics(stats);
       final String mimeType = outputFormat.getContentType();
       final String fileExtension = outputFormat.getFileSuffix();
       final boolean sent =
-          maybeSendResult(
-              mapPrinter.getConfiguration(),
-              fileName,
-              fileExtension,
-              mimeType,
-              report.executionContext.getStats());
+          maybeSendResult(mapPrinter.getConfiguration(), fileName, fileExtension, mimeType, stats);
+      PrintJobResult result = null;
+      if (!sent) {
+        try (ExecutionStats.Timing ignored = stats.startTiming("storage")) {
+          result = createResult(fileName, fileExtension, mimeType);
+        }
+      }
+      updateProfileMetrics(spec, stats);
       jobTracker.onJobSuccess(report);
-      return sent ? null : createResult(fileName, fileExtension, mimeType);
+      if (result != null) {
+        final ObjectNode profile = stats.toProfileJson();
+        result.setProfile(profile != null ? profile.toString() : null);
+      }
+      return result;
     } catch (Exception e) {
       if (Thread.currentThread().isInterrupted()) {
         LOGGER.info(
@@ -207,6 +225,41 @@ public abstract class PrintJob implements Callable<PrintJobResult> {
     }
   }
 
+  /**
+   * Compare the raster memory estimated before starting the job with the peak size of the map
+   * images measured while the maps were rendered, to be able to tune the memory budget.
+   */
+  private void updateMemoryEstimateMetrics(final ExecutionStats stats) {
+    final long estimated = this.memoryEstimator.estimate(this.entry);
+    final long actual = stats.getPeakRasterMemory();
+    final String name = MetricRegistry.name(getClass().getSimpleName(), "memoryEstimate");
+    this.metricRegistry.histogram(MetricRegistry.name(name, "estimated")).update(estimated);
+    this.metricRegistry.histogram(MetricRegistry.name(name, "actual")).update(actual);
+    if (estimated > 0) {
+      // in percent, more than 100 when the memory was underestimated
+      this.metricRegistry
+          .histogram(MetricRegistry.name(name, "actualRatio"))
+          .update(actual * 100 / estimated);
+    }
+  }
+
+  /** Aggregate the timing profile of the job in histograms by template, with bounded names. */
+  private void updateProfileMetrics(final PJsonObject spec, final ExecutionStats stats) {
+    final String prefix =
+        MetricRegistry.name(
+            getClass().getSimpleName(),
+            "profile",
+            StatsUtils.quotePart(this.entry.getAppId()),
+            StatsUtils.quotePart(spec.getString(Constants.JSON_LAYOUT_KEY)));
+    for (Map.Entry<List<String>, Long> timing : stats.getMetricTimings().entrySet()) {
+      final String[] names =
+          timing.getKey().stream().map(StatsUtils::quotePart).toArray(String[]::new);
+      this.metricRegistry
+          .histogram(MetricRegistry.name(prefix, names))
+          .update(TimeUnit.NANOSECONDS.toMillis(timing.getValue()));
+    }
+  }
+
   private void maybeSendError(final Configuration configuration, final Exception e) {
     final PJsonObject requestData = entry.getRequestData();
     final SmtpConfig smtp = configuration.getSmtp();
@@ -292,7 +345,8 @@ public abstract class PrintJob implements Callable<PrintJobResult> {
     if (storage != null) {
       URL url;
       String timerName = storage.getClass().getSimpleName();
-      try (Timer.Context ignored = this.metricRegistry.timer(timerName).time()) {
+      try (Timer.Context ignored = this.metricRegistry.timer(timerName).time();
+          ExecutionStats.Timing ignored2 = stats.startTiming("storage")) {
         url =
             storage.save(
                 this.entry.getReferenceId(), fileName, fileExtension, mimeType, getReportFile());
@@ -1,5 +1,6 @@
 package org.mapfish.print.servlet.job;
 
+import jakarta.annotation.Nullable;
 import java.net.URI;
 
 /** Print Job Result. */
@@ -19,4 +20,15 @@ public interface PrintJobResult {
 
   /** Get the report URI as String. */
   String getReportURIString();
+
+  /** Get the timing profile of the job as JSON, null if not available. */
+  @Nullable
+  String getProfile();
+
+  /**
+   * Set the timing profile of the job.
+   *
+   * @param profile the profile as JSON
+   */
+  void setProfile(@Nullable String profile);
 }
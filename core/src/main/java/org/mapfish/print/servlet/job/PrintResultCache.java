@@ -0,0 +1,363 @@
+package org.mapfish.print.servlet.job;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.mapfish.print.servlet.MapPrinterServlet;
+import org.mapfish.print.wrapper.json.PJsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * A cache of the print jobs by their request, shared by all the print requests of this server.
+ *
+ * <p>The entries are keyed by a hash of the app id, the template, the output format, the user and
+ * the normalized request: the keys of the JSON objects are sorted and the request headers that
+ * don't change the report (like <code>User-Agent</code> or <code>X-Request-ID</code>) are removed.
+ * An identical request gets the reference of the existing job for the time to live, as long as the
+ * job is running or has succeeded, so concurrent identical requests are coalesced into a single job
+ * and the later ones reuse its report. The failed and canceled jobs are not reused. The requests
+ * sending an email are never cached.
+ *
+ * <p>The requesters of a shared job are counted: a cancel only cancels the job when it comes from
+ * its last requester.
+ */
+public class PrintResultCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(PrintResultCache.class);
+
+  /** The request headers that are ignored to compute the key of a request. */
+  private static final Set<String> VOLATILE_HEADERS =
+      Set.of(
+          "accept",
+          "accept-encoding",
+          "accept-language",
+          "cache-control",
+          "connection",
+          "content-length",
+          "content-type",
+          "dnt",
+          "forwarded",
+          "host",
+          "if-modified-since",
+          "if-none-match",
+          "origin",
+          "pragma",
+          "referer",
+          "referrer",
+          "traceparent",
+          "tracestate",
+          "upgrade-insecure-requests",
+          "user-agent",
+          "x-forwarded-for",
+          "x-forwarded-host",
+          "x-forwarded-port",
+          "x-forwarded-proto",
+          "x-real-ip",
+          "x-request-id");
+
+  private static final String VOLATILE_HEADERS_PREFIX = "sec-";
+
+  /** The jobs that are shared: the failed and the canceled ones are submitted again. */
+  private static final Set<PrintJobStatus.Status> REUSABLE_STATUSES =
+      EnumSet.of(
+          PrintJobStatus.Status.WAITING,
+          PrintJobStatus.Status.RUNNING,
+          PrintJobStatus.Status.FINISHED);
+
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private final Map<String, Entry> entriesByRef = new ConcurrentHashMap<>();
+  private long timeToLive = 0;
+  private int maxSize = 1000;
+
+  @Autowired private JobManager jobManager;
+  @Autowired private MetricRegistry metricRegistry;
+
+  /**
+   * The time (in seconds) the job of a request is reused for the identical requests. 0 disables
+   * the cache.
+   *
+   * <p>It should be shorter than the time the reports are kept.
+   *
+   * @param timeToLive the time to live in seconds
+   */
+  public final void setTimeToLive(final long timeToLive) {
+    this.timeToLive = timeToLive;
+  }
+
+  /**
+   * The maximum number of cached requests.
+   *
+   * @param maxSize the number of requests
+   */
+  public final void setMaxSize(final int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /** Return true if the cache can contain requests. */
+  public final boolean isEnabled() {
+    return this.timeToLive > 0 && this.maxSize > 0;
+  }
+
+  /**
+   * Return true if the result of a request can be shared.
+   *
+   * @param spec the request
+   */
+  public final boolean isCacheable(@Nonnull final PJsonObject spec) {
+    return isEnabled() && !spec.has("smtp");
+  }
+
+  /**
+   * Compute the key of a request.
+   *
+   * @param appId the id of the printer app
+   * @param template the name of the template
+   * @param format the output format
+   * @param user the name of the authenticated user, if any
+   * @param spec the request
+   * @return the hash of the normalized request
+   */
+  @Nonnull
+  public static String key(
+      @Nonnull final String appId,
+      @Nonnull final String template,
+      @Nonnull final String format,
+      @Nullable final String user,
+      @Nonnull final PJsonObject spec) {
+    final StringBuilder canonical = new StringBuilder();
+    canonical.append(appId).append('\n').append(template).append('\n').append(format).append('\n');
+    canonical.append(user == null ? "" : user).append('\n');
+    appendCanonical(canonical, removeVolatileHeaders(spec.getInternalObj()));
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of()
+          .formatHex(digest.digest(canonical.toString().getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static JSONObject removeVolatileHeaders(final JSONObject spec) {
+    final JSONObject attributes = spec.optJSONObject(MapPrinterServlet.JSON_ATTRIBUTES);
+    final JSONObject headersAttribute =
+        attributes == null
+            ? null
+            : attributes.optJSONObject(MapPrinterServlet.JSON_REQUEST_HEADERS);
+    final JSONObject headers =
+        headersAttribute == null
+            ? null
+            : headersAttribute.optJSONObject(MapPrinterServlet.JSON_REQUEST_HEADERS);
+    if (headers == null) {
+      return spec;
+    }
+    final JSONObject result = new JSONObject(spec.toString());
+    final JSONObject resultHeaders =
+        result
+            .getJSONObject(MapPrinterServlet.JSON_ATTRIBUTES)
+            .getJSONObject(MapPrinterServlet.JSON_REQUEST_HEADERS)
+            .getJSONObject(MapPrinterServlet.JSON_REQUEST_HEADERS);
+    for (String name : new ArrayList<>(resultHeaders.keySet())) {
+      final String lowerName = name.toLowerCase(Locale.ROOT);
+      if (VOLATILE_HEADERS.contains(lowerName) || lowerName.startsWith(VOLATILE_HEADERS_PREFIX)) {
+        resultHeaders.remove(name);
+      }
+    }
+    return result;
+  }
+
+  private static void appendCanonical(final StringBuilder result, final Object value) {
+    if (value instanceof JSONObject object) {
+      final List<String> keys = new ArrayList<>(object.keySet());
+      Collections.sort(keys);
+      result.append('{');
+      for (String key : keys) {
+        result.append(JSONObject.quote(key)).append(':');
+        appendCanonical(result, object.get(key));
+        result.append(',');
+      }
+      result.append('}');
+    } else if (value instanceof JSONArray array) {
+      result.append('[');
+      for (int i = 0; i < array.length(); i++) {
+        appendCanonical(result, array.get(i));
+        result.append(',');
+      }
+      result.append(']');
+    } else {
+      result.append(JSONObject.valueToString(value));
+    }
+  }
+
+  /**
+   * Get the job of a request, submitted if needed.
+   *
+   * <p>The job is submitted outside any lock; the concurrent identical requests wait for its
+   * reference.
+   *
+   * @param appId the id of the printer app, for the metrics
+   * @param key the key of the request
+   * @param submit submit a new job and return its reference, or null on error
+   * @return the reference of the job, or null on error
+   */
+  @Nullable
+  public final String getOrSubmit(
+      @Nonnull final String appId,
+      @Nonnull final String key,
+      @Nonnull final Supplier<String> submit) {
+    final long now = System.currentTimeMillis();
+    while (true) {
+      final Entry existing = this.entries.get(key);
+      if (existing == null) {
+        final Entry entry = new Entry(key, now + this.timeToLive * 1000L);
+        if (this.entries.putIfAbsent(key, entry) == null) {
+          return submit(appId, entry, submit, now);
+        }
+      } else {
+        final String ref = existing.ref.join();
+        if (ref != null && now < existing.expires && isReusable(ref) && existing.acquire()) {
+          count(appId, true);
+          LOGGER.debug("Reusing the job {} of an identical request", ref);
+          return ref;
+        }
+        remove(existing);
+      }
+    }
+  }
+
+  private String submit(
+      final String appId, final Entry entry, final Supplier<String> submit, final long now) {
+    String ref = null;
+    try {
+      ref = submit.get();
+    } finally {
+      entry.ref.complete(ref);
+      count(appId, false);
+      if (ref == null) {
+        // the submission errors are not cached
+        this.entries.remove(entry.key, entry);
+      } else {
+        this.entriesByRef.put(ref, entry);
+      }
+    }
+    if (this.entries.size() > this.maxSize) {
+      evict(now);
+    }
+    return ref;
+  }
+
+  /**
+   * Release a job when one of its requesters cancels it.
+   *
+   * @param ref the reference of the job
+   * @return true if the job can be canceled, false if it is still needed by other requesters
+   */
+  public final boolean release(@Nonnull final String ref) {
+    final Entry entry = this.entriesByRef.get(ref);
+    if (entry == null) {
+      return true;
+    }
+    if (entry.requesters.decrementAndGet() > 0) {
+      LOGGER.info("The job {} is not canceled, it is shared with identical requests", ref);
+      return false;
+    }
+    remove(entry);
+    return true;
+  }
+
+  private boolean isReusable(final String ref) {
+    try {
+      return REUSABLE_STATUSES.contains(this.jobManager.getStatus(ref).getStatus());
+    } catch (NoSuchReferenceException e) {
+      return false;
+    }
+  }
+
+  private void remove(final Entry entry) {
+    this.entries.remove(entry.key, entry);
+    final String ref = entry.ref.getNow(null);
+    if (ref != null) {
+      this.entriesByRef.remove(ref, entry);
+    }
+  }
+
+  /** Remove the expired entries, then the oldest ones if the cache is still full. */
+  private void evict(final long now) {
+    for (Entry entry : this.entries.values()) {
+      if (now >= entry.expires) {
+        remove(entry);
+      }
+    }
+    while (this.entries.size() > this.maxSize) {
+      this.entries.values().stream()
+          .min((e1, e2) -> Long.compare(e1.expires, e2.expires))
+          .ifPresent(this::remove);
+    }
+  }
+
+  private void count(final String appId, final boolean hit) {
+    final Counter hits = this.metricRegistry.counter(metricName(appId, "hit"));
+    final Counter misses = this.metricRegistry.counter(metricName(appId, "miss"));
+    this.metricRegistry.gauge(
+        metricName(appId, "hitRatio"),
+        () ->
+            new RatioGauge() {
+              @Override
+              protected Ratio getRatio() {
+                return Ratio.of(hits.getCount(), hits.getCount() + misses.getCount());
+              }
+            });
+    (hit ? hits : misses).inc();
+  }
+
+  private static String metricName(final String appId, final String name) {
+    return MetricRegistry.name(PrintResultCache.class.getSimpleName(), appId, name);
+  }
+
+  /** A cached job. */
+  private static final class Entry {
+    private final String key;
+    /** The expiration time in milliseconds since the epoch. */
+    private final long expires;
+    /** The reference of the job, null if its submission failed. */
+    private final CompletableFuture<String> ref = new CompletableFuture<>();
+    /** The number of requests sharing the job, 0 once released. */
+    private final AtomicInteger requesters = new AtomicInteger(1);
+
+    private Entry(final String key, final long expires) {
+      this.key = key;
+      this.expires = expires;
+    }
+
+    /** Add a requester, false if the job has already been released. */
+    private boolean acquire() {
+      int current;
+      do {
+        current = this.requesters.get();
+        if (current <= 0) {
+          return false;
+        }
+      } while (!this.requesters.compareAndSet(current, current + 1));
+      return true;
+    }
+  }
+}
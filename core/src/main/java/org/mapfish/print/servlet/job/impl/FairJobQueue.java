@@ -0,0 +1,569 @@
+package org.mapfish.print.servlet.job.impl;
+
+import com.codahale.metrics.MetricRegistry;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import java.net.URI;
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.mapfish.print.servlet.MapPrinterServlet;
+import org.mapfish.print.servlet.job.PrintJob;
+import org.mapfish.print.servlet.job.PrintJobEntry;
+import org.mapfish.print.wrapper.json.PJsonArray;
+import org.mapfish.print.wrapper.json.PJsonObject;
+
+/**
+ * The work queue of the {@link ThreadPoolJobManager} executor.
+ *
+ * <p>The print jobs are put in a cheap or an expensive lane depending on their estimated cost. In
+ * each lane there is a queue per client (app and referer host) and the clients are served in a
+ * weighted fair way: the next job is taken from the client that has used the less cost relatively
+ * to its weight. Between the lanes, the job that waits since the longest time is taken, but the
+ * number of running expensive jobs is limited, so some threads stay available for the cheap jobs.
+ *
+ * <p>When a memory budget is configured, the selected job is started only if its estimated raster
+ * memory (capped to the budget) fits in what is left of the budget by the running jobs, or if no
+ * job is running. While it waits, the oldest jobs that fit are started in its place, but only a
+ * limited number of times, so a big job is not starved by the small ones.
+ *
+ * <p>The other tasks are run before the print jobs, in the order they were submitted.
+ */
+final class FairJobQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+  /** The lanes of the print jobs. */
+  enum Lane {
+    CHEAP,
+    EXPENSIVE
+  }
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition available = this.lock.newCondition();
+  private final Deque<Queued> otherTasks = new ArrayDeque<>();
+  private final Map<Lane, Map<String, Client>> lanes = new EnumMap<>(Lane.class);
+  private final Map<Lane, Double> laneVirtualTimes = new EnumMap<>(Lane.class);
+  private final Map<Runnable, Queued> runningJobs = new IdentityHashMap<>();
+  private final Comparator<Queued> jobComparator;
+  private final PrintJobCostEstimator costEstimator;
+  @Nullable private final PrintJobMemoryEstimator memoryEstimator;
+  private final long memoryBudget;
+  private final Map<String, Integer> appWeights;
+  private final long expensiveJobCost;
+  private final int maxRunningExpensiveJobs;
+  @Nullable private final MetricRegistry metricRegistry;
+  private long sequence = 0;
+  private int size = 0;
+  private int runningExpensiveJobs = 0;
+  private long reservedMemory = 0;
+  private long blockedSequence = -1;
+  private int blockedPasses = 0;
+
+  /** The maximum number of jobs started in place of a job waiting for memory. */
+  static final int MAX_MEMORY_PASSES = 10;
+
+  /**
+   * Constructor.
+   *
+   * @param jobPriorityComparator the order of the jobs of a client
+   * @param costEstimator estimates the cost of the jobs
+   * @param appWeights the weight of the apps, 1 if not present
+   * @param expensiveJobCost the cost from which a job goes in the expensive lane
+   * @param maxRunningExpensiveJobs the maximum number of expensive jobs running at the same time
+   * @param memoryEstimator estimates the raster memory of the jobs, null to disable the budget
+   * @param memoryBudget the maximum estimated memory of the running jobs in bytes
+   * @param metricRegistry the registry for the wait time metrics
+   */
+  FairJobQueue(
+      final Comparator<PrintJob> jobPriorityComparator,
+      final PrintJobCostEstimator costEstimator,
+      final Map<String, Integer> appWeights,
+      final long expensiveJobCost,
+      final int maxRunningExpensiveJobs,
+      @Nullable final PrintJobMemoryEstimator memoryEstimator,
+      final long memoryBudget,
+      @Nullable final MetricRegistry metricRegistry) {
+    this.jobComparator =
+        Comparator.comparing(Queued::job, jobPriorityComparator)
+            .thenComparingLong(Queued::sequence);
+    this.costEstimator = costEstimator;
+    this.appWeights = appWeights;
+    this.expensiveJobCost = expensiveJobCost;
+    this.maxRunningExpensiveJobs = maxRunningExpensiveJobs;
+    this.memoryEstimator = memoryBudget > 0 ? memoryEstimator : null;
+    this.memoryBudget = memoryBudget;
+    this.metricRegistry = metricRegistry;
+    for (Lane lane : Lane.values()) {
+      this.lanes.put(lane, new HashMap<>());
+      this.laneVirtualTimes.put(lane, 0.0);
+    }
+  }
+
+  @Nullable
+  private static PrintJob getPrintJob(final Runnable task) {
+    if (task instanceof ThreadPoolJobManager.JobFutureTask<?> futureTask) {
+      final Callable<?> callable = futureTask.getCallable();
+      if (callable instanceof PrintJob printJob) {
+        return printJob;
+      }
+    }
+    return null;
+  }
+
+  static String getClientKey(final PrintJobEntry entry) {
+    String referer = "";
+    final PJsonObject requestData = entry.getRequestData();
+    if (requestData != null) {
+      final PJsonObject attributes = requestData.optJSONObject(MapPrinterServlet.JSON_ATTRIBUTES);
+      final PJsonObject headers =
+          attributes == null
+              ? null
+              : attributes.optJSONObject(MapPrinterServlet.JSON_REQUEST_HEADERS);
+      final PJsonObject requestHeaders =
+          headers == null ? null : headers.optJSONObject(MapPrinterServlet.JSON_REQUEST_HEADERS);
+      final PJsonArray values = requestHeaders == null ? null : getReferer(requestHeaders);
+      if (values != null) {
+        referer = getHost(values.getString(0));
+      }
+    }
+    return entry.getAppId() + " " + referer;
+  }
+
+  /** The header names are case-insensitive. */
+  @Nullable
+  private static PJsonArray getReferer(final PJsonObject requestHeaders) {
+    for (String name : new String[] {"referer", "referrer"}) {
+      final Iterator<String> keys = requestHeaders.keys();
+      while (keys.hasNext()) {
+        final String key = keys.next();
+        final PJsonArray values = requestHeaders.optJSONArray(key);
+        if (key.equalsIgnoreCase(name) && values != null && values.size() > 0) {
+          return values;
+        }
+      }
+    }
+    return null;
+  }
+
+  private static String getHost(final String referer) {
+    try {
+      final String host = URI.create(referer).getHost();
+      return host != null ? host.toLowerCase(Locale.ROOT) : referer;
+    } catch (IllegalArgumentException e) {
+      return referer;
+    }
+  }
+
+  @Override
+  public boolean offer(@Nonnull final Runnable task) {
+    final PrintJob job = getPrintJob(task);
+    final PrintJobEntry entry = job == null ? null : job.getEntry();
+    final long cost = entry == null ? 0 : this.costEstimator.estimate(entry);
+    // a job bigger than the budget runs alone
+    final long memory =
+        entry == null || this.memoryEstimator == null
+            ? 0
+            : Math.min(this.memoryEstimator.estimate(entry), this.memoryBudget);
+    final Lane lane = cost >= this.expensiveJobCost ? Lane.EXPENSIVE : Lane.CHEAP;
+    final String clientKey = entry == null ? null : getClientKey(entry);
+    this.lock.lock();
+    try {
+      final long now = System.currentTimeMillis();
+      if (entry == null) {
+        this.otherTasks.add(new Queued(task, null, null, null, 0, 0, now, this.sequence++));
+      } else {
+        final Client client =
+            this.lanes
+                .get(lane)
+                .computeIfAbsent(
+                    clientKey,
+                    key ->
+                        new Client(
+                            key,
+                            this.appWeights.getOrDefault(entry.getAppId(), 1),
+                            this.laneVirtualTimes.get(lane)));
+        client.jobs.add(new Queued(task, job, lane, client, cost, memory, now, this.sequence++));
+      }
+      this.size++;
+      this.available.signal();
+      return true;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public void put(@Nonnull final Runnable task) {
+    offer(task);
+  }
+
+  @Override
+  public boolean offer(final Runnable task, final long timeout, @Nonnull final TimeUnit unit) {
+    return offer(task);
+  }
+
+  /** Select the next task to run, without removing it, must be called with the lock. */
+  @Nullable
+  private Queued select() {
+    if (!this.otherTasks.isEmpty()) {
+      return this.otherTasks.peek();
+    }
+    Queued selected = selectInLane(Lane.CHEAP);
+    if (this.runningExpensiveJobs < this.maxRunningExpensiveJobs) {
+      final Queued expensive = selectInLane(Lane.EXPENSIVE);
+      if (selected == null
+          || (expensive != null && expensive.sequence() < selected.sequence())) {
+        selected = expensive;
+      }
+    }
+    if (selected == null || fitsInMemory(selected)) {
+      this.blockedSequence = -1;
+      return selected;
+    }
+    if (selected.sequence() != this.blockedSequence) {
+      this.blockedSequence = selected.sequence();
+      this.blockedPasses = 0;
+    }
+    return this.blockedPasses < MAX_MEMORY_PASSES ? selectFittingInMemory() : null;
+  }
+
+  /** Select the oldest job that fits in the memory, must be called with the lock. */
+  @Nullable
+  private Queued selectFittingInMemory() {
+    Queued selected = null;
+    for (Lane lane : Lane.values()) {
+      if (lane == Lane.EXPENSIVE && this.runningExpensiveJobs >= this.maxRunningExpensiveJobs) {
+        continue;
+      }
+      for (Client client : this.lanes.get(lane).values()) {
+        for (Queued queued : client.jobs) {
+          if ((selected == null || queued.sequence() < selected.sequence())
+              && fitsInMemory(queued)) {
+            selected = queued;
+          }
+        }
+      }
+    }
+    return selected;
+  }
+
+  private boolean fitsInMemory(final Queued queued) {
+    return this.memoryEstimator == null
+        || this.reservedMemory == 0
+        || this.reservedMemory + queued.memory() <= this.memoryBudget;
+  }
+
+  @Nullable
+  private Queued selectInLane(final Lane lane) {
+    Client selected = null;
+    for (Client client : this.lanes.get(lane).values()) {
+      if (selected == null
+          || client.virtualTime < selected.virtualTime
+          || (client.virtualTime == selected.virtualTime
+              && client.jobs.peek().sequence() < selected.jobs.peek().sequence())) {
+        selected = client;
+      }
+    }
+    return selected == null ? null : selected.jobs.peek();
+  }
+
+  /** Remove a task from its queue, must be called with the lock. */
+  private void dequeue(final Queued queued, final boolean started) {
+    if (queued.client() == null) {
+      this.otherTasks.remove(queued);
+    } else {
+      final Client client = queued.client();
+      client.jobs.remove(queued);
+      if (started) {
+        this.laneVirtualTimes.put(queued.lane(), client.virtualTime);
+        client.virtualTime += (double) queued.cost() / client.weight;
+        this.runningJobs.put(queued.task(), queued);
+        if (queued.lane() == Lane.EXPENSIVE) {
+          this.runningExpensiveJobs++;
+        }
+        this.reservedMemory += queued.memory();
+        if (this.blockedSequence >= 0 && queued.sequence() != this.blockedSequence) {
+          // started in place of the job waiting for memory
+          this.blockedPasses++;
+        }
+        if (this.metricRegistry != null) {
+          this.metricRegistry
+              .timer(laneMetricName(queued.lane(), "waitTime"))
+              .update(System.currentTimeMillis() - queued.enqueueTime(), TimeUnit.MILLISECONDS);
+        }
+      }
+      if (client.jobs.isEmpty()) {
+        this.lanes.get(queued.lane()).remove(client.key);
+      }
+    }
+    this.size--;
+  }
+
+  /**
+   * The name of a metric of a lane.
+   *
+   * @param lane the lane
+   * @param name the name of the metric
+   */
+  static String laneMetricName(final Lane lane, final String name) {
+    return MetricRegistry.name(
+        ThreadPoolJobManager.class.getSimpleName(),
+        "lane",
+        lane.name().toLowerCase(Locale.ROOT),
+        name);
+  }
+
+  /**
+   * Called when a task has finished, to free its place if it was an expensive job and its
+   * reserved memory.
+   *
+   * @param task the task
+   */
+  void finished(final Runnable task) {
+    this.lock.lock();
+    try {
+      final Queued queued = this.runningJobs.remove(task);
+      if (queued != null) {
+        if (queued.lane() == Lane.EXPENSIVE) {
+          this.runningExpensiveJobs--;
+        }
+        this.reservedMemory -= queued.memory();
+        this.available.signalAll();
+      }
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /** Get the estimated memory reserved by the running jobs in bytes. */
+  long getReservedMemory() {
+    this.lock.lock();
+    try {
+      return this.reservedMemory;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Get the number of jobs waiting in a lane.
+   *
+   * @param lane the lane
+   */
+  int size(final Lane lane) {
+    this.lock.lock();
+    try {
+      int result = 0;
+      for (Client client : this.lanes.get(lane).values()) {
+        result += client.jobs.size();
+      }
+      return result;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  @Nonnull
+  public Runnable take() throws InterruptedException {
+    this.lock.lockInterruptibly();
+    try {
+      Queued queued;
+      while ((queued = select()) == null) {
+        this.available.await();
+      }
+      dequeue(queued, true);
+      return queued.task();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  @Nullable
+  public Runnable poll(final long timeout, @Nonnull final TimeUnit unit)
+      throws InterruptedException {
+    long nanos = unit.toNanos(timeout);
+    this.lock.lockInterruptibly();
+    try {
+      Queued queued;
+      while ((queued = select()) == null) {
+        if (nanos <= 0) {
+          return null;
+        }
+        nanos = this.available.awaitNanos(nanos);
+      }
+      dequeue(queued, true);
+      return queued.task();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  @Nullable
+  public Runnable poll() {
+    this.lock.lock();
+    try {
+      final Queued queued = select();
+      if (queued == null) {
+        return null;
+      }
+      dequeue(queued, true);
+      return queued.task();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  @Nullable
+  public Runnable peek() {
+    this.lock.lock();
+    try {
+      final Queued queued = select();
+      return queued == null ? null : queued.task();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public int size() {
+    this.lock.lock();
+    try {
+      return this.size;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public int remainingCapacity() {
+    return Integer.MAX_VALUE;
+  }
+
+  @Override
+  public boolean remove(final Object task) {
+    this.lock.lock();
+    try {
+      for (Queued queued : getAll()) {
+        if (queued.task() == task) {
+          dequeue(queued, false);
+          return true;
+        }
+      }
+      return false;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public int drainTo(@Nonnull final Collection<? super Runnable> collection) {
+    return drainTo(collection, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(
+      @Nonnull final Collection<? super Runnable> collection, final int maxElements) {
+    this.lock.lock();
+    try {
+      int count = 0;
+      for (Queued queued : getAll()) {
+        if (count >= maxElements) {
+          break;
+        }
+        dequeue(queued, false);
+        collection.add(queued.task());
+        count++;
+      }
+      return count;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /** Get all the queued tasks, must be called with the lock. */
+  private List<Queued> getAll() {
+    final List<Queued> result = new ArrayList<>(this.otherTasks);
+    for (Map<String, Client> clients : this.lanes.values()) {
+      for (Client client : clients.values()) {
+        result.addAll(client.jobs);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  @Nonnull
+  public Iterator<Runnable> iterator() {
+    final List<Runnable> tasks = new ArrayList<>();
+    this.lock.lock();
+    try {
+      for (Queued queued : getAll()) {
+        tasks.add(queued.task());
+      }
+    } finally {
+      this.lock.unlock();
+    }
+    final Iterator<Runnable> iterator = tasks.iterator();
+    return new Iterator<>() {
+      private Runnable last;
+
+      @Override
+      public boolean hasNext() {
+        return iterator.hasNext();
+      }
+
+      @Override
+      public Runnable next() {
+        this.last = iterator.next();
+        return this.last;
+      }
+
+      @Override
+      public void remove() {
+        FairJobQueue.this.remove(this.last);
+      }
+    };
+  }
+
+  /** The jobs of a client in a lane. */
+  private final class Client {
+    private final String key;
+    private final int weight;
+    private final PriorityQueue<Queued> jobs = new PriorityQueue<>(FairJobQueue.this.jobComparator);
+    private double virtualTime;
+
+    private Client(final String key, final int weight, final double virtualTime) {
+      this.key = key;
+      this.weight = Math.max(1, weight);
+      this.virtualTime = virtualTime;
+    }
+  }
+
+  private record Queued(
+      Runnable task,
+      @Nullable PrintJob job,
+      @Nullable Lane lane,
+      @Nullable Client client,
+      long cost,
+      long memory,
+      long enqueueTime,
+      long sequence) {}
+}
@@ -0,0 +1,57 @@
+package org.mapfish.print.servlet.job.impl;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.mapfish.print.Constants;
+import org.mapfish.print.servlet.MapPrinterServlet;
+import org.mapfish.print.servlet.job.PrintJobEntry;
+import org.mapfish.print.wrapper.json.PJsonObject;
+
+/**
+ * Estimates the cost of a print job from its request, used by the {@link ThreadPoolJobManager} to
+ * share the threads between the clients and to separate the cheap jobs from the expensive ones.
+ *
+ * <p>Every map found in the attributes (also the ones of the pages of an atlas) costs one plus its
+ * number of layers, multiplied by the number of pixels relatively to a map at 72 DPI.
+ */
+public class PrintJobCostEstimator {
+  private static final String JSON_LAYERS = "layers";
+  private static final String JSON_DPI = "dpi";
+
+  /**
+   * Estimate the cost of a job.
+   *
+   * @param entry the print job entry
+   * @return the cost, at least 1
+   */
+  public long estimate(final PrintJobEntry entry) {
+    final PJsonObject requestData = entry.getRequestData();
+    if (requestData == null) {
+      return 1;
+    }
+    final JSONObject attributes =
+        requestData.getInternalObj().optJSONObject(MapPrinterServlet.JSON_ATTRIBUTES);
+    return Math.max(1, Math.round(1 + estimate(attributes)));
+  }
+
+  private double estimate(final Object json) {
+    double cost = 0;
+    if (json instanceof JSONObject object) {
+      final JSONArray layers = object.optJSONArray(JSON_LAYERS);
+      if (layers != null) {
+        final double dpiRatio = object.optDouble(JSON_DPI, Constants.PDF_DPI) / Constants.PDF_DPI;
+        cost += (1 + layers.length()) * dpiRatio * dpiRatio;
+      }
+      for (String key : object.keySet()) {
+        if (!MapPrinterServlet.JSON_REQUEST_HEADERS.equals(key) && !JSON_LAYERS.equals(key)) {
+          cost += estimate(object.get(key));
+        }
+      }
+    } else if (json instanceof JSONArray array) {
+      for (int i = 0; i < array.length(); i++) {
+        cost += estimate(array.get(i));
+      }
+    }
+    return cost;
+  }
+}
@@ -0,0 +1,241 @@
+package org.mapfish.print.servlet.job.impl;
+
+import jakarta.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.mapfish.print.Constants;
+import org.mapfish.print.MapPrinter;
+import org.mapfish.print.MapPrinterFactory;
+import org.mapfish.print.attribute.Attribute;
+import org.mapfish.print.attribute.map.GenericMapAttribute;
+import org.mapfish.print.config.Template;
+import org.mapfish.print.processor.ExecutionStats;
+import org.mapfish.print.processor.Processor;
+import org.mapfish.print.processor.jasper.DataSourceProcessor;
+import org.mapfish.print.processor.map.CreateMapProcessor;
+import org.mapfish.print.servlet.MapPrinterServlet;
+import org.mapfish.print.servlet.NoSuchAppException;
+import org.mapfish.print.servlet.job.PrintJobEntry;
+import org.mapfish.print.wrapper.json.PJsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * Estimates the peak raster memory of a print job from its request, used by the {@link
+ * ThreadPoolJobManager} to start the jobs only while they fit in the memory budget.
+ *
+ * <p>The maps found in the attributes are counted with the model of {@link
+ * ExecutionStats#getRasterMemory(int, int, double, int, int, long, boolean)}. The size of the maps
+ * comes from the request or else from the map attribute of the template. The raster layer groups
+ * are counted from the layers of the request: the consecutive layers with the same image format
+ * form a group, the layers rendered as SVG don't use a raster. The number of groups rendered at the
+ * same time and the images kept for a map export come from the map processors of the template.
+ *
+ * <p>The maps of a page are rendered together, but the pages of an atlas (the rows of a datasource)
+ * are not: only the biggest page is counted, times the number of rows rendered at the same time
+ * (the streaming window of the datasources, or else the parallelism of the processors).
+ */
+public class PrintJobMemoryEstimator {
+  private static final Logger LOGGER = LoggerFactory.getLogger(PrintJobMemoryEstimator.class);
+  private static final String JSON_LAYERS = "layers";
+  private static final String JSON_DPI = "dpi";
+  private static final String JSON_WIDTH = "width";
+  private static final String JSON_HEIGHT = "height";
+  private static final String JSON_RENDER_AS_SVG = "renderAsSvg";
+  private static final String JSON_IMAGE_FORMAT = "imageFormat";
+  private static final String JSON_IMAGE_EXTENSION = "imageExtension";
+  private static final String PDF_FORMAT = "pdf";
+  private static final String SVG_FORMAT = "svg";
+  /** The size in points used for the maps without a known size. */
+  private static final int DEFAULT_MAP_SIZE = 800;
+
+  @Autowired private MapPrinterFactory mapPrinterFactory;
+  @Autowired private ForkJoinPool forkJoinPool;
+
+  @Value("${createMap.inMemoryCompositing.budget}")
+  private long inMemoryCompositingBudget;
+
+  /**
+   * Estimate the peak raster memory of a job.
+   *
+   * @param entry the print job entry
+   * @return the memory in bytes
+   */
+  public long estimate(final PrintJobEntry entry) {
+    final PJsonObject requestData = entry.getRequestData();
+    if (requestData == null) {
+      return 0;
+    }
+    final Template template = getTemplate(entry);
+    final Map<String, GenericMapAttribute> mapAttributes = new HashMap<>();
+    if (template != null) {
+      for (Map.Entry<String, Attribute> attribute : template.getAttributes().entrySet()) {
+        if (attribute.getValue() instanceof GenericMapAttribute mapAttribute) {
+          mapAttributes.put(attribute.getKey(), mapAttribute);
+        }
+      }
+    }
+    final Model model =
+        new Model(
+            mapAttributes,
+            isRasterOutput(template, requestData),
+            getRowsWindow(template),
+            getLayerGroupParallelism(template),
+            template != null && template.isMapExport() ? this.inMemoryCompositingBudget : 0);
+    final JSONObject attributes =
+        requestData.getInternalObj().optJSONObject(MapPrinterServlet.JSON_ATTRIBUTES);
+    return estimate(attributes, null, model);
+  }
+
+  /** Get the number of layer groups of a map rendered at the same time. */
+  private static int getLayerGroupParallelism(@Nullable final Template template) {
+    int parallelism = 1;
+    if (template != null) {
+      for (Processor<?, ?> processor : template.getProcessors()) {
+        if (processor instanceof CreateMapProcessor createMapProcessor) {
+          parallelism = Math.max(parallelism, createMapProcessor.getLayerGroupParallelism());
+        }
+      }
+    }
+    return parallelism;
+  }
+
+  /** Get the number of rows of a datasource rendered at the same time. */
+  private int getRowsWindow(@Nullable final Template template) {
+    final int parallelism = this.forkJoinPool.getParallelism();
+    if (template == null) {
+      return parallelism;
+    }
+    int window = 0;
+    for (Processor<?, ?> processor : template.getProcessors()) {
+      if (processor instanceof DataSourceProcessor dataSourceProcessor) {
+        if (dataSourceProcessor.getStreamingWindow() <= 0) {
+          return parallelism;
+        }
+        window = Math.max(window, dataSourceProcessor.getStreamingWindow());
+      }
+    }
+    return window > 0 ? Math.min(window, parallelism) : parallelism;
+  }
+
+  /**
+   * Get if the maps are merged in a raster output, for a map export or an image output format.
+   *
+   * @param template the template, null if unknown
+   * @param requestData the request
+   */
+  public static boolean isRasterOutput(
+      @Nullable final Template template, final PJsonObject requestData) {
+    return (template != null && template.isMapExport())
+        || !PDF_FORMAT.equalsIgnoreCase(
+            requestData.optString(MapPrinterServlet.JSON_OUTPUT_FORMAT, PDF_FORMAT));
+  }
+
+  @Nullable
+  private Template getTemplate(final PrintJobEntry entry) {
+    try {
+      final MapPrinter mapPrinter = this.mapPrinterFactory.create(entry.getAppId());
+      final String layout = entry.getRequestData().optString(Constants.JSON_LAYOUT_KEY);
+      return mapPrinter == null || layout == null
+          ? null
+          : mapPrinter.getConfiguration().getTemplate(layout);
+    } catch (NoSuchAppException | RuntimeException e) {
+      LOGGER.debug("Unable to get the template of the job {}", entry.getReferenceId(), e);
+      return null;
+    }
+  }
+
+  private long estimate(final Object json, final String key, final Model model) {
+    long memory = 0;
+    if (json instanceof JSONObject object) {
+      if (object.has(JSON_LAYERS)) {
+        final GenericMapAttribute mapAttribute = key == null ? null : model.mapAttributes.get(key);
+        final int width =
+            object.optInt(
+                JSON_WIDTH, getSize(mapAttribute == null ? null : mapAttribute.getWidth()));
+        final int height =
+            object.optInt(
+                JSON_HEIGHT, getSize(mapAttribute == null ? null : mapAttribute.getHeight()));
+        final double dpi = object.optDouble(JSON_DPI, Constants.PDF_DPI);
+        memory +=
+            ExecutionStats.getRasterMemory(
+                width,
+                height,
+                dpi,
+                countRasterGroups(object.optJSONArray(JSON_LAYERS)),
+                model.layerGroupParallelism,
+                model.keptBudget,
+                model.rasterOutput);
+      }
+      for (String childKey : object.keySet()) {
+        if (!MapPrinterServlet.JSON_REQUEST_HEADERS.equals(childKey)
+            && !JSON_LAYERS.equals(childKey)) {
+          memory += estimate(object.get(childKey), childKey, model);
+        }
+      }
+    } else if (json instanceof JSONArray array) {
+      // the rows (pages) are not all rendered at the same time
+      long biggest = 0;
+      for (int i = 0; i < array.length(); i++) {
+        biggest = Math.max(biggest, estimate(array.get(i), key, model));
+      }
+      memory = biggest * Math.min(array.length(), model.rowsWindow);
+    }
+    return memory;
+  }
+
+  /**
+   * Count the layer groups of a map rendered as raster images. Like in the {@link
+   * CreateMapProcessor}, the consecutive layers with the same image format are rendered together.
+   */
+  static int countRasterGroups(@Nullable final JSONArray layers) {
+    int groups = 0;
+    String previous = null;
+    for (int i = 0; layers != null && i < layers.length(); i++) {
+      final String format = getImageFormat(layers.optJSONObject(i));
+      if (!format.equals(previous) && !SVG_FORMAT.equals(format)) {
+        groups++;
+      }
+      previous = format;
+    }
+    return groups;
+  }
+
+  private static String getImageFormat(@Nullable final JSONObject layer) {
+    if (layer == null) {
+      return "png";
+    }
+    if (layer.optBoolean(JSON_RENDER_AS_SVG)) {
+      return SVG_FORMAT;
+    }
+    final String format =
+        layer.optString(JSON_IMAGE_FORMAT, layer.optString(JSON_IMAGE_EXTENSION, ""));
+    return format.toLowerCase(Locale.ROOT).contains("jp") ? "jpeg" : "png";
+  }
+
+  private static int getSize(final Integer size) {
+    return size != null ? size : DEFAULT_MAP_SIZE;
+  }
+
+  /**
+   * The parameters of the model of a job.
+   *
+   * @param mapAttributes the map attributes of the template, by name
+   * @param rasterOutput if the maps are merged in a raster output
+   * @param rowsWindow the number of rows of a datasource rendered at the same time
+   * @param layerGroupParallelism the number of layer groups of a map rendered at the same time
+   * @param keptBudget the memory of the group images kept until they are merged
+   */
+  private record Model(
+      Map<String, GenericMapAttribute> mapAttributes,
+      boolean rasterOutput,
+      int rowsWindow,
+      int layerGroupParallelism,
+      long keptBudget) {}
+}
@@ -41,6 +41,9 @@ public class PrintJobResultImpl implements PrintJobResult {
   @Column(insertable = true, updatable = true, columnDefinition = "TEXT")
   private String referenceId;
 
+  @Column(columnDefinition = "TEXT")
+  private String profile;
+
   /** Default Constructor. */
   public PrintJobResultImpl() {
     this.reportURI = null;
@@ -48,6 +51,7 @@ public class PrintJobResultImpl implements PrintJobResult {
     this.fileExtension = null;
     this.fileName = null;
     this.referenceId = null;
+    this.profile = null;
   }
 
   /**
@@ -100,4 +104,14 @@ public class PrintJobResultImpl implements PrintJobResult {
   public String getFileName() {
     return this.fileName;
   }
+
+  @Override
+  public String getProfile() {
+    return this.profile;
+  }
+
+  @Override
+  public void setProfile(final String profile) {
+    this.profile = profile;
+  }
 }
@@ -50,6 +50,7 @@ public class RegistryJobQueue implements JobQueue {
   private static final String JSON_REPORT_URI = "reportURI";
   private static final String JSON_MIME_TYPE = "mimeType";
   private static final String JSON_FILE_EXT = "fileExtension";
+  private static final String JSON_PROFILE = "profile";
 
   @Autowired private Registry registry;
 
@@ -205,6 +206,9 @@ public class RegistryJobQueue implements JobQueue {
       metadata.put(JSON_FILENAME, printJobStatus.getResult().getFileName());
       metadata.put(JSON_FILE_EXT, printJobStatus.getResult().getFileExtension());
       metadata.put(JSON_MIME_TYPE, printJobStatus.getResult().getMimeType());
+      if (printJobStatus.getResult().getProfile() != null) {
+        metadata.put(JSON_PROFILE, printJobStatus.getResult().getProfile());
+      }
     }
     this.registry.put(RESULT_METADATA + printJobStatus.getReferenceId(), metadata);
   }
@@ -250,6 +254,7 @@ public class RegistryJobQueue implements JobQueue {
 
         PrintJobResult result =
             new PrintJobResultImpl(reportURI, fileName, fileExt, mimeType, referenceId);
+        result.setProfile(metadata.optString(JSON_PROFILE, null));
         report.setResult(result);
       }
 
@@ -1,24 +1,28 @@
 package org.mapfish.print.servlet.job.impl;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.annotations.VisibleForTesting;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RunnableFuture;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -52,6 +56,7 @@ public class ThreadPoolJobManager implements JobManager {
   private static final int DEFAULT_ABANDONED_TIMEOUT_IN_SECONDS = 120;
   private static final boolean DEFAULT_OLD_FILES_CLEAN_UP = true;
   private static final long DEFAULT_CLEAN_UP_INTERVAL_IN_SECONDS = 86400;
+  private static final long DEFAULT_EXPENSIVE_JOB_COST = 200;
 
   /**
    * A collection of jobs that are currently being processed or that are awaiting to be processed.
@@ -59,6 +64,9 @@ public class ThreadPoolJobManager implements JobManager {
   private final Map<String, SubmittedPrintJob> runningTasksFutures =
       Collections.synchronizedMap(new HashMap<>());
 
+  /** The futures to complete when the watched jobs are done, by job reference. */
+  private final Map<String, List<CompletableFuture<Void>>> watchers = new HashMap<>();
+
   /**
    * The maximum number of threads that will be used for print jobs, this is not the number of
    * threads used by the system because there can be more used by the {@link
@@ -107,6 +115,31 @@ public class ThreadPoolJobManager implements JobManager {
   private Comparator<PrintJob> jobPriorityComparator =
       Comparator.comparingLong(o -> o.getEntry().getStartTime());
 
+  /** Estimates the cost of the jobs, to share the threads between the clients. */
+  private PrintJobCostEstimator jobCostEstimator = new PrintJobCostEstimator();
+
+  /** The weight of the apps when sharing the threads, 1 for the apps not listed. */
+  private Map<String, Integer> appWeights = Collections.emptyMap();
+
+  /** The estimated cost from which a job is considered as expensive. */
+  private long expensiveJobCost = DEFAULT_EXPENSIVE_JOB_COST;
+
+  /**
+   * The maximum number of expensive jobs running at the same time, by default one less than the
+   * maximum number of running jobs, to keep a thread for the cheap jobs.
+   */
+  private int maxNumberOfRunningExpensiveJobs = -1;
+
+  /** Estimates the raster memory of the jobs, to start them only while they fit in the budget. */
+  private PrintJobMemoryEstimator jobMemoryEstimator;
+
+  /**
+   * The maximum estimated memory of the running jobs in MB, negative to use half of the maximum
+   * heap size, 0 to disable the budget.
+   */
+  private long jobMemoryBudget = 0;
+
+  private FairJobQueue queue;
   private ThreadPoolExecutor executor;
   private ScheduledExecutorService timer;
   private ScheduledExecutorService cleanUpTimer;
@@ -148,6 +181,30 @@ public class ThreadPoolJobManager implements JobManager {
     this.jobPriorityComparator = jobPriorityComparator;
   }
 
+  public final void setJobCostEstimator(final PrintJobCostEstimator jobCostEstimator) {
+    this.jobCostEstimator = jobCostEstimator;
+  }
+
+  public final void setAppWeights(final Map<String, Integer> appWeights) {
+    this.appWeights = appWeights;
+  }
+
+  public final void setExpensiveJobCost(final long expensiveJobCost) {
+    this.expensiveJobCost = expensiveJobCost;
+  }
+
+  public final void setMaxNumberOfRunningExpensiveJobs(final int maxNumberOfRunningExpensiveJobs) {
+    this.maxNumberOfRunningExpensiveJobs = maxNumberOfRunningExpensiveJobs;
+  }
+
+  public final void setJobMemoryEstimator(final PrintJobMemoryEstimator jobMemoryEstimator) {
+    this.jobMemoryEstimator = jobMemoryEstimator;
+  }
+
+  public final void setJobMemoryBudget(final long jobMemoryBudget) {
+    this.jobMemoryBudget = jobMemoryBudget;
+  }
+
   public final void setOldFileCleanUp(final boolean oldFileCleanUp) {
     this.oldFileCleanUp = oldFileCleanUp;
   }
@@ -198,26 +255,34 @@ public class ThreadPoolJobManager implements JobManager {
     threadFactory.setDaemon(true);
     threadFactory.setThreadNamePrefix("PrintJobManager-");
 
-    PriorityBlockingQueue<Runnable> queue =
-        new PriorityBlockingQueue<>(
-            this.maxNumberOfWaitingJobs,
-            (o1, o2) -> {
-              if (o1 instanceof JobFutureTask<?> && o2 instanceof JobFutureTask<?>) {
-                Callable<?> callable1 = ((JobFutureTask<?>) o1).getCallable();
-                Callable<?> callable2 = ((JobFutureTask<?>) o2).getCallable();
-
-                if (callable1 instanceof PrintJob) {
-                  if (callable2 instanceof PrintJob) {
-                    return ThreadPoolJobManager.this.jobPriorityComparator.compare(
-                        (PrintJob) callable1, (PrintJob) callable2);
-                  }
-                  return 1;
-                } else if (callable2 instanceof PrintJob) {
-                  return -1;
-                }
-              }
-              return 0;
-            });
+    this.queue =
+        new FairJobQueue(
+            this.jobPriorityComparator,
+            this.jobCostEstimator,
+            this.appWeights,
+            this.expensiveJobCost,
+            this.maxNumberOfRunningExpensiveJobs > 0
+                ? this.maxNumberOfRunningExpensiveJobs
+                : Math.max(1, this.maxNumberOfRunningPrintJobs - 1),
+            this.jobMemoryEstimator,
+            this.jobMemoryBudget < 0
+                ? Runtime.getRuntime().maxMemory() / 2
+                : this.jobMemoryBudget * 1024 * 1024,
+            this.metricRegistry);
+    if (this.metricRegistry != null) {
+      for (FairJobQueue.Lane lane : FairJobQueue.Lane.values()) {
+        final String name = FairJobQueue.laneMetricName(lane, "queueDepth");
+        this.metricRegistry.remove(name);
+        final FairJobQueue laneQueue = this.queue;
+        this.metricRegistry.register(name, (Gauge<Integer>) () -> laneQueue.size(lane));
+      }
+      final String reservedMemoryName =
+          MetricRegistry.name(getClass().getSimpleName(), "reservedMemory");
+      this.metricRegistry.remove(reservedMemoryName);
+      final FairJobQueue fairQueue = this.queue;
+      this.metricRegistry.register(
+          reservedMemoryName, (Gauge<Long>) fairQueue::getReservedMemory);
+    }
     /* The ThreadPoolExecutor uses an unbounded queue (though we are enforcing a limit in `submit()`).
      * Because of that, the executor creates only `corePoolSize` threads. But to use all threads,
      * we set both `corePoolSize` and `maximumPoolSize` to `maxNumberOfRunningPrintJobs`. As a
@@ -229,7 +294,7 @@ public class ThreadPoolJobManager implements JobManager {
             this.maxNumberOfRunningPrintJobs,
             this.maxIdleTime,
             TimeUnit.SECONDS,
-            queue,
+            this.queue,
             threadFactory) {
           @Override
           protected <T> RunnableFuture<T> newTaskFor(final Callable<T> callable) {
@@ -258,7 +323,23 @@ public class ThreadPoolJobManager implements JobManager {
             }
             super.beforeExecute(t, runnable);
           }
+
+          @Override
+          protected void afterExecute(final Runnable runnable, final Throwable throwable) {
+            super.afterExecute(runnable, throwable);
+            ThreadPoolJobManager.this.queue.finished(runnable);
+            // update the status of the finished job right away, not at the next registry check
+            try {
+              ThreadPoolJobManager.this.timer.execute(
+                  ThreadPoolJobManager.this::updateFinishedJobs);
+            } catch (RejectedExecutionException e) {
+              LOGGER.debug("The registry timer is stopped");
+            }
+          }
         };
+    // the tasks submitted while there are less threads than the core pool size are run directly,
+    // without going through the queue that selects the jobs to start
+    this.executor.prestartAllCoreThreads();
 
     this.timer =
         Executors.newScheduledThreadPool(
@@ -388,6 +469,7 @@ public class ThreadPoolJobManager implements JobManager {
         this.runningTasksFutures.remove(referenceId);
         // now from canceling to canceled state
         this.jobQueue.cancel(referenceId, "task canceled", true);
+        notifyWatchers(referenceId);
       }
     }
   }
@@ -421,6 +503,74 @@ public class ThreadPoolJobManager implements JobManager {
     return jobStatus;
   }
 
+  @Override
+  public final CompletableFuture<Void> watch(final String referenceId) {
+    final CompletableFuture<Void> future = new CompletableFuture<>();
+    synchronized (this.watchers) {
+      this.watchers.computeIfAbsent(referenceId, key -> new ArrayList<>()).add(future);
+    }
+    future.whenComplete((result, error) -> unwatch(referenceId, future));
+    // the job may be done before it is watched
+    checkWatchedJob(referenceId);
+    return future;
+  }
+
+  private void unwatch(final String referenceId, final CompletableFuture<Void> future) {
+    synchronized (this.watchers) {
+      final List<CompletableFuture<Void>> futures = this.watchers.get(referenceId);
+      if (futures != null) {
+        futures.remove(future);
+        if (futures.isEmpty()) {
+          this.watchers.remove(referenceId);
+        }
+      }
+    }
+  }
+
+  private void notifyWatchers(final String referenceId) {
+    final List<CompletableFuture<Void>> futures;
+    synchronized (this.watchers) {
+      futures = this.watchers.remove(referenceId);
+    }
+    if (futures != null) {
+      futures.forEach(future -> future.complete(null));
+    }
+  }
+
+  /**
+   * Check the status of a watched job, this also prevents it from being abandoned. Needed for the
+   * jobs run by the other instances of a cluster.
+   */
+  private void checkWatchedJob(final String referenceId) {
+    try {
+      if (this.jobQueue.get(referenceId, true).isDone()) {
+        notifyWatchers(referenceId);
+      }
+    } catch (NoSuchReferenceException e) {
+      notifyWatchers(referenceId);
+    }
+  }
+
+  private void checkWatchedJobs() {
+    final List<String> referenceIds;
+    synchronized (this.watchers) {
+      referenceIds = new ArrayList<>(this.watchers.keySet());
+    }
+    referenceIds.forEach(this::checkWatchedJob);
+  }
+
+  private void updateFinishedJobs() {
+    try {
+      synchronized (this.runningTasksFutures) {
+        updateRegistry();
+      }
+    } catch (RuntimeException e) {
+      LOGGER.error("Error while updating the registry", e);
+      this.unhealthyCountersHealthCheck.recordUnhealthyProblem(
+          getClass().getSimpleName(), "updatingRegistryIssue");
+    }
+  }
+
   private void cancelOld() {
     // cancel old tasks
     this.jobQueue.cancelOld(
@@ -497,6 +647,7 @@ public class ThreadPoolJobManager implements JobManager {
             this.jobQueue.cancel(
                 printJob.entry().getReferenceId(), "task canceled (timeout)", true);
           }
+          notifyWatchers(printJob.entry().getReferenceId());
           notifyIfStopped();
         } catch (NoSuchReferenceException e) {
           throw new PrintException("Failed to update registry for " + printJob, e);
@@ -570,7 +721,7 @@ public class ThreadPoolJobManager implements JobManager {
   }
 
   /** A custom FutureTask implementation which allows to retrieve the wrapped Callable. */
-  private static final class JobFutureTask<V> extends FutureTask<V> {
+  static final class JobFutureTask<V> extends FutureTask<V> {
 
     private final Callable<V> callable;
 
@@ -592,6 +743,7 @@ public class ThreadPoolJobManager implements JobManager {
   class RegistryTask implements Runnable {
 
     private static final int CHECK_INTERVAL = 500; // ms
+    private static final int WATCH_MODULO = 2; // once a second
     private long cancelOldModulo = 120; // once a minute
     private long pollModulo = 1; // twice a second
     private long counter = 0;
@@ -638,6 +790,9 @@ public class ThreadPoolJobManager implements JobManager {
             }
           }
         }
+        if (this.counter % WATCH_MODULO == 0) {
+          checkWatchedJobs();
+        }
       } catch (jakarta.persistence.PessimisticLockException e) {
         // Ignore error on pessimistic locking
         unhealthyCountersHealthCheck.recordUnhealthyProblem(
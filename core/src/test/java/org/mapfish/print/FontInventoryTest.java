@@ -0,0 +1,46 @@
+package org.mapfish.print;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class FontInventoryTest {
+  private static FontTools.FontConfigDescription description(
+      final String name, final String... families) {
+    final FontTools.FontConfigDescription description = new FontTools.FontConfigDescription();
+    description.name = name;
+    description.family = families;
+    description.weight = 400;
+    return description;
+  }
+
+  @Test
+  public void testBuild() {
+    final List<FontTools.FontConfigDescription> fontConfigFonts =
+        List.of(
+            description("DejaVu Sans", "DejaVu Sans"),
+            description("DejaVu Sans Condensed", "DejaVu Sans", "DejaVu Sans Condensed"),
+            description("Liberation Serif", "Liberation Serif"));
+
+    final List<String> families = List.of("Dialog", "DejaVuSans", "Liberation Serif");
+    final FontInventory.Index index =
+        FontInventory.build(List.of("Jasper"), families, fontConfigFonts);
+
+    assertEquals(List.of("Jasper"), index.jasperFamilies());
+    assertEquals(families, List.copyOf(index.fonts().keySet()));
+    assertTrue(index.fonts().get("Dialog").isEmpty());
+    // the families are matched ignoring the blanks, like fc-list does
+    assertEquals(2, index.fonts().get("DejaVuSans").size());
+    assertEquals("Liberation Serif", index.fonts().get("Liberation Serif").get(0).name);
+
+    assertEquals(
+        index.version(),
+        FontInventory.build(List.of("Jasper"), families, fontConfigFonts).version());
+    assertNotEquals(
+        index.version(),
+        FontInventory.build(List.of("Jasper"), List.of("Dialog"), fontConfigFonts).version());
+  }
+}
@@ -1,5 +1,6 @@
 package org.mapfish.print.http;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -14,6 +15,7 @@ import java.io.InputStream;
 import java.util.HashMap;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -109,4 +111,80 @@ public class HttpRequestFetcherTest {
     verify(originalResponse, never()).close();
     result.close();
   }
+
+  @Test
+  public void smallBodyIsKeptInMemory() throws Exception {
+    // Given: a temp directory that does not exist, so the body can only be kept in memory.
+    File nonExistentDirectory = new File("/does/not/exist/" + System.nanoTime());
+    HttpRequestFetcher fetcher = createInMemoryFetcher(nonExistentDirectory, 10, 100);
+
+    ClientHttpRequest originalRequest = mockRequest(new byte[] {1, 2, 3});
+
+    // When
+    ClientHttpResponse result = fetcher.register(originalRequest).execute();
+
+    // Then
+    assertEquals(HttpStatusCode.valueOf(200), result.getStatusCode());
+    assertArrayEquals(new byte[] {1, 2, 3}, IOUtils.toByteArray(result.getBody()));
+    result.close();
+  }
+
+  @Test
+  public void bigBodyIsSpilledToFile() throws Exception {
+    File tempDir = new File(System.getProperty("java.io.tmpdir"));
+    HttpRequestFetcher fetcher = createInMemoryFetcher(tempDir, 2, 100);
+
+    ClientHttpRequest originalRequest = mockRequest(new byte[] {1, 2, 3, 4, 5});
+
+    ClientHttpResponse result = fetcher.register(originalRequest).execute();
+
+    assertEquals(HttpStatusCode.valueOf(200), result.getStatusCode());
+    assertArrayEquals(new byte[] {1, 2, 3, 4, 5}, IOUtils.toByteArray(result.getBody()));
+    result.close();
+  }
+
+  @Test
+  public void memoryBudgetIsRespected() throws Exception {
+    // Given: a budget for only one body and a temp directory that does not exist.
+    File nonExistentDirectory = new File("/does/not/exist/" + System.nanoTime());
+    HttpRequestFetcher fetcher = createInMemoryFetcher(nonExistentDirectory, 10, 3);
+
+    ClientHttpResponse first = fetcher.register(mockRequest(new byte[] {1, 2, 3})).execute();
+    ClientHttpResponse second = fetcher.register(mockRequest(new byte[] {4, 5, 6})).execute();
+
+    // Then: the first one is in memory, the second one needed the (unusable) temp directory.
+    assertEquals(HttpStatusCode.valueOf(200), first.getStatusCode());
+    assertEquals(HttpStatusCode.valueOf(406), second.getStatusCode());
+
+    // When the first response is closed, its memory is available again.
+    first.close();
+    ClientHttpResponse third = fetcher.register(mockRequest(new byte[] {7, 8, 9})).execute();
+    assertEquals(HttpStatusCode.valueOf(200), third.getStatusCode());
+    third.close();
+  }
+
+  private HttpRequestFetcher createInMemoryFetcher(
+      final File directory, final long maxInMemoryBodySize, final long memoryBudget) {
+    return new HttpRequestFetcher(
+        directory,
+        new MetricRegistry(),
+        new AbstractProcessor.Context(new HashMap<>(), new AtomicBoolean(false)),
+        this.pool,
+        null,
+        maxInMemoryBodySize,
+        memoryBudget);
+  }
+
+  private ClientHttpRequest mockRequest(final byte[] body) throws Exception {
+    ClientHttpResponse originalResponse = mock(ClientHttpResponse.class);
+    when(originalResponse.getHeaders()).thenReturn(new HttpHeaders());
+    when(originalResponse.getStatusCode()).thenReturn(HttpStatusCode.valueOf(200));
+    when(originalResponse.getStatusText()).thenReturn("OK");
+    when(originalResponse.getBody()).thenReturn(new ByteArrayInputStream(body));
+
+    ClientHttpRequest originalRequest = mock(ClientHttpRequest.class);
+    when(originalRequest.getURI()).thenReturn(java.net.URI.create("http://example.invalid/wms"));
+    when(originalRequest.execute()).thenReturn(originalResponse);
+    return originalRequest;
+  }
 }
@@ -0,0 +1,49 @@
+package org.mapfish.print.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class RequestExecutorTest {
+  @Test
+  public void testMaxRequestsPerHost() throws Exception {
+    final ForkJoinPool pool = new ForkJoinPool(1);
+    final RequestExecutor executor = new RequestExecutor(pool, true, 10, 2);
+    try {
+      assertMaxRequestsPerHost(executor);
+    } finally {
+      executor.shutdownNow();
+      pool.shutdownNow();
+    }
+  }
+
+  private static void assertMaxRequestsPerHost(final RequestExecutor executor) throws Exception {
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final List<Future<Integer>> futures = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      final int index = i;
+      futures.add(
+          executor.submit(
+              "example.com",
+              () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                running.decrementAndGet();
+                return index;
+              }));
+    }
+    for (int i = 0; i < futures.size(); i++) {
+      assertEquals(i, futures.get(i).get());
+    }
+    assertTrue(maxRunning.get() <= 2, "max running: " + maxRunning.get());
+    // the idle hosts are removed
+    assertEquals(0, executor.getHostCount());
+  }
+}
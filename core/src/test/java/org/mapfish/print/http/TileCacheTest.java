@@ -0,0 +1,159 @@
+package org.mapfish.print.http;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.codahale.metrics.MetricRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.net.URI;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mapfish.print.AbstractMapfishSpringTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class TileCacheTest extends AbstractMapfishSpringTest {
+  private static final byte[] BODY = new byte[] {1, 2, 3};
+
+  @Autowired private TileCache tileCache;
+
+  @Autowired private MetricRegistry metricRegistry;
+
+  private static String uniqueUrl() {
+    return "http://example.invalid/tiles/" + UUID.randomUUID();
+  }
+
+  @Test
+  public void testFreshTile() {
+    final String url = uniqueUrl();
+    final HttpHeaders headers = new HttpHeaders();
+    headers.setCacheControl("public, max-age=600");
+    this.tileCache.put(url, headers, BODY);
+
+    final TileCache.CachedTile tile = this.tileCache.get(url);
+    assertNotNull(tile);
+    assertTrue(tile.isFresh());
+    assertArrayEquals(BODY, tile.body());
+  }
+
+  @Test
+  public void testNoStore() {
+    final String url = uniqueUrl();
+    final HttpHeaders headers = new HttpHeaders();
+    headers.setCacheControl("no-store");
+    this.tileCache.put(url, headers, BODY);
+
+    assertNull(this.tileCache.get(url));
+  }
+
+  @Test
+  public void testRevalidation() {
+    final String url = uniqueUrl();
+    final HttpHeaders headers = new HttpHeaders();
+    headers.setCacheControl("no-cache");
+    headers.setETag("\"abc\"");
+    this.tileCache.put(url, headers, BODY);
+
+    final TileCache.CachedTile tile = this.tileCache.get(url);
+    assertNotNull(tile);
+    assertFalse(tile.isFresh());
+    assertTrue(tile.canBeRevalidated());
+
+    final HttpHeaders requestHeaders = new HttpHeaders();
+    tile.addValidators(requestHeaders);
+    assertEquals("\"abc\"", requestHeaders.getFirst(HttpHeaders.IF_NONE_MATCH));
+  }
+
+  @Test
+  public void testExpiredWithoutValidator() {
+    final String url = uniqueUrl();
+    final HttpHeaders headers = new HttpHeaders();
+    headers.setCacheControl("no-cache");
+    this.tileCache.put(url, headers, BODY);
+
+    // can't be revalidated, it is fetched again
+    assertNull(this.tileCache.get(url));
+  }
+
+  @Test
+  public void testDiskTier(@TempDir final File directory) throws Exception {
+    final TileCache cache = new TileCache();
+    ReflectionTestUtils.setField(cache, "metricRegistry", new MetricRegistry());
+    cache.setMaxMemorySize(0);
+    cache.setDirectory(directory);
+    cache.init();
+
+    final String url = uniqueUrl();
+    final HttpHeaders headers = new HttpHeaders();
+    headers.setCacheControl("max-age=600");
+    cache.put(url, headers, BODY);
+    assertArrayEquals(BODY, cache.get(url).body());
+
+    // the file is replaced, without leaving a temporary file
+    final byte[] otherBody = new byte[] {4, 5};
+    cache.put(url, headers, otherBody);
+    assertArrayEquals(otherBody, cache.get(url).body());
+    assertEquals(1, directory.listFiles().length);
+  }
+
+  @Test
+  public void testFetcherUsesCache() throws Exception {
+    final URI uri = new URI(uniqueUrl());
+    final ForkJoinPool pool = new ForkJoinPool(1);
+    try {
+      final ClientHttpRequest originalRequest = mock(ClientHttpRequest.class);
+      when(originalRequest.getURI()).thenReturn(uri);
+      when(originalRequest.getMethod()).thenReturn(HttpMethod.GET);
+      when(originalRequest.getHeaders()).thenReturn(new HttpHeaders());
+      when(originalRequest.execute())
+          .thenAnswer(
+              invocation -> {
+                final HttpHeaders headers = new HttpHeaders();
+                headers.setCacheControl("max-age=600");
+                final ClientHttpResponse response = mock(ClientHttpResponse.class);
+                when(response.getHeaders()).thenReturn(headers);
+                when(response.getStatusCode()).thenReturn(HttpStatusCode.valueOf(200));
+                when(response.getStatusText()).thenReturn("OK");
+                when(response.getBody()).thenReturn(new ByteArrayInputStream(BODY));
+                return response;
+              });
+
+      for (int i = 0; i < 2; i++) {
+        final HttpRequestFetcher fetcher =
+            new HttpRequestFetcher(
+                new File(System.getProperty("java.io.tmpdir")),
+                this.metricRegistry,
+                CONTEXT,
+                pool,
+                this.tileCache,
+                0,
+                0);
+        try (ClientHttpResponse response = fetcher.register(originalRequest, true).execute()) {
+          assertEquals(HttpStatusCode.valueOf(200), response.getStatusCode());
+          assertArrayEquals(BODY, IOUtils.toByteArray(response.getBody()));
+        }
+      }
+
+      verify(originalRequest, times(1)).execute();
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+}
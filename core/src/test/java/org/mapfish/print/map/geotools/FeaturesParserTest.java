@@ -2,19 +2,27 @@ package org.mapfish.print.map.geotools;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.codahale.metrics.MetricRegistry;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.net.URI;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
 import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.crs.DefaultEngineeringCRS;
 import org.json.JSONObject;
 import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Point;
 import org.mapfish.print.AbstractMapfishSpringTest;
 import org.mapfish.print.Constants;
 import org.mapfish.print.TestHttpClientFactory;
@@ -255,6 +263,77 @@ public class FeaturesParserTest extends AbstractMapfishSpringTest {
     assertEquals(0, simpleFeatureCollection.size());
   }
 
+  @Test
+  public void testTreatStreamAsGeoJson() throws Exception {
+    final MetricRegistry metricRegistry = new MetricRegistry();
+    FeaturesParser featuresParser = new FeaturesParser(requestFactory, false, metricRegistry);
+
+    final String geojson =
+        "[{\"type\": \"Feature\", \"properties\": {\"name\": \"a\", \"count\": 1},"
+            + " \"geometry\": {\"type\": \"Point\", \"coordinates\": [1, 2]}},"
+            + " {\"type\": \"Feature\", \"properties\": {\"size\": 1.5},"
+            + " \"geometry\": {\"type\": \"LineString\", \"coordinates\": [[1, 2], [3, 4]]}}]";
+    final SimpleFeatureCollection simpleFeatureCollection =
+        featuresParser.treatStreamAsGeoJson(
+            new ByteArrayInputStream(geojson.getBytes(Constants.DEFAULT_CHARSET)));
+    assertEquals(2, simpleFeatureCollection.size());
+    final SimpleFeatureType featureType = simpleFeatureCollection.getSchema();
+    assertNotNull(featureType.getDescriptor("name"));
+    assertNotNull(featureType.getDescriptor("count"));
+    assertNotNull(featureType.getDescriptor("size"));
+    assertEquals(Geometry.class, featureType.getGeometryDescriptor().getType().getBinding());
+
+    assertEquals(1, metricRegistry.timer("FeaturesParser.parse").getCount());
+    assertEquals(geojson.length(), metricRegistry.meter("FeaturesParser.chars").getCount());
+    assertEquals(2, metricRegistry.meter("FeaturesParser.features").getCount());
+  }
+
+  @Test
+  public void testTreatStreamAsGeoJsonValues() throws Exception {
+    FeaturesParser featuresParser = new FeaturesParser(requestFactory, false);
+
+    final String geojson =
+        "{\"type\": \"Feature\", \"properties\": {\"long\": 12345678901234567,"
+            + " \"huge\": 123456789012345678901234567890, \"decimal\": 1.5,"
+            + " \"nested\": {\"values\": [1, 2.5, null]},"
+            + " \"geometry\": {\"type\": \"Point\", \"coordinates\": [5, 6]}},"
+            + " \"geometry\": {\"type\": \"Point\", \"coordinates\": [1, 2]}}";
+    final SimpleFeatureCollection features =
+        featuresParser.treatStreamAsGeoJson(
+            new ByteArrayInputStream(geojson.getBytes(Constants.DEFAULT_CHARSET)));
+    assertEquals(1, features.size());
+    final SimpleFeature feature = features.features().next();
+
+    // the same types as the GeoTools GeoJSON parser
+    assertEquals(12345678901234567L, feature.getAttribute("long"));
+    assertEquals(1.2345678901234568E29, feature.getAttribute("huge"));
+    assertEquals(1.5, feature.getAttribute("decimal"));
+    assertEquals(
+        Map.of("values", Arrays.asList(1L, 2.5, null)), feature.getAttribute("nested"));
+
+    // the geometry property doesn't replace the geometry of the feature
+    assertEquals(5, features.getSchema().getAttributeCount());
+    assertEquals(
+        Point.class, features.getSchema().getGeometryDescriptor().getType().getBinding());
+    assertEquals("POINT (1 2)", ((Geometry) feature.getDefaultGeometry()).toText());
+  }
+
+  @Test
+  public void testTreatStreamAsGeoJsonGeometry() throws Exception {
+    FeaturesParser featuresParser = new FeaturesParser(requestFactory, false);
+
+    final String geojson = "{\"type\": \"LineString\", \"coordinates\": [[1, 2], [3, 4]]}";
+    final SimpleFeatureCollection features =
+        featuresParser.treatStreamAsGeoJson(
+            new ByteArrayInputStream(geojson.getBytes(Constants.DEFAULT_CHARSET)));
+    assertEquals(1, features.size());
+    assertEquals(
+        LineString.class, features.getSchema().getGeometryDescriptor().getType().getBinding());
+    assertEquals(
+        "LINESTRING (1 2, 3 4)",
+        ((Geometry) features.features().next().getDefaultGeometry()).toText());
+  }
+
   private int getNumExpectedFeatures(File geojsonExample) {
     final Pattern numExpectedFilesPattern = Pattern.compile(".*-(\\d+)\\.json");
 
@@ -0,0 +1,113 @@
+package org.mapfish.print.map.geotools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.geotools.gml3.GMLConfiguration;
+import org.geotools.xsd.Parser;
+import org.junit.jupiter.api.Test;
+import org.mapfish.print.AbstractMapfishSpringTest;
+import org.mapfish.print.PrintException;
+import org.mapfish.print.URIUtils;
+import org.mapfish.print.attribute.map.MapfishMapContext;
+import org.xml.sax.SAXException;
+
+public class GmlLayerTest {
+  private static GmlVersion detect(final String name) throws Exception {
+    try (InputStream input =
+        new BufferedInputStream(
+            GmlLayerTest.class.getResourceAsStream("/map-data/gml/" + name))) {
+      final GmlVersion version = GmlVersion.detect(input);
+      // the stream is back at its beginning
+      assertEquals('<', input.read());
+      return version;
+    }
+  }
+
+  @Test
+  public void testDetectVersion() throws Exception {
+    assertEquals(GmlVersion.GML2, detect("spearfish-streams-v2.gml"));
+    assertEquals(GmlVersion.GML3, detect("spearfish-streams-v311.gml"));
+    assertEquals(GmlVersion.GML32, detect("spearfish-streams-v32.gml"));
+  }
+
+  @Test
+  public void testRejectDoctype() {
+    final PrintException exception =
+        assertThrows(PrintException.class, () -> detect("malicious-doctype.gml"));
+    assertTrue(exception.getMessage().contains("Failed to parse GML data"));
+  }
+
+  @Test
+  public void testRejectDoctypeAfterTheDetection() throws Exception {
+    final byte[] malicious;
+    try (InputStream input =
+        GmlLayerTest.class.getResourceAsStream("/map-data/gml/malicious-doctype.gml")) {
+      malicious = input.readAllBytes();
+    }
+    // the DTD is after the beginning read to detect the version, behind the XML declaration
+    final String content = new String(malicious, StandardCharsets.UTF_8);
+    final int prolog = content.indexOf("?>") + 2;
+    final byte[] document =
+        (content.substring(0, prolog)
+                + "<!--"
+                + "x".repeat(GmlVersion.SNIFF_SIZE)
+                + "-->"
+                + content.substring(prolog))
+            .getBytes(StandardCharsets.UTF_8);
+    assertEquals(GmlVersion.GML3, GmlVersion.detect(document));
+
+    final Parser parser = GmlLayer.Plugin.createSecureParser(new GMLConfiguration());
+    assertThrows(SAXException.class, () -> parser.parse(new ByteArrayInputStream(document)));
+  }
+
+  @Test
+  public void testParseOrder() {
+    assertEquals(
+        List.of(GmlVersion.GML3, GmlVersion.GML2, GmlVersion.GML32),
+        GmlVersion.GML3.parseOrder());
+    assertEquals(
+        List.of(GmlVersion.GML2, GmlVersion.GML3, GmlVersion.GML32),
+        GmlVersion.GML2.parseOrder());
+    assertEquals(
+        List.of(GmlVersion.GML32, GmlVersion.GML3, GmlVersion.GML2),
+        GmlVersion.GML32.parseOrder());
+  }
+
+  @Test
+  public void testAddBbox() throws Exception {
+    final MapfishMapContext mapContext = AbstractMapfishSpringTest.createTestMapContext();
+
+    final URI uri =
+        GmlLayer.Plugin.addBbox(
+            new URI("http://example.com/wfs?service=WFS&request=GetFeature&typeName=streams"),
+            mapContext);
+    final String bbox = URIUtils.getParameters(uri).get("BBOX").iterator().next();
+    final String[] parts = bbox.split(",");
+    assertEquals(5, parts.length);
+    assertEquals("CRS:84", parts[4]);
+    assertTrue(Double.parseDouble(parts[0]) < mapContext.toReferencedEnvelope().getMinX());
+    assertTrue(Double.parseDouble(parts[2]) > mapContext.toReferencedEnvelope().getMaxX());
+
+    // not a GetFeature request, or already filtered
+    for (String query :
+        new String[] {
+          "service=WFS&request=DescribeFeatureType",
+          "service=WFS&request=GetFeature&CQL_FILTER=name%3D'a'",
+          "service=WFS&request=GetFeature&bbox=0,0,1,1"
+        }) {
+      final URI original = new URI("http://example.com/wfs?" + query);
+      final URI result = GmlLayer.Plugin.addBbox(original, mapContext);
+      assertEquals(original, result);
+      assertFalse(result.toString().contains("BBOX"));
+    }
+  }
+}
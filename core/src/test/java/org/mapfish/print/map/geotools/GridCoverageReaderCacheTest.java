@@ -0,0 +1,91 @@
+package org.mapfish.print.map.geotools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mapfish.print.AbstractMapfishSpringTest;
+import org.mapfish.print.processor.map.CreateMapProcessorFlexibleScaleAndCenterGeoTiffTest;
+import org.springframework.beans.factory.annotation.Autowired;
+
+public class GridCoverageReaderCacheTest extends AbstractMapfishSpringTest {
+  @Autowired private GridCoverageReaderCache cache;
+
+  @TempDir private Path tempDir;
+
+  private File geotiff;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    this.geotiff = this.tempDir.resolve("sample.tif").toFile();
+    Files.copy(
+        getFile(
+                CreateMapProcessorFlexibleScaleAndCenterGeoTiffTest.class,
+                CreateMapProcessorFlexibleScaleAndCenterGeoTiffTest.BASE_DIR
+                    + "sampleGeoTiff.tif")
+            .toPath(),
+        this.geotiff.toPath());
+  }
+
+  @AfterEach
+  public void tearDown() {
+    this.cache.setTimeToIdle(0);
+    this.cache.evictIdle();
+    this.cache.setTimeToIdle(300);
+  }
+
+  @Test
+  public void testShared() throws Exception {
+    final int size = this.cache.size();
+    try (GridCoverageReaderCache.Lease lease1 = this.cache.acquire(this.geotiff);
+        GridCoverageReaderCache.Lease lease2 = this.cache.acquire(this.geotiff)) {
+      assertSame(lease1.getReader(), lease2.getReader());
+      assertEquals(size + 1, this.cache.size());
+    }
+
+    // kept open while idle
+    assertEquals(size + 1, this.cache.size());
+    try (GridCoverageReaderCache.Lease lease = this.cache.acquire(this.geotiff)) {
+      assertEquals(size + 1, this.cache.size());
+      lease.getReader().getOriginalEnvelope();
+    }
+
+    this.cache.setTimeToIdle(0);
+    this.cache.evictIdle();
+    assertEquals(size, this.cache.size());
+  }
+
+  @Test
+  public void testModified() throws Exception {
+    final int size = this.cache.size();
+    final GridCoverageReaderCache.Lease lease1 = this.cache.acquire(this.geotiff);
+    assertEquals(size + 1, this.cache.size());
+
+    assertEquals(true, this.geotiff.setLastModified(this.geotiff.lastModified() - 10000));
+    try (GridCoverageReaderCache.Lease lease2 = this.cache.acquire(this.geotiff)) {
+      assertNotSame(lease1.getReader(), lease2.getReader());
+      // the old reader is still used
+      assertEquals(size + 2, this.cache.size());
+      lease1.close();
+      assertEquals(size + 1, this.cache.size());
+    }
+  }
+
+  @Test
+  public void testNotAGeotiff() throws Exception {
+    final int size = this.cache.size();
+    final File file = this.tempDir.resolve("other.tif").toFile();
+    Files.writeString(file.toPath(), "not a geotiff");
+    assertThrows(Exception.class, () -> this.cache.acquire(file));
+    assertEquals(size, this.cache.size());
+  }
+}
@@ -0,0 +1,202 @@
+package org.mapfish.print.map.geotools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.codahale.metrics.MetricRegistry;
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.io.AbstractGridCoverage2DReader;
+import org.geotools.gce.geotiff.GeoTiffFormat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mapfish.print.AbstractMapfishSpringTest;
+import org.mapfish.print.TestHttpClientFactory;
+import org.mapfish.print.http.RangeBlockCache;
+import org.mapfish.print.processor.map.CreateMapProcessorFlexibleScaleAndCenterGeoTiffTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class RangeRequestImageSourceTest extends AbstractMapfishSpringTest {
+  @Autowired private TestHttpClientFactory requestFactory;
+
+  @Autowired private RangeBlockCache rangeBlockCache;
+
+  @Autowired private MetricRegistry metricRegistry;
+
+  @AfterEach
+  public void tearDown() {
+    this.requestFactory.resetHandlers();
+  }
+
+  private static File getGeotiff() {
+    return getFile(
+        CreateMapProcessorFlexibleScaleAndCenterGeoTiffTest.class,
+        CreateMapProcessorFlexibleScaleAndCenterGeoTiffTest.BASE_DIR + "sampleGeoTiff.tif");
+  }
+
+  private void registerRangeServer(
+      final String host, final byte[] content, final AtomicLong sent, final boolean withEtag) {
+    this.requestFactory.registerHandler(
+        uri -> host.equals(uri.getHost()),
+        new TestHttpClientFactory.Handler() {
+          @Override
+          public MockClientHttpRequest handleRequest(final URI uri, final HttpMethod httpMethod) {
+            return new MockClientHttpRequest(httpMethod, uri) {
+              @Override
+              protected ClientHttpResponse executeInternal() {
+                final HttpRange range = getHeaders().getRange().getFirst();
+                final int start = (int) range.getRangeStart(content.length);
+                final int end = (int) range.getRangeEnd(content.length);
+                sent.addAndGet(end - start + 1);
+                final MockClientHttpResponse response =
+                    new MockClientHttpResponse(
+                        Arrays.copyOfRange(content, start, end + 1), HttpStatus.PARTIAL_CONTENT);
+                response
+                    .getHeaders()
+                    .set(
+                        HttpHeaders.CONTENT_RANGE,
+                        "bytes " + start + "-" + end + "/" + content.length);
+                if (withEtag) {
+                  response.getHeaders().setETag("\"v1\"");
+                }
+                return response;
+              }
+            };
+          }
+        });
+  }
+
+  @Test
+  public void testRead() throws Exception {
+    final byte[] content = Files.readAllBytes(getGeotiff().toPath());
+    final AtomicLong sent = new AtomicLong();
+    registerRangeServer("cog.example.com", content, sent, true);
+    final URI uri = new URI("http://cog.example.com/sample.tif");
+
+    final RangeRequestImageSource source =
+        RangeRequestImageSource.open(uri, this.requestFactory, this.rangeBlockCache);
+    assertNotNull(source);
+    assertEquals(content.length, source.getLength());
+    assertEquals(RangeRequestImageSource.BLOCK_SIZE, sent.get());
+
+    final AbstractGridCoverage2DReader reader = new GeoTiffFormat().getReader(source);
+    assertNotNull(reader);
+    final AbstractGridCoverage2DReader expectedReader =
+        new GeoTiffFormat().getReader(getGeotiff());
+    assertEquals(expectedReader.getOriginalEnvelope(), reader.getOriginalEnvelope());
+    assertEquals(expectedReader.getOriginalGridRange(), reader.getOriginalGridRange());
+
+    final GridCoverage2D coverage = reader.read(null);
+    final GridCoverage2D expectedCoverage = expectedReader.read(null);
+    assertEquals(
+        expectedCoverage.getRenderedImage().getData().getDataBuffer().getSize(),
+        coverage.getRenderedImage().getData().getDataBuffer().getSize());
+    reader.dispose();
+    expectedReader.dispose();
+
+    // the blocks are shared with the next jobs, only the first block is requested again
+    final long sentBefore = sent.get();
+    final RangeRequestImageSource source2 =
+        RangeRequestImageSource.open(uri, this.requestFactory, this.rangeBlockCache);
+    assertNotNull(source2);
+    source2.getBlocks(0, (content.length - 1) / RangeRequestImageSource.BLOCK_SIZE);
+    assertEquals(sentBefore + RangeRequestImageSource.BLOCK_SIZE, sent.get());
+  }
+
+  private static byte[] createContent() {
+    final byte[] content = new byte[3 * RangeRequestImageSource.BLOCK_SIZE];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte) (i * 31);
+    }
+    return content;
+  }
+
+  private static void readByteByByte(final RangeRequestImageSource source, final byte[] expected)
+      throws Exception {
+    try (ImageInputStream stream = ImageIO.createImageInputStream(source)) {
+      for (byte b : expected) {
+        assertEquals(b & 0xff, stream.read());
+      }
+      assertEquals(-1, stream.read());
+    }
+  }
+
+  @Test
+  public void testReadWithoutCache() throws Exception {
+    final byte[] content = createContent();
+    final AtomicLong sent = new AtomicLong();
+    registerRangeServer("nocache.example.com", content, sent, true);
+    final RangeBlockCache disabledCache = new RangeBlockCache();
+    ReflectionTestUtils.setField(disabledCache, "metricRegistry", new MetricRegistry());
+    disabledCache.setMaxSize(0);
+    disabledCache.init();
+
+    final RangeRequestImageSource source =
+        RangeRequestImageSource.open(
+            new URI("http://nocache.example.com/file.tif"), this.requestFactory, disabledCache);
+    assertNotNull(source);
+    // the stream keeps the current block: one request per block
+    readByteByByte(source, content);
+    assertEquals(content.length, sent.get());
+  }
+
+  @Test
+  public void testReadWithoutVersion() throws Exception {
+    final byte[] content = createContent();
+    final AtomicLong sent = new AtomicLong();
+    registerRangeServer("noversion.example.com", content, sent, false);
+    final long misses = this.metricRegistry.counter("RangeBlockCache.miss").getCount();
+
+    final RangeRequestImageSource source =
+        RangeRequestImageSource.open(
+            new URI("http://noversion.example.com/file.tif"),
+            this.requestFactory,
+            this.rangeBlockCache);
+    assertNotNull(source);
+    readByteByByte(source, content);
+    assertEquals(content.length, sent.get());
+    // the blocks of a file that can change are not shared
+    assertEquals(misses, this.metricRegistry.counter("RangeBlockCache.miss").getCount());
+  }
+
+  @Test
+  public void testNoRangeSupport() throws Exception {
+    final byte[] content = Files.readAllBytes(getGeotiff().toPath());
+    this.requestFactory.registerHandler(
+        uri -> "norange.example.com".equals(uri.getHost()),
+        new TestHttpClientFactory.Handler() {
+          @Override
+          public MockClientHttpRequest handleRequest(final URI uri, final HttpMethod httpMethod) {
+            return ok(uri, content, httpMethod);
+          }
+        });
+
+    assertNull(
+        RangeRequestImageSource.open(
+            new URI("http://norange.example.com/sample.tif"),
+            this.requestFactory,
+            this.rangeBlockCache));
+  }
+
+  @Test
+  public void testParseLength() {
+    assertEquals(1234, RangeRequestImageSource.parseLength("bytes 0-99/1234"));
+    assertEquals(-1, RangeRequestImageSource.parseLength("bytes 0-99/*"));
+    assertEquals(-1, RangeRequestImageSource.parseLength(null));
+  }
+}
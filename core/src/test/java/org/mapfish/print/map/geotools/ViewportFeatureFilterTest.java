@@ -0,0 +1,73 @@
+package org.mapfish.print.map.geotools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.List;
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+
+public class ViewportFeatureFilterTest {
+  private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+  @Test
+  public void testFilter() {
+    final SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+    typeBuilder.setName("test");
+    typeBuilder.add("geometry", Geometry.class);
+    final SimpleFeatureType type = typeBuilder.buildFeatureType();
+    final ListFeatureCollection features = new ListFeatureCollection(type);
+    final SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+
+    // 100 points on a line from (0, 0) to (990, 0)
+    for (int i = 0; i < 100; i++) {
+      builder.set("geometry", GEOMETRY_FACTORY.createPoint(new Coordinate(i * 10, 0)));
+      features.add(builder.buildFeature("point." + i));
+    }
+    // a line with a vertex every 0.01 units, visible in the map
+    final Coordinate[] coordinates = new Coordinate[1001];
+    for (int i = 0; i < coordinates.length; i++) {
+      coordinates[i] = new Coordinate(i / 100.0, (i % 2) / 1000.0);
+    }
+    builder.set("geometry", GEOMETRY_FACTORY.createLineString(coordinates));
+    features.add(builder.buildFeature("line"));
+
+    final ViewportFeatureFilter filter = new ViewportFeatureFilter(features);
+    // a map of 100x100 units on 100x100 pixels, with a margin of 64 pixels
+    final ViewportFeatureFilter.Result result =
+        filter.filter(new ReferencedEnvelope(0, 100, -50, 50, null), new Dimension(100, 100));
+    assertNotNull(result);
+    assertEquals(101, result.total());
+    // the points from 0 to 160
+    assertEquals(101 - 17 - 1, result.culled());
+    assertEquals(1, result.simplified());
+
+    final List<String> ids = new ArrayList<>();
+    try (SimpleFeatureIterator iterator = result.features().features()) {
+      while (iterator.hasNext()) {
+        final SimpleFeature feature = iterator.next();
+        ids.add(feature.getID());
+        if (feature.getID().equals("line")) {
+          final Geometry line = (Geometry) feature.getDefaultGeometry();
+          assertTrue(line.getNumPoints() < 10, "number of points: " + line.getNumPoints());
+        }
+      }
+    }
+    // the drawing order is kept
+    assertEquals("point.0", ids.get(0));
+    assertEquals("point.16", ids.get(16));
+    assertEquals("line", ids.get(17));
+  }
+}
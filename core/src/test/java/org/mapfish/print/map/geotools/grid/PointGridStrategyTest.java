@@ -47,7 +47,7 @@ public class PointGridStrategyTest extends AbstractMapfishSpringTest {
     FeatureSourceSupplier supplier =
         pointGridStrategy.createFeatureSource(template, layerData, new LabelPositionCollector());
     SimpleFeatureSource featureSource =
-        (SimpleFeatureSource) supplier.load(requestFactory, context);
+        (SimpleFeatureSource) supplier.load(requestFactory, context, null);
     assertEquals(6, featureSource.getFeatures().size());
 
     try (SimpleFeatureIterator features = featureSource.getFeatures().features()) {
@@ -91,7 +91,7 @@ public class PointGridStrategyTest extends AbstractMapfishSpringTest {
     FeatureSourceSupplier supplier =
         pointGridStrategy.createFeatureSource(template, layerData, new LabelPositionCollector());
     SimpleFeatureSource featureSource =
-        (SimpleFeatureSource) supplier.load(requestFactory, context);
+        (SimpleFeatureSource) supplier.load(requestFactory, context, null);
 
     try (SimpleFeatureIterator features = featureSource.getFeatures().features()) {
       List<Coordinate> expectedPoints =
@@ -0,0 +1,199 @@
+package org.mapfish.print.map.tiled;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.codahale.metrics.MetricRegistry;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.locationtech.jts.geom.Coordinate;
+import org.mapfish.print.config.Configuration;
+import org.mapfish.print.http.MfClientHttpRequestFactory;
+import org.mapfish.print.map.tiled.TilePreparationInfo.SingleTilePreparationInfo;
+import org.mapfish.print.map.tiled.osm.OsmLayerParam;
+import org.mapfish.print.processor.AbstractProcessor;
+import org.mapfish.print.processor.Processor;
+import org.springframework.http.client.ClientHttpRequest;
+
+public class CoverageTaskTest {
+  private static final int TILE_SIZE = 16;
+  private static final int NUMBER_OF_TILES = 4;
+
+  private final ForkJoinPool pool = new ForkJoinPool(2);
+
+  @AfterEach
+  public void tearDown() {
+    this.pool.shutdownNow();
+  }
+
+  @Test
+  public void testSequentialDecoding() {
+    final MetricRegistry registry = new MetricRegistry();
+    final GridCoverage2D coverage = createTask(1, registry).call();
+
+    assertTilesDrawn(coverage);
+    assertEquals(
+        NUMBER_OF_TILES,
+        registry.timer(CoverageTask.class.getName() + ".testLayer.decode").getCount());
+    assertEquals(0, registry.timer(CoverageTask.class.getName() + ".testLayer.wait").getCount());
+  }
+
+  @Test
+  public void testParallelDecoding() {
+    final MetricRegistry registry = new MetricRegistry();
+    final GridCoverage2D coverage = createTask(2, registry).call();
+
+    assertTilesDrawn(coverage);
+    assertEquals(
+        NUMBER_OF_TILES,
+        registry.timer(CoverageTask.class.getName() + ".testLayer.decode").getCount());
+    assertEquals(
+        NUMBER_OF_TILES,
+        registry.timer(CoverageTask.class.getName() + ".testLayer.wait").getCount());
+  }
+
+  @Test
+  @Timeout(value = 30, unit = TimeUnit.SECONDS)
+  public void testParallelDecodingInPool() throws Exception {
+    // the only worker of the pool doesn't block while it waits for the tiles
+    final ForkJoinPool singleWorkerPool = new ForkJoinPool(1);
+    try {
+      final CoverageTask task = createTask(2, new MetricRegistry(), singleWorkerPool);
+      assertTilesDrawn(singleWorkerPool.submit(task).get());
+    } finally {
+      singleWorkerPool.shutdownNow();
+    }
+  }
+
+  private void assertTilesDrawn(final GridCoverage2D coverage) {
+    final Raster raster = coverage.getRenderedImage().getData();
+    assertEquals(TILE_SIZE * NUMBER_OF_TILES, raster.getWidth());
+    for (int i = 0; i < NUMBER_OF_TILES; i++) {
+      final int[] pixel =
+          raster.getPixel(i * TILE_SIZE + TILE_SIZE / 2, TILE_SIZE / 2, (int[]) null);
+      assertEquals(255, pixel[0], "Tile " + i + " not drawn");
+    }
+  }
+
+  private CoverageTask createTask(final int parallelism, final MetricRegistry registry) {
+    return createTask(parallelism, registry, this.pool);
+  }
+
+  private CoverageTask createTask(
+      final int parallelism, final MetricRegistry registry, final ForkJoinPool executor) {
+    final OsmLayerParam params = new OsmLayerParam();
+    params.tileDecodingParallelism = parallelism;
+
+    final BufferedImage placeholder =
+        new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_4BYTE_ABGR);
+    final Graphics2D graphics = placeholder.createGraphics();
+    try {
+      graphics.setColor(Color.RED);
+      graphics.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+    } finally {
+      graphics.dispose();
+    }
+
+    final List<SingleTilePreparationInfo> tiles = new ArrayList<>();
+    for (int i = 0; i < NUMBER_OF_TILES; i++) {
+      tiles.add(new SingleTilePreparationInfo(i, 0, null));
+    }
+    final TilePreparationInfo preparationInfo =
+        new TilePreparationInfo(
+            tiles,
+            TILE_SIZE * NUMBER_OF_TILES,
+            TILE_SIZE,
+            new Coordinate(0, 0),
+            NUMBER_OF_TILES,
+            1,
+            DefaultGeographicCRS.WGS84);
+
+    final Configuration configuration = mock(Configuration.class);
+    when(configuration.getOpaqueTileErrorColor()).thenReturn("rgba(255, 155, 155, 0)");
+    final Processor.ExecutionContext context =
+        new AbstractProcessor.Context(new HashMap<>(), new AtomicBoolean(false));
+
+    return new CoverageTask(
+        preparationInfo,
+        false,
+        registry,
+        context,
+        new PlaceholderTileInformation(params, placeholder),
+        configuration,
+        executor,
+        "testLayer");
+  }
+
+  private static final class PlaceholderTileInformation extends TileInformation<OsmLayerParam> {
+    private final BufferedImage placeholder;
+
+    private PlaceholderTileInformation(
+        final OsmLayerParam params, final BufferedImage placeholder) {
+      super(null, new Rectangle(TILE_SIZE * NUMBER_OF_TILES, TILE_SIZE), 72, params);
+      this.placeholder = placeholder;
+    }
+
+    @Override
+    public ClientHttpRequest getTileRequest(
+        final MfClientHttpRequestFactory httpRequestFactory,
+        final String commonUrl,
+        final ReferencedEnvelope tileBounds,
+        final Dimension tileSizeOnScreen,
+        final int column,
+        final int row) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public double getResolution() {
+      return 1.0 / TILE_SIZE;
+    }
+
+    @Override
+    public Double getLayerDpi() {
+      return 72.0;
+    }
+
+    @Override
+    public Dimension getTileSize() {
+      return new Dimension(TILE_SIZE, TILE_SIZE);
+    }
+
+    @Override
+    protected ReferencedEnvelope getTileBounds() {
+      return new ReferencedEnvelope(0, NUMBER_OF_TILES, 0, 1, DefaultGeographicCRS.WGS84);
+    }
+
+    @Override
+    protected String createCommonUrl() {
+      return "http://localhost/tiles";
+    }
+
+    @Override
+    public BufferedImage getMissingTileImage() {
+      return this.placeholder;
+    }
+
+    @Override
+    protected double getImageBufferScaling() {
+      return 1.0;
+    }
+  }
+}
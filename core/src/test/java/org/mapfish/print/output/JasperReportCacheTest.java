@@ -0,0 +1,56 @@
+package org.mapfish.print.output;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.codahale.metrics.MetricRegistry;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.mapfish.print.AbstractMapfishSpringTest;
+import org.mapfish.print.config.Configuration;
+import org.mapfish.print.config.ConfigurationFactory;
+import org.mapfish.print.wrapper.json.PJsonObject;
+import org.springframework.beans.factory.annotation.Autowired;
+
+public class JasperReportCacheTest extends AbstractMapfishSpringTest {
+  public static final String BASE_DIR = "simple_map/";
+
+  @Autowired private ConfigurationFactory configurationFactory;
+
+  @Autowired private Map<String, OutputFormat> outputFormat;
+
+  @Autowired private JasperReportCache jasperReportCache;
+
+  @Autowired private MetricRegistry metricRegistry;
+
+  @Test
+  public void testReportIsLoadedOnce() throws Exception {
+    final Configuration config = configurationFactory.getConfig(getFile(BASE_DIR + "config.yaml"));
+    final AbstractJasperReportOutputFormat format =
+        (AbstractJasperReportOutputFormat) this.outputFormat.get("pngOutputFormat");
+    final long hits = this.metricRegistry.counter("JasperReportCache.hit").getCount();
+    final long misses = this.metricRegistry.counter("JasperReportCache.miss").getCount();
+
+    for (int i = 0; i < 2; i++) {
+      print(format, config);
+    }
+    assertEquals(misses + 1, this.metricRegistry.counter("JasperReportCache.miss").getCount());
+    assertEquals(hits + 1, this.metricRegistry.counter("JasperReportCache.hit").getCount());
+
+    this.jasperReportCache.invalidate(config);
+    print(format, config);
+    assertEquals(misses + 2, this.metricRegistry.counter("JasperReportCache.miss").getCount());
+  }
+
+  private void print(final AbstractJasperReportOutputFormat format, final Configuration config)
+      throws Exception {
+    final PJsonObject requestData =
+        parseJSONObjectFromFile(JasperReportCacheTest.class, BASE_DIR + "requestData.json");
+    format.getJasperPrint(
+        new HashMap<>(),
+        requestData,
+        config,
+        getFile(JasperReportCacheTest.class, BASE_DIR),
+        getTaskDirectory());
+  }
+}
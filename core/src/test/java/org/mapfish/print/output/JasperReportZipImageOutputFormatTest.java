@@ -0,0 +1,53 @@
+package org.mapfish.print.output;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+import org.mapfish.print.config.Configuration;
+import org.mapfish.print.config.ConfigurationFactory;
+import org.mapfish.print.wrapper.json.PJsonObject;
+import org.springframework.beans.factory.annotation.Autowired;
+
+public class JasperReportZipImageOutputFormatTest extends AbstractJasperReportOutputFormatTest {
+  @Autowired private ConfigurationFactory configurationFactory;
+  @Autowired private Map<String, OutputFormat> outputFormat;
+
+  @Test
+  public void testPrint() throws Exception {
+    final Configuration config = configurationFactory.getConfig(getFile(BASE_DIR + "config.yaml"));
+
+    PJsonObject requestData = loadJsonRequestData();
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    OutputFormat format = this.outputFormat.get("pngZipOutputFormat");
+    assertEquals("zip", format.getFileSuffix());
+    format.print(
+        new HashMap<>(),
+        requestData,
+        config,
+        getFile(JasperReportZipImageOutputFormatTest.class, BASE_DIR),
+        getTaskDirectory(),
+        outputStream);
+
+    int pages = 0;
+    try (ZipInputStream zip =
+        new ZipInputStream(new ByteArrayInputStream(outputStream.toByteArray()))) {
+      ZipEntry entry;
+      while ((entry = zip.getNextEntry()) != null) {
+        pages++;
+        assertEquals("page-" + pages + ".png", entry.getName());
+        final BufferedImage image = ImageIO.read(zip);
+        assertNotNull(image);
+      }
+    }
+    assertEquals(1, pages);
+  }
+}
@@ -0,0 +1,111 @@
+package org.mapfish.print.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.node.ObjectNode;
+
+public class ExecutionStatsTest {
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  @Test
+  public void testProfile() {
+    final ExecutionStats stats = new ExecutionStats();
+    assertNull(stats.toProfileJson());
+    assertFalse(stats.toJson().has("profile"));
+
+    stats.addTiming(1000 * MS, 10 * MS, "queue");
+    stats.addTiming(1012 * MS, 5 * MS, "processors", "map", "layer 0", "render");
+    stats.addTiming(1020 * MS, 7 * MS, "processors", "map", "layer 0", "render");
+    stats.addTiming(1010 * MS, 2 * MS, "processors", "map", "layer 0", "prefetch");
+    stats.addTiming(1010 * MS, 20 * MS, "processors", "map");
+    stats.addTiming(1030 * MS, 3 * MS, "output", "fill");
+
+    final ObjectNode profile = stats.toProfileJson();
+    final JsonNode steps = profile.get("steps");
+    assertEquals(3, steps.size());
+    assertEquals("queue", steps.get(0).get("name").asString());
+    assertEquals(0, steps.get(0).get("offsetMs").asLong());
+    assertEquals(10, steps.get(0).get("durationMs").asLong());
+
+    // not timed itself
+    final JsonNode processors = steps.get(1);
+    assertEquals("processors", processors.get("name").asString());
+    assertEquals(10, processors.get("offsetMs").asLong());
+    assertFalse(processors.has("durationMs"));
+
+    final JsonNode map = processors.get("steps").get(0);
+    assertEquals(20, map.get("durationMs").asLong());
+    final JsonNode layer = map.get("steps").get(0);
+    assertEquals("prefetch", layer.get("steps").get(0).get("name").asString());
+    final JsonNode render = layer.get("steps").get(1);
+    assertEquals("render", render.get("name").asString());
+    assertEquals(12, render.get("offsetMs").asLong());
+    assertEquals(12, render.get("durationMs").asLong());
+    assertEquals(2, render.get("count").asInt());
+
+    assertEquals("output", steps.get(2).get("name").asString());
+    assertEquals(profile, stats.toJson().get("profile"));
+
+    final Map<List<String>, Long> timings = stats.getTimings();
+    assertEquals(5, timings.size());
+    assertEquals(12 * MS, timings.get(List.of("processors", "map", "layer 0", "render")));
+    assertFalse(timings.containsKey(List.of("processors")));
+  }
+
+  @Test
+  public void testStartTiming() {
+    final ExecutionStats stats = new ExecutionStats();
+    try (ExecutionStats.Timing ignored = stats.startTiming("output", "export")) {
+      assertNull(stats.toProfileJson());
+    }
+    assertEquals(1, stats.getTimings().size());
+    assertEquals(
+        "export",
+        stats.toProfileJson().get("steps").get(0).get("steps").get(0).get("name").asString());
+  }
+
+  @Test
+  public void testMetricTimings() {
+    final ExecutionStats stats = new ExecutionStats();
+    stats.addTiming(1000 * MS, 10 * MS, "queue");
+    final String map1 = "CreateMapProcessor out=map1";
+    final String map2 = "CreateMapProcessor out=map2";
+    stats.addTiming(1010 * MS, 20 * MS, "processors", map1);
+    stats.addTiming(1010 * MS, 30 * MS, "processors", map2);
+    stats.addTiming(1012 * MS, 2 * MS, "processors", map1, "layer 0 WmsLayer", "prefetch");
+    stats.addTiming(1014 * MS, 5 * MS, "processors", map1, "layer 1 WmsLayer", "render");
+    stats.addTiming(1016 * MS, 7 * MS, "processors", map2, "layer 9 OsmLayer", "render");
+    stats.addTiming(1030 * MS, 3 * MS, "output", "fill");
+
+    // the names don't depend on the request
+    assertEquals(
+        Map.of(
+            List.of("queue"), 10 * MS,
+            List.of("processors", "CreateMapProcessor"), 50 * MS,
+            List.of("processors", "CreateMapProcessor", "prefetch"), 2 * MS,
+            List.of("processors", "CreateMapProcessor", "render"), 12 * MS,
+            List.of("output", "fill"), 3 * MS),
+        stats.getMetricTimings());
+  }
+
+  @Test
+  public void testRasterMemory() {
+    // a map of 72x72 pixels, 4 bytes per pixel
+    final long image = 72 * 72 * 4;
+    assertEquals(2 * image, ExecutionStats.getRasterMemory(72, 72, 72, 3, 1, 0, false));
+    // the groups rendered at the same time
+    assertEquals(4 * image, ExecutionStats.getRasterMemory(72, 72, 72, 3, 2, 0, false));
+    // the images kept for a map export, then merged
+    assertEquals(4 * image, ExecutionStats.getRasterMemory(72, 72, 72, 3, 1, Long.MAX_VALUE, true));
+    assertEquals(3 * image, ExecutionStats.getRasterMemory(72, 72, 72, 3, 1, image, true));
+    // only the merged image without raster groups
+    assertEquals(image, ExecutionStats.getRasterMemory(72, 72, 72, 0, 1, 0, true));
+  }
+}
@@ -2,6 +2,7 @@ package org.mapfish.print.processor.jasper;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 
 import java.io.File;
 import java.io.IOException;
@@ -93,4 +94,25 @@ public class DataSourceProcessorTest extends AbstractMapfishSpringTest {
 
     new ImageSimilarity(getFile(BASE_DIR + "expected-page.png")).assertSimilarity(print, 0, 0);
   }
+
+  @Test
+  public void testRenderStreamingTable() throws Exception {
+    final Configuration config =
+        configurationFactory.getConfig(getFile(BASE_DIR + "config-streaming.yaml"));
+
+    PJsonObject requestData = loadJsonRequestData();
+
+    final AbstractJasperReportOutputFormat format =
+        (AbstractJasperReportOutputFormat) this.outputFormat.get("pngOutputFormat");
+    final AbstractJasperReportOutputFormat.Print print =
+        format.getJasperPrint(
+            new HashMap<>(), requestData, config, config.getDirectory(), getTaskDirectory());
+
+    // the rows are processed while the report is filled, with the same result
+    assertInstanceOf(
+        StreamingDataSource.class, print.values().getObject("jrDataSource", Object.class));
+    assertEquals(1, print.print().getPages().size());
+    new ImageSimilarity(getFile(BASE_DIR + "expected-page.png"))
+        .assertSimilarity(print.print(), 0, 0);
+  }
 }
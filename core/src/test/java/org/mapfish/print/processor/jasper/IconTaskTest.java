@@ -1,6 +1,8 @@
 package org.mapfish.print.processor.jasper;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
@@ -8,6 +10,7 @@ import static org.mockito.Mockito.when;
 
 import com.codahale.metrics.MetricRegistry;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -15,6 +18,7 @@ import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import javax.imageio.ImageIO;
 import org.junit.jupiter.api.Test;
 import org.mapfish.print.http.MfClientHttpRequestFactory;
 import org.mapfish.print.processor.AbstractProcessor;
@@ -23,6 +27,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.mock.http.client.MockClientHttpRequest;
 import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.test.util.ReflectionTestUtils;
 
 public class IconTaskTest {
 
@@ -73,6 +78,44 @@ public class IconTaskTest {
     requestMock.setResponse(responseMock);
 
     return legendProcessorMock
-    .new IconTask(icon, 96, context, 1, null, requestFactoryMock, new MetricRegistry());
+    .new IconTask(icon, 96, context, 1, null, "config", requestFactoryMock, new MetricRegistry());
+  }
+
+  @Test
+  public void call_cachedIcon_checksTheAccess() throws Exception {
+    BufferedImage missingImage = new BufferedImage(24, 24, BufferedImage.TYPE_INT_RGB);
+    LegendProcessor legendProcessorMock = spy(LegendProcessor.class);
+    when(legendProcessorMock.getMissingImage()).thenReturn(missingImage);
+    LegendGraphicCache cache = new LegendGraphicCache();
+    ReflectionTestUtils.setField(cache, "metricRegistry", new MetricRegistry());
+    cache.init();
+    ReflectionTestUtils.setField(legendProcessorMock, "legendGraphicCache", cache);
+    Processor.ExecutionContext context =
+        new AbstractProcessor.Context(new HashMap<>(), new AtomicBoolean(false));
+    URL icon = new URL("http://localhost/icon.png");
+
+    ByteArrayOutputStream png = new ByteArrayOutputStream();
+    ImageIO.write(new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB), "png", png);
+    MockClientHttpResponse response = new MockClientHttpResponse(png.toByteArray(), HttpStatus.OK);
+    response.getHeaders().setCacheControl("max-age=600");
+    MockClientHttpRequest request = new MockClientHttpRequest();
+    request.setResponse(response);
+    MfClientHttpRequestFactory allowed = mock(MfClientHttpRequestFactory.class);
+    when(allowed.createRequest(any(URI.class), any())).thenReturn(request);
+    Object[] result =
+        legendProcessorMock
+        .new IconTask(icon, 96, context, 1, null, "config", allowed, new MetricRegistry())
+            .call();
+    assertNotSame(missingImage, result[1]);
+
+    // the graphic is in the cache, but the URI is not allowed by the other configuration
+    MfClientHttpRequestFactory denied = mock(MfClientHttpRequestFactory.class);
+    when(denied.createRequest(any(URI.class), any()))
+        .thenThrow(new IllegalArgumentException("URI not allowed"));
+    result =
+        legendProcessorMock
+        .new IconTask(icon, 96, context, 1, null, "config", denied, new MetricRegistry())
+            .call();
+    assertSame(missingImage, result[1]);
   }
 }
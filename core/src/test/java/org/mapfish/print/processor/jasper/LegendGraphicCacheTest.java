@@ -0,0 +1,100 @@
+package org.mapfish.print.processor.jasper;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.codahale.metrics.MetricRegistry;
+import java.awt.image.BufferedImage;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.mapfish.print.AbstractMapfishSpringTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+
+public class LegendGraphicCacheTest extends AbstractMapfishSpringTest {
+  private static final byte[] PNG = new byte[] {1, 2, 3};
+
+  @Autowired private LegendGraphicCache legendGraphicCache;
+
+  @Autowired private MetricRegistry metricRegistry;
+
+  private static LegendGraphicCache.Key uniqueKey(final Integer maxWidth) {
+    return new LegendGraphicCache.Key(
+        "config", "http://example.invalid/legend/" + UUID.randomUUID(), 72, maxWidth, false);
+  }
+
+  @Test
+  public void testHitAndMiss() {
+    final long hits = this.metricRegistry.counter("LegendGraphicCache.hit").getCount();
+    final long misses = this.metricRegistry.counter("LegendGraphicCache.miss").getCount();
+    final LegendGraphicCache.Key key = uniqueKey(null);
+    final BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+
+    assertNull(this.legendGraphicCache.get(key));
+    this.legendGraphicCache.put(key, image, PNG, 10, 10, -1);
+    final LegendGraphicCache.Entry entry = this.legendGraphicCache.get(key);
+    assertNotNull(entry);
+    assertSame(image, entry.image());
+    assertArrayEquals(PNG, entry.png());
+
+    // the prepared graphic depends on the maximum width and on the configuration
+    assertNull(
+        this.legendGraphicCache.get(
+            new LegendGraphicCache.Key(
+                key.configuration(), key.url(), key.dpi(), 5, key.scaled())));
+    assertNull(
+        this.legendGraphicCache.get(
+            new LegendGraphicCache.Key(
+                "other", key.url(), key.dpi(), key.maxWidth(), key.scaled())));
+
+    assertEquals(hits + 1, this.metricRegistry.counter("LegendGraphicCache.hit").getCount());
+    assertEquals(misses + 3, this.metricRegistry.counter("LegendGraphicCache.miss").getCount());
+  }
+
+  @Test
+  public void testResponseTimeToLive() {
+    final LegendGraphicCache.Key key = uniqueKey(null);
+    final BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+    final LegendGraphicCache.Entry entry = this.legendGraphicCache.put(key, image, PNG, 10, 10, 0);
+    assertTrue(entry.expires() <= System.currentTimeMillis());
+    assertNull(this.legendGraphicCache.get(key));
+  }
+
+  @Test
+  public void testIsCacheable() {
+    final HttpHeaders headers = new HttpHeaders();
+    assertTrue(LegendGraphicCache.isCacheable(headers));
+    headers.setCacheControl("public, max-age=600");
+    assertTrue(LegendGraphicCache.isCacheable(headers));
+    headers.setCacheControl("private, max-age=600");
+    assertFalse(LegendGraphicCache.isCacheable(headers));
+    headers.setCacheControl("no-store");
+    assertFalse(LegendGraphicCache.isCacheable(headers));
+    headers.setCacheControl("no-cache");
+    assertFalse(LegendGraphicCache.isCacheable(headers));
+    headers.setCacheControl("max-age=0");
+    assertFalse(LegendGraphicCache.isCacheable(headers));
+  }
+
+  @Test
+  public void testGetTimeToLive() {
+    final HttpHeaders headers = new HttpHeaders();
+    assertEquals(-1, LegendGraphicCache.getTimeToLive(headers));
+    headers.setCacheControl("public, max-age=600");
+    assertEquals(600, LegendGraphicCache.getTimeToLive(headers));
+    headers.setCacheControl("max-age=600, s-maxage=60");
+    assertEquals(60, LegendGraphicCache.getTimeToLive(headers));
+
+    headers.remove(HttpHeaders.CACHE_CONTROL);
+    headers.setDate(1_000_000_000L);
+    headers.setExpires(1_000_120_000L);
+    assertEquals(120, LegendGraphicCache.getTimeToLive(headers));
+    headers.set(HttpHeaders.EXPIRES, "0");
+    assertEquals(0, LegendGraphicCache.getTimeToLive(headers));
+  }
+}
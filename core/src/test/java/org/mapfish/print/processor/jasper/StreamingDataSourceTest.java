@@ -0,0 +1,157 @@
+package org.mapfish.print.processor.jasper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.sf.jasperreports.engine.design.JRDesignField;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.mapfish.print.output.Values;
+import org.mapfish.print.processor.AbstractProcessor;
+import org.mapfish.print.processor.Processor;
+
+public class StreamingDataSourceTest {
+  private final AtomicBoolean canceled = new AtomicBoolean(false);
+  private final Processor.ExecutionContext context =
+      new AbstractProcessor.Context(new HashMap<>(), this.canceled);
+
+  private static List<Values> rows(final int count) {
+    final List<Values> rows = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      final Values row = new Values();
+      row.put("index", i);
+      rows.add(row);
+    }
+    return rows;
+  }
+
+  @Test
+  public void testWindow() throws Exception {
+    final ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      final List<Values> rows = rows(20);
+      final AtomicInteger running = new AtomicInteger();
+      final AtomicInteger maxRunning = new AtomicInteger();
+      final StreamingDataSource dataSource =
+          new StreamingDataSource(
+              row ->
+                  ForkJoinTask.adapt(
+                      () -> {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        Thread.sleep(5);
+                        running.decrementAndGet();
+                        row.put("result", row.getInteger("index") * 2);
+                        return row;
+                      }),
+              pool,
+              2,
+              rows,
+              row -> row.put("completed", true),
+              this.context);
+
+      final JRDesignField result = new JRDesignField();
+      result.setName("result");
+      final JRDesignField completed = new JRDesignField();
+      completed.setName("completed");
+      for (int i = 0; i < 20; i++) {
+        assertTrue(dataSource.next());
+        assertEquals(i * 2, dataSource.getFieldValue(result));
+        assertEquals(true, dataSource.getFieldValue(completed));
+      }
+      assertFalse(dataSource.next());
+      assertTrue(maxRunning.get() <= 2, "max running: " + maxRunning.get());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  @Timeout(30)
+  public void testCancel() throws Exception {
+    final ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      final CountDownLatch started = new CountDownLatch(1);
+      final AtomicInteger processed = new AtomicInteger();
+      final List<ForkJoinTask<Values>> tasks = new ArrayList<>();
+      final StreamingDataSource dataSource =
+          new StreamingDataSource(
+              row -> {
+                final ForkJoinTask<Values> task =
+                    ForkJoinTask.adapt(
+                        () -> {
+                          processed.incrementAndGet();
+                          started.countDown();
+                          Thread.sleep(TimeUnit.SECONDS.toMillis(20));
+                          return row;
+                        });
+                tasks.add(task);
+                return task;
+              },
+              pool,
+              2,
+              rows(10),
+              row -> {},
+              this.context);
+      started.await();
+
+      // the print job is canceled while the report is filled
+      this.canceled.set(true);
+      assertThrows(CancellationException.class, dataSource::next);
+      assertFalse(dataSource.next());
+      assertEquals(2, tasks.size());
+      for (ForkJoinTask<Values> task : tasks) {
+        assertTrue(task.isCancelled());
+      }
+      assertTrue(processed.get() <= 2);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testCancelAll() throws Exception {
+    final ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      final List<ForkJoinTask<Values>> tasks = new ArrayList<>();
+      final StreamingDataSource dataSource =
+          new StreamingDataSource(
+              row -> {
+                final ForkJoinTask<Values> task =
+                    ForkJoinTask.adapt(
+                        () -> {
+                          Thread.sleep(TimeUnit.SECONDS.toMillis(20));
+                          return row;
+                        });
+                tasks.add(task);
+                return task;
+              },
+              pool,
+              2,
+              rows(10),
+              row -> {},
+              this.context);
+
+      // the report fill failed before the rows were read
+      StreamingDataSource.cancelAll(Map.of("datasource", dataSource, "other", "value"));
+      assertFalse(dataSource.next());
+      for (ForkJoinTask<Values> task : tasks) {
+        assertTrue(task.isCancelled());
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+}
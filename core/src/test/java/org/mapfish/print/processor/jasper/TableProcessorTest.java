@@ -1,18 +1,24 @@
 package org.mapfish.print.processor.jasper;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.codahale.metrics.MetricRegistry;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.net.URI;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import net.sf.jasperreports.engine.JasperPrint;
 import net.sf.jasperreports.engine.data.JRMapCollectionDataSource;
 import net.sf.jasperreports.engine.design.JRDesignField;
+import org.json.JSONObject;
 import org.junit.jupiter.api.Test;
 import org.mapfish.print.AbstractMapfishSpringTest;
 import org.mapfish.print.TestHttpClientFactory;
@@ -22,11 +28,15 @@ import org.mapfish.print.config.Template;
 import org.mapfish.print.output.AbstractJasperReportOutputFormat;
 import org.mapfish.print.output.OutputFormat;
 import org.mapfish.print.output.Values;
+import org.mapfish.print.processor.Processor;
 import org.mapfish.print.test.util.ImageSimilarity;
 import org.mapfish.print.wrapper.json.PJsonArray;
 import org.mapfish.print.wrapper.json.PJsonObject;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.http.client.MockClientHttpRequest;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.util.ReflectionTestUtils;
 
 @DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
 public class TableProcessorTest extends AbstractMapfishSpringTest {
@@ -41,6 +51,7 @@ public class TableProcessorTest extends AbstractMapfishSpringTest {
   @Autowired private ForkJoinPool forkJoinPool;
   @Autowired private TestHttpClientFactory httpRequestFactory;
   @Autowired private Map<String, OutputFormat> outputFormat;
+  @Autowired private MetricRegistry metricRegistry;
 
   private static PJsonObject loadJsonRequestData(String baseDir) throws IOException {
     return parseJSONObjectFromFile(TableProcessorTest.class, baseDir + "requestData.json");
@@ -257,4 +268,78 @@ public class TableProcessorTest extends AbstractMapfishSpringTest {
     new ImageSimilarity(getFile(baseDir + "expectedImage-quoted.png"))
         .assertSimilarity(print, 0, 0);
   }
+
+  @Test
+  public void testTableConvertersRequestOncePerUrl() throws Exception {
+    final AtomicInteger requests = new AtomicInteger();
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final TestHttpClientFactory.Handler fileHandler =
+        createFileHandler(uri -> "/icons" + uri.getPath());
+    httpRequestFactory.registerHandler(
+        input -> input.toString().contains("icons.com"),
+        new TestHttpClientFactory.Handler() {
+          @Override
+          public MockClientHttpRequest handleRequest(final URI uri, final HttpMethod httpMethod)
+              throws Exception {
+            requests.incrementAndGet();
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+              Thread.sleep(50);
+              return fileHandler.handleRequest(uri, httpMethod);
+            } finally {
+              running.decrementAndGet();
+            }
+          }
+        });
+    final long conversions = this.metricRegistry.timer("TableProcessor.convert").getCount();
+
+    final Configuration config =
+        configurationFactory.getConfig(getFile(TABLE_CONVERTERS + "config.yaml"));
+    final Template template = config.getTemplate("main");
+    for (Processor<?, ?> processor : template.getProcessors()) {
+      if (processor instanceof TableProcessor) {
+        ReflectionTestUtils.setField(processor, "maxConversionsInFlight", 1);
+      }
+    }
+    final String warn = "\"<img src=\\\"http://icons.com/warn.png\\\" />\"";
+    final String info = "\"<img src=\\\"http://icons.com/info-crosswalk-9.png\\\" />\"";
+    PJsonObject requestData =
+        new PJsonObject(
+            new JSONObject(
+                "{\"layout\": \"main\", \"attributes\": {\"table\": {"
+                    + "\"columns\": [\"id\", \"name\", \"icon\"], \"data\": ["
+                    + ("[1, \"a\", " + warn + "], [2, \"b\", " + warn + "], ")
+                    + ("[3, \"c\", " + info + "], [4, \"d\", " + warn + "], ")
+                    + "[5, \"e\", \"This is not an image!\"]]}}}"),
+            "spec");
+    Values values =
+        new Values(
+            new HashMap<>(),
+            requestData,
+            template,
+            getTaskDirectory(),
+            this.httpRequestFactory,
+            new File("."),
+            HTTP_REQUEST_MAX_NUMBER_FETCH_RETRY,
+            HTTP_REQUEST_FETCH_RETRY_INTERVAL_MILLIS,
+            new AtomicBoolean(false));
+    forkJoinPool.invoke(template.getProcessorGraph().createTask(values));
+
+    // the identical URLs are only requested once, and one at a time
+    assertEquals(2, requests.get());
+    assertEquals(1, maxRunning.get());
+    assertEquals(conversions + 1, this.metricRegistry.timer("TableProcessor.convert").getCount());
+
+    final JRMapCollectionDataSource tableDataSource =
+        values.getObject("tableDataSource", JRMapCollectionDataSource.class);
+    final JRDesignField iconField = new JRDesignField();
+    iconField.setName("icon");
+    for (int i = 0; i < 4; i++) {
+      assertTrue(tableDataSource.next());
+      assertInstanceOf(BufferedImage.class, tableDataSource.getFieldValue(iconField));
+    }
+    assertTrue(tableDataSource.next());
+    assertEquals("This is not an image!", tableDataSource.getFieldValue(iconField));
+  }
 }
@@ -0,0 +1,196 @@
+package org.mapfish.print.processor.map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.mapfish.print.PrintException;
+import org.mapfish.print.processor.AbstractProcessor;
+import org.mapfish.print.processor.Processor;
+
+@Timeout(30)
+public class CreateMapProcessorParallelRenderingTest {
+  private static final long ENOUGH_MEMORY = Long.MAX_VALUE;
+
+  private final ForkJoinPool pool = new ForkJoinPool(4);
+  private final AtomicBoolean canceled = new AtomicBoolean(false);
+  private final Processor.ExecutionContext context =
+      new AbstractProcessor.Context(new HashMap<>(), this.canceled);
+
+  private final AtomicInteger runningGroups = new AtomicInteger();
+  private final AtomicInteger maxRunningGroups = new AtomicInteger();
+
+  @AfterEach
+  public void tearDown() {
+    this.pool.shutdownNow();
+  }
+
+  private Callable<List<URI>> renderer(final int group, final long sleep) {
+    return () -> {
+      this.maxRunningGroups.accumulateAndGet(this.runningGroups.incrementAndGet(), Math::max);
+      try {
+        Thread.sleep(sleep);
+        return List.of(new URI("file:///group" + group + "-a"), new URI("file:///group" + group));
+      } finally {
+        this.runningGroups.decrementAndGet();
+      }
+    };
+  }
+
+  private List<URI> render(
+      final List<Callable<List<URI>>> renderers, final int parallelism, final long freeMemory)
+      throws Exception {
+    return CreateMapProcessor.renderLayerGroupsInParallel(
+        renderers,
+        new long[renderers.size()],
+        parallelism,
+        this.pool,
+        this.context,
+        () -> freeMemory);
+  }
+
+  @Test
+  public void testOrder() throws Exception {
+    final List<Callable<List<URI>>> renderers = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      // the first groups are the slowest
+      renderers.add(renderer(i, 200 - i * 50));
+    }
+
+    final List<URI> graphics = render(renderers, 4, ENOUGH_MEMORY);
+
+    final List<URI> expected = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      expected.add(new URI("file:///group" + i + "-a"));
+      expected.add(new URI("file:///group" + i));
+    }
+    assertEquals(expected, graphics);
+    assertTrue(this.maxRunningGroups.get() > 1);
+  }
+
+  @Test
+  public void testParallelism() throws Exception {
+    final List<Callable<List<URI>>> renderers = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      renderers.add(renderer(i, 50));
+    }
+
+    assertEquals(12, render(renderers, 2, ENOUGH_MEMORY).size());
+    assertEquals(2, this.maxRunningGroups.get());
+  }
+
+  @Test
+  public void testNotEnoughMemory() throws Exception {
+    final List<Callable<List<URI>>> renderers = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      renderers.add(renderer(i, 50));
+    }
+
+    // each image needs more than the half of the free memory: the groups are rendered one by one
+    final List<URI> graphics =
+        CreateMapProcessor.renderLayerGroupsInParallel(
+            renderers,
+            new long[] {600, 600, 600, 600},
+            4,
+            this.pool,
+            this.context,
+            () -> 1000);
+
+    assertEquals(8, graphics.size());
+    assertEquals(1, this.maxRunningGroups.get());
+  }
+
+  @Test
+  public void testError() {
+    final AtomicBoolean lastRendered = new AtomicBoolean(false);
+    final List<Callable<List<URI>>> renderers = new ArrayList<>();
+    renderers.add(renderer(0, 50));
+    renderers.add(
+        () -> {
+          throw new IOException("Failed group");
+        });
+    renderers.add(
+        () -> {
+          lastRendered.set(true);
+          return List.of();
+        });
+
+    final IOException exception =
+        assertThrows(IOException.class, () -> render(renderers, 1, ENOUGH_MEMORY));
+    assertEquals("Failed group", exception.getMessage());
+    assertFalse(lastRendered.get());
+
+    // the other checked exceptions are wrapped
+    renderers.set(
+        1,
+        () -> {
+          throw new Exception("Other failure");
+        });
+    assertThrows(PrintException.class, () -> render(renderers, 2, ENOUGH_MEMORY));
+  }
+
+  @Test
+  public void testCancel() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch interrupted = new CountDownLatch(1);
+    final AtomicBoolean lastRendered = new AtomicBoolean(false);
+    final Callable<List<URI>> slowRenderer =
+        () -> {
+          started.countDown();
+          try {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(20));
+          } catch (InterruptedException e) {
+            interrupted.countDown();
+            throw e;
+          }
+          return List.of();
+        };
+    final List<Callable<List<URI>>> renderers = new ArrayList<>();
+    renderers.add(slowRenderer);
+    renderers.add(slowRenderer);
+    renderers.add(
+        () -> {
+          lastRendered.set(true);
+          return List.of();
+        });
+
+    // the job is canceled while the first group is rendered
+    assertThrows(
+        CancellationException.class,
+        () ->
+            CreateMapProcessor.renderLayerGroupsInParallel(
+                renderers,
+                new long[renderers.size()],
+                2,
+                this.pool,
+                this.context,
+                () -> {
+                  try {
+                    started.await();
+                  } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                  }
+                  this.canceled.set(true);
+                  return ENOUGH_MEMORY;
+                }));
+    // the running group is interrupted and the last one is not started
+    assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+    assertFalse(lastRendered.get());
+  }
+}
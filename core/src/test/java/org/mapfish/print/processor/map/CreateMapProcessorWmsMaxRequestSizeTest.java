@@ -0,0 +1,99 @@
+package org.mapfish.print.processor.map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.Multimap;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+import org.mapfish.print.AbstractMapfishSpringTest;
+import org.mapfish.print.TestHttpClientFactory;
+import org.mapfish.print.URIUtils;
+import org.mapfish.print.config.Configuration;
+import org.mapfish.print.config.ConfigurationFactory;
+import org.mapfish.print.config.Template;
+import org.mapfish.print.output.Values;
+import org.mapfish.print.wrapper.json.PJsonObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.test.annotation.DirtiesContext;
+
+/** Test of a WMS layer split in tiles because of its maxRequestSize. */
+public class CreateMapProcessorWmsMaxRequestSizeTest extends AbstractMapfishSpringTest {
+  public static final String BASE_DIR = "wms_max_request_size/";
+
+  @Autowired private ConfigurationFactory configurationFactory;
+  @Autowired private TestHttpClientFactory requestFactory;
+  @Autowired private ForkJoinPool forkJoinPool;
+
+  @Test
+  @DirtiesContext
+  public void testExecute() throws Exception {
+    final List<Dimension> requestedSizes = new CopyOnWriteArrayList<>();
+    requestFactory.registerHandler(
+        input -> ("" + input.getHost()).contains("wms_max_request_size.wms"),
+        new TestHttpClientFactory.Handler() {
+          @Override
+          public MockClientHttpRequest handleRequest(final URI uri, final HttpMethod httpMethod)
+              throws IOException {
+            final Multimap<String, String> parameters = URIUtils.getParameters(uri);
+            final Dimension size =
+                new Dimension(
+                    Integer.parseInt(parameters.get("WIDTH").iterator().next()),
+                    Integer.parseInt(parameters.get("HEIGHT").iterator().next()));
+            requestedSizes.add(size);
+            final ByteArrayOutputStream image = new ByteArrayOutputStream();
+            ImageIO.write(
+                new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_ARGB),
+                "png",
+                image);
+            return ok(uri, image.toByteArray(), httpMethod);
+          }
+        });
+
+    final Configuration config = configurationFactory.getConfig(getFile(BASE_DIR + "config.yaml"));
+    final Template template = config.getTemplate("main");
+    PJsonObject requestData =
+        parseJSONObjectFromFile(
+            CreateMapProcessorWmsMaxRequestSizeTest.class, BASE_DIR + "requestData.json");
+    Values values =
+        new Values(
+            new HashMap<>(),
+            requestData,
+            template,
+            getTaskDirectory(),
+            this.requestFactory,
+            new File("."),
+            HTTP_REQUEST_MAX_NUMBER_FETCH_RETRY,
+            HTTP_REQUEST_FETCH_RETRY_INTERVAL_MILLIS,
+            new AtomicBoolean(false));
+
+    final ForkJoinTask<Values> taskFuture =
+        this.forkJoinPool.submit(template.getProcessorGraph().createTask(values));
+    taskFuture.get();
+
+    @SuppressWarnings("unchecked")
+    List<URI> layerGraphics = (List<URI>) values.getObject("layerGraphics", List.class);
+    assertEquals(1, layerGraphics.size());
+
+    // the map of 1260x588 pixels is requested as 3x3 tiles of 420x196 pixels, with their buffer
+    assertTrue(requestedSizes.size() >= 9, "Requests: " + requestedSizes);
+    assertTrue(requestedSizes.contains(new Dimension(460, 216)), "Requests: " + requestedSizes);
+    for (Dimension size : requestedSizes) {
+      assertTrue(size.width <= 500 && size.height <= 300, "Request too big: " + size);
+    }
+  }
+}
@@ -0,0 +1,28 @@
+package org.mapfish.print.processor.map;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.net.URI;
+import org.junit.jupiter.api.Test;
+
+public class InMemoryLayerImagesTest {
+  @Test
+  public void testBudget() {
+    // 10 x 10 pixels of 4 bytes
+    final InMemoryLayerImages images = new InMemoryLayerImages(600);
+    final BufferedImage image1 = new BufferedImage(10, 10, BufferedImage.TYPE_4BYTE_ABGR);
+    final BufferedImage image2 = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+    final URI uri1 = URI.create("file:///tmp/layer_0.png");
+    final URI uri2 = URI.create("file:///tmp/layer_1.png");
+
+    assertTrue(images.offer(uri1, image1));
+    assertFalse(images.offer(uri2, image2));
+
+    assertSame(image1, images.get(uri1));
+    assertNull(images.get(uri2));
+  }
+}
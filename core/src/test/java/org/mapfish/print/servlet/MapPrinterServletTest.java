@@ -53,6 +53,8 @@ import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ContextConfiguration;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.View;
 
 @ContextConfiguration(locations = {MapPrinterServletTest.PRINT_CONTEXT})
 public class MapPrinterServletTest extends AbstractMapfishSpringTest {
@@ -442,6 +444,16 @@ public class MapPrinterServletTest extends AbstractMapfishSpringTest {
       }
     }
 
+    MockHttpServletRequest servletProfileRequest = new MockHttpServletRequest("GET", statusURL);
+    addHeaders(servletProfileRequest);
+    servletProfileRequest.setParameter(MapPrinterServlet.JSON_PROFILE, "true");
+    MockHttpServletResponse servletProfileResponse = new MockHttpServletResponse();
+    servlet.getStatusPath(ref, servletProfileRequest, servletProfileResponse);
+    final PJsonObject profileJson =
+        parseJSONObjectFromString(servletProfileResponse.getContentAsString())
+            .getJSONObject(MapPrinterServlet.JSON_PROFILE);
+    assertTrue(profileJson.has("steps"), profileJson.toString());
+
     MockHttpServletResponse servletGetReportResponse = new MockHttpServletResponse();
     servlet.getReportPath(ref, false, servletGetReportResponse);
 
@@ -862,6 +874,55 @@ public class MapPrinterServletTest extends AbstractMapfishSpringTest {
     assertCorrectResponse(servletCreateResponse);
   }
 
+  @Test
+  @Timeout(value = 60000, unit = TimeUnit.MILLISECONDS)
+  public void testCreateReportAndGet_Async() throws Exception {
+    setUpConfigFiles();
+
+    final MockHttpServletRequest servletCreateRequest = new MockHttpServletRequest();
+    servletCreateRequest.setAsyncSupported(true);
+    final MockHttpServletResponse servletCreateResponse = new MockHttpServletResponse();
+
+    String requestData = loadRequestDataAsString();
+
+    final DeferredResult<View> result =
+        this.servlet.createReportAndGetNoAppId(
+            "png", requestData, false, servletCreateRequest, servletCreateResponse);
+    // the request thread is released, the response is written when the job is done
+    assertNotNull(result);
+    while (!result.hasResult()) {
+      Thread.sleep(100);
+    }
+    ((View) result.getResult()).render(null, servletCreateRequest, servletCreateResponse);
+    assertEquals(HttpStatus.OK.value(), servletCreateResponse.getStatus());
+
+    assertCorrectResponse(servletCreateResponse);
+  }
+
+  @Test
+  @Timeout(value = 60000, unit = TimeUnit.MILLISECONDS)
+  public void testGetStatus_Wait() throws Exception {
+    setUpConfigFiles();
+
+    final MockHttpServletRequest servletCreateRequest = new MockHttpServletRequest();
+    final MockHttpServletResponse servletCreateResponse = new MockHttpServletResponse();
+    String requestData = loadRequestDataAsString();
+    this.servlet.createReport("png", requestData, servletCreateRequest, servletCreateResponse);
+    final String ref =
+        parseJSONObjectFromString(servletCreateResponse.getContentAsString())
+            .getString(MapPrinterServlet.JSON_PRINT_JOB_REF);
+
+    // a single status request returns once the job is done
+    final MockHttpServletRequest servletStatusRequest = new MockHttpServletRequest();
+    servletStatusRequest.setParameter(MapPrinterServlet.WAIT_PARAMETER, "50");
+    final MockHttpServletResponse servletStatusResponse = new MockHttpServletResponse();
+    this.servlet.getStatusPath(ref, servletStatusRequest, servletStatusResponse);
+    assertEquals(HttpStatus.OK.value(), servletStatusResponse.getStatus());
+    final PJsonObject statusJson =
+        parseJSONObjectFromString(servletStatusResponse.getContentAsString());
+    assertTrue(statusJson.getBool(MapPrinterServlet.JSON_DONE), statusJson.toString());
+  }
+
   @Test
   @Timeout(value = 60000, unit = TimeUnit.MILLISECONDS)
   public void testCreateReportAndGet_OutputName() throws Exception {
@@ -0,0 +1,201 @@
+package org.mapfish.print.servlet.job;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.codahale.metrics.MetricRegistry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.mapfish.print.wrapper.json.PJsonObject;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+
+public class PrintResultCacheTest {
+  @Mock private JobManager jobManager;
+
+  @Spy private MetricRegistry metricRegistry = new MetricRegistry();
+
+  @InjectMocks private PrintResultCache cache = new PrintResultCache();
+
+  @BeforeEach
+  public void setUp() {
+    MockitoAnnotations.openMocks(this);
+    this.cache.setTimeToLive(60);
+  }
+
+  private static PJsonObject spec(final String json) {
+    return new PJsonObject(new JSONObject(json), "spec");
+  }
+
+  private void stubStatus(final String ref, final PrintJobStatus.Status value)
+      throws NoSuchReferenceException {
+    final PrintJobStatus status = mock(PrintJobStatus.class);
+    when(status.getStatus()).thenReturn(value);
+    when(this.jobManager.getStatus(ref)).thenReturn(status);
+  }
+
+  @Test
+  public void testKey() {
+    final String key =
+        PrintResultCache.key(
+            "app",
+            "A4",
+            "pdf",
+            null,
+            spec(
+                "{\"layout\": \"A4\", \"attributes\": {\"title\": \"t\", \"requestHeaders\":"
+                    + " {\"requestHeaders\": {\"X-Request-ID\": [\"1\"], \"Cookie\": [\"a\"]}}}}"));
+
+    // the keys order and the volatile headers are ignored
+    assertEquals(
+        key,
+        PrintResultCache.key(
+            "app",
+            "A4",
+            "pdf",
+            null,
+            spec(
+                "{\"attributes\": {\"requestHeaders\": {\"requestHeaders\": {\"Cookie\": [\"a\"],"
+                    + " \"User-Agent\": [\"b\"]}}, \"title\": \"t\"}, \"layout\": \"A4\"}")));
+
+    // the other headers, the attributes, the format and the user are not
+    assertNotEquals(
+        key,
+        PrintResultCache.key(
+            "app",
+            "A4",
+            "pdf",
+            null,
+            spec(
+                "{\"layout\": \"A4\", \"attributes\": {\"title\": \"t\", \"requestHeaders\":"
+                    + " {\"requestHeaders\": {\"Cookie\": [\"b\"]}}}}")));
+    final PJsonObject spec = spec("{\"layout\": \"A4\", \"attributes\": {\"title\": \"t\"}}");
+    final String otherKey = PrintResultCache.key("app", "A4", "pdf", null, spec);
+    assertNotEquals(otherKey, PrintResultCache.key("app", "A4", "png", null, spec));
+    assertNotEquals(otherKey, PrintResultCache.key("app", "A4", "pdf", "user", spec));
+    assertNotEquals(
+        otherKey,
+        PrintResultCache.key(
+            "app",
+            "A4",
+            "pdf",
+            null,
+            spec("{\"layout\": \"A4\", \"attributes\": {\"title\": 1}}")));
+  }
+
+  @Test
+  public void testIsCacheable() {
+    assertTrue(this.cache.isCacheable(spec("{\"layout\": \"A4\"}")));
+    assertFalse(this.cache.isCacheable(spec("{\"layout\": \"A4\", \"smtp\": {}}")));
+    this.cache.setTimeToLive(0);
+    assertFalse(this.cache.isCacheable(spec("{\"layout\": \"A4\"}")));
+  }
+
+  @Test
+  public void testGetOrSubmit() throws Exception {
+    final AtomicInteger submitted = new AtomicInteger();
+    final Supplier<String> submit = () -> "ref" + submitted.incrementAndGet();
+    stubStatus("ref1", PrintJobStatus.Status.RUNNING);
+
+    // the running job is shared, then the finished one
+    assertEquals("ref1", this.cache.getOrSubmit("app", "key", submit));
+    assertEquals("ref1", this.cache.getOrSubmit("app", "key", submit));
+    stubStatus("ref1", PrintJobStatus.Status.FINISHED);
+    assertEquals("ref1", this.cache.getOrSubmit("app", "key", submit));
+    assertEquals(1, submitted.get());
+
+    // the failed job is not
+    stubStatus("ref1", PrintJobStatus.Status.ERROR);
+    assertEquals("ref2", this.cache.getOrSubmit("app", "key", submit));
+
+    // nor the expired ones
+    this.cache.setTimeToLive(0);
+    stubStatus("ref2", PrintJobStatus.Status.FINISHED);
+    this.cache.getOrSubmit("app", "other", submit);
+    this.cache.setTimeToLive(60);
+    assertEquals("ref4", this.cache.getOrSubmit("app", "other", submit));
+
+    // the submission errors are not cached
+    assertNull(this.cache.getOrSubmit("app", "error", () -> null));
+    assertEquals("ref5", this.cache.getOrSubmit("app", "error", submit));
+
+    assertEquals(2, this.metricRegistry.counter("PrintResultCache.app.hit").getCount());
+    assertEquals(6, this.metricRegistry.counter("PrintResultCache.app.miss").getCount());
+  }
+
+  @Test
+  @Timeout(30)
+  public void testConcurrentSubmit() throws Exception {
+    final CountDownLatch submitting = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger submitted = new AtomicInteger();
+    stubStatus("ref1", PrintJobStatus.Status.RUNNING);
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final Future<String> first =
+          executor.submit(
+              () ->
+                  this.cache.getOrSubmit(
+                      "app",
+                      "key",
+                      () -> {
+                        submitting.countDown();
+                        try {
+                          release.await();
+                        } catch (InterruptedException e) {
+                          throw new IllegalStateException(e);
+                        }
+                        return "ref" + submitted.incrementAndGet();
+                      }));
+      submitting.await();
+
+      // the other keys are not blocked by the running submission
+      assertEquals("other", this.cache.getOrSubmit("app", "other", () -> "other"));
+
+      // the identical request waits for the reference of the running submission
+      final CompletableFuture<String> second =
+          CompletableFuture.supplyAsync(
+              () ->
+                  this.cache.getOrSubmit("app", "key", () -> "ref" + submitted.incrementAndGet()));
+      release.countDown();
+      assertEquals("ref1", first.get());
+      assertEquals("ref1", second.get());
+      assertEquals(1, submitted.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testRelease() throws Exception {
+    stubStatus("ref1", PrintJobStatus.Status.RUNNING);
+    this.cache.getOrSubmit("app", "key", () -> "ref1");
+    this.cache.getOrSubmit("app", "key", () -> "ref2");
+
+    // the shared job is only canceled by its last requester
+    assertFalse(this.cache.release("ref1"));
+    assertTrue(this.cache.release("ref1"));
+
+    // and is not reused once canceled
+    assertEquals("ref2", this.cache.getOrSubmit("app", "key", () -> "ref2"));
+
+    // the jobs that are not cached can be canceled
+    assertTrue(this.cache.release("unknown"));
+  }
+}
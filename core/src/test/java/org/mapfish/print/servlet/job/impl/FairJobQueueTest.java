@@ -0,0 +1,211 @@
+package org.mapfish.print.servlet.job.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.codahale.metrics.MetricRegistry;
+import java.util.Collections;
+import java.util.Comparator;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.mapfish.print.servlet.job.PrintJob;
+import org.mapfish.print.servlet.job.PrintJobEntry;
+import org.mapfish.print.wrapper.json.PJsonObject;
+
+public class FairJobQueueTest {
+  private static final long EXPENSIVE_JOB_COST = 10;
+
+  private long time = 0;
+
+  private static FairJobQueue createQueue(final MetricRegistry registry) {
+    return createQueue(registry, null, 0);
+  }
+
+  private static FairJobQueue createQueue(
+      final MetricRegistry registry,
+      final PrintJobMemoryEstimator memoryEstimator,
+      final long memoryBudget) {
+    return new FairJobQueue(
+        Comparator.comparingLong(job -> job.getEntry().getStartTime()),
+        new PrintJobCostEstimator(),
+        Collections.emptyMap(),
+        EXPENSIVE_JOB_COST,
+        1,
+        memoryEstimator,
+        memoryBudget,
+        registry);
+  }
+
+  private Runnable createTask(final String app, final int layers) {
+    final JSONObject map = new JSONObject();
+    map.put("dpi", 72);
+    map.put("layers", new JSONArray());
+    for (int i = 0; i < layers; i++) {
+      map.getJSONArray("layers").put(new JSONObject());
+    }
+    final JSONObject requestData = new JSONObject();
+    requestData.put("app", app);
+    requestData.put("attributes", new JSONObject().put("map", map));
+    final PrintJobEntry entry =
+        new PrintJobEntry(app + this.time, new PJsonObject(requestData, "spec"), this.time++);
+    final PrintJob job = mock(PrintJob.class);
+    when(job.getEntry()).thenReturn(entry);
+    return new ThreadPoolJobManager.JobFutureTask<>(job);
+  }
+
+  @Test
+  public void testFairSharing() {
+    final FairJobQueue queue = createQueue(new MetricRegistry());
+    final Runnable a1 = createTask("a", 0);
+    final Runnable a2 = createTask("a", 0);
+    final Runnable a3 = createTask("a", 0);
+    final Runnable b1 = createTask("b", 0);
+    queue.offer(a1);
+    queue.offer(a2);
+    queue.offer(a3);
+    queue.offer(b1);
+
+    assertSame(a1, queue.poll());
+    assertSame(b1, queue.poll());
+    assertSame(a2, queue.poll());
+    assertSame(a3, queue.poll());
+    assertNull(queue.poll());
+  }
+
+  @Test
+  public void testClientKey() {
+    final JSONObject headers =
+        new JSONObject().put("Referer", new JSONArray().put("https://Example.com/map"));
+    final JSONObject requestData = new JSONObject();
+    requestData.put("app", "a");
+    requestData.put(
+        "attributes",
+        new JSONObject().put("requestHeaders", new JSONObject().put("requestHeaders", headers)));
+
+    // the header names are case-insensitive
+    assertEquals(
+        "a example.com",
+        FairJobQueue.getClientKey(
+            new PrintJobEntry("ref", new PJsonObject(requestData, "spec"), 0)));
+  }
+
+  @Test
+  public void testExpensiveLane() {
+    final MetricRegistry registry = new MetricRegistry();
+    final FairJobQueue queue = createQueue(registry);
+    final Runnable expensive1 = createTask("a", 20);
+    final Runnable expensive2 = createTask("a", 20);
+    final Runnable cheap = createTask("b", 1);
+    queue.offer(expensive1);
+    queue.offer(expensive2);
+    queue.offer(cheap);
+    assertEquals(2, queue.size(FairJobQueue.Lane.EXPENSIVE));
+    assertEquals(1, queue.size(FairJobQueue.Lane.CHEAP));
+
+    assertSame(expensive1, queue.poll());
+    // only one expensive job can run at the same time
+    assertSame(cheap, queue.poll());
+    assertNull(queue.poll());
+    assertEquals(1, queue.size());
+
+    queue.finished(expensive1);
+    assertSame(expensive2, queue.poll());
+    assertEquals(
+        2,
+        registry
+            .timer(FairJobQueue.laneMetricName(FairJobQueue.Lane.EXPENSIVE, "waitTime"))
+            .getCount());
+  }
+
+  private static PrintJobMemoryEstimator createMemoryEstimator() {
+    return new PrintJobMemoryEstimator() {
+      @Override
+      public long estimate(final PrintJobEntry entry) {
+        // 100 bytes per layer
+        return 100L
+            * entry
+                .getRequestData()
+                .getJSONObject("attributes")
+                .getJSONObject("map")
+                .getJSONArray("layers")
+                .size();
+      }
+    };
+  }
+
+  @Test
+  public void testMemoryBudget() {
+    final FairJobQueue queue = createQueue(new MetricRegistry(), createMemoryEstimator(), 250);
+    final Runnable big = createTask("a", 2);
+    final Runnable small1 = createTask("b", 1);
+    final Runnable small2 = createTask("c", 1);
+    queue.offer(big);
+    queue.offer(small1);
+    queue.offer(small2);
+
+    assertSame(big, queue.poll());
+    assertEquals(200, queue.getReservedMemory());
+    // the next job doesn't fit in the budget
+    assertNull(queue.poll());
+
+    queue.finished(big);
+    assertEquals(0, queue.getReservedMemory());
+    assertSame(small1, queue.poll());
+    assertSame(small2, queue.poll());
+    assertEquals(200, queue.getReservedMemory());
+  }
+
+  @Test
+  public void testMemoryBudgetSmallerJobsPass() {
+    final FairJobQueue queue = createQueue(new MetricRegistry(), createMemoryEstimator(), 250);
+    final Runnable small1 = createTask("a", 1);
+    final Runnable big = createTask("b", 5);
+    final Runnable small2 = createTask("c", 1);
+    final Runnable small3 = createTask("d", 1);
+    queue.offer(small1);
+    queue.offer(big);
+    queue.offer(small2);
+    queue.offer(small3);
+
+    assertSame(small1, queue.poll());
+    // the big job waits for the memory, a smaller one passes it
+    assertSame(small2, queue.poll());
+    assertNull(queue.poll());
+
+    queue.finished(small1);
+    queue.finished(small2);
+    // bigger than the budget, it runs alone
+    assertSame(big, queue.poll());
+    assertEquals(250, queue.getReservedMemory());
+    assertNull(queue.poll());
+    queue.finished(big);
+    assertSame(small3, queue.poll());
+  }
+
+  @Test
+  public void testMemoryBudgetNotStarved() {
+    final FairJobQueue queue = createQueue(new MetricRegistry(), createMemoryEstimator(), 250);
+    final Runnable small = createTask("a", 1);
+    final Runnable big = createTask("b", 2);
+    queue.offer(small);
+    queue.offer(big);
+    assertSame(small, queue.poll());
+
+    for (int i = 0; i < FairJobQueue.MAX_MEMORY_PASSES; i++) {
+      final Runnable other = createTask("c", 1);
+      queue.offer(other);
+      assertSame(other, queue.poll());
+      queue.finished(other);
+    }
+    // the big job has been passed too many times
+    queue.offer(createTask("c", 1));
+    assertNull(queue.poll());
+
+    queue.finished(small);
+    assertSame(big, queue.poll());
+  }
+}
@@ -0,0 +1,66 @@
+package org.mapfish.print.servlet.job.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.ForkJoinPool;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.mapfish.print.AbstractMapfishSpringTest;
+import org.mapfish.print.servlet.job.PrintJobEntry;
+import org.mapfish.print.wrapper.json.PJsonObject;
+import org.springframework.beans.factory.annotation.Autowired;
+
+public class PrintJobMemoryEstimatorTest extends AbstractMapfishSpringTest {
+  @Autowired private PrintJobMemoryEstimator estimator;
+  @Autowired private ForkJoinPool forkJoinPool;
+
+  private static PrintJobEntry createEntry(final String outputFormat, final int nbPages) {
+    final JSONObject map = new JSONObject();
+    map.put("dpi", 144);
+    map.put("width", 100);
+    map.put("height", 50);
+    map.put("layers", new JSONArray().put(new JSONObject()));
+    final JSONObject page = new JSONObject().put("map", map);
+    final JSONArray pages = new JSONArray();
+    for (int i = 0; i < nbPages; i++) {
+      pages.put(page);
+    }
+    final JSONObject requestData = new JSONObject();
+    requestData.put("app", "default");
+    requestData.put("outputFormat", outputFormat);
+    requestData.put("attributes", new JSONObject().put("pages", pages).put("overview", map));
+    return new PrintJobEntry("ref", new PJsonObject(requestData, "spec"), 0);
+  }
+
+  @Test
+  public void testEstimate() {
+    // maps of 200x100 pixels with a raster group, 4 bytes per pixel, the image of the group and
+    // the one of its layer
+    final long map = 200 * 100 * 4 * 2;
+    assertEquals(map + 2 * map, this.estimator.estimate(createEntry("pdf", 2)));
+    assertEquals(map + 2 * map, this.estimator.estimate(createEntry("png", 2)));
+  }
+
+  @Test
+  public void testCountRasterGroups() {
+    final JSONArray layers =
+        new JSONArray()
+            .put(new JSONObject().put("type", "wms").put("imageFormat", "image/png"))
+            .put(new JSONObject().put("type", "wmts").put("imageFormat", "image/png"))
+            .put(new JSONObject().put("type", "geojson").put("renderAsSvg", true))
+            .put(new JSONObject().put("type", "osm").put("imageExtension", "jpg"))
+            .put(new JSONObject().put("type", "wms").put("imageFormat", "image/png"));
+    // the consecutive layers with the same format are rendered together, SVG is not a raster
+    assertEquals(3, PrintJobMemoryEstimator.countRasterGroups(layers));
+    assertEquals(0, PrintJobMemoryEstimator.countRasterGroups(new JSONArray()));
+  }
+
+  @Test
+  public void testEstimateAtlas() {
+    // only the pages rendered at the same time are counted
+    final long pdfMap = 200 * 100 * 4 * 2;
+    final int window = Math.min(400, this.forkJoinPool.getParallelism());
+    assertEquals(pdfMap + window * pdfMap, this.estimator.estimate(createEntry("pdf", 400)));
+  }
+}